@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2018 A.C. Kockx, All Rights Reserved.
+ */
+package boardgame.controller.neuralnetwork;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Int8Kernel with the Vector API. Each step loads as many 8-bit values as there are 32-bit lanes in the preferred int vector
+ * (e.g. 16 with 512-bit vectors), widens them to 32 bits and multiplies and adds them in one vector operation each.
+ * The remaining elements at the end are calculated with a scalar loop.
+ *
+ * Needs Java 16 or later and the module jdk.incubator.vector. Do not use this class directly, it is loaded by Int8Kernels,
+ * which falls back to the scalar kernel if it is not available.
+ *
+ * @author A.C. Kockx
+ */
+final class VectorInt8Kernel implements Int8Kernel {
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    //the same number of lanes as INTS.
+    private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_PREFERRED.withShape(VectorShape.forBitSize(INTS.length()*Byte.SIZE));
+
+    @Override
+    public void addScaledRow(byte[] weights, int offset, int value, int[] sums, int count) {
+        int o = 0;
+        for (int end = INTS.loopBound(count); o < end; o += INTS.length()) {
+            IntVector row = (IntVector) ByteVector.fromArray(BYTES, weights, offset + o).convertShape(VectorOperators.B2I, INTS, 0);
+            IntVector.fromArray(INTS, sums, o).add(row.mul(value)).intoArray(sums, o);
+        }
+        for (; o < count; o++) {
+            sums[o] += weights[offset + o]*value;
+        }
+    }
+
+    @Override
+    public int dotProduct(byte[] a, byte[] b, int length) {
+        IntVector products = IntVector.zero(INTS);
+        int i = 0;
+        for (int end = INTS.loopBound(length); i < end; i += INTS.length()) {
+            IntVector aValues = (IntVector) ByteVector.fromArray(BYTES, a, i).convertShape(VectorOperators.B2I, INTS, 0);
+            IntVector bValues = (IntVector) ByteVector.fromArray(BYTES, b, i).convertShape(VectorOperators.B2I, INTS, 0);
+            products = products.add(aValues.mul(bValues));
+        }
+        int sum = products.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += a[i]*b[i];
+        }
+        return sum;
+    }
+
+    @Override
+    public String getName() {
+        return "vector (" + INTS.vectorBitSize() + "-bit)";
+    }
+}
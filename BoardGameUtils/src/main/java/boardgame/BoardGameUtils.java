@@ -3,7 +3,11 @@
  */
 package boardgame;
 
+import boardgame.controller.player.AlphaBetaPlayer;
 import boardgame.controller.player.HumanBoardGamePlayer;
+import boardgame.controller.player.MonteCarloTreeSearchPlayer;
+import boardgame.controller.player.NeuralNetworkPlayer;
+import boardgame.controller.player.ThreatSpaceSearchPlayer;
 import boardgame.view.SquaresPanelView;
 import util.controller.player.Player;
 import util.controller.player.RandomLegalMovePlayer;
@@ -19,6 +23,7 @@ public final class BoardGameUtils {
         HUMAN("Human"),
         COMPUTER_RANDOM_MOVE("Computer Random Move"),
         COMPUTER_BRUTE_FORCE("Computer Brute Force"),
+        COMPUTER_MONTE_CARLO_TREE_SEARCH("Computer Monte Carlo Tree Search"),
         COMPUTER_NEURAL_NETWORK("Computer Neural Network");
 
         private final String displayName;
@@ -81,9 +86,15 @@ public final class BoardGameUtils {
                     player = new RandomLegalMovePlayer(playerName);
                     break;
                 case COMPUTER_BRUTE_FORCE:
-                    throw new UnsupportedOperationException(playerType.toString() + " not supported yet.");
+                    //check for forced wins with threats first, which the search may not reach on large m,n,k boards.
+                    player = new ThreatSpaceSearchPlayer(new AlphaBetaPlayer(playerName));
+                    break;
+                case COMPUTER_MONTE_CARLO_TREE_SEARCH:
+                    player = new ThreatSpaceSearchPlayer(new MonteCarloTreeSearchPlayer(playerName));
+                    break;
                 case COMPUTER_NEURAL_NETWORK:
-                    throw new UnsupportedOperationException(playerType.toString() + " not supported yet.");
+                    player = new NeuralNetworkPlayer(playerName);
+                    break;
                 default:
                     throw new IllegalStateException("Unknown " + PlayerType.class.getSimpleName() + " " + playerType);
             }
@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2018 A.C. Kockx, All Rights Reserved.
+ */
+package boardgame.controller.neuralnetwork;
+
+/**
+ * Move probabilities and value of one position that was evaluated by a BatchedInferenceService.
+ *
+ * @author A.C. Kockx
+ */
+public final class InferenceResult {
+    private final float[] policy;
+    private final float value;
+
+    InferenceResult(float[] policy, float value) {
+        this.policy = policy;
+        this.value = value;
+    }
+
+    /**
+     * Returns the probability of each square (row*columnCount + column). Illegal moves have probability 0.
+     * Do not change the returned array.
+     */
+    public float[] getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Returns the value of the position, between -1 (loss) and 1 (win) for the player to move.
+     */
+    public float getValue() {
+        return value;
+    }
+}
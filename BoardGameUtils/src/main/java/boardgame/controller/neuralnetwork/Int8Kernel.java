@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) 2018 A.C. Kockx, All Rights Reserved.
+ */
+package boardgame.controller.neuralnetwork;
+
+/**
+ * The integer arithmetic on 8-bit values that a QuantizedPolicyValueNetwork spends most of its time in.
+ * There is a scalar implementation that runs on every JVM and an optional implementation with the Vector API, see Int8Kernels.
+ * Both give exactly the same results.
+ *
+ * Implementations must be thread-safe.
+ *
+ * @author A.C. Kockx
+ */
+public interface Int8Kernel {
+
+    /**
+     * Adds weights[offset + o]*value to sums[o] for o = 0 to count - 1.
+     */
+    void addScaledRow(byte[] weights, int offset, int value, int[] sums, int count);
+
+    /**
+     * Returns the sum of a[i]*b[i] for i = 0 to length - 1.
+     */
+    int dotProduct(byte[] a, byte[] b, int length);
+
+    /**
+     * Returns a short description of this kernel, e.g. for benchmark output.
+     */
+    String getName();
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2018 A.C. Kockx, All Rights Reserved.
+ */
+package boardgame.controller.neuralnetwork;
+
+/**
+ * Provides the Int8Kernel implementations for a QuantizedPolicyValueNetwork.
+ *
+ * The vector kernel uses the Vector API (module jdk.incubator.vector), which needs Java 16 or later, while this project
+ * is built for Java 8. Therefore the vector kernel is in a separate source directory (src/main/java-vector) that is only compiled
+ * with a JDK that has the Vector API, and it is loaded by name. It is available only if its class is present and the JVM
+ * was started with --add-modules jdk.incubator.vector. Otherwise the class cannot be found or linked and the scalar kernel is used.
+ * The Gradle build compiles it when Gradle runs on Java 16 or later, and the run tasks of the example games and
+ * of NeuralNetworkBenchmark add the module.
+ *
+ * @author A.C. Kockx
+ */
+public final class Int8Kernels {
+    private static final String VECTOR_KERNEL_CLASS_NAME = "boardgame.controller.neuralnetwork.VectorInt8Kernel";
+
+    private static final Int8Kernel SCALAR_KERNEL = new ScalarInt8Kernel();
+    //null if the Vector API is not available.
+    private static final Int8Kernel VECTOR_KERNEL = loadVectorKernel();
+
+    private Int8Kernels() {
+    }
+
+    private static Int8Kernel loadVectorKernel() {
+        try {
+            Int8Kernel kernel = (Int8Kernel) Class.forName(VECTOR_KERNEL_CLASS_NAME).getDeclaredConstructor().newInstance();
+            //use the kernel once, so that missing classes of the Vector API are found here and not during inference.
+            byte[] values = new byte[]{1, -2, 3, -4, 5, -6, 7, -8, 9, -10, 11, -12, 13, -14, 15, -16, 17};
+            int[] sums = new int[values.length];
+            kernel.addScaledRow(values, 0, 3, sums, values.length);
+            if (kernel.dotProduct(values, values, values.length) != 1785 || sums[values.length - 1] != 51) return null;
+            return kernel;
+        } catch (ClassNotFoundException e) {
+            //vector kernel was not compiled.
+            return null;
+        } catch (LinkageError e) {
+            //Vector API not available, e.g. older Java version or module jdk.incubator.vector not added.
+            return null;
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    public static Int8Kernel getScalarKernel() {
+        return SCALAR_KERNEL;
+    }
+
+    /**
+     * Returns the kernel that uses the Vector API, or null if the Vector API is not available, see class description.
+     */
+    public static Int8Kernel getVectorKernel() {
+        return VECTOR_KERNEL;
+    }
+
+    /**
+     * Returns the vector kernel if it is available, otherwise the scalar kernel.
+     */
+    public static Int8Kernel getDefaultKernel() {
+        return VECTOR_KERNEL != null ? VECTOR_KERNEL : SCALAR_KERNEL;
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2018 A.C. Kockx, All Rights Reserved.
+ */
+package boardgame.controller.neuralnetwork;
+
+import java.util.Random;
+
+/**
+ * Trains a PolicyValueNetwork with stochastic gradient descent on random samples from a ReplayBuffer.
+ *
+ * Each training step takes one sample, calculates the outputs of the network for it and backpropagates the loss: the cross-entropy
+ * between the target move probabilities and the policy of the network, plus the squared difference between the outcome and the value.
+ * The weights are updated directly in the weights array of the network, without locks (Hogwild): multiple trainers can train
+ * the same network at the same time on different threads, each with its own trainer. Their updates may occasionally overwrite
+ * each other, which hardly affects training since each update changes only a small part of the weights. For the same reason,
+ * players can use the network for inference while it is being trained. Inputs and hidden outputs that are 0 do not contribute
+ * to the gradient of their weights, so they are skipped.
+ *
+ * Note: this class is not thread-safe, use one trainer for each thread.
+ *
+ * @author A.C. Kockx
+ */
+public final class NetworkTrainer {
+    public static final float DEFAULT_LEARNING_RATE = 0.01f;
+    //lower bound for probabilities in the cross-entropy, to avoid log(0).
+    private static final float MIN_PROBABILITY = 1e-7f;
+
+    private final PolicyValueNetwork network;
+    private final ReplayBuffer buffer;
+    private final float learningRate;
+    private final Random random;
+
+    private final float[] weights;
+    private final NetworkWorkspace workspace;
+    private final float[] targetPolicy;
+    //gradient of the loss with respect to the policy logits, the value head output and the outputs of each hidden layer.
+    private final float[] policyGradient;
+    private final float[][] hiddenGradients;
+    //indices of the inputs of the current layer that are not 0.
+    private final int[] nonZeroInputs;
+
+    //statistics.
+    private long stepCount = 0;
+    private float lastPolicyLoss = 0;
+    private float lastValueLoss = 0;
+
+    /**
+     * @param seed for choosing the samples.
+     */
+    public NetworkTrainer(PolicyValueNetwork network, ReplayBuffer buffer, float learningRate, long seed) {
+        if (network == null) throw new IllegalArgumentException("network == null");
+        if (buffer == null) throw new IllegalArgumentException("buffer == null");
+        if (!(learningRate > 0)) throw new IllegalArgumentException("learningRate <= 0");
+
+        this.network = network;
+        this.buffer = buffer;
+        this.learningRate = learningRate;
+        random = new Random(seed);
+
+        weights = network.getWeights();
+        workspace = network.createWorkspace();
+        int squareCount = network.getRowCount()*network.getColumnCount();
+        targetPolicy = new float[squareCount];
+        policyGradient = new float[squareCount];
+        int[] hiddenLayerSizes = network.getHiddenLayerSizes();
+        hiddenGradients = new float[hiddenLayerSizes.length][];
+        int maxInputSize = network.getInputSize();
+        for (int layer = 0; layer < hiddenLayerSizes.length; layer++) {
+            hiddenGradients[layer] = new float[hiddenLayerSizes[layer]];
+            maxInputSize = Math.max(maxInputSize, hiddenLayerSizes[layer]);
+        }
+        nonZeroInputs = new int[maxInputSize];
+    }
+
+    /**
+     * Trains the network on one random sample from the buffer. The buffer must not be empty.
+     */
+    public void trainStep() {
+        float outcome = buffer.sample(random, workspace, targetPolicy);
+        float value = network.forward(workspace);
+
+        //normalize the target over the legal moves.
+        int[] legalMoves = workspace.legalMoves;
+        int legalMoveCount = workspace.legalMoveCount;
+        float targetSum = 0;
+        for (int n = 0; n < legalMoveCount; n++) {
+            targetSum += targetPolicy[legalMoves[n]];
+        }
+
+        //gradient of the policy loss with respect to the logits is policy - target for the legal moves and 0 for the other squares.
+        float policyLoss = 0;
+        float[] policy = workspace.policy;
+        for (int n = 0; n < legalMoveCount; n++) {
+            int move = legalMoves[n];
+            float target = targetSum > 0 ? targetPolicy[move]/targetSum : 0;
+            policyGradient[move] = targetSum > 0 ? policy[move] - target : 0;
+            if (target > 0) policyLoss -= target*Math.log(Math.max(policy[move], MIN_PROBABILITY));
+        }
+        //value = tanh(output), so d(value - outcome)^2/d(output) = 2*(value - outcome)*(1 - value^2).
+        float valueGradient = 2*(value - outcome)*(1 - value*value);
+
+        int lastLayer = hiddenGradients.length - 1;
+        float[] lastActivations = workspace.activations[lastLayer];
+        float[] lastGradient = hiddenGradients[lastLayer];
+        for (int i = 0; i < lastGradient.length; i++) {
+            lastGradient[i] = 0;
+        }
+        int nonZeroCount = findNonZeroInputs(lastActivations);
+
+        //policy head, only the rows of the legal moves have a gradient.
+        int policyOffset = network.getLayerOffset(lastLayer + 1);
+        int inputCount = lastActivations.length;
+        int policyBiasOffset = policyOffset + policy.length*inputCount;
+        for (int n = 0; n < legalMoveCount; n++) {
+            int move = legalMoves[n];
+            float gradient = policyGradient[move];
+            if (gradient == 0) continue;
+
+            updateRow(policyOffset + move*inputCount, gradient, lastActivations, lastGradient, nonZeroCount);
+            weights[policyBiasOffset + move] -= learningRate*gradient;
+        }
+
+        //value head.
+        int valueOffset = network.getLayerOffset(lastLayer + 2);
+        updateRow(valueOffset, valueGradient, lastActivations, lastGradient, nonZeroCount);
+        weights[valueOffset + inputCount] -= learningRate*valueGradient;
+
+        //hidden layers, from the last to the first.
+        for (int layer = lastLayer; layer >= 0; layer--) {
+            //ReLU: no gradient for outputs that were 0.
+            float[] gradients = hiddenGradients[layer];
+            float[] outputs = workspace.activations[layer];
+            for (int o = 0; o < gradients.length; o++) {
+                if (outputs[o] <= 0) gradients[o] = 0;
+            }
+
+            float[] input = layer == 0 ? workspace.input : workspace.activations[layer - 1];
+            float[] inputGradients = layer == 0 ? null : hiddenGradients[layer - 1];
+            if (inputGradients != null) {
+                for (int i = 0; i < inputGradients.length; i++) {
+                    inputGradients[i] = 0;
+                }
+            }
+            nonZeroCount = findNonZeroInputs(input);
+            int offset = network.getLayerOffset(layer);
+            int biasOffset = offset + gradients.length*input.length;
+            for (int o = 0; o < gradients.length; o++) {
+                float gradient = gradients[o];
+                if (gradient == 0) continue;
+
+                updateRow(offset + o*input.length, gradient, input, inputGradients, nonZeroCount);
+                weights[biasOffset + o] -= learningRate*gradient;
+            }
+        }
+
+        for (int n = 0; n < legalMoveCount; n++) {
+            policyGradient[legalMoves[n]] = 0;
+        }
+        stepCount++;
+        lastPolicyLoss = policyLoss;
+        lastValueLoss = (value - outcome)*(value - outcome);
+    }
+
+    /**
+     * Writes the indices of the given inputs that are not 0 to nonZeroInputs and returns their number.
+     */
+    private int findNonZeroInputs(float[] input) {
+        int count = 0;
+        for (int i = 0; i < input.length; i++) {
+            if (input[i] != 0) nonZeroInputs[count++] = i;
+        }
+        return count;
+    }
+
+    /**
+     * For the weight row at the given offset of an output with the given gradient: adds the gradient of each non-zero input
+     * to inputGradients (if not null), using the weights before the update, then updates the weights of those inputs.
+     */
+    private void updateRow(int rowOffset, float gradient, float[] input, float[] inputGradients, int nonZeroCount) {
+        float step = learningRate*gradient;
+        for (int n = 0; n < nonZeroCount; n++) {
+            int i = nonZeroInputs[n];
+            int index = rowOffset + i;
+            if (inputGradients != null) inputGradients[i] += weights[index]*gradient;
+            weights[index] -= step*input[i];
+        }
+    }
+
+    public PolicyValueNetwork getNetwork() {
+        return network;
+    }
+
+    public float getLearningRate() {
+        return learningRate;
+    }
+
+    /**
+     * Returns the number of training steps done by this trainer.
+     */
+    public long getStepCount() {
+        return stepCount;
+    }
+
+    /**
+     * Returns the cross-entropy of the policy for the sample of the last training step, before the update.
+     */
+    public float getLastPolicyLoss() {
+        return lastPolicyLoss;
+    }
+
+    /**
+     * Returns the squared error of the value for the sample of the last training step, before the update.
+     */
+    public float getLastValueLoss() {
+        return lastValueLoss;
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2018 A.C. Kockx, All Rights Reserved.
+ */
+package boardgame.controller.neuralnetwork;
+
+import boardgame.model.BoardGameModel;
+
+/**
+ * Preallocated buffers for the input, activations and outputs of one PolicyValueInference, so that an inference does not allocate
+ * any memory. Create one workspace for each thread with method PolicyValueInference.createWorkspace, since the buffers are overwritten
+ * by each inference. Multiple workspaces can use the same network at the same time.
+ *
+ * @author A.C. Kockx
+ */
+public final class NetworkWorkspace {
+    /**
+     * Input of the network, see method encode.
+     */
+    final float[] input;
+    /**
+     * For each hidden layer, the output of that layer after the activation function (ReLU).
+     */
+    final float[][] activations;
+    /**
+     * Output of the policy head before the softmax, one value for each square.
+     */
+    final float[] policyLogits;
+    /**
+     * Probability of each square (row*columnCount + column) after the softmax over the legal moves. Illegal moves have probability 0.
+     */
+    final float[] policy;
+    /**
+     * Legal moves of the encoded position and their number.
+     */
+    final int[] legalMoves;
+    int legalMoveCount = 0;
+    /**
+     * Output of the value head, between -1 (loss) and 1 (win) for the player to move in the encoded position.
+     */
+    float value = 0;
+
+    /**
+     * Only for quantized networks, otherwise null. For the input layer and each hidden layer, the output of that layer quantized to 8 bits,
+     * i.e. the input of the next layer, and the scale to convert it back (value = quantizedValue*scale).
+     * The int sums of the outputs of the layer that is being calculated.
+     */
+    final byte[][] quantizedActivations;
+    final float[] activationScales;
+    final int[] sums;
+
+    NetworkWorkspace(int inputSize, int[] hiddenLayerSizes, int squareCount, boolean quantized) {
+        input = new float[inputSize];
+        activations = new float[hiddenLayerSizes.length][];
+        for (int layer = 0; layer < hiddenLayerSizes.length; layer++) {
+            activations[layer] = new float[hiddenLayerSizes[layer]];
+        }
+        policyLogits = new float[squareCount];
+        policy = new float[squareCount];
+        legalMoves = new int[squareCount];
+
+        if (quantized) {
+            quantizedActivations = new byte[hiddenLayerSizes.length + 1][];
+            quantizedActivations[0] = new byte[inputSize];
+            for (int layer = 0; layer < hiddenLayerSizes.length; layer++) {
+                quantizedActivations[layer + 1] = new byte[hiddenLayerSizes[layer]];
+            }
+            activationScales = new float[hiddenLayerSizes.length + 1];
+            int maxOutputSize = squareCount;
+            for (int size : hiddenLayerSizes) {
+                maxOutputSize = Math.max(maxOutputSize, size);
+            }
+            sums = new int[maxOutputSize];
+        } else {
+            quantizedActivations = null;
+            activationScales = null;
+            sums = null;
+        }
+    }
+
+    /**
+     * Writes the input for the current position of the given model and its legal moves to this workspace: one plane with 1 for each square
+     * with a piece of the player to move and one plane with 1 for each square with a piece of the other player.
+     * The size of the model must have been checked by the caller.
+     */
+    void encode(BoardGameModel model) {
+        int rowCount = model.getRowCount();
+        int columnCount = model.getColumnCount();
+        int squareCount = rowCount*columnCount;
+        int playerIndex = model.getIndexOfCurrentPlayer();
+        for (int row = 0; row < rowCount; row++) {
+            for (int column = 0; column < columnCount; column++) {
+                int square = row*columnCount + column;
+                int owner = model.getIndexOfPlayerAt(row, column);
+                input[square] = owner == playerIndex ? 1 : 0;
+                input[squareCount + square] = owner != -1 && owner != playerIndex ? 1 : 0;
+            }
+        }
+        legalMoveCount = model.getLegalMoves(legalMoves);
+    }
+
+    /**
+     * Calculates the policy from the policy logits with a softmax over the legal moves, sets the value to tanh of the given output
+     * of the value head and returns the value.
+     */
+    float finishOutputs(float valueOutput) {
+        float maxLogit = Float.NEGATIVE_INFINITY;
+        for (int n = 0; n < legalMoveCount; n++) {
+            maxLogit = Math.max(maxLogit, policyLogits[legalMoves[n]]);
+        }
+        for (int square = 0; square < policy.length; square++) {
+            policy[square] = 0;
+        }
+        float sum = 0;
+        for (int n = 0; n < legalMoveCount; n++) {
+            int move = legalMoves[n];
+            float exp = (float) Math.exp(policyLogits[move] - maxLogit);
+            policy[move] = exp;
+            sum += exp;
+        }
+        for (int n = 0; n < legalMoveCount; n++) {
+            policy[legalMoves[n]] /= sum;
+        }
+
+        value = (float) Math.tanh(valueOutput);
+        return value;
+    }
+
+    /**
+     * Returns the input of the network. Can be filled by the caller instead of by method PolicyValueInference.encode,
+     * in which case the legal moves must be set with method setLegalMoves.
+     */
+    public float[] getInput() {
+        return input;
+    }
+
+    /**
+     * Sets the legal moves for the softmax of the policy, see getInput.
+     */
+    public void setLegalMoves(int[] moves, int moveCount) {
+        if (moveCount < 0 || moveCount > legalMoves.length) throw new IllegalArgumentException("moveCount out of range");
+        System.arraycopy(moves, 0, legalMoves, 0, moveCount);
+        legalMoveCount = moveCount;
+    }
+
+    /**
+     * Returns the probability of each square (row*columnCount + column) that was calculated by the last inference.
+     * Do not change the returned array.
+     */
+    public float[] getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Returns the value that was calculated by the last inference, between -1 (loss) and 1 (win) for the player to move.
+     */
+    public float getValue() {
+        return value;
+    }
+
+    /**
+     * Returns the legal moves of the encoded position. Do not change the returned array.
+     */
+    public int[] getLegalMoves() {
+        return legalMoves;
+    }
+
+    public int getLegalMoveCount() {
+        return legalMoveCount;
+    }
+}
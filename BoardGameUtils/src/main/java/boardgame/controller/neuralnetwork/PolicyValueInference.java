@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2018 A.C. Kockx, All Rights Reserved.
+ */
+package boardgame.controller.neuralnetwork;
+
+import boardgame.model.BoardGameModel;
+
+/**
+ * Network that calculates move probabilities (policy) and a value for positions of two-player board games,
+ * see PolicyValueNetwork for the input and outputs. Inference writes only to a NetworkWorkspace, so multiple threads
+ * can use the same network at the same time, each with its own workspace.
+ *
+ * @author A.C. Kockx
+ */
+public interface PolicyValueInference {
+    /**
+     * Returns a new workspace for inference with this network.
+     */
+    NetworkWorkspace createWorkspace();
+
+    /**
+     * Calculates the move probabilities and the value of the current position of the given model for the player to move
+     * and returns the value. The move probabilities are available from the given workspace. The game must not be over.
+     */
+    float evaluate(BoardGameModel model, NetworkWorkspace workspace);
+
+    /**
+     * Writes the input for the current position of the given model and its legal moves to the given workspace.
+     * Only works for two players. The game must not be over.
+     */
+    void encode(BoardGameModel model, NetworkWorkspace workspace);
+
+    /**
+     * Calculates the move probabilities and the value for the input and legal moves in the given workspace and returns the value.
+     */
+    float forward(NetworkWorkspace workspace);
+
+    /**
+     * Calculates the move probabilities and the value for the input and legal moves in each of the first count given workspaces.
+     * Gives the same results as calling forward for each workspace, but uses each weight for all positions in the batch
+     * while it is in the cache, which is faster for larger batches. The values are available from the workspaces.
+     */
+    void forward(NetworkWorkspace[] workspaces, int count);
+
+    int getRowCount();
+
+    int getColumnCount();
+}
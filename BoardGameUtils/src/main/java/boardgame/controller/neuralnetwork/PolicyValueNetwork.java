@@ -0,0 +1,318 @@
+/*
+ * Copyright (c) 2018 A.C. Kockx, All Rights Reserved.
+ */
+package boardgame.controller.neuralnetwork;
+
+import boardgame.model.BoardGameModel;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Multilayer perceptron with a policy head and a value head for two-player board games, in pure Java.
+ *
+ * The input consists of two planes of rowCount x columnCount values: 1 for each square with a piece of the player to move
+ * and 1 for each square with a piece of the other player (see method encode). The input is followed by fully connected hidden layers
+ * with ReLU activations. The last hidden layer feeds two heads: the policy head outputs one logit for each square,
+ * which is turned into move probabilities with a softmax over the legal moves, and the value head outputs one value
+ * that is squashed with tanh to between -1 (loss) and 1 (win) for the player to move.
+ *
+ * All weights are stored in a single flat float array, layer after layer. For each layer the weights are stored row-major
+ * (outputCount rows of inputCount weights), followed by the outputCount biases. The hidden layers come first,
+ * then the policy head and then the value head. The array is used directly, not copied, so e.g. a trainer can update it in place.
+ *
+ * Inference reads the weights and writes only to a NetworkWorkspace, so it does not allocate any memory and multiple threads
+ * can use the same network at the same time, each with its own workspace. Positions can also be evaluated in batches,
+ * see PolicyValueInference.forward(NetworkWorkspace[], int).
+ *
+ * @author A.C. Kockx
+ */
+public final class PolicyValueNetwork implements PolicyValueInference {
+    private static final int FILE_MAGIC = 0x504F4C56;//"POLV"
+    private static final int FILE_VERSION = 1;
+    //player to move and other player.
+    private static final int INPUT_PLANE_COUNT = 2;
+
+    private final int rowCount;
+    private final int columnCount;
+    private final int squareCount;
+    private final int inputSize;
+    private final int[] hiddenLayerSizes;
+
+    private final float[] weights;
+    //for each hidden layer, the offset of its weights in the weights array. The biases follow the weights.
+    private final int[] hiddenLayerOffsets;
+    private final int policyOffset;
+    private final int valueOffset;
+
+    /**
+     * Creates a network with random weights (He initialization, biases 0).
+     *
+     * @param seed for the random weights, so that the same seed gives the same network.
+     */
+    public PolicyValueNetwork(int rowCount, int columnCount, int[] hiddenLayerSizes, long seed) {
+        this(rowCount, columnCount, hiddenLayerSizes, (float[]) null);
+
+        Random random = new Random(seed);
+        for (int layer = 0; layer < getLayerCount(); layer++) {
+            int layerInputSize = getLayerInputSize(layer);
+            float scale = (float) Math.sqrt(2.0/layerInputSize);
+            int offset = getLayerOffset(layer);
+            for (int i = 0; i < getLayerOutputSize(layer)*layerInputSize; i++) {
+                weights[offset + i] = (float) random.nextGaussian()*scale;
+            }
+        }
+    }
+
+    /**
+     * @param weights all weights in the layout that is described in the class description, or null to start with all weights 0.
+     */
+    public PolicyValueNetwork(int rowCount, int columnCount, int[] hiddenLayerSizes, float[] weights) {
+        if (rowCount <= 0) throw new IllegalArgumentException("rowCount <= 0");
+        if (columnCount <= 0) throw new IllegalArgumentException("columnCount <= 0");
+        if (hiddenLayerSizes == null || hiddenLayerSizes.length <= 0) throw new IllegalArgumentException("hiddenLayerSizes is empty");
+        for (int size : hiddenLayerSizes) {
+            if (size <= 0) throw new IllegalArgumentException("hiddenLayerSize <= 0");
+        }
+
+        this.rowCount = rowCount;
+        this.columnCount = columnCount;
+        squareCount = rowCount*columnCount;
+        inputSize = INPUT_PLANE_COUNT*squareCount;
+        this.hiddenLayerSizes = hiddenLayerSizes.clone();
+
+        //layout.
+        hiddenLayerOffsets = new int[hiddenLayerSizes.length];
+        int offset = 0;
+        int layerInputSize = inputSize;
+        for (int layer = 0; layer < hiddenLayerSizes.length; layer++) {
+            hiddenLayerOffsets[layer] = offset;
+            offset += (layerInputSize + 1)*hiddenLayerSizes[layer];
+            layerInputSize = hiddenLayerSizes[layer];
+        }
+        policyOffset = offset;
+        offset += (layerInputSize + 1)*squareCount;
+        valueOffset = offset;
+        offset += layerInputSize + 1;
+
+        if (weights != null && weights.length != offset) throw new IllegalArgumentException("weights.length != " + offset);
+        this.weights = weights == null ? new float[offset] : weights;
+    }
+
+    @Override
+    public NetworkWorkspace createWorkspace() {
+        return new NetworkWorkspace(inputSize, hiddenLayerSizes, squareCount, false);
+    }
+
+    @Override
+    public float evaluate(BoardGameModel model, NetworkWorkspace workspace) {
+        encode(model, workspace);
+        return forward(workspace);
+    }
+
+    @Override
+    public void encode(BoardGameModel model, NetworkWorkspace workspace) {
+        if (workspace.input.length != inputSize) throw new IllegalArgumentException("workspace was created for another network");
+        if (model.getRowCount() != rowCount || model.getColumnCount() != columnCount) {
+            throw new IllegalArgumentException("model has " + model.getRowCount() + "x" + model.getColumnCount() + " squares instead of " + rowCount + "x" + columnCount);
+        }
+
+        workspace.encode(model);
+    }
+
+    @Override
+    public float forward(NetworkWorkspace workspace) {
+        if (workspace.input.length != inputSize || workspace.policy.length != squareCount) throw new IllegalArgumentException("workspace was created for another network");
+
+        //hidden layers.
+        float[] layerInput = workspace.input;
+        for (int layer = 0; layer < hiddenLayerSizes.length; layer++) {
+            float[] output = workspace.activations[layer];
+            dense(layerInput, output, hiddenLayerOffsets[layer]);
+            for (int o = 0; o < output.length; o++) {
+                if (output[o] < 0) output[o] = 0;
+            }
+            layerInput = output;
+        }
+
+        //heads.
+        dense(layerInput, workspace.policyLogits, policyOffset);
+        int inputCount = layerInput.length;
+        float value = weights[valueOffset + inputCount];
+        for (int i = 0; i < inputCount; i++) {
+            value += weights[valueOffset + i]*layerInput[i];
+        }
+        return workspace.finishOutputs(value);
+    }
+
+    @Override
+    public void forward(NetworkWorkspace[] workspaces, int count) {
+        if (count < 0 || count > workspaces.length) throw new IllegalArgumentException("count out of range");
+        for (int n = 0; n < count; n++) {
+            NetworkWorkspace workspace = workspaces[n];
+            if (workspace.input.length != inputSize || workspace.policy.length != squareCount) throw new IllegalArgumentException("workspace was created for another network");
+        }
+
+        //hidden layers and policy head.
+        for (int layer = 0; layer <= hiddenLayerSizes.length; layer++) {
+            int offset = getLayerOffset(layer);
+            int inputCount = getLayerInputSize(layer);
+            int outputCount = getLayerOutputSize(layer);
+            int biasOffset = offset + outputCount*inputCount;
+            //each weight row is used for all positions in the batch while it is in the cache.
+            for (int o = 0; o < outputCount; o++) {
+                int rowOffset = offset + o*inputCount;
+                for (int n = 0; n < count; n++) {
+                    NetworkWorkspace workspace = workspaces[n];
+                    float[] input = layer == 0 ? workspace.input : workspace.activations[layer - 1];
+                    float sum = 0;
+                    for (int i = 0; i < inputCount; i++) {
+                        sum += weights[rowOffset + i]*input[i];
+                    }
+                    sum += weights[biasOffset + o];
+                    if (layer < hiddenLayerSizes.length) {
+                        workspace.activations[layer][o] = sum < 0 ? 0 : sum;
+                    } else {
+                        workspace.policyLogits[o] = sum;
+                    }
+                }
+            }
+        }
+
+        //value head.
+        int inputCount = hiddenLayerSizes[hiddenLayerSizes.length - 1];
+        for (int n = 0; n < count; n++) {
+            NetworkWorkspace workspace = workspaces[n];
+            float[] input = workspace.activations[hiddenLayerSizes.length - 1];
+            float value = weights[valueOffset + inputCount];
+            for (int i = 0; i < inputCount; i++) {
+                value += weights[valueOffset + i]*input[i];
+            }
+            workspace.finishOutputs(value);
+        }
+    }
+
+    /**
+     * Fully connected layer: output = weights*input + biases, with the weights and biases at the given offset.
+     */
+    private void dense(float[] input, float[] output, int offset) {
+        int inputCount = input.length;
+        int biasOffset = offset + output.length*inputCount;
+        for (int o = 0; o < output.length; o++) {
+            int rowOffset = offset + o*inputCount;
+            float sum = 0;
+            for (int i = 0; i < inputCount; i++) {
+                sum += weights[rowOffset + i]*input[i];
+            }
+            output[o] = sum + weights[biasOffset + o];
+        }
+    }
+
+    /**
+     * Returns the offset of the weights of the given layer in the weights array: the hidden layers, then the policy head, then the value head.
+     */
+    int getLayerOffset(int layer) {
+        if (layer < hiddenLayerSizes.length) return hiddenLayerOffsets[layer];
+        return layer == hiddenLayerSizes.length ? policyOffset : valueOffset;
+    }
+
+    /**
+     * Returns the number of outputs of the given layer, see getLayerOffset.
+     */
+    int getLayerOutputSize(int layer) {
+        if (layer < hiddenLayerSizes.length) return hiddenLayerSizes[layer];
+        return layer == hiddenLayerSizes.length ? squareCount : 1;
+    }
+
+    /**
+     * Returns the number of inputs of the given layer, see getLayerOffset.
+     */
+    int getLayerInputSize(int layer) {
+        if (layer == 0) return inputSize;
+        return hiddenLayerSizes[Math.min(layer, hiddenLayerSizes.length) - 1];
+    }
+
+    /**
+     * Returns the number of layers with weights: the hidden layers plus the policy head and the value head.
+     */
+    int getLayerCount() {
+        return hiddenLayerSizes.length + 2;
+    }
+
+    /**
+     * Returns the weights of this network, see the class description for the layout. Changing the returned array changes this network.
+     */
+    public float[] getWeights() {
+        return weights;
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columnCount;
+    }
+
+    public int getInputSize() {
+        return inputSize;
+    }
+
+    public int[] getHiddenLayerSizes() {
+        return hiddenLayerSizes.clone();
+    }
+
+    /**
+     * Writes the layer sizes and weights of this network to the given file.
+     */
+    public void save(File file) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            output.writeInt(FILE_MAGIC);
+            output.writeInt(FILE_VERSION);
+            output.writeInt(rowCount);
+            output.writeInt(columnCount);
+            output.writeInt(hiddenLayerSizes.length);
+            for (int size : hiddenLayerSizes) {
+                output.writeInt(size);
+            }
+            output.writeInt(weights.length);
+            for (float weight : weights) {
+                output.writeFloat(weight);
+            }
+        }
+    }
+
+    /**
+     * Reads a network that was written with method save.
+     */
+    public static PolicyValueNetwork load(File file) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (input.readInt() != FILE_MAGIC) throw new IOException(file + " is not a network file.");
+            if (input.readInt() != FILE_VERSION) throw new IOException(file + " has an unsupported version.");
+            int rowCount = input.readInt();
+            int columnCount = input.readInt();
+            int[] hiddenLayerSizes = new int[input.readInt()];
+            for (int layer = 0; layer < hiddenLayerSizes.length; layer++) {
+                hiddenLayerSizes[layer] = input.readInt();
+            }
+            float[] weights = new float[input.readInt()];
+            for (int i = 0; i < weights.length; i++) {
+                weights[i] = input.readFloat();
+            }
+            try {
+                return new PolicyValueNetwork(rowCount, columnCount, hiddenLayerSizes, weights);
+            } catch (IllegalArgumentException e) {
+                throw new IOException(file + " is corrupt: " + e.getMessage(), e);
+            }
+        }
+    }
+}
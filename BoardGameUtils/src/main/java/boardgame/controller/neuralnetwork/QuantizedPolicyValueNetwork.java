@@ -0,0 +1,278 @@
+/*
+ * Copyright (c) 2018 A.C. Kockx, All Rights Reserved.
+ */
+package boardgame.controller.neuralnetwork;
+
+import boardgame.model.BoardGameModel;
+
+/**
+ * 8-bit integer version of a PolicyValueNetwork for faster inference, with the same input and outputs.
+ *
+ * The weights of each layer are quantized per output channel (per row of the weight matrix): each row gets its own scale
+ * max(|w|)/127 and its weights are rounded to integers between -127 and 127. The biases stay floats. The activations are quantized
+ * dynamically per layer during inference: the input is 0 or 1, so it is exact, and the ReLU outputs of a hidden layer are scaled
+ * to between 0 and 127 with the scale max(output)/127. A layer then calculates integer dot products of 8-bit values with 32-bit sums,
+ * which are converted back to floats with the scale of the weight row times the scale of the activations.
+ * The heads are calculated in the same way, so the policy and value are close to those of the original network, but not identical.
+ *
+ * The quantized weights are stored input-major (inputCount rows of outputCount weights), so that a layer is calculated as a sum
+ * of weight rows, one for each input, multiplied by that input. Inputs that are 0 are skipped, which saves most of the work,
+ * since most input squares are empty and ReLU sets many hidden outputs to 0. Adding a weight row to the int sums and the dot product
+ * of the value head are done by an Int8Kernel. By default this is the kernel with the Vector API if the JVM supports it, otherwise
+ * the scalar kernel, see Int8Kernels. Both give the same results.
+ *
+ * The quantized weights are a snapshot: later changes to the weights of the original network are not seen by this network.
+ * Inference does not allocate any memory and multiple threads can use the same network at the same time, each with its own workspace.
+ *
+ * @author A.C. Kockx
+ */
+public final class QuantizedPolicyValueNetwork implements PolicyValueInference {
+    private static final int MAX_QUANTIZED_VALUE = 127;
+
+    private final int rowCount;
+    private final int columnCount;
+    private final int squareCount;
+    private final int inputSize;
+    private final int[] hiddenLayerSizes;
+    //hidden layers, then the policy head, then the value head.
+    private final int layerCount;
+    private final Int8Kernel kernel;
+
+    //for each layer the quantized weights (input-major, inputCount rows of outputCount weights), the scale of each output and the biases.
+    private final byte[][] layerWeights;
+    private final float[][] layerWeightScales;
+    private final float[][] layerBiases;
+
+    /**
+     * Quantizes the current weights of the given network, with the default kernel, see Int8Kernels.getDefaultKernel.
+     */
+    public QuantizedPolicyValueNetwork(PolicyValueNetwork network) {
+        this(network, Int8Kernels.getDefaultKernel());
+    }
+
+    /**
+     * Quantizes the current weights of the given network.
+     *
+     * @param kernel for the integer arithmetic, see Int8Kernels.
+     */
+    public QuantizedPolicyValueNetwork(PolicyValueNetwork network, Int8Kernel kernel) {
+        if (network == null) throw new IllegalArgumentException("network == null");
+        if (kernel == null) throw new IllegalArgumentException("kernel == null");
+
+        rowCount = network.getRowCount();
+        columnCount = network.getColumnCount();
+        squareCount = rowCount*columnCount;
+        inputSize = network.getInputSize();
+        hiddenLayerSizes = network.getHiddenLayerSizes();
+        layerCount = network.getLayerCount();
+        this.kernel = kernel;
+
+        float[] weights = network.getWeights();
+        layerWeights = new byte[layerCount][];
+        layerWeightScales = new float[layerCount][];
+        layerBiases = new float[layerCount][];
+        for (int layer = 0; layer < layerCount; layer++) {
+            int offset = network.getLayerOffset(layer);
+            int inputCount = network.getLayerInputSize(layer);
+            int outputCount = network.getLayerOutputSize(layer);
+            byte[] quantizedWeights = new byte[outputCount*inputCount];
+            float[] scales = new float[outputCount];
+            float[] biases = new float[outputCount];
+            for (int o = 0; o < outputCount; o++) {
+                int rowOffset = offset + o*inputCount;
+                float max = 0;
+                for (int i = 0; i < inputCount; i++) {
+                    max = Math.max(max, Math.abs(weights[rowOffset + i]));
+                }
+                //a row with only zeros stays zero with any scale.
+                float scale = max == 0 ? 1 : max/MAX_QUANTIZED_VALUE;
+                for (int i = 0; i < inputCount; i++) {
+                    quantizedWeights[i*outputCount + o] = (byte) Math.round(weights[rowOffset + i]/scale);
+                }
+                scales[o] = scale;
+                biases[o] = weights[offset + outputCount*inputCount + o];
+            }
+            layerWeights[layer] = quantizedWeights;
+            layerWeightScales[layer] = scales;
+            layerBiases[layer] = biases;
+        }
+    }
+
+    @Override
+    public NetworkWorkspace createWorkspace() {
+        return new NetworkWorkspace(inputSize, hiddenLayerSizes, squareCount, true);
+    }
+
+    @Override
+    public float evaluate(BoardGameModel model, NetworkWorkspace workspace) {
+        encode(model, workspace);
+        return forward(workspace);
+    }
+
+    @Override
+    public void encode(BoardGameModel model, NetworkWorkspace workspace) {
+        if (workspace.input.length != inputSize) throw new IllegalArgumentException("workspace was created for another network");
+        if (model.getRowCount() != rowCount || model.getColumnCount() != columnCount) {
+            throw new IllegalArgumentException("model has " + model.getRowCount() + "x" + model.getColumnCount() + " squares instead of " + rowCount + "x" + columnCount);
+        }
+
+        workspace.encode(model);
+    }
+
+    @Override
+    public float forward(NetworkWorkspace workspace) {
+        if (workspace.input.length != inputSize || workspace.policy.length != squareCount) throw new IllegalArgumentException("workspace was created for another network");
+        if (workspace.quantizedActivations == null) throw new IllegalArgumentException("workspace was not created for a quantized network");
+
+        //input.
+        quantize(workspace.input, workspace.quantizedActivations, workspace.activationScales, 0);
+
+        //hidden layers.
+        for (int layer = 0; layer < hiddenLayerSizes.length; layer++) {
+            float[] output = workspace.activations[layer];
+            dense(layer, workspace.quantizedActivations[layer], workspace.activationScales[layer], workspace.sums, output);
+            for (int o = 0; o < output.length; o++) {
+                if (output[o] < 0) output[o] = 0;
+            }
+            quantize(output, workspace.quantizedActivations, workspace.activationScales, layer + 1);
+        }
+
+        //heads.
+        byte[] lastActivations = workspace.quantizedActivations[hiddenLayerSizes.length];
+        float lastScale = workspace.activationScales[hiddenLayerSizes.length];
+        dense(layerCount - 2, lastActivations, lastScale, workspace.sums, workspace.policyLogits);
+        return finishValue(workspace);
+    }
+
+    @Override
+    public void forward(NetworkWorkspace[] workspaces, int count) {
+        if (count < 0 || count > workspaces.length) throw new IllegalArgumentException("count out of range");
+        for (int n = 0; n < count; n++) {
+            NetworkWorkspace workspace = workspaces[n];
+            if (workspace.input.length != inputSize || workspace.policy.length != squareCount) throw new IllegalArgumentException("workspace was created for another network");
+            if (workspace.quantizedActivations == null) throw new IllegalArgumentException("workspace was not created for a quantized network");
+
+            quantize(workspace.input, workspace.quantizedActivations, workspace.activationScales, 0);
+        }
+
+        //hidden layers and policy head.
+        for (int layer = 0; layer <= hiddenLayerSizes.length; layer++) {
+            byte[] weights = layerWeights[layer];
+            int outputCount = layerWeightScales[layer].length;
+            int inputCount = weights.length/outputCount;
+            for (int n = 0; n < count; n++) {
+                int[] sums = workspaces[n].sums;
+                for (int o = 0; o < outputCount; o++) {
+                    sums[o] = 0;
+                }
+            }
+            //each weight row is used for all positions in the batch while it is in the cache.
+            for (int i = 0; i < inputCount; i++) {
+                int offset = i*outputCount;
+                for (int n = 0; n < count; n++) {
+                    int value = workspaces[n].quantizedActivations[layer][i];
+                    if (value == 0) continue;
+
+                    kernel.addScaledRow(weights, offset, value, workspaces[n].sums, outputCount);
+                }
+            }
+            float[] scales = layerWeightScales[layer];
+            float[] biases = layerBiases[layer];
+            for (int n = 0; n < count; n++) {
+                NetworkWorkspace workspace = workspaces[n];
+                float inputScale = workspace.activationScales[layer];
+                float[] output = layer < hiddenLayerSizes.length ? workspace.activations[layer] : workspace.policyLogits;
+                for (int o = 0; o < outputCount; o++) {
+                    output[o] = workspace.sums[o]*scales[o]*inputScale + biases[o];
+                }
+                if (layer < hiddenLayerSizes.length) {
+                    for (int o = 0; o < outputCount; o++) {
+                        if (output[o] < 0) output[o] = 0;
+                    }
+                    quantize(output, workspace.quantizedActivations, workspace.activationScales, layer + 1);
+                }
+            }
+        }
+
+        //value head.
+        for (int n = 0; n < count; n++) {
+            finishValue(workspaces[n]);
+        }
+    }
+
+    /**
+     * Calculates the value head from the quantized output of the last hidden layer, finishes the outputs and returns the value.
+     */
+    private float finishValue(NetworkWorkspace workspace) {
+        byte[] lastActivations = workspace.quantizedActivations[hiddenLayerSizes.length];
+        float lastScale = workspace.activationScales[hiddenLayerSizes.length];
+        int valueLayer = layerCount - 1;
+        int valueSum = kernel.dotProduct(layerWeights[valueLayer], lastActivations, lastActivations.length);
+        return workspace.finishOutputs(valueSum*layerWeightScales[valueLayer][0]*lastScale + layerBiases[valueLayer][0]);
+    }
+
+    /**
+     * Quantizes the given non-negative activations to between 0 and 127 and stores them and their scale at the given index.
+     */
+    private static void quantize(float[] activations, byte[][] quantizedActivations, float[] scales, int index) {
+        float max = 0;
+        for (float activation : activations) {
+            max = Math.max(max, activation);
+        }
+        float scale = max == 0 ? 1 : max/MAX_QUANTIZED_VALUE;
+        float inverseScale = 1/scale;
+        byte[] quantized = quantizedActivations[index];
+        for (int i = 0; i < activations.length; i++) {
+            quantized[i] = (byte) (activations[i]*inverseScale + 0.5f);
+        }
+        scales[index] = scale;
+    }
+
+    /**
+     * Fully connected layer: output = weights*input + biases, for the given layer and the given quantized input with the given scale.
+     * Products of two 8-bit values fit in 15 bits, so the int sums do not overflow for fewer than 2^16 inputs.
+     *
+     * @param sums buffer for the int sums, at least as long as output.
+     */
+    private void dense(int layer, byte[] input, float inputScale, int[] sums, float[] output) {
+        byte[] weights = layerWeights[layer];
+        int outputCount = output.length;
+        for (int o = 0; o < outputCount; o++) {
+            sums[o] = 0;
+        }
+        for (int i = 0; i < input.length; i++) {
+            int value = input[i];
+            if (value == 0) continue;
+
+            kernel.addScaledRow(weights, i*outputCount, value, sums, outputCount);
+        }
+
+        float[] scales = layerWeightScales[layer];
+        float[] biases = layerBiases[layer];
+        for (int o = 0; o < outputCount; o++) {
+            output[o] = sums[o]*scales[o]*inputScale + biases[o];
+        }
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columnCount;
+    }
+
+    public int getInputSize() {
+        return inputSize;
+    }
+
+    public int[] getHiddenLayerSizes() {
+        return hiddenLayerSizes.clone();
+    }
+
+    public Int8Kernel getKernel() {
+        return kernel;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2018 A.C. Kockx, All Rights Reserved.
+ */
+package boardgame.controller.neuralnetwork;
+
+import java.util.Random;
+
+/**
+ * Training samples from finished games for a PolicyValueNetwork, shared by the threads that play games and the threads that train.
+ * Each sample consists of the input of a position (see PolicyValueNetwork), its legal moves, the target move probabilities
+ * for that position and the outcome of the game for the player to move in that position: 1 (win), 0 (draw) or -1 (loss).
+ *
+ * The samples are stored in primitive arrays with a fixed capacity. When the buffer is full, each new sample replaces the oldest one,
+ * so training uses the most recent games. This class is thread-safe. Adding and sampling only copy one sample each,
+ * so the lock is held only briefly.
+ *
+ * @author A.C. Kockx
+ */
+public final class ReplayBuffer {
+    private final int capacity;
+    private final int inputSize;
+    private final int squareCount;
+
+    //for each sample, stored at index*inputSize, index*squareCount and index respectively.
+    private final float[] inputs;
+    private final int[] legalMoves;
+    private final int[] legalMoveCounts;
+    private final float[] policies;
+    private final float[] outcomes;
+
+    //total number of samples that were added, including the ones that were replaced.
+    private long addedCount = 0;
+
+    /**
+     * @param capacity maximum number of samples. Each sample uses 4*(4*rowCount*columnCount + 2) bytes.
+     */
+    public ReplayBuffer(int rowCount, int columnCount, int capacity) {
+        if (rowCount <= 0) throw new IllegalArgumentException("rowCount <= 0");
+        if (columnCount <= 0) throw new IllegalArgumentException("columnCount <= 0");
+        if (capacity <= 0) throw new IllegalArgumentException("capacity <= 0");
+        //the samples are stored in single arrays, so their total size must fit in an int.
+        if ((long) capacity*2*rowCount*columnCount > Integer.MAX_VALUE) throw new IllegalArgumentException("capacity too large for a board of this size");
+
+        this.capacity = capacity;
+        squareCount = rowCount*columnCount;
+        inputSize = 2*squareCount;
+        inputs = new float[capacity*inputSize];
+        legalMoves = new int[capacity*squareCount];
+        legalMoveCounts = new int[capacity];
+        policies = new float[capacity*squareCount];
+        outcomes = new float[capacity];
+    }
+
+    /**
+     * Adds a sample.
+     *
+     * @param input input of the position, see PolicyValueNetwork.
+     * @param legalMoves legal moves in the position, of which the first legalMoveCount are used.
+     * @param policy target probability of each square (row*columnCount + column). Is normalized to a sum of 1 when it is used.
+     * @param outcome of the game for the player to move in the position, between -1 (loss) and 1 (win).
+     */
+    public synchronized void add(float[] input, int[] legalMoves, int legalMoveCount, float[] policy, float outcome) {
+        if (input.length != inputSize) throw new IllegalArgumentException("input.length != " + inputSize);
+        if (policy.length != squareCount) throw new IllegalArgumentException("policy.length != " + squareCount);
+        if (legalMoveCount <= 0 || legalMoveCount > squareCount) throw new IllegalArgumentException("legalMoveCount out of range");
+        if (outcome < -1 || outcome > 1) throw new IllegalArgumentException("outcome out of range");
+
+        int index = (int) (addedCount%capacity);
+        System.arraycopy(input, 0, inputs, index*inputSize, inputSize);
+        System.arraycopy(legalMoves, 0, this.legalMoves, index*squareCount, legalMoveCount);
+        legalMoveCounts[index] = legalMoveCount;
+        System.arraycopy(policy, 0, policies, index*squareCount, squareCount);
+        outcomes[index] = outcome;
+        addedCount++;
+    }
+
+    /**
+     * Copies a random sample to the given workspace and policy target and returns the outcome of that sample.
+     * The buffer must not be empty.
+     */
+    synchronized float sample(Random random, NetworkWorkspace workspace, float[] policy) {
+        if (addedCount == 0) throw new IllegalStateException("buffer is empty");
+
+        int index = random.nextInt(getSize());
+        System.arraycopy(inputs, index*inputSize, workspace.input, 0, inputSize);
+        int legalMoveCount = legalMoveCounts[index];
+        System.arraycopy(legalMoves, index*squareCount, workspace.legalMoves, 0, legalMoveCount);
+        workspace.legalMoveCount = legalMoveCount;
+        System.arraycopy(policies, index*squareCount, policy, 0, squareCount);
+        return outcomes[index];
+    }
+
+    /**
+     * Returns the number of samples in this buffer.
+     */
+    public synchronized int getSize() {
+        return (int) Math.min(addedCount, capacity);
+    }
+
+    /**
+     * Returns the total number of samples that were added, including the ones that were replaced by newer samples.
+     */
+    public synchronized long getAddedCount() {
+        return addedCount;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
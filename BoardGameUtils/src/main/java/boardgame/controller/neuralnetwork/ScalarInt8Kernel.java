@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2018 A.C. Kockx, All Rights Reserved.
+ */
+package boardgame.controller.neuralnetwork;
+
+/**
+ * Int8Kernel with plain loops, which runs on every JVM. The JIT compiler may still use SIMD instructions for addScaledRow,
+ * since its iterations are independent, but that depends on the JVM and the processor.
+ *
+ * @author A.C. Kockx
+ */
+final class ScalarInt8Kernel implements Int8Kernel {
+    @Override
+    public void addScaledRow(byte[] weights, int offset, int value, int[] sums, int count) {
+        for (int o = 0; o < count; o++) {
+            sums[o] += weights[offset + o]*value;
+        }
+    }
+
+    @Override
+    public int dotProduct(byte[] a, byte[] b, int length) {
+        int sum = 0;
+        for (int i = 0; i < length; i++) {
+            sum += a[i]*b[i];
+        }
+        return sum;
+    }
+
+    @Override
+    public String getName() {
+        return "scalar";
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2018 A.C. Kockx, All Rights Reserved.
+ */
+package boardgame.controller.player;
+
+import boardgame.controller.search.LazySmpSearch;
+import boardgame.controller.search.MnkPatternEvaluatorFactory;
+import boardgame.controller.search.TranspositionTable;
+import boardgame.model.BoardGameModel;
+import util.controller.player.Player;
+import util.model.GameModel;
+import util.model.Move;
+
+/**
+ * Plays two-player board games with an iterative deepening AlphaBetaSearch. The search continues until the end of the game
+ * or until the optional time budget for the move is used up, whichever comes first. Without a time budget (the default),
+ * this player solves each position and plays perfectly, which is feasible on small boards such as 4x4x4 and 5x5x4.
+ * With a time budget, it makes the best move of the deepest completed search, where positions at the search depth
+ * are scored with an MnkPatternEvaluator for m,n,k-games. Boards that can be solved within the budget are still played perfectly.
+ * The search also stops promptly when the thread is interrupted, in which case calculateMove throws an InterruptedException.
+ *
+ * With more than one thread, the threads search in parallel with a shared transposition table, see LazySmpSearch.
+ * The search runs on copies of the model (see BoardGameModel.fork), so the game model and its listeners are not changed during the search.
+ * The transposition table is kept between moves, so later moves in the same game are found faster.
+ *
+ * @author A.C. Kockx
+ */
+public final class AlphaBetaPlayer implements Player {
+    public static final long DEFAULT_TRANSPOSITION_TABLE_SIZE_IN_BYTES = 64L*1024*1024;
+    public static final long NO_TIME_BUDGET = Long.MAX_VALUE;
+    public static final int DEFAULT_THREAD_COUNT = Runtime.getRuntime().availableProcessors();
+
+    private final String name;
+    private final int maxDepth;
+    private final long timeBudgetInMilliseconds;
+    private final LazySmpSearch search;
+
+    private Move nextMove = null;
+
+    //statistics of the last search.
+    private long lastNodeCount = 0;
+    private long lastSearchTimeInNanoseconds = 0;
+    private int lastScore = 0;
+    private int lastDepth = 0;
+
+    /**
+     * Creates a player with a transposition table of the default size and one thread for each processor,
+     * without a maximum depth and without a time budget.
+     */
+    public AlphaBetaPlayer(String name) {
+        this(name, DEFAULT_TRANSPOSITION_TABLE_SIZE_IN_BYTES, Integer.MAX_VALUE, NO_TIME_BUDGET, DEFAULT_THREAD_COUNT);
+    }
+
+    /**
+     * Creates a single-threaded player.
+     */
+    public AlphaBetaPlayer(String name, long transpositionTableSizeInBytes, int maxDepth, long timeBudgetInMilliseconds) {
+        this(name, transpositionTableSizeInBytes, maxDepth, timeBudgetInMilliseconds, 1);
+    }
+
+    /**
+     * @param transpositionTableSizeInBytes memory budget for the transposition table.
+     * @param maxDepth maximum number of plies to search for each move.
+     * @param timeBudgetInMilliseconds maximum time to search for each move, or NO_TIME_BUDGET for no limit.
+     * @param threadCount number of threads that search in parallel.
+     */
+    public AlphaBetaPlayer(String name, long transpositionTableSizeInBytes, int maxDepth, long timeBudgetInMilliseconds, int threadCount) {
+        if (name == null) throw new IllegalArgumentException("name == null");
+        if (maxDepth <= 0) throw new IllegalArgumentException("maxDepth <= 0");
+        if (timeBudgetInMilliseconds <= 0) throw new IllegalArgumentException("timeBudgetInMilliseconds <= 0");
+
+        this.name = name;
+        this.maxDepth = maxDepth;
+        this.timeBudgetInMilliseconds = timeBudgetInMilliseconds;
+        search = new LazySmpSearch(new TranspositionTable(transpositionTableSizeInBytes), new MnkPatternEvaluatorFactory(), threadCount);
+    }
+
+    @Override
+    public void calculateMove(GameModel gameModel) throws InterruptedException {
+        if (gameModel == null) throw new IllegalArgumentException("gameModel == null");
+        if (!(gameModel instanceof BoardGameModel)) throw new IllegalArgumentException("gameModel must be an instance of " + BoardGameModel.class.getSimpleName());
+
+        BoardGameModel model = (BoardGameModel) gameModel;
+
+        //convert to nanoseconds without overflow.
+        long timeBudgetInNanoseconds = timeBudgetInMilliseconds >= Long.MAX_VALUE/1000000 ? Long.MAX_VALUE : timeBudgetInMilliseconds*1000000;
+        long startTime = System.nanoTime();
+        lastScore = search.search(model, maxDepth, timeBudgetInNanoseconds);
+        lastSearchTimeInNanoseconds = System.nanoTime() - startTime;
+        lastNodeCount = search.getNodeCount();
+        lastDepth = search.getCompletedDepth();
+
+        nextMove = model.getMove(search.getBestMove());
+    }
+
+    @Override
+    public Move getCalculatedMove() {
+        if (nextMove == null) throw new IllegalStateException("nextMove not initialized. First call calculateMove().");
+        return nextMove;
+    }
+
+    @Override
+    public float[][] getCalculatedMoveProbabilities() {
+        return null;
+    }
+
+    /**
+     * Returns the number of positions searched by all threads for the last calculated move.
+     */
+    public long getLastNodeCount() {
+        return lastNodeCount;
+    }
+
+    public long getLastSearchTimeInNanoseconds() {
+        return lastSearchTimeInNanoseconds;
+    }
+
+    /**
+     * Returns the number of positions searched per second for the last calculated move.
+     */
+    public double getLastNodesPerSecond() {
+        if (lastSearchTimeInNanoseconds <= 0) return 0;
+        return lastNodeCount*1e9/lastSearchTimeInNanoseconds;
+    }
+
+    /**
+     * Returns the depth of the deepest completed search for the last calculated move.
+     */
+    public int getLastDepth() {
+        return lastDepth;
+    }
+
+    /**
+     * Returns the score of the last calculated move from the point of view of this player, see AlphaBetaSearch.
+     */
+    public int getLastScore() {
+        return lastScore;
+    }
+
+    @Override
+    public void notifyNewGame() {
+        //reset.
+        nextMove = null;
+    }
+
+    @Override
+    public void notifyWon() {
+    }
+
+    @Override
+    public void notifyLost() {
+    }
+
+    @Override
+    public void notifyDraw() {
+    }
+
+    @Override
+    public void notifyTriedIllegalMove() {
+        throw new IllegalStateException(getClass().getSimpleName() + " tried an illegal move.");
+    }
+
+    @Override
+    public void notifyMadeIllegalMove() {
+        throw new IllegalStateException(getClass().getSimpleName() + " made an illegal move.");
+    }
+
+    @Override
+    public void notifyOtherPlayerMadeIllegalMove() {
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public boolean isHumanPlayer() {
+        return false;
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2018 A.C. Kockx, All Rights Reserved.
+ */
+package boardgame.controller.player;
+
+import boardgame.controller.search.ConnectFourOpeningBook;
+import boardgame.controller.search.ConnectFourSolver;
+import boardgame.model.ConnectFourBoardGameModel;
+import util.controller.player.Player;
+import util.model.GameModel;
+import util.model.Move;
+
+import java.io.IOException;
+
+/**
+ * Plays Connect Four (4 in a row) with a ConnectFourSolver, so without a node limit each move is proven best.
+ *
+ * On standard boards (6 rows, 7 columns) the solver uses the standard opening book, see ConnectFourOpeningBook.
+ * In a game from the empty board, all positions with up to 8 pieces where this player is to move are in the book,
+ * so those moves are made without searching. Later positions take up to a few seconds to solve.
+ * On other board sizes there is no book, so the first moves can take much longer.
+ *
+ * With a node limit, a search that reaches the limit returns a move that is not proven best, see ConnectFourSolver.getBestMove.
+ *
+ * The solver is created when the first move is calculated, with the board size of the model.
+ *
+ * @author A.C. Kockx
+ */
+public final class ConnectFourSolverPlayer implements Player {
+    public static final long NO_NODE_LIMIT = Long.MAX_VALUE;
+
+    private final String name;
+    private final long maxNodeCount;
+    private final boolean weak;
+
+    private ConnectFourSolver solver = null;
+    private Move nextMove = null;
+
+    /**
+     * Creates a player that plays the fastest win (or slowest loss), without a node limit.
+     */
+    public ConnectFourSolverPlayer(String name) {
+        this(name, NO_NODE_LIMIT, false);
+    }
+
+    /**
+     * @param maxNodeCount maximum number of positions to search for each move, or NO_NODE_LIMIT for no limit.
+     * @param weak if true, then this player plays any winning move instead of the fastest winning move, which is faster to find.
+     */
+    public ConnectFourSolverPlayer(String name, long maxNodeCount, boolean weak) {
+        if (name == null) throw new IllegalArgumentException("name == null");
+        if (maxNodeCount <= 0) throw new IllegalArgumentException("maxNodeCount <= 0");
+
+        this.name = name;
+        this.maxNodeCount = maxNodeCount;
+        this.weak = weak;
+    }
+
+    @Override
+    public void calculateMove(GameModel gameModel) throws InterruptedException {
+        if (gameModel == null) throw new IllegalArgumentException("gameModel == null");
+        if (!(gameModel instanceof ConnectFourBoardGameModel)) throw new IllegalArgumentException("gameModel must be an instance of " + ConnectFourBoardGameModel.class.getSimpleName());
+        ConnectFourBoardGameModel model = (ConnectFourBoardGameModel) gameModel;
+
+        if (solver == null || !solver.supports(model)) {
+            solver = new ConnectFourSolver(model.getRowCount(), model.getColumnCount(), ConnectFourSolver.DEFAULT_TRANSPOSITION_TABLE_SIZE_LOG2);
+            if (model.getRowCount() == ConnectFourBoardGameModel.STANDARD_ROW_COUNT && model.getColumnCount() == ConnectFourBoardGameModel.STANDARD_COLUMN_COUNT) {
+                try {
+                    solver.setOpeningBook(ConnectFourOpeningBook.loadStandardBook());
+                } catch (IOException e) {
+                    //the book is part of this library, so this is a build error.
+                    throw new IllegalStateException("Cannot load the standard opening book: " + e.getMessage(), e);
+                }
+            }
+        }
+        nextMove = model.getMove(solver.getBestMove(model, weak, maxNodeCount));
+    }
+
+    @Override
+    public Move getCalculatedMove() {
+        if (nextMove == null) throw new IllegalStateException("nextMove not initialized. First call calculateMove().");
+        return nextMove;
+    }
+
+    @Override
+    public float[][] getCalculatedMoveProbabilities() {
+        return null;
+    }
+
+    @Override
+    public void notifyNewGame() {
+        //reset.
+        nextMove = null;
+    }
+
+    @Override
+    public void notifyWon() {
+    }
+
+    @Override
+    public void notifyLost() {
+    }
+
+    @Override
+    public void notifyDraw() {
+    }
+
+    @Override
+    public void notifyTriedIllegalMove() {
+        throw new IllegalStateException(getClass().getSimpleName() + " tried an illegal move.");
+    }
+
+    @Override
+    public void notifyMadeIllegalMove() {
+        throw new IllegalStateException(getClass().getSimpleName() + " made an illegal move.");
+    }
+
+    @Override
+    public void notifyOtherPlayerMadeIllegalMove() {
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public boolean isHumanPlayer() {
+        return false;
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2018 A.C. Kockx, All Rights Reserved.
+ */
+package boardgame.controller.player;
+
+import boardgame.controller.search.MonteCarloTreeSearch;
+import boardgame.model.BoardGameModel;
+import util.controller.player.Player;
+import util.model.GameModel;
+import util.model.Move;
+
+/**
+ * Plays two-player board games with a MonteCarloTreeSearch, e.g. on boards that are too large for an AlphaBetaPlayer.
+ * Each move, this player builds a new tree with multiple threads until the time budget for the move is used up,
+ * then makes the move that was visited most. The share of the visits of each move is returned as move probabilities.
+ * The search also stops promptly when the thread is interrupted, in which case calculateMove throws an InterruptedException.
+ *
+ * @author A.C. Kockx
+ */
+public final class MonteCarloTreeSearchPlayer implements Player {
+    public static final int DEFAULT_NODE_CAPACITY = 1 << 22;
+    public static final long DEFAULT_TIME_BUDGET_IN_MILLISECONDS = 5000;
+    public static final int DEFAULT_THREAD_COUNT = Runtime.getRuntime().availableProcessors();
+
+    private final String name;
+    private final long timeBudgetInMilliseconds;
+    private final MonteCarloTreeSearch search;
+
+    private Move nextMove = null;
+    private float[][] nextMoveProbabilities = null;
+
+    //statistics of the last search.
+    private long lastPlayoutCount = 0;
+    private int lastNodeCount = 0;
+    private long lastSearchTimeInNanoseconds = 0;
+    private double lastValue = 0;
+
+    /**
+     * Creates a player with the default node capacity, time budget and exploration constant, with one thread for each processor.
+     */
+    public MonteCarloTreeSearchPlayer(String name) {
+        this(name, DEFAULT_NODE_CAPACITY, DEFAULT_TIME_BUDGET_IN_MILLISECONDS, MonteCarloTreeSearch.DEFAULT_EXPLORATION_CONSTANT, DEFAULT_THREAD_COUNT);
+    }
+
+    /**
+     * @param nodeCapacity maximum number of nodes in the tree, see MonteCarloTreeSearch.
+     * @param timeBudgetInMilliseconds time to search for each move.
+     * @param threadCount number of threads that search in parallel.
+     */
+    public MonteCarloTreeSearchPlayer(String name, int nodeCapacity, long timeBudgetInMilliseconds, double explorationConstant, int threadCount) {
+        if (name == null) throw new IllegalArgumentException("name == null");
+        if (timeBudgetInMilliseconds <= 0 || timeBudgetInMilliseconds >= Long.MAX_VALUE/1000000) throw new IllegalArgumentException("timeBudgetInMilliseconds out of range");
+
+        this.name = name;
+        this.timeBudgetInMilliseconds = timeBudgetInMilliseconds;
+        search = new MonteCarloTreeSearch(nodeCapacity, explorationConstant, threadCount);
+    }
+
+    @Override
+    public void calculateMove(GameModel gameModel) throws InterruptedException {
+        if (gameModel == null) throw new IllegalArgumentException("gameModel == null");
+        if (!(gameModel instanceof BoardGameModel)) throw new IllegalArgumentException("gameModel must be an instance of " + BoardGameModel.class.getSimpleName());
+        BoardGameModel model = (BoardGameModel) gameModel;
+
+        long startTime = System.nanoTime();
+        int move = search.search(model, timeBudgetInMilliseconds*1000000, Long.MAX_VALUE);
+        lastSearchTimeInNanoseconds = System.nanoTime() - startTime;
+        lastPlayoutCount = search.getPlayoutCount();
+        lastNodeCount = search.getNodeCount();
+        lastValue = search.getBestMoveValue();
+
+        nextMove = model.getMove(move);
+        nextMoveProbabilities = search.getMoveProbabilities();
+    }
+
+    @Override
+    public Move getCalculatedMove() {
+        if (nextMove == null) throw new IllegalStateException("nextMove not initialized. First call calculateMove().");
+        return nextMove;
+    }
+
+    /**
+     * Returns for each square the share of the playouts of the last search that started with a move to that square.
+     */
+    @Override
+    public float[][] getCalculatedMoveProbabilities() {
+        return nextMoveProbabilities;
+    }
+
+    /**
+     * Returns the number of playouts by all threads for the last calculated move.
+     */
+    public long getLastPlayoutCount() {
+        return lastPlayoutCount;
+    }
+
+    /**
+     * Returns the number of nodes in the tree for the last calculated move.
+     */
+    public int getLastNodeCount() {
+        return lastNodeCount;
+    }
+
+    public long getLastSearchTimeInNanoseconds() {
+        return lastSearchTimeInNanoseconds;
+    }
+
+    /**
+     * Returns the average playout result of the last calculated move for this player, between 0 (loss) and 1 (win).
+     */
+    public double getLastValue() {
+        return lastValue;
+    }
+
+    @Override
+    public void notifyNewGame() {
+        //reset.
+        nextMove = null;
+        nextMoveProbabilities = null;
+    }
+
+    @Override
+    public void notifyWon() {
+    }
+
+    @Override
+    public void notifyLost() {
+    }
+
+    @Override
+    public void notifyDraw() {
+    }
+
+    @Override
+    public void notifyTriedIllegalMove() {
+        throw new IllegalStateException(getClass().getSimpleName() + " tried an illegal move.");
+    }
+
+    @Override
+    public void notifyMadeIllegalMove() {
+        throw new IllegalStateException(getClass().getSimpleName() + " made an illegal move.");
+    }
+
+    @Override
+    public void notifyOtherPlayerMadeIllegalMove() {
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public boolean isHumanPlayer() {
+        return false;
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2018 A.C. Kockx, All Rights Reserved.
+ */
+package boardgame.controller.player;
+
+import boardgame.controller.neuralnetwork.BatchedInferenceService;
+import boardgame.controller.neuralnetwork.InferenceResult;
+import boardgame.controller.neuralnetwork.NetworkWorkspace;
+import boardgame.controller.neuralnetwork.PolicyValueInference;
+import boardgame.controller.neuralnetwork.PolicyValueNetwork;
+import boardgame.model.BoardGameModel;
+import util.controller.player.Player;
+import util.model.GameModel;
+import util.model.Move;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Plays two-player board games with a PolicyValueNetwork (or a QuantizedPolicyValueNetwork), without search: each move, the network calculates the probability
+ * of each legal move and this player makes the move with the highest probability. The probabilities are returned as move probabilities.
+ * This runs on the CPU only, in pure Java, and the inference itself does not allocate any memory.
+ *
+ * If no network is given, then an untrained network with random weights is created for the size of the board at the first move.
+ * If a BatchedInferenceService is given, then the positions are evaluated by that service, together with the positions of other players
+ * that use the same service, e.g. in other games that are played at the same time.
+ *
+ * @author A.C. Kockx
+ */
+public final class NeuralNetworkPlayer implements Player {
+    private static final int[] DEFAULT_HIDDEN_LAYER_SIZES = new int[]{128, 128};
+    //fixed seed, so that an untrained player always plays the same.
+    private static final long DEFAULT_SEED = 1;
+
+    private final String name;
+    private PolicyValueInference network;
+    private NetworkWorkspace workspace;
+    //null if this player evaluates the positions itself.
+    private final BatchedInferenceService service;
+
+    private Move nextMove = null;
+    private float[][] nextMoveProbabilities = null;
+
+    //statistics of the last inference.
+    private float lastValue = 0;
+    private long lastInferenceTimeInNanoseconds = 0;
+
+    /**
+     * Creates a player with an untrained network, see the class description.
+     */
+    public NeuralNetworkPlayer(String name) {
+        if (name == null) throw new IllegalArgumentException("name == null");
+
+        this.name = name;
+        service = null;
+    }
+
+    public NeuralNetworkPlayer(String name, PolicyValueInference network) {
+        if (name == null) throw new IllegalArgumentException("name == null");
+        if (network == null) throw new IllegalArgumentException("network == null");
+
+        this.name = name;
+        this.network = network;
+        workspace = network.createWorkspace();
+        service = null;
+    }
+
+    /**
+     * Creates a player that lets the given service evaluate its positions.
+     */
+    public NeuralNetworkPlayer(String name, BatchedInferenceService service) {
+        if (name == null) throw new IllegalArgumentException("name == null");
+        if (service == null) throw new IllegalArgumentException("service == null");
+
+        this.name = name;
+        network = service.getNetwork();
+        this.service = service;
+    }
+
+    @Override
+    public void calculateMove(GameModel gameModel) throws InterruptedException {
+        if (gameModel == null) throw new IllegalArgumentException("gameModel == null");
+        if (!(gameModel instanceof BoardGameModel)) throw new IllegalArgumentException("gameModel must be an instance of " + BoardGameModel.class.getSimpleName());
+        BoardGameModel model = (BoardGameModel) gameModel;
+        if (network == null) {
+            network = new PolicyValueNetwork(model.getRowCount(), model.getColumnCount(), DEFAULT_HIDDEN_LAYER_SIZES, DEFAULT_SEED);
+            workspace = network.createWorkspace();
+        }
+
+        long startTime = System.nanoTime();
+        float[] policy;
+        if (service == null) {
+            lastValue = network.evaluate(model, workspace);
+            policy = workspace.getPolicy();
+        } else {
+            Future<InferenceResult> future = service.submit(model);
+            InferenceResult result;
+            try {
+                result = future.get();
+            } catch (InterruptedException e) {
+                future.cancel(false);
+                throw e;
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Inference failed: " + e.getCause().getMessage(), e.getCause());
+            }
+            lastValue = result.getValue();
+            policy = result.getPolicy();
+        }
+        lastInferenceTimeInNanoseconds = System.nanoTime() - startTime;
+
+        //choose the most probable move. Illegal moves have probability 0 and at least one legal move has a higher probability.
+        int bestMove = 0;
+        for (int square = 1; square < policy.length; square++) {
+            if (policy[square] > policy[bestMove]) bestMove = square;
+        }
+        nextMove = model.getMove(bestMove);
+
+        //the game model keeps the move probabilities of each move, so these cannot be re-used.
+        int columnCount = model.getColumnCount();
+        nextMoveProbabilities = new float[model.getRowCount()][columnCount];
+        for (int row = 0; row < nextMoveProbabilities.length; row++) {
+            System.arraycopy(policy, row*columnCount, nextMoveProbabilities[row], 0, columnCount);
+        }
+    }
+
+    @Override
+    public Move getCalculatedMove() {
+        if (nextMove == null) throw new IllegalStateException("nextMove not initialized. First call calculateMove().");
+        return nextMove;
+    }
+
+    /**
+     * Returns for each square the probability of the move to that square according to the network.
+     */
+    @Override
+    public float[][] getCalculatedMoveProbabilities() {
+        return nextMoveProbabilities;
+    }
+
+    /**
+     * Returns the network of this player, or null if no move was calculated yet and no network was given.
+     */
+    public PolicyValueInference getNetwork() {
+        return network;
+    }
+
+    /**
+     * Returns the value of the position before the last calculated move according to the network,
+     * between -1 (loss) and 1 (win) for this player.
+     */
+    public float getLastValue() {
+        return lastValue;
+    }
+
+    /**
+     * Returns the time of the last inference, including the time waiting for a batch if a BatchedInferenceService is used.
+     */
+    public long getLastInferenceTimeInNanoseconds() {
+        return lastInferenceTimeInNanoseconds;
+    }
+
+    @Override
+    public void notifyNewGame() {
+        //reset.
+        nextMove = null;
+        nextMoveProbabilities = null;
+    }
+
+    @Override
+    public void notifyWon() {
+    }
+
+    @Override
+    public void notifyLost() {
+    }
+
+    @Override
+    public void notifyDraw() {
+    }
+
+    @Override
+    public void notifyTriedIllegalMove() {
+        throw new IllegalStateException(getClass().getSimpleName() + " tried an illegal move.");
+    }
+
+    @Override
+    public void notifyMadeIllegalMove() {
+        throw new IllegalStateException(getClass().getSimpleName() + " made an illegal move.");
+    }
+
+    @Override
+    public void notifyOtherPlayerMadeIllegalMove() {
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public boolean isHumanPlayer() {
+        return false;
+    }
+}
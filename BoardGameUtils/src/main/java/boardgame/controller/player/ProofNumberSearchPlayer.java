@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2018 A.C. Kockx, All Rights Reserved.
+ */
+package boardgame.controller.player;
+
+import boardgame.controller.search.ProofNumberSearch;
+import boardgame.model.BoardGameModel;
+import util.controller.player.Player;
+import util.model.GameModel;
+import util.model.Move;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Plays two-player board games perfectly by solving each position with a ProofNumberSearch, without a time limit.
+ * This is only practical on boards that can be solved, e.g. m,n,k-games up to about 5x5, or for research,
+ * where a long proof can be checkpointed to a file and continued after a restart.
+ * The hash table is kept between moves, so later moves in the same game are solved much faster than the first one.
+ * The search also stops promptly when the thread is interrupted, in which case calculateMove throws an InterruptedException.
+ *
+ * @author A.C. Kockx
+ */
+public final class ProofNumberSearchPlayer implements Player {
+    public static final long DEFAULT_HASH_TABLE_SIZE_IN_BYTES = 256L*1024*1024;
+    public static final long DEFAULT_CHECKPOINT_INTERVAL_IN_MILLISECONDS = 10*60*1000;
+
+    private final String name;
+    private final ProofNumberSearch search;
+
+    private Move nextMove = null;
+
+    //statistics of the last search.
+    private int lastValue = ProofNumberSearch.DRAW;
+    private long lastNodeCount = 0;
+    private long lastSearchTimeInNanoseconds = 0;
+
+    /**
+     * Creates a player with a hash table of the default size, without checkpoints.
+     */
+    public ProofNumberSearchPlayer(String name) {
+        this(name, DEFAULT_HASH_TABLE_SIZE_IN_BYTES, null);
+    }
+
+    /**
+     * @param hashTableSizeInBytes memory budget for the hash table.
+     * @param checkpointFile file to save progress to at the default interval, or null for no checkpoints, see ProofNumberSearch.
+     */
+    public ProofNumberSearchPlayer(String name, long hashTableSizeInBytes, File checkpointFile) {
+        if (name == null) throw new IllegalArgumentException("name == null");
+
+        this.name = name;
+        search = new ProofNumberSearch(hashTableSizeInBytes, checkpointFile, DEFAULT_CHECKPOINT_INTERVAL_IN_MILLISECONDS);
+    }
+
+    @Override
+    public void calculateMove(GameModel gameModel) throws InterruptedException {
+        if (gameModel == null) throw new IllegalArgumentException("gameModel == null");
+        if (!(gameModel instanceof BoardGameModel)) throw new IllegalArgumentException("gameModel must be an instance of " + BoardGameModel.class.getSimpleName());
+        BoardGameModel model = (BoardGameModel) gameModel;
+
+        long startNodeCount = search.getNodeCount();
+        long startTime = System.nanoTime();
+        try {
+            //solve a copy, so that the game model and its listeners are not changed during the search.
+            lastValue = search.solve(model.fork());
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot use checkpoint file: " + e.getMessage(), e);
+        }
+        lastSearchTimeInNanoseconds = System.nanoTime() - startTime;
+        lastNodeCount = search.getNodeCount() - startNodeCount;
+
+        nextMove = model.getMove(search.getBestMove());
+    }
+
+    @Override
+    public Move getCalculatedMove() {
+        if (nextMove == null) throw new IllegalStateException("nextMove not initialized. First call calculateMove().");
+        return nextMove;
+    }
+
+    @Override
+    public float[][] getCalculatedMoveProbabilities() {
+        return null;
+    }
+
+    /**
+     * Returns the proven value of the position before the last calculated move for this player:
+     * ProofNumberSearch.WIN, ProofNumberSearch.DRAW or ProofNumberSearch.LOSS.
+     */
+    public int getLastValue() {
+        return lastValue;
+    }
+
+    /**
+     * Returns the number of positions searched for the last calculated move.
+     */
+    public long getLastNodeCount() {
+        return lastNodeCount;
+    }
+
+    public long getLastSearchTimeInNanoseconds() {
+        return lastSearchTimeInNanoseconds;
+    }
+
+    @Override
+    public void notifyNewGame() {
+        //reset.
+        nextMove = null;
+    }
+
+    @Override
+    public void notifyWon() {
+    }
+
+    @Override
+    public void notifyLost() {
+    }
+
+    @Override
+    public void notifyDraw() {
+    }
+
+    @Override
+    public void notifyTriedIllegalMove() {
+        throw new IllegalStateException(getClass().getSimpleName() + " tried an illegal move.");
+    }
+
+    @Override
+    public void notifyMadeIllegalMove() {
+        throw new IllegalStateException(getClass().getSimpleName() + " made an illegal move.");
+    }
+
+    @Override
+    public void notifyOtherPlayerMadeIllegalMove() {
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public boolean isHumanPlayer() {
+        return false;
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2018 A.C. Kockx, All Rights Reserved.
+ */
+package boardgame.controller.player;
+
+import boardgame.controller.neuralnetwork.NetworkWorkspace;
+import boardgame.controller.neuralnetwork.PolicyValueInference;
+import boardgame.controller.neuralnetwork.ReplayBuffer;
+import boardgame.model.BoardGameModel;
+import boardgame.model.SquareMove;
+import util.controller.player.Player;
+import util.model.GameModel;
+import util.model.Move;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Records training samples for a neural network from the games of another computer player, which calculates the moves.
+ * For each move, the position is encoded as network input and the move probabilities of the other player are used as the target
+ * policy (or probability 1 for the calculated move if the other player has no move probabilities). When the game ends,
+ * the samples of that game get the outcome of the game for this player and are added to a ReplayBuffer.
+ * Games that end with an illegal move are not recorded.
+ *
+ * For more variety in the recorded games, the first sampledMoveCount moves of this player in each game are chosen at random
+ * with the target policy as probabilities, instead of the move of the other player.
+ *
+ * @author A.C. Kockx
+ */
+public final class SelfPlayRecordingPlayer implements Player {
+    private final Player player;
+    private final ReplayBuffer buffer;
+    private final PolicyValueInference network;
+    private final NetworkWorkspace workspace;
+    private final int sampledMoveCount;
+    private final Random random;
+
+    //null if the move of the other player is used.
+    private Move sampledMove = null;
+    //samples of the current game, without outcome.
+    private final List<float[]> inputs = new ArrayList<>();
+    private final List<int[]> legalMoves = new ArrayList<>();
+    private final List<float[]> policies = new ArrayList<>();
+
+    private long recordedGameCount = 0;
+
+    /**
+     * @param player computer player that calculates the moves.
+     * @param network only used to encode the positions, see PolicyValueInference.encode.
+     * @param sampledMoveCount number of moves at the start of each game that are chosen at random, see class description.
+     * @param seed for the random moves.
+     */
+    public SelfPlayRecordingPlayer(Player player, ReplayBuffer buffer, PolicyValueInference network, int sampledMoveCount, long seed) {
+        if (player == null) throw new IllegalArgumentException("player == null");
+        if (player.isHumanPlayer()) throw new IllegalArgumentException("player must be a computer player");
+        if (buffer == null) throw new IllegalArgumentException("buffer == null");
+        if (network == null) throw new IllegalArgumentException("network == null");
+        if (sampledMoveCount < 0) throw new IllegalArgumentException("sampledMoveCount < 0");
+
+        this.player = player;
+        this.buffer = buffer;
+        this.network = network;
+        workspace = network.createWorkspace();
+        this.sampledMoveCount = sampledMoveCount;
+        random = new Random(seed);
+    }
+
+    @Override
+    public void calculateMove(GameModel gameModel) throws InterruptedException {
+        if (gameModel == null) throw new IllegalArgumentException("gameModel == null");
+        if (!(gameModel instanceof BoardGameModel)) throw new IllegalArgumentException("gameModel must be an instance of " + BoardGameModel.class.getSimpleName());
+        BoardGameModel model = (BoardGameModel) gameModel;
+
+        network.encode(model, workspace);
+        player.calculateMove(model);
+
+        //target policy.
+        int columnCount = model.getColumnCount();
+        float[] policy = new float[model.getRowCount()*columnCount];
+        float[][] probabilities = player.getCalculatedMoveProbabilities();
+        if (probabilities != null) {
+            for (int row = 0; row < probabilities.length; row++) {
+                System.arraycopy(probabilities[row], 0, policy, row*columnCount, columnCount);
+            }
+        } else if (player.getCalculatedMove() instanceof SquareMove) {
+            SquareMove move = (SquareMove) player.getCalculatedMove();
+            policy[move.row*columnCount + move.column] = 1;
+        }
+
+        sampledMove = null;
+        if (policies.size() < sampledMoveCount) {
+            int square = sample(policy, workspace.getLegalMoves(), workspace.getLegalMoveCount());
+            if (square != -1) sampledMove = model.getMove(square);
+        }
+
+        inputs.add(workspace.getInput().clone());
+        int[] moves = new int[workspace.getLegalMoveCount()];
+        System.arraycopy(workspace.getLegalMoves(), 0, moves, 0, moves.length);
+        legalMoves.add(moves);
+        policies.add(policy);
+    }
+
+    /**
+     * Returns a random legal move with the given probabilities, or -1 if all legal moves have probability 0.
+     */
+    private int sample(float[] policy, int[] moves, int moveCount) {
+        float sum = 0;
+        for (int n = 0; n < moveCount; n++) {
+            sum += policy[moves[n]];
+        }
+        if (sum <= 0) return -1;
+
+        float threshold = random.nextFloat()*sum;
+        int lastMove = -1;
+        for (int n = 0; n < moveCount; n++) {
+            if (policy[moves[n]] <= 0) continue;
+
+            lastMove = moves[n];
+            threshold -= policy[lastMove];
+            if (threshold < 0) return lastMove;
+        }
+        //rounding.
+        return lastMove;
+    }
+
+    @Override
+    public Move getCalculatedMove() {
+        if (sampledMove != null) return sampledMove;
+        return player.getCalculatedMove();
+    }
+
+    @Override
+    public float[][] getCalculatedMoveProbabilities() {
+        return player.getCalculatedMoveProbabilities();
+    }
+
+    /**
+     * Adds the samples of the current game with the given outcome to the buffer.
+     */
+    private void record(float outcome) {
+        for (int n = 0; n < inputs.size(); n++) {
+            buffer.add(inputs.get(n), legalMoves.get(n), legalMoves.get(n).length, policies.get(n), outcome);
+        }
+        recordedGameCount++;
+        clear();
+    }
+
+    private void clear() {
+        inputs.clear();
+        legalMoves.clear();
+        policies.clear();
+    }
+
+    /**
+     * Returns the number of games of which the samples were added to the buffer.
+     */
+    public long getRecordedGameCount() {
+        return recordedGameCount;
+    }
+
+    public Player getPlayer() {
+        return player;
+    }
+
+    @Override
+    public void notifyNewGame() {
+        //reset.
+        clear();
+        sampledMove = null;
+        player.notifyNewGame();
+    }
+
+    @Override
+    public void notifyWon() {
+        record(1);
+        player.notifyWon();
+    }
+
+    @Override
+    public void notifyLost() {
+        record(-1);
+        player.notifyLost();
+    }
+
+    @Override
+    public void notifyDraw() {
+        record(0);
+        player.notifyDraw();
+    }
+
+    @Override
+    public void notifyTriedIllegalMove() {
+        if (sampledMove != null) throw new IllegalStateException(getClass().getSimpleName() + " tried an illegal move.");
+        //do not record a position with an illegal target.
+        inputs.remove(inputs.size() - 1);
+        legalMoves.remove(legalMoves.size() - 1);
+        policies.remove(policies.size() - 1);
+        player.notifyTriedIllegalMove();
+    }
+
+    @Override
+    public void notifyMadeIllegalMove() {
+        clear();
+        player.notifyMadeIllegalMove();
+    }
+
+    @Override
+    public void notifyOtherPlayerMadeIllegalMove() {
+        clear();
+        player.notifyOtherPlayerMadeIllegalMove();
+    }
+
+    @Override
+    public String getName() {
+        return player.getName();
+    }
+
+    @Override
+    public boolean isHumanPlayer() {
+        return false;
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2018 A.C. Kockx, All Rights Reserved.
+ */
+package boardgame.controller.player;
+
+import boardgame.controller.search.ThreatSpaceSearch;
+import boardgame.model.MnkBoardGameModel;
+import util.controller.player.Player;
+import util.model.GameModel;
+import util.model.Move;
+
+/**
+ * Adds a fast forced-win check to another computer player for m,n,k-games. Before each move, a ThreatSpaceSearch looks for
+ * a forced win with a sequence of threats. If it finds one, this player makes the first move of that sequence,
+ * otherwise the other player calculates the move as usual. For other games, the other player always calculates the move.
+ *
+ * @author A.C. Kockx
+ */
+public final class ThreatSpaceSearchPlayer implements Player {
+    private final Player player;
+    private final ThreatSpaceSearch search;
+
+    //true if the last move was found by the threat-space search, false if it was calculated by the other player.
+    private boolean threatMove = false;
+    private Move nextMove = null;
+    private float[][] nextMoveProbabilities = null;
+
+    //statistics of the last search.
+    private long lastNodeCount = 0;
+    private long lastSearchTimeInNanoseconds = 0;
+    private int[] lastWinningLine = new int[0];
+
+    /**
+     * Creates a threat-space search with the default maximum number of threats and nodes.
+     *
+     * @param player computer player that calculates the moves for which no forced win was found.
+     */
+    public ThreatSpaceSearchPlayer(Player player) {
+        this(player, new ThreatSpaceSearch());
+    }
+
+    public ThreatSpaceSearchPlayer(Player player, ThreatSpaceSearch search) {
+        if (player == null) throw new IllegalArgumentException("player == null");
+        if (player.isHumanPlayer()) throw new IllegalArgumentException("player must be a computer player");
+        if (search == null) throw new IllegalArgumentException("search == null");
+
+        this.player = player;
+        this.search = search;
+    }
+
+    @Override
+    public void calculateMove(GameModel gameModel) throws InterruptedException {
+        if (gameModel == null) throw new IllegalArgumentException("gameModel == null");
+
+        threatMove = false;
+        if (gameModel instanceof MnkBoardGameModel) {
+            MnkBoardGameModel model = (MnkBoardGameModel) gameModel;
+            long startTime = System.nanoTime();
+            //search a copy, so that the game model and its listeners are not changed during the search.
+            int move = search.findWinningMove(model.fork());
+            lastSearchTimeInNanoseconds = System.nanoTime() - startTime;
+            lastNodeCount = search.getNodeCount();
+            lastWinningLine = search.getWinningLine();
+
+            if (move != -1) {
+                threatMove = true;
+                nextMove = model.getMove(move);
+                nextMoveProbabilities = new float[model.getRowCount()][model.getColumnCount()];
+                nextMoveProbabilities[move/model.getColumnCount()][move%model.getColumnCount()] = 1;
+                return;
+            }
+        }
+
+        player.calculateMove(gameModel);
+    }
+
+    @Override
+    public Move getCalculatedMove() {
+        if (threatMove) return nextMove;
+        return player.getCalculatedMove();
+    }
+
+    /**
+     * For a move that was found by the threat-space search, returns probability 1 for that move and 0 for all other moves.
+     */
+    @Override
+    public float[][] getCalculatedMoveProbabilities() {
+        if (threatMove) return nextMoveProbabilities;
+        return player.getCalculatedMoveProbabilities();
+    }
+
+    /**
+     * Returns true if the last calculated move starts a forced win that was found by the threat-space search.
+     */
+    public boolean isLastMoveForcedWin() {
+        return threatMove;
+    }
+
+    /**
+     * Returns the winning sequence of the last threat-space search, see ThreatSpaceSearch.getWinningLine.
+     */
+    public int[] getLastWinningLine() {
+        return lastWinningLine.clone();
+    }
+
+    /**
+     * Returns the number of positions searched by the last threat-space search.
+     */
+    public long getLastNodeCount() {
+        return lastNodeCount;
+    }
+
+    public long getLastSearchTimeInNanoseconds() {
+        return lastSearchTimeInNanoseconds;
+    }
+
+    public Player getPlayer() {
+        return player;
+    }
+
+    @Override
+    public void notifyNewGame() {
+        //reset.
+        threatMove = false;
+        nextMove = null;
+        nextMoveProbabilities = null;
+        player.notifyNewGame();
+    }
+
+    @Override
+    public void notifyWon() {
+        player.notifyWon();
+    }
+
+    @Override
+    public void notifyLost() {
+        player.notifyLost();
+    }
+
+    @Override
+    public void notifyDraw() {
+        player.notifyDraw();
+    }
+
+    @Override
+    public void notifyTriedIllegalMove() {
+        if (threatMove) throw new IllegalStateException(getClass().getSimpleName() + " tried an illegal move.");
+        player.notifyTriedIllegalMove();
+    }
+
+    @Override
+    public void notifyMadeIllegalMove() {
+        if (threatMove) throw new IllegalStateException(getClass().getSimpleName() + " made an illegal move.");
+        player.notifyMadeIllegalMove();
+    }
+
+    @Override
+    public void notifyOtherPlayerMadeIllegalMove() {
+        player.notifyOtherPlayerMadeIllegalMove();
+    }
+
+    @Override
+    public String getName() {
+        return player.getName();
+    }
+
+    @Override
+    public boolean isHumanPlayer() {
+        return false;
+    }
+}
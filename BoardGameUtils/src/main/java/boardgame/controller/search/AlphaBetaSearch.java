@@ -0,0 +1,436 @@
+/*
+ * Copyright (c) 2018 A.C. Kockx, All Rights Reserved.
+ */
+package boardgame.controller.search;
+
+import boardgame.model.BoardGameModel;
+import boardgame.model.MnkBoardGameModel;
+
+/**
+ * Searches the best move in two-player board games with a negamax search with alpha-beta pruning.
+ *
+ * The search makes and undoes moves directly on the given model (see BoardGameModel.tryMove(int) and undoMove),
+ * so it works for any BoardGameModel. The main techniques are:
+ * - a transposition table stores the scores and best moves of positions that have been searched before;
+ * - moves are ordered with the best move from the transposition table first and the other moves by their history score,
+ *   i.e. by how often they caused a cutoff elsewhere in the search;
+ * - for an MnkBoardGameModel, positions that are symmetric to each other share one transposition table entry
+ *   and of moves that lead to symmetric positions only one is searched;
+ * - for an MnkBoardGameModel, a position where the player to move can complete k in a row is scored as a win without searching,
+ *   a position where the opponent threatens to do so on one square only searches the move on that square,
+ *   and a position where the opponent threatens on two or more squares is scored as a loss.
+ *
+ * Scores are from the point of view of the player to move. A win in p plies (moves of both players) has score WIN_SCORE - p
+ * and a loss in p plies has score -(WIN_SCORE - p), so faster wins and slower losses are preferred. A draw has score 0.
+ * When the search stops at the maximum depth before the game is over, the position is scored by the Evaluator,
+ * or 0 if there is no evaluator. Evaluations are clamped so that they are always closer to 0 than any win or loss.
+ *
+ * Note: this class is not thread-safe.
+ *
+ * @author A.C. Kockx
+ */
+public final class AlphaBetaSearch {
+    public static final int WIN_SCORE = 1 << 30;
+    //scores with an absolute value above this are wins or losses in a known number of plies.
+    public static final int MIN_WIN_SCORE = WIN_SCORE - (1 << 16);
+    //check for interruption once every this many nodes.
+    private static final int INTERRUPT_CHECK_INTERVAL_MASK = (1 << 12) - 1;
+    private static final int MAX_HISTORY_SCORE = 1 << 24;
+
+    private final TranspositionTable transpositionTable;
+    private final Evaluator evaluator;
+
+    //move buffers for each ply, so that no memory is allocated during search.
+    private int[][] moves = new int[0][];
+    private int[][] moveScores = new int[0][];
+    //for each move, a score that is increased each time the move caused a cutoff.
+    private int[] history = new int[0];
+    private final int[] winningSquares = new int[2];
+
+    //model of the current search, or null if the model is not an MnkBoardGameModel.
+    private MnkBoardGameModel mnkModel = null;
+
+    private long nodeCount = 0;
+    private int bestMove = -1;
+    private int bestScore = 0;
+    //true if the last search scored a position with the evaluator, i.e. its score is not exact.
+    private boolean horizonReached = false;
+    //depth of the last search that was completed by iterativeDeepeningSearch.
+    private int completedDepth = 0;
+
+    //the search is abandoned when System.nanoTime() passes the deadline, if enabled.
+    private boolean deadlineEnabled = false;
+    private long deadline = 0;
+    private boolean searchAborted = false;
+
+    /**
+     * @param evaluator can be null, in which case positions at the maximum depth are scored as a draw.
+     */
+    public AlphaBetaSearch(TranspositionTable transpositionTable, Evaluator evaluator) {
+        if (transpositionTable == null) throw new IllegalArgumentException("transpositionTable == null");
+
+        this.transpositionTable = transpositionTable;
+        this.evaluator = evaluator;
+    }
+
+    /**
+     * Searches the current position of the given model to the given depth (number of plies) and returns its score.
+     * After this, the best move is available from method getBestMove.
+     * The model is left in the same state as before, also if the search is interrupted.
+     *
+     * A search with a depth equal to the number of empty squares solves the position, i.e. the score is the game-theoretic value.
+     *
+     * @throws InterruptedException if the current thread is interrupted during the search.
+     */
+    public int search(BoardGameModel model, int depth) throws InterruptedException {
+        return search(model, depth, -WIN_SCORE, WIN_SCORE);
+    }
+
+    /**
+     * Same as search(model, depth), but only searches for scores within the given window.
+     * If the returned score is less than or equal to alpha, then it is an upper bound of the real score (fail low).
+     * If it is greater than or equal to beta, then it is a lower bound (fail high). Otherwise it is exact.
+     * A narrow window is much faster, e.g. the window (-1, 1) only determines whether a position is won, drawn or lost.
+     */
+    public int search(BoardGameModel model, int depth, int alpha, int beta) throws InterruptedException {
+        if (model == null) throw new IllegalArgumentException("model == null");
+        if (model.getPlayerNames().length != 2) throw new IllegalArgumentException("playerNames.length != 2");
+        if (model.isGameOver()) throw new IllegalArgumentException("Game is already over.");
+        if (depth <= 0) throw new IllegalArgumentException("depth <= 0");
+        if (alpha < -WIN_SCORE || beta > WIN_SCORE || alpha >= beta) throw new IllegalArgumentException("invalid window (" + alpha + ", " + beta + ")");
+
+        //there can never be more plies than squares.
+        int squareCount = model.getRowCount()*model.getColumnCount();
+        if (depth > squareCount) depth = squareCount;
+        ensureCapacity(depth + 1, squareCount);
+        mnkModel = model instanceof MnkBoardGameModel ? (MnkBoardGameModel) model : null;
+
+        bestMove = -1;
+        horizonReached = false;
+        searchAborted = false;
+        try {
+            bestScore = negamax(model, depth, 0, alpha, beta);
+        } finally {
+            mnkModel = null;
+        }
+        return bestScore;
+    }
+
+    /**
+     * Same as iterativeDeepeningSearch(model, maxDepth, timeBudgetInNanoseconds), without a time budget.
+     */
+    public int iterativeDeepeningSearch(BoardGameModel model, int maxDepth) throws InterruptedException {
+        return iterativeDeepeningSearch(model, maxDepth, Long.MAX_VALUE);
+    }
+
+    /**
+     * Searches the current position of the given model with increasing depths 1, 2, 3, ..., up to the given maximum depth
+     * and returns the score of the deepest search that was completed. After this, the best move of that search is available from method getBestMove.
+     *
+     * Each search fills the transposition table and history scores that order the moves of the next search,
+     * so this is usually faster than a single search to the maximum depth.
+     * Stops early when a search is exact, i.e. when it found a win or loss, or reached the end of the game in all lines.
+     *
+     * Stops when the time budget has been used up. The search that is running at that moment is abandoned within about a millisecond,
+     * its results are discarded and are not stored in the transposition table. No new search is started when more than half of
+     * the time budget has been used up, since a deeper search usually takes longer than all previous searches together.
+     * The search to depth 1 is always completed, so that there always is a best move.
+     *
+     * @param timeBudgetInNanoseconds maximum time to search, or Long.MAX_VALUE for no limit.
+     * @throws InterruptedException if the current thread is interrupted during the search.
+     */
+    public int iterativeDeepeningSearch(BoardGameModel model, int maxDepth, long timeBudgetInNanoseconds) throws InterruptedException {
+        return iterativeDeepeningSearch(model, maxDepth, timeBudgetInNanoseconds, 1, 0, false);
+    }
+
+    /**
+     * Same as iterativeDeepeningSearch(model, maxDepth, timeBudgetInNanoseconds), but skips some depths: depths are grouped
+     * in runs of depthSkipSize consecutive depths, shifted by depthSkipPhase, and every other run is skipped, i.e. depth d is skipped
+     * if (d + depthSkipPhase)/depthSkipSize is odd. The first search that is not skipped is always completed.
+     * This is used to let helper threads search at other depths than the main thread, see LazySmpSearch.
+     */
+    public int iterativeDeepeningSearch(BoardGameModel model, int maxDepth, long timeBudgetInNanoseconds, int depthSkipSize, int depthSkipPhase)
+            throws InterruptedException {
+        if (depthSkipSize <= 0) throw new IllegalArgumentException("depthSkipSize <= 0");
+        if (depthSkipPhase < 0) throw new IllegalArgumentException("depthSkipPhase < 0");
+
+        return iterativeDeepeningSearch(model, maxDepth, timeBudgetInNanoseconds, depthSkipSize, depthSkipPhase, true);
+    }
+
+    private int iterativeDeepeningSearch(BoardGameModel model, int maxDepth, long timeBudgetInNanoseconds, int depthSkipSize, int depthSkipPhase,
+            boolean skipDepths) throws InterruptedException {
+        if (maxDepth <= 0) throw new IllegalArgumentException("maxDepth <= 0");
+        if (timeBudgetInNanoseconds <= 0) throw new IllegalArgumentException("timeBudgetInNanoseconds <= 0");
+
+        long startTime = System.nanoTime();
+        //there can never be more plies than empty squares.
+        int maxUsefulDepth = Math.min(maxDepth, model instanceof MnkBoardGameModel ? ((MnkBoardGameModel) model).getEmptySquareCount()
+                : model.getRowCount()*model.getColumnCount());
+        int score = 0;
+        int move = -1;
+        completedDepth = 0;
+        try {
+            for (int depth = 1; depth <= maxUsefulDepth; depth++) {
+                if (skipDepths && ((depth + depthSkipPhase)/depthSkipSize)%2 != 0) continue;
+
+                //the first search is never abandoned.
+                if (completedDepth > 0 && timeBudgetInNanoseconds != Long.MAX_VALUE) {
+                    deadlineEnabled = true;
+                    deadline = startTime + timeBudgetInNanoseconds;
+                }
+
+                int depthScore = search(model, depth);
+                if (searchAborted) break;
+                score = depthScore;
+                move = bestMove;
+                completedDepth = depth;
+
+                if (!horizonReached || isWin(score) || isLoss(score)) break;
+                if (timeBudgetInNanoseconds != Long.MAX_VALUE && System.nanoTime() - startTime > timeBudgetInNanoseconds/2) break;
+            }
+        } finally {
+            deadlineEnabled = false;
+            searchAborted = false;
+        }
+
+        bestMove = move;
+        bestScore = score;
+        return score;
+    }
+
+    private void ensureCapacity(int plyCount, int squareCount) {
+        if (moves.length < plyCount || (moves.length > 0 && moves[0].length < squareCount)) {
+            moves = new int[plyCount][squareCount];
+            moveScores = new int[plyCount][squareCount];
+        }
+        if (history.length < squareCount) history = new int[squareCount];
+    }
+
+    private int negamax(BoardGameModel model, int depth, int ply, int alpha, int beta) throws InterruptedException {
+        nodeCount++;
+        if ((nodeCount & INTERRUPT_CHECK_INTERVAL_MASK) == 0) {
+            if (Thread.interrupted()) throw new InterruptedException();
+            if (deadlineEnabled && System.nanoTime() - deadline >= 0) searchAborted = true;
+        }
+        if (searchAborted) return 0;
+
+        if (model.isGameOver()) {
+            //the player that made the previous move either won or drew.
+            return model.getIndexOfWinner() == -1 ? 0 : -(WIN_SCORE - ply);
+        }
+        //check for immediate wins and moves that must be made to prevent an immediate loss.
+        int forcedMove = -1;
+        if (mnkModel != null) {
+            int playerIndex = model.getIndexOfCurrentPlayer();
+            if (mnkModel.getWinningSquares(playerIndex, winningSquares, 1) > 0) {
+                if (ply == 0) this.bestMove = winningSquares[0];
+                return WIN_SCORE - (ply + 1);
+            }
+            int opponentWinningSquareCount = mnkModel.getWinningSquares(1 - playerIndex, winningSquares, 2);
+            if (opponentWinningSquareCount >= 2) {
+                //block one of the threats anyway.
+                if (ply == 0) this.bestMove = winningSquares[0];
+                return -(WIN_SCORE - (ply + 2));
+            }
+            if (opponentWinningSquareCount == 1) forcedMove = winningSquares[0];
+        }
+        if (depth == 0) {
+            horizonReached = true;
+            return evaluate(model);
+        }
+
+        //probe transposition table.
+        long hash = mnkModel == null ? model.getZobristHash() : mnkModel.getCanonicalZobristHash();
+        int hashMove = -1;
+        long entryData = transpositionTable.probe(hash);
+        if (entryData != 0) {
+            hashMove = TranspositionTable.getMove(entryData);
+            if (hashMove != -1 && mnkModel != null) hashMove = mnkModel.fromCanonicalMove(hashMove);
+            //at the root a move is needed, so do not stop there.
+            if (ply > 0 && TranspositionTable.getDepth(entryData) >= depth) {
+                int score = fromTableScore(TranspositionTable.getScore(entryData), ply);
+                int bound = TranspositionTable.getBound(entryData);
+                if (bound == TranspositionTable.EXACT || (bound == TranspositionTable.LOWER_BOUND && score >= beta)
+                        || (bound == TranspositionTable.UPPER_BOUND && score <= alpha)) {
+                    //the stored search may have stopped at its maximum depth, unless it proved a win or loss.
+                    boolean proven = (bound != TranspositionTable.UPPER_BOUND && isWin(score)) || (bound != TranspositionTable.LOWER_BOUND && isLoss(score));
+                    if (!proven) horizonReached = true;
+                    return score;
+                }
+            }
+        }
+
+        //order moves: hash move first, then by history score.
+        int[] plyMoves = moves[ply];
+        int[] plyMoveScores = moveScores[ply];
+        int moveCount;
+        if (forcedMove != -1) {
+            plyMoves[0] = forcedMove;
+            moveCount = 1;
+        } else {
+            moveCount = mnkModel == null ? model.getLegalMoves(plyMoves) : mnkModel.getSymmetricallyDistinctLegalMoves(plyMoves);
+        }
+        for (int n = 0; n < moveCount; n++) {
+            int move = plyMoves[n];
+            plyMoveScores[n] = move == hashMove ? Integer.MAX_VALUE : history[move];
+        }
+        sortMoves(plyMoves, plyMoveScores, moveCount);
+
+        int originalAlpha = alpha;
+        int bestScore = -WIN_SCORE;
+        int bestMove = -1;
+        for (int n = 0; n < moveCount; n++) {
+            int move = plyMoves[n];
+            model.tryMove(move);
+            int score;
+            try {
+                score = -negamax(model, depth - 1, ply + 1, -beta, -alpha);
+            } finally {
+                model.undoMove();
+            }
+            //if out of time, then the result is incomplete, so do not use or store it.
+            if (searchAborted) return 0;
+
+            if (score > bestScore) {
+                bestScore = score;
+                bestMove = move;
+                if (score > alpha) alpha = score;
+                if (alpha >= beta) {
+                    history[move] += depth*depth;
+                    if (history[move] > MAX_HISTORY_SCORE) ageHistory();
+                    break;
+                }
+            }
+        }
+
+        //store in transposition table.
+        int bound = bestScore <= originalAlpha ? TranspositionTable.UPPER_BOUND
+                : bestScore >= beta ? TranspositionTable.LOWER_BOUND : TranspositionTable.EXACT;
+        int tableMove = mnkModel == null ? bestMove : mnkModel.toCanonicalMove(bestMove);
+        transpositionTable.store(hash, toTableScore(bestScore, ply), depth, bound, tableMove);
+
+        if (ply == 0) this.bestMove = bestMove;
+        return bestScore;
+    }
+
+    /**
+     * Halves all history scores, so that they do not overflow and recent cutoffs count more than old ones.
+     */
+    private void ageHistory() {
+        for (int move = 0; move < history.length; move++) {
+            history[move] >>= 1;
+        }
+    }
+
+    /**
+     * Sorts the given moves by descending score (insertion sort, since there are only few moves).
+     */
+    private static void sortMoves(int[] moves, int[] scores, int count) {
+        for (int i = 1; i < count; i++) {
+            int move = moves[i];
+            int score = scores[i];
+            int j = i - 1;
+            while (j >= 0 && scores[j] < score) {
+                moves[j + 1] = moves[j];
+                scores[j + 1] = scores[j];
+                j--;
+            }
+            moves[j + 1] = move;
+            scores[j + 1] = score;
+        }
+    }
+
+    private int evaluate(BoardGameModel model) {
+        if (evaluator == null) return 0;
+
+        int evaluation = evaluator.evaluate(model);
+        if (evaluation > MIN_WIN_SCORE) return MIN_WIN_SCORE;
+        if (evaluation < -MIN_WIN_SCORE) return -MIN_WIN_SCORE;
+        return evaluation;
+    }
+
+    /**
+     * Win and loss scores in the table are stored relative to the stored position instead of the root,
+     * since the same position can be reached at different plies.
+     */
+    private static int toTableScore(int score, int ply) {
+        if (score > MIN_WIN_SCORE) return score + ply;
+        if (score < -MIN_WIN_SCORE) return score - ply;
+        return score;
+    }
+
+    private static int fromTableScore(int score, int ply) {
+        if (score > MIN_WIN_SCORE) return score - ply;
+        if (score < -MIN_WIN_SCORE) return score + ply;
+        return score;
+    }
+
+    /**
+     * Returns whether the given score means that the player to move can force a win.
+     */
+    public static boolean isWin(int score) {
+        return score > MIN_WIN_SCORE;
+    }
+
+    /**
+     * Returns whether the given score means that the opponent of the player to move can force a win.
+     */
+    public static boolean isLoss(int score) {
+        return score < -MIN_WIN_SCORE;
+    }
+
+    /**
+     * Returns the best move (row*columnCount + column) that was found by the last call to method search.
+     */
+    public int getBestMove() {
+        if (bestMove == -1) throw new IllegalStateException("bestMove not initialized. First call search().");
+        return bestMove;
+    }
+
+    /**
+     * Returns the score of the best move that was found by the last call to method search.
+     */
+    public int getBestScore() {
+        return bestScore;
+    }
+
+    /**
+     * Returns true if the last search stopped at the maximum depth in some line before the game was over.
+     * If false, then the score of the last search is the game-theoretic value of the position (within the search window).
+     */
+    public boolean isHorizonReached() {
+        return horizonReached;
+    }
+
+    /**
+     * Returns the depth of the deepest search that was completed by the last call to method iterativeDeepeningSearch.
+     */
+    public int getCompletedDepth() {
+        return completedDepth;
+    }
+
+    public TranspositionTable getTranspositionTable() {
+        return transpositionTable;
+    }
+
+    /**
+     * Returns the number of positions searched since this search was created or since the last call to resetNodeCount.
+     */
+    public long getNodeCount() {
+        return nodeCount;
+    }
+
+    public void resetNodeCount() {
+        nodeCount = 0;
+    }
+
+    /**
+     * Forgets all results of previous searches.
+     */
+    public void clear() {
+        transpositionTable.clear();
+        for (int move = 0; move < history.length; move++) {
+            history[move] = 0;
+        }
+    }
+}
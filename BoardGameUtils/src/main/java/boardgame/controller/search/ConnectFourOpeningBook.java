@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2018 A.C. Kockx, All Rights Reserved.
+ */
+package boardgame.controller.search;
+
+import boardgame.model.ConnectFourBoardGameModel;
+import util.gui.ResourceLoader;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stores the best move and the score (see ConnectFourSolver) of Connect Four positions that take long to solve,
+ * i.e. positions early in the game. ConnectFourSolver uses these instead of searching.
+ *
+ * A book only needs to contain the positions where the player that uses it is to move, after that player followed the book
+ * in all earlier moves. The standard book is generated by connectfour.OpeningBookGenerator and contains such positions
+ * for both players, up to 8 pieces on the board. Each position is found by its pieces, so also when it was reached in another order,
+ * and each position is also stored mirrored (left to right), which has the same score.
+ *
+ * A book is a text file. Lines that start with '#' are comments. The first other line contains the number of rows and columns.
+ * Each following line contains a position, the best column for the player to move and the score, separated by spaces.
+ * A position is written as the columns played from the empty board (1 for the leftmost column) or as '-' for the empty board.
+ * For example "44 3 -2" means: after two pieces in the fourth column, the best move is in the third column and has score -2.
+ *
+ * @author A.C. Kockx
+ */
+public final class ConnectFourOpeningBook {
+    public static final String STANDARD_BOOK_RESOURCE_NAME = "connect-four-opening-book.txt";
+    private static final String EMPTY_POSITION = "-";
+
+    private final int rowCount;
+    private final int columnCount;
+
+    //lines in the order in which they were added, for method write.
+    private final List<String> lines = new ArrayList<>();
+    //best column and score for the position key (see ConnectFourSolver) of each position and its mirrored position.
+    private final Map<Long, int[]> entries = new HashMap<>();
+
+    /**
+     * Creates an empty book for the given board size.
+     */
+    public ConnectFourOpeningBook(int rowCount, int columnCount) {
+        if (rowCount <= 0) throw new IllegalArgumentException("rowCount <= 0");
+        if (columnCount <= 0) throw new IllegalArgumentException("columnCount <= 0");
+        if (columnCount*(rowCount + 1) > Long.SIZE) throw new IllegalArgumentException("columnCount*(rowCount + 1) > " + Long.SIZE);
+        //each column is written as a single digit.
+        if (columnCount > 9) throw new IllegalArgumentException("columnCount > 9");
+
+        this.rowCount = rowCount;
+        this.columnCount = columnCount;
+    }
+
+    /**
+     * Reads the standard book for standard Connect Four boards (6 rows, 7 columns), which is a resource of this package.
+     */
+    public static ConnectFourOpeningBook loadStandardBook() throws IOException {
+        ResourceLoader loader = new ResourceLoader(ResourceLoader.getParentResourcePath(ConnectFourOpeningBook.class));
+        return read(loader.loadResource(STANDARD_BOOK_RESOURCE_NAME));
+    }
+
+    /**
+     * Reads a book in the format described in the class description and closes the given stream.
+     */
+    public static ConnectFourOpeningBook read(InputStream inputStream) throws IOException {
+        if (inputStream == null) throw new IllegalArgumentException("inputStream == null");
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+            ConnectFourOpeningBook book = null;
+            int lineNumber = 0;
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+
+                String[] values = line.split(" +");
+                try {
+                    if (book == null) {
+                        if (values.length != 2) throw new IllegalArgumentException("expected number of rows and columns");
+                        book = new ConnectFourOpeningBook(Integer.parseInt(values[0]), Integer.parseInt(values[1]));
+                    } else {
+                        if (values.length != 3) throw new IllegalArgumentException("expected position, best column and score");
+                        book.add(parseColumns(values[0]), Integer.parseInt(values[1]) - 1, Integer.parseInt(values[2]));
+                    }
+                } catch (IllegalArgumentException e) {
+                    //also NumberFormatException.
+                    throw new IOException("Invalid opening book line " + lineNumber + " '" + line + "': " + e.getMessage(), e);
+                }
+            }
+            if (book == null) throw new IOException("Opening book contains no board size.");
+            return book;
+        }
+    }
+
+    private static int[] parseColumns(String position) {
+        if (position.equals(EMPTY_POSITION)) return new int[0];
+
+        int[] columns = new int[position.length()];
+        for (int i = 0; i < columns.length; i++) {
+            char c = position.charAt(i);
+            if (c < '1' || c > '9') throw new IllegalArgumentException("invalid column '" + c + "'");
+            columns[i] = c - '1';
+        }
+        return columns;
+    }
+
+    /**
+     * Writes this book in the format described in the class description.
+     *
+     * @param comment written as the first line, or null.
+     */
+    public void write(Writer writer, String comment) {
+        if (writer == null) throw new IllegalArgumentException("writer == null");
+
+        PrintWriter printWriter = new PrintWriter(writer);
+        if (comment != null) printWriter.println("# " + comment);
+        printWriter.println(rowCount + " " + columnCount);
+        for (String line : lines) {
+            printWriter.println(line);
+        }
+        printWriter.flush();
+    }
+
+    /**
+     * Adds the position that results from playing the given columns (0-based) from the empty board.
+     *
+     * @param bestColumn best move for the player to move in that position (0-based).
+     * @param score of the position for the player to move.
+     */
+    public void add(int[] columns, int bestColumn, int score) {
+        if (columns == null) throw new IllegalArgumentException("columns == null");
+        if (columns.length >= rowCount*columnCount) throw new IllegalArgumentException("columns.length >= rowCount*columnCount");
+        if (bestColumn < 0 || bestColumn >= columnCount) throw new IllegalArgumentException("bestColumn " + (bestColumn + 1) + " is outside board");
+
+        int[] mirroredColumns = new int[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            mirroredColumns[i] = columnCount - 1 - columns[i];
+        }
+        long key = getKey(columns);
+        long mirroredKey = getKey(mirroredColumns);
+        if (entries.containsKey(key)) throw new IllegalArgumentException("position is already in book");
+
+        entries.put(key, new int[]{bestColumn, score});
+        //a symmetric position keeps its own best column.
+        if (mirroredKey != key) entries.put(mirroredKey, new int[]{columnCount - 1 - bestColumn, score});
+
+        StringBuilder line = new StringBuilder();
+        for (int column : columns) {
+            line.append(column + 1);
+        }
+        if (columns.length == 0) line.append(EMPTY_POSITION);
+        line.append(' ').append(bestColumn + 1).append(' ').append(score);
+        lines.add(line.toString());
+    }
+
+    /**
+     * Returns the position key (see getKey(ConnectFourBoardGameModel)) after playing the given columns from the empty board.
+     */
+    private long getKey(int[] columns) {
+        int bitsPerColumn = rowCount + 1;
+        long[] pieces = new long[2];
+        int[] heights = new int[columnCount];
+        for (int i = 0; i < columns.length; i++) {
+            int column = columns[i];
+            if (column < 0 || column >= columnCount) throw new IllegalArgumentException("column " + (column + 1) + " is outside board");
+            if (heights[column] >= rowCount) throw new IllegalArgumentException("column " + (column + 1) + " is full");
+            pieces[i%2] |= 1L << (column*bitsPerColumn + heights[column]++);
+        }
+        return pieces[columns.length%2] + (pieces[0] | pieces[1]);
+    }
+
+    /**
+     * Returns a number that identifies the current position of the given model: the pieces of the player to move plus all pieces.
+     * This is the same unique key that ConnectFourSolver uses for its transposition table.
+     */
+    private static long getKey(ConnectFourBoardGameModel model) {
+        long mask = model.getPieces(0) | model.getPieces(1);
+        return model.getPieces(model.getIndexOfCurrentPlayer()) + mask;
+    }
+
+    /**
+     * Returns true if this book can be used for the given model, i.e. if the model has the same board size.
+     */
+    public boolean supports(ConnectFourBoardGameModel model) {
+        return model.getRowCount() == rowCount && model.getColumnCount() == columnCount;
+    }
+
+    /**
+     * Returns the best column (0-based) for the player to move in the current position of the given model, or -1 if the position is not in this book.
+     */
+    public int getBestColumn(ConnectFourBoardGameModel model) {
+        int[] entry = getEntry(model);
+        return entry == null ? -1 : entry[0];
+    }
+
+    /**
+     * Returns the score of the current position of the given model, or null if the position is not in this book.
+     */
+    public Integer getScore(ConnectFourBoardGameModel model) {
+        int[] entry = getEntry(model);
+        return entry == null ? null : entry[1];
+    }
+
+    private int[] getEntry(ConnectFourBoardGameModel model) {
+        if (model == null) throw new IllegalArgumentException("model == null");
+        if (!supports(model)) throw new IllegalArgumentException("model has a different board size than this book");
+        if (model.isGameOver()) return null;
+
+        return entries.get(getKey(model));
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public int getColumnCount() {
+        return columnCount;
+    }
+
+    /**
+     * Returns the number of positions in this book, not counting mirrored positions.
+     */
+    public int getPositionCount() {
+        return lines.size();
+    }
+}
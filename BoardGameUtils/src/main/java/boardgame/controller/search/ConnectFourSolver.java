@@ -0,0 +1,452 @@
+/*
+ * Copyright (c) 2018 A.C. Kockx, All Rights Reserved.
+ */
+package boardgame.controller.search;
+
+import boardgame.model.ConnectFourBoardGameModel;
+
+/**
+ * Solves Connect Four positions with 4 in a row, i.e. calculates the game-theoretic value of a position with perfect play.
+ *
+ * This is a negamax search with alpha-beta pruning on the height-indexed bitboards of ConnectFourBoardGameModel, based on
+ * the solver described by P. Pons (http://blog.gamesolver.org). The main techniques are:
+ * - only moves that do not give the opponent an immediate win are searched (all other moves lose);
+ * - moves are ordered by the number of winning squares they create, with central columns first for equal moves;
+ * - a transposition table stores upper and lower bounds of the scores of positions that have been searched before;
+ * - the score is found with a sequence of null-window searches that narrow the range of possible scores.
+ *
+ * The score of a position is from the point of view of the player to move:
+ * a positive score means that the player to move can win, a score of 0 means a draw and a negative score means a loss.
+ * The absolute value is larger for faster wins (a win with the player's last piece has score 1).
+ * A weak solve only determines whether the score is positive, zero or negative, which is much faster.
+ *
+ * The transposition table is kept between calls, so solving the positions of one game one after the other is fast.
+ * Positions early in the game take long to solve (up to minutes for the first moves of a standard game). For these an opening book
+ * can be set, see ConnectFourOpeningBook, which gives the best move and score of the positions in it without searching.
+ * Note: this class is not thread-safe.
+ *
+ * @author A.C. Kockx
+ */
+public final class ConnectFourSolver {
+    private static final int WINNING_NUMBER_OF_PIECES_IN_A_ROW = 4;
+    public static final int DEFAULT_TRANSPOSITION_TABLE_SIZE_LOG2 = 24;
+    //check for interruption once every this many nodes.
+    private static final int INTERRUPT_CHECK_INTERVAL_MASK = (1 << 16) - 1;
+
+    private final int rowCount;
+    private final int columnCount;
+    private final int squareCount;
+    private final int bitsPerColumn;
+    private final int minScore;
+    private final int maxScore;
+
+    private final long bottomMask;
+    private final long boardMask;
+    private final long[] columnMasks;
+    //columns from center to edges.
+    private final int[] columnOrder;
+
+    //transposition table, indexed by a hash of the position key. A value of 0 means an empty entry.
+    private final long[] transpositionKeys;
+    private final byte[] transpositionValues;
+    private final int transpositionShift;
+
+    //move sorter for each number of pieces on the board, so that no memory is allocated during search.
+    private final long[][] sortedMoves;
+    private final int[][] sortedScores;
+
+    private long nodeCount = 0;
+    //the search stops when nodeCount exceeds this.
+    private long nodeLimit = Long.MAX_VALUE;
+    private boolean searchAborted = false;
+    private boolean lastSearchComplete = true;
+    //null if no opening book.
+    private ConnectFourOpeningBook openingBook = null;
+
+    /**
+     * Creates a solver for standard Connect Four boards (6 rows, 7 columns).
+     */
+    public ConnectFourSolver() {
+        this(ConnectFourBoardGameModel.STANDARD_ROW_COUNT, ConnectFourBoardGameModel.STANDARD_COLUMN_COUNT, DEFAULT_TRANSPOSITION_TABLE_SIZE_LOG2);
+    }
+
+    /**
+     * @param transpositionTableSizeLog2 the transposition table has 2^transpositionTableSizeLog2 entries of 9 bytes each.
+     */
+    public ConnectFourSolver(int rowCount, int columnCount, int transpositionTableSizeLog2) {
+        if (rowCount <= 0) throw new IllegalArgumentException("rowCount <= 0");
+        if (columnCount <= 0) throw new IllegalArgumentException("columnCount <= 0");
+        //position keys use up to one bit more than the board.
+        if (columnCount*(rowCount + 1) >= Long.SIZE) throw new IllegalArgumentException("columnCount*(rowCount + 1) >= " + Long.SIZE);
+        if (transpositionTableSizeLog2 < 1 || transpositionTableSizeLog2 > 30) throw new IllegalArgumentException("transpositionTableSizeLog2 must be between 1 and 30");
+
+        this.rowCount = rowCount;
+        this.columnCount = columnCount;
+        squareCount = rowCount*columnCount;
+        bitsPerColumn = rowCount + 1;
+        minScore = -squareCount/2 + 3;
+        maxScore = (squareCount + 1)/2 - 3;
+
+        long bottom = 0;
+        columnMasks = new long[columnCount];
+        for (int column = 0; column < columnCount; column++) {
+            bottom |= 1L << (column*bitsPerColumn);
+            columnMasks[column] = ((1L << rowCount) - 1) << (column*bitsPerColumn);
+        }
+        bottomMask = bottom;
+        boardMask = bottom*((1L << rowCount) - 1);
+
+        columnOrder = new int[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            //e.g. 3, 2, 4, 1, 5, 0, 6 for 7 columns.
+            columnOrder[i] = columnCount/2 + (1 - 2*(i%2))*(i + 1)/2;
+        }
+
+        transpositionKeys = new long[1 << transpositionTableSizeLog2];
+        transpositionValues = new byte[1 << transpositionTableSizeLog2];
+        transpositionShift = Long.SIZE - transpositionTableSizeLog2;
+
+        sortedMoves = new long[squareCount + 1][columnCount];
+        sortedScores = new int[squareCount + 1][columnCount];
+    }
+
+    /**
+     * Sets the opening book to use, or null for no opening book.
+     */
+    public void setOpeningBook(ConnectFourOpeningBook openingBook) {
+        if (openingBook != null && (openingBook.getRowCount() != rowCount || openingBook.getColumnCount() != columnCount)) {
+            throw new IllegalArgumentException("openingBook has a different board size than this solver");
+        }
+
+        this.openingBook = openingBook;
+    }
+
+    /**
+     * Returns the score of the current position of the given model, see the class description.
+     *
+     * @param weak if true, then only returns 1 (win), 0 (draw) or -1 (loss).
+     */
+    public int solve(ConnectFourBoardGameModel model, boolean weak) throws InterruptedException {
+        checkModel(model);
+        if (openingBook != null) {
+            Integer score = openingBook.getScore(model);
+            if (score != null) return weak ? Integer.signum(score) : score;
+        }
+
+        int playerIndex = model.getIndexOfCurrentPlayer();
+        long mask = model.getPieces(0) | model.getPieces(1);
+        int score = solve(model.getPieces(playerIndex), mask, model.getPieceCount(), weak);
+        //an immediate win and the bounds of the null-window searches are not limited to [-1, 1].
+        return weak ? Integer.signum(score) : score;
+    }
+
+    /**
+     * Returns the best move for the current player of the given model (encoded as in BoardGameModel, i.e. the square where the piece lands).
+     * Of the moves with the best score, the move closest to the center column is returned.
+     *
+     * @param weak if true, then any winning move is considered best, instead of the fastest winning move.
+     */
+    public int getBestMove(ConnectFourBoardGameModel model, boolean weak) throws InterruptedException {
+        return getBestMove(model, weak, Long.MAX_VALUE);
+    }
+
+    /**
+     * Same as getBestMove(model, weak), but stops searching after the given number of positions.
+     * In that case the best move that was found so far is returned if it wins or draws. Otherwise the best move that has not
+     * been solved yet according to the move ordering heuristic is returned. Use method isLastSearchComplete to check if the
+     * returned move was proven best.
+     *
+     * Positions early in the game (about the first 6 moves of a standard game) may need more than a minute to solve,
+     * unless they are in the opening book.
+     */
+    public int getBestMove(ConnectFourBoardGameModel model, boolean weak, long maxNodeCount) throws InterruptedException {
+        checkModel(model);
+        if (maxNodeCount <= 0) throw new IllegalArgumentException("maxNodeCount <= 0");
+
+        int playerIndex = model.getIndexOfCurrentPlayer();
+        long current = model.getPieces(playerIndex);
+        long mask = model.getPieces(0) | model.getPieces(1);
+        int pieceCount = model.getPieceCount();
+
+        long possible = getPossibleMoves(mask);
+        if (possible == 0) throw new IllegalStateException("No legal moves available.");
+        lastSearchComplete = true;
+        if (openingBook != null) {
+            //the best move of the book is also best for a weak solve.
+            int bookColumn = openingBook.getBestColumn(model);
+            if (bookColumn != -1) return toMove(possible & columnMasks[bookColumn]);
+        }
+        long winningMoves = getWinningSquares(current, mask) & possible;
+        if (winningMoves != 0) return toMove(Long.lowestOneBit(winningMoves));
+
+        //if all moves lose, then search all moves to find the slowest loss.
+        long candidates = getNonLosingMoves(current, mask);
+        if (candidates == 0) candidates = possible;
+        long[] moves = new long[columnCount];
+        int[] scores = new int[columnCount];
+        int moveCount = sortMoves(current, mask, candidates, moves, scores);
+
+        nodeLimit = maxNodeCount > Long.MAX_VALUE - nodeCount ? Long.MAX_VALUE : nodeCount + maxNodeCount;
+        long bestMove = 0;
+        int bestScore = Integer.MIN_VALUE;
+        long firstUnsolvedMove = 0;
+        try {
+            while (moveCount > 0) {
+                long move = moves[--moveCount];
+                //for the moves after the first only find out whether they are better than the best move so far, which is faster than solving them.
+                int score = -solve(current ^ mask, mask | move, pieceCount + 1, weak, bestScore == Integer.MIN_VALUE ? Integer.MAX_VALUE : -bestScore);
+                if (searchAborted) {
+                    firstUnsolvedMove = move;
+                    break;
+                }
+                if (score > bestScore) {
+                    bestScore = score;
+                    bestMove = move;
+                }
+                if (weak && score > 0) break;//any winning move will do.
+            }
+        } finally {
+            lastSearchComplete = !searchAborted;
+            searchAborted = false;
+            nodeLimit = Long.MAX_VALUE;
+        }
+
+        //a move that has not been solved is better than a move that is known to lose.
+        if (firstUnsolvedMove != 0 && bestScore < 0) return toMove(firstUnsolvedMove);
+        return toMove(bestMove);
+    }
+
+    /**
+     * Returns true if the move returned by the last call to getBestMove was proven best, i.e. the search was not stopped early.
+     */
+    public boolean isLastSearchComplete() {
+        return lastSearchComplete;
+    }
+
+    /**
+     * Converts the given bitboard with a single bit to a move encoded as in BoardGameModel.
+     */
+    private int toMove(long move) {
+        int bitIndex = Long.numberOfTrailingZeros(move);
+        int column = bitIndex/bitsPerColumn;
+        int row = rowCount - 1 - bitIndex%bitsPerColumn;
+        return row*columnCount + column;
+    }
+
+    /**
+     * Returns true if this solver can solve the positions of the given model, i.e. if the model has the same board size and uses 4 in a row.
+     */
+    public boolean supports(ConnectFourBoardGameModel model) {
+        return model.getRowCount() == rowCount && model.getColumnCount() == columnCount
+                && model.getWinningNumberOfPiecesInARow() == WINNING_NUMBER_OF_PIECES_IN_A_ROW;
+    }
+
+    private void checkModel(ConnectFourBoardGameModel model) {
+        if (model == null) throw new IllegalArgumentException("model == null");
+        if (!supports(model)) throw new IllegalArgumentException("model has a different board size than this solver or does not use " + WINNING_NUMBER_OF_PIECES_IN_A_ROW + " in a row");
+    }
+
+    /**
+     * @param current pieces of the player to move.
+     * @param mask all pieces.
+     */
+    private int solve(long current, long mask, int pieceCount, boolean weak) throws InterruptedException {
+        return solve(current, mask, pieceCount, weak, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Same as solve(current, mask, pieceCount, weak), but only searches for scores below the given limit.
+     *
+     * @return the score if it is below limit, otherwise a value >= limit.
+     */
+    private int solve(long current, long mask, int pieceCount, boolean weak, int limit) throws InterruptedException {
+        if ((getWinningSquares(current, mask) & getPossibleMoves(mask)) != 0) return (squareCount + 1 - pieceCount)/2;
+
+        int min = -(squareCount - pieceCount)/2;
+        int max = (squareCount + 1 - pieceCount)/2;
+        if (weak) {
+            min = -1;
+            max = 1;
+        }
+        if (max > limit) max = limit;
+        //search with null windows around a value in the middle of [min, max], but closer to 0 to find wins and losses faster.
+        while (min < max && !searchAborted) {
+            int medium = min + (max - min)/2;
+            if (medium <= 0 && min/2 < medium) {
+                medium = min/2;
+            } else if (medium >= 0 && max/2 > medium) {
+                medium = max/2;
+            }
+            int score = negamax(current, mask, pieceCount, medium, medium + 1);
+            if (score <= medium) {
+                max = score;
+            } else {
+                min = score;
+            }
+        }
+        return min;
+    }
+
+    /**
+     * Returns the score of the given position if it is within [alpha, beta], otherwise a bound for the score outside of that range.
+     * The player to move must not be able to win immediately.
+     */
+    private int negamax(long current, long mask, int pieceCount, int alpha, int beta) throws InterruptedException {
+        nodeCount++;
+        if ((nodeCount & INTERRUPT_CHECK_INTERVAL_MASK) == 0 && Thread.interrupted()) throw new InterruptedException();
+        if (nodeCount > nodeLimit) {
+            //the returned value is not used, see below.
+            searchAborted = true;
+            return 0;
+        }
+
+        long possible = getNonLosingMoves(current, mask);
+        if (possible == 0) return -(squareCount - pieceCount)/2;//if all moves lose.
+        if (pieceCount >= squareCount - 2) return 0;//if draw, since no one can win with the last two pieces.
+
+        //the opponent cannot win with their next piece, so this is a lower bound.
+        int min = -(squareCount - 2 - pieceCount)/2;
+        if (alpha < min) {
+            alpha = min;
+            if (alpha >= beta) return alpha;
+        }
+        //this player cannot win with their next piece, so this is an upper bound.
+        int max = (squareCount - 1 - pieceCount)/2;
+        if (beta > max) {
+            beta = max;
+            if (alpha >= beta) return beta;
+        }
+
+        long key = current + mask;
+        int index = (int) ((key*0x9E3779B97F4A7C15L) >>> transpositionShift);
+        if (transpositionKeys[index] == key) {
+            int value = transpositionValues[index] & 0xFF;
+            if (value > maxScore - minScore + 1) {//if lower bound.
+                min = value + 2*minScore - maxScore - 2;
+                if (alpha < min) {
+                    alpha = min;
+                    if (alpha >= beta) return alpha;
+                }
+            } else if (value != 0) {//if upper bound.
+                max = value + minScore - 1;
+                if (beta > max) {
+                    beta = max;
+                    if (alpha >= beta) return beta;
+                }
+            }
+        }
+
+        long[] moves = sortedMoves[pieceCount];
+        int moveCount = sortMoves(current, mask, possible, moves, sortedScores[pieceCount]);
+        while (moveCount > 0) {
+            long move = moves[--moveCount];
+            int score = -negamax(current ^ mask, mask | move, pieceCount + 1, -beta, -alpha);
+            //do not store incomplete results.
+            if (searchAborted) return 0;
+            if (score >= beta) {
+                store(index, key, score + maxScore - 2*minScore + 2);//lower bound.
+                return score;
+            }
+            if (score > alpha) alpha = score;
+        }
+
+        store(index, key, alpha - minScore + 1);//upper bound.
+        return alpha;
+    }
+
+    /**
+     * Writes the given moves to the given arrays, sorted by the number of winning squares they create (best move last).
+     * Each move is added with insertion sort, so that for equal scores the most central column comes last.
+     *
+     * @return number of moves.
+     */
+    private int sortMoves(long current, long mask, long possible, long[] moves, int[] scores) {
+        int moveCount = 0;
+        for (int i = columnCount - 1; i >= 0; i--) {
+            long move = possible & columnMasks[columnOrder[i]];
+            if (move == 0) continue;
+
+            int score = Long.bitCount(getWinningSquares(current | move, mask));
+            int position = moveCount++;
+            for (; position > 0 && scores[position - 1] > score; position--) {
+                moves[position] = moves[position - 1];
+                scores[position] = scores[position - 1];
+            }
+            moves[position] = move;
+            scores[position] = score;
+        }
+        return moveCount;
+    }
+
+    private void store(int index, long key, int value) {
+        transpositionKeys[index] = key;
+        transpositionValues[index] = (byte) value;
+    }
+
+    /**
+     * Returns a bitboard with one bit for the lowest empty square of each column that is not full.
+     */
+    private long getPossibleMoves(long mask) {
+        return (mask + bottomMask) & boardMask;
+    }
+
+    /**
+     * Returns the possible moves of the player to move that do not let the opponent win with their next move.
+     */
+    private long getNonLosingMoves(long current, long mask) {
+        long possible = getPossibleMoves(mask);
+        long opponentWinningSquares = getWinningSquares(current ^ mask, mask);
+        long forcedMoves = possible & opponentWinningSquares;
+        if (forcedMoves != 0) {
+            if ((forcedMoves & (forcedMoves - 1)) != 0) return 0;//if the opponent has two winning moves, then this player loses.
+            possible = forcedMoves;
+        }
+        //do not play below a winning square of the opponent.
+        return possible & ~(opponentWinningSquares >>> 1);
+    }
+
+    /**
+     * Returns a bitboard with the empty squares where the given pieces would complete 4 in a row.
+     */
+    private long getWinningSquares(long pieces, long mask) {
+        //vertical.
+        long result = (pieces << 1) & (pieces << 2) & (pieces << 3);
+        //horizontal and both diagonals.
+        result |= getWinningSquares(pieces, bitsPerColumn);
+        result |= getWinningSquares(pieces, bitsPerColumn - 1);
+        result |= getWinningSquares(pieces, bitsPerColumn + 1);
+        return result & (boardMask ^ mask);
+    }
+
+    private static long getWinningSquares(long pieces, int shift) {
+        long result = 0;
+        long pair = (pieces << shift) & (pieces << 2*shift);
+        result |= pair & (pieces << 3*shift);
+        result |= pair & (pieces >>> shift);
+        pair = (pieces >>> shift) & (pieces >>> 2*shift);
+        result |= pair & (pieces << shift);
+        result |= pair & (pieces >>> 3*shift);
+        return result;
+    }
+
+    /**
+     * Returns the number of positions searched since this solver was created or since the last call to resetNodeCount.
+     */
+    public long getNodeCount() {
+        return nodeCount;
+    }
+
+    public void resetNodeCount() {
+        nodeCount = 0;
+    }
+
+    /**
+     * Clears the transposition table.
+     */
+    public void clear() {
+        for (int index = 0; index < transpositionKeys.length; index++) {
+            transpositionKeys[index] = 0;
+            transpositionValues[index] = 0;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+/*
+ * Copyright (c) 2018 A.C. Kockx, All Rights Reserved.
+ */
+package boardgame.controller.search;
+
+import boardgame.model.BoardGameModel;
+
+/**
+ * Interface to be implemented by classes that estimate how good a position is, for positions where a search stops before the end of the game.
+ *
+ * @author A.C. Kockx
+ */
+public interface Evaluator {
+
+    /**
+     * Returns the evaluation of the current position of the given model from the point of view of the player that has to make the next move.
+     * Higher is better for that player, 0 is even. This is only called for models for which the game is not over.
+     */
+    int evaluate(BoardGameModel model);
+}
@@ -0,0 +1,21 @@
+/*
+ * Copyright (c) 2018 A.C. Kockx, All Rights Reserved.
+ */
+package boardgame.controller.search;
+
+import boardgame.model.BoardGameModel;
+
+/**
+ * Interface to be implemented by classes that create an Evaluator for a given model.
+ * This is needed for searches that use multiple copies of a model, e.g. one for each thread,
+ * when the evaluator belongs to a single model (see e.g. MnkPatternEvaluator).
+ *
+ * @author A.C. Kockx
+ */
+public interface EvaluatorFactory {
+
+    /**
+     * Returns a new Evaluator for the given model, or null if there is no evaluator for this type of model.
+     */
+    Evaluator createEvaluator(BoardGameModel model);
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2018 A.C. Kockx, All Rights Reserved.
+ */
+package boardgame.controller.search;
+
+import boardgame.model.BoardGameModel;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Parallel iterative deepening alpha-beta search (Lazy SMP).
+ *
+ * The calling thread (main thread) and a number of helper threads all search the same root position, each with its own
+ * AlphaBetaSearch on its own copy of the model. They do not communicate, except through a shared TranspositionTable,
+ * which is lock-free. Every thread benefits from the positions that the other threads have already searched, so the main thread
+ * reaches each depth sooner. So that the threads do not all search the same positions at the same time, the main thread searches
+ * every depth and each helper skips depths in its own pattern during the whole search (see DEPTH_SKIP_SIZES), e.g. the first helper
+ * searches the even depths and the second helper the odd depths. When the main thread finishes, the helpers are stopped and
+ * their results are ignored, except for what they stored in the transposition table.
+ *
+ * The helper threads are daemon threads that are kept between searches.
+ * Note: this class is not thread-safe, only one search can run at the same time.
+ *
+ * @author A.C. Kockx
+ */
+public final class LazySmpSearch {
+    /**
+     * For helper i, the depths are grouped in runs of DEPTH_SKIP_SIZES[i] depths, shifted by DEPTH_SKIP_PHASES[i],
+     * and every other run is skipped, see AlphaBetaSearch.iterativeDeepeningSearch. After 20 helpers the patterns repeat.
+     */
+    private static final int[] DEPTH_SKIP_SIZES = new int[]{1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 3, 3, 4, 4, 4, 4, 4, 4, 4, 4};
+    private static final int[] DEPTH_SKIP_PHASES = new int[]{0, 1, 0, 1, 2, 3, 0, 1, 2, 3, 4, 5, 0, 1, 2, 3, 4, 5, 6, 7};
+
+    private final TranspositionTable transpositionTable;
+    private final EvaluatorFactory evaluatorFactory;
+    private final int threadCount;
+    //null if there are no helper threads.
+    private final ExecutorService helperExecutor;
+
+    //to stop the helper threads of the current search.
+    private final Object helperLock = new Object();
+    private final Thread[] helperThreads;
+    private boolean helpersStopped = false;
+
+    //results of the last search.
+    private long nodeCount = 0;
+    private int bestMove = -1;
+    private int bestScore = 0;
+    private int completedDepth = 0;
+
+    /**
+     * @param evaluatorFactory creates an evaluator for the copy of the model of each thread. Can be null, see AlphaBetaSearch.
+     * @param threadCount total number of threads, including the calling thread.
+     */
+    public LazySmpSearch(TranspositionTable transpositionTable, EvaluatorFactory evaluatorFactory, int threadCount) {
+        if (transpositionTable == null) throw new IllegalArgumentException("transpositionTable == null");
+        if (threadCount <= 0) throw new IllegalArgumentException("threadCount <= 0");
+
+        this.transpositionTable = transpositionTable;
+        this.evaluatorFactory = evaluatorFactory;
+        this.threadCount = threadCount;
+        helperThreads = new Thread[threadCount - 1];
+        helperExecutor = threadCount == 1 ? null : Executors.newFixedThreadPool(threadCount - 1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, LazySmpSearch.class.getSimpleName() + " helper");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Searches the current position of the given model with all threads, see AlphaBetaSearch.iterativeDeepeningSearch,
+     * and returns the score of the deepest search that was completed by the main thread.
+     * After this, the best move is available from method getBestMove. The given model is not changed.
+     *
+     * @param timeBudgetInNanoseconds maximum time to search, or Long.MAX_VALUE for no limit.
+     * @throws InterruptedException if the current thread is interrupted during the search.
+     */
+    public int search(BoardGameModel model, final int maxDepth, long timeBudgetInNanoseconds) throws InterruptedException {
+        if (model == null) throw new IllegalArgumentException("model == null");
+
+        transpositionTable.newSearch();
+        synchronized (helperLock) {
+            helpersStopped = false;
+        }
+
+        //start helpers.
+        int helperCount = threadCount - 1;
+        final CountDownLatch helpersFinished = new CountDownLatch(helperCount);
+        AlphaBetaSearch[] helperSearches = new AlphaBetaSearch[helperCount];
+        for (int n = 0; n < helperCount; n++) {
+            final int helperIndex = n;
+            final BoardGameModel helperModel = model.fork();
+            final AlphaBetaSearch helperSearch = new AlphaBetaSearch(transpositionTable, createEvaluator(helperModel));
+            helperSearches[n] = helperSearch;
+            helperExecutor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        runHelper(helperIndex, helperSearch, helperModel, maxDepth);
+                    } finally {
+                        helpersFinished.countDown();
+                    }
+                }
+            });
+        }
+
+        //main search.
+        BoardGameModel mainModel = model.fork();
+        AlphaBetaSearch mainSearch = new AlphaBetaSearch(transpositionTable, createEvaluator(mainModel));
+        try {
+            bestScore = mainSearch.iterativeDeepeningSearch(mainModel, maxDepth, timeBudgetInNanoseconds);
+            bestMove = mainSearch.getBestMove();
+            completedDepth = mainSearch.getCompletedDepth();
+        } finally {
+            stopHelpers();
+            //wait until the helpers do not use the transposition table anymore, so that the next search can start cleanly.
+            //this takes at most a few milliseconds, so also wait if interrupted.
+            awaitUninterruptibly(helpersFinished);
+        }
+
+        nodeCount = mainSearch.getNodeCount();
+        for (AlphaBetaSearch helperSearch : helperSearches) {
+            nodeCount += helperSearch.getNodeCount();
+        }
+        return bestScore;
+    }
+
+    private void runHelper(int helperIndex, AlphaBetaSearch helperSearch, BoardGameModel helperModel, int maxDepth) {
+        synchronized (helperLock) {
+            //if the main search already finished before this helper started.
+            if (helpersStopped) return;
+            helperThreads[helperIndex] = Thread.currentThread();
+        }
+
+        try {
+            int pattern = helperIndex%DEPTH_SKIP_SIZES.length;
+            helperSearch.iterativeDeepeningSearch(helperModel, maxDepth, Long.MAX_VALUE, DEPTH_SKIP_SIZES[pattern], DEPTH_SKIP_PHASES[pattern]);
+        } catch (InterruptedException e) {
+            //stopped by main thread.
+        } finally {
+            synchronized (helperLock) {
+                helperThreads[helperIndex] = null;
+            }
+            //clear interrupt that may have arrived after the search finished, so that the pooled thread can be reused.
+            Thread.interrupted();
+        }
+    }
+
+    private void stopHelpers() {
+        synchronized (helperLock) {
+            helpersStopped = true;
+            for (Thread helperThread : helperThreads) {
+                if (helperThread != null) helperThread.interrupt();
+            }
+        }
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        //restore interrupt status for the caller.
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    private Evaluator createEvaluator(BoardGameModel model) {
+        return evaluatorFactory == null ? null : evaluatorFactory.createEvaluator(model);
+    }
+
+    /**
+     * Returns the best move (row*columnCount + column) that was found by the last call to method search.
+     */
+    public int getBestMove() {
+        if (bestMove == -1) throw new IllegalStateException("bestMove not initialized. First call search().");
+        return bestMove;
+    }
+
+    public int getBestScore() {
+        return bestScore;
+    }
+
+    /**
+     * Returns the depth of the deepest search that was completed by the main thread during the last call to method search.
+     */
+    public int getCompletedDepth() {
+        return completedDepth;
+    }
+
+    /**
+     * Returns the number of positions searched by all threads together during the last call to method search.
+     */
+    public long getNodeCount() {
+        return nodeCount;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+}
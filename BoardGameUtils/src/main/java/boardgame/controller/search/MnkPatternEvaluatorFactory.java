@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2018 A.C. Kockx, All Rights Reserved.
+ */
+package boardgame.controller.search;
+
+import boardgame.model.BoardGameModel;
+import boardgame.model.MnkBoardGameModel;
+import boardgame.model.MnkPatternEvaluator;
+
+/**
+ * Creates evaluators that score m,n,k-game positions with an MnkPatternEvaluator with default pattern scores.
+ * For models that are not an MnkBoardGameModel no evaluator is created.
+ *
+ * @author A.C. Kockx
+ */
+public final class MnkPatternEvaluatorFactory implements EvaluatorFactory {
+
+    /**
+     * Attaches a new MnkPatternEvaluator to the given model, so the model should not be used for anything else than the search.
+     */
+    @Override
+    public Evaluator createEvaluator(BoardGameModel model) {
+        if (!(model instanceof MnkBoardGameModel)) return null;
+
+        final MnkPatternEvaluator patternEvaluator = new MnkPatternEvaluator((MnkBoardGameModel) model);
+        return new Evaluator() {
+            @Override
+            public int evaluate(BoardGameModel model) {
+                return patternEvaluator.evaluate(model.getIndexOfCurrentPlayer());
+            }
+        };
+    }
+}
@@ -0,0 +1,404 @@
+/*
+ * Copyright (c) 2018 A.C. Kockx, All Rights Reserved.
+ */
+package boardgame.controller.search;
+
+import boardgame.model.BoardGameModel;
+import boardgame.model.MnkBoardGameModel;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Monte Carlo tree search (MCTS) for two-player board games, with UCT selection and random playouts,
+ * for boards that are too large for a full-width search.
+ *
+ * Each playout descends the tree from the root by choosing the child with the highest UCT value
+ * (average reward + explorationConstant*sqrt(ln(parentVisits)/childVisits)), expands the first leaf that it reaches,
+ * plays random moves from there until the game is over and adds the result to all nodes on the path.
+ * The reward of a node is counted for the player that made the move into that node: 2 for a win, 1 for a draw, 0 for a loss.
+ *
+ * Tree parallelization: multiple threads do playouts at the same time in the same tree, each on its own copy of the model.
+ * A thread adds a visit to each node on its path already while descending (virtual loss), so that other threads see
+ * a lower average reward for that path and descend elsewhere until the reward is added.
+ * All node statistics are updated with atomic operations, without locks.
+ *
+ * The nodes are stored in a pool of primitive arrays with a fixed capacity, so that a tree with tens of millions of nodes
+ * does not create any objects. The children of a node are stored next to each other. When the pool is full,
+ * the tree is not expanded anymore, but playouts continue from the existing leaves.
+ * Note: this class is not thread-safe, only one search can run at the same time.
+ *
+ * @author A.C. Kockx
+ */
+public final class MonteCarloTreeSearch {
+    public static final double DEFAULT_EXPLORATION_CONSTANT = Math.sqrt(2);
+    //check the deadline and interrupt status once every this many playouts.
+    private static final int CHECK_INTERVAL_MASK = (1 << 6) - 1;
+    private static final int ROOT = 0;
+    //values of nodeFirstChildren for nodes without children.
+    private static final int UNEXPANDED = -1;
+    private static final int EXPANDING = -2;
+
+    private final int capacity;
+    private final double explorationConstant;
+    private final int threadCount;
+    //null if there are no helper threads.
+    private final ExecutorService helperExecutor;
+
+    //node pool. For each node: the move that leads to that node, the index of its first child and its number of children.
+    private final int[] nodeMoves;
+    private final AtomicIntegerArray nodeFirstChildren;
+    private final int[] nodeChildCounts;
+    //number of playouts through each node, including playouts that are still running (virtual loss).
+    private final AtomicIntegerArray nodeVisits;
+    //sum of the rewards of the playouts through each node, for the player that made the move into that node.
+    private final AtomicIntegerArray nodeRewards;
+    private final AtomicInteger nodeCount = new AtomicInteger();
+
+    private final AtomicLong playoutCount = new AtomicLong();
+    private volatile boolean stopped = false;
+
+    //results of the last search.
+    private int rowCount = 0;
+    private int columnCount = 0;
+    private int bestMove = -1;
+
+    /**
+     * @param capacity maximum number of nodes in the tree. Each node uses 20 bytes.
+     * @param threadCount total number of threads that do playouts, including the calling thread.
+     */
+    public MonteCarloTreeSearch(int capacity, double explorationConstant, int threadCount) {
+        if (capacity <= 1) throw new IllegalArgumentException("capacity <= 1");
+        if (explorationConstant < 0) throw new IllegalArgumentException("explorationConstant < 0");
+        if (threadCount <= 0) throw new IllegalArgumentException("threadCount <= 0");
+
+        this.capacity = capacity;
+        this.explorationConstant = explorationConstant;
+        this.threadCount = threadCount;
+        helperExecutor = threadCount == 1 ? null : Executors.newFixedThreadPool(threadCount - 1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, MonteCarloTreeSearch.class.getSimpleName() + " helper");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        nodeMoves = new int[capacity];
+        nodeFirstChildren = new AtomicIntegerArray(capacity);
+        nodeChildCounts = new int[capacity];
+        nodeVisits = new AtomicIntegerArray(capacity);
+        nodeRewards = new AtomicIntegerArray(capacity);
+    }
+
+    /**
+     * Builds a new tree for the current position of the given model, until the time budget is used up or the given number
+     * of playouts has been done, whichever comes first. Returns the best move, i.e. the move of the root child with the most visits.
+     * After this, the visit shares of all moves are available from method getMoveProbabilities. The given model is not changed.
+     *
+     * @param timeBudgetInNanoseconds maximum time to search, or Long.MAX_VALUE for no limit.
+     * @param maxPlayoutCount maximum number of playouts, or Long.MAX_VALUE for no limit.
+     * @throws InterruptedException if the current thread is interrupted during the search.
+     */
+    public int search(BoardGameModel model, long timeBudgetInNanoseconds, long maxPlayoutCount) throws InterruptedException {
+        if (model == null) throw new IllegalArgumentException("model == null");
+        if (model.getPlayerNames().length != 2) throw new IllegalArgumentException("playerNames.length != 2");
+        if (model.isGameOver()) throw new IllegalArgumentException("Game is already over.");
+        if (timeBudgetInNanoseconds <= 0) throw new IllegalArgumentException("timeBudgetInNanoseconds <= 0");
+        if (maxPlayoutCount <= 0) throw new IllegalArgumentException("maxPlayoutCount <= 0");
+        if (model.getRowCount()*model.getColumnCount() >= capacity) throw new IllegalArgumentException("capacity must be larger than the number of squares");
+
+        rowCount = model.getRowCount();
+        columnCount = model.getColumnCount();
+        bestMove = -1;
+
+        //reset tree.
+        nodeCount.set(1);
+        nodeMoves[ROOT] = -1;
+        nodeChildCounts[ROOT] = 0;
+        nodeFirstChildren.set(ROOT, UNEXPANDED);
+        nodeVisits.set(ROOT, 0);
+        nodeRewards.set(ROOT, 0);
+        playoutCount.set(0);
+        stopped = false;
+
+        final long startTime = System.nanoTime();
+        final long timeBudget = timeBudgetInNanoseconds;
+        //the visit counts of the nodes must not overflow.
+        final long playoutLimit = Math.min(maxPlayoutCount, Integer.MAX_VALUE/2);
+
+        //start helpers.
+        int helperCount = threadCount - 1;
+        final CountDownLatch helpersFinished = new CountDownLatch(helperCount);
+        for (int n = 0; n < helperCount; n++) {
+            final BoardGameModel helperModel = model.fork();
+            final Random random = new Random(System.nanoTime() + n);
+            helperExecutor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        doPlayouts(helperModel, random, startTime, timeBudget, playoutLimit, false);
+                    } catch (InterruptedException e) {
+                        //cannot happen, since helpers do not check the interrupt status.
+                    } finally {
+                        helpersFinished.countDown();
+                    }
+                }
+            });
+        }
+
+        //the calling thread also does playouts.
+        try {
+            doPlayouts(model.fork(), new Random(System.nanoTime()), startTime, timeBudget, playoutLimit, true);
+        } finally {
+            stopped = true;
+            //wait until the helpers have finished their last playout, so that the tree is complete.
+            awaitUninterruptibly(helpersFinished);
+        }
+
+        bestMove = findMostVisitedChild();
+        return bestMove;
+    }
+
+    private void doPlayouts(BoardGameModel model, Random random, long startTime, long timeBudgetInNanoseconds, long maxPlayoutCount,
+                            boolean checkInterrupt) throws InterruptedException {
+        int squareCount = model.getRowCount()*model.getColumnCount();
+        //a path can contain at most one node for each square, plus the root.
+        int[] path = new int[squareCount + 1];
+        int[] pathPlayers = new int[squareCount + 1];
+        int[] moves = new int[squareCount];
+
+        long playout = 0;
+        while (!stopped) {
+            doPlayout(model, random, path, pathPlayers, moves);
+            playout++;
+
+            if (playoutCount.incrementAndGet() >= maxPlayoutCount) stopped = true;
+            if ((playout & CHECK_INTERVAL_MASK) == 0) {
+                if (timeBudgetInNanoseconds != Long.MAX_VALUE && System.nanoTime() - startTime >= timeBudgetInNanoseconds) stopped = true;
+                if (checkInterrupt && Thread.interrupted()) {
+                    stopped = true;
+                    throw new InterruptedException();
+                }
+            }
+        }
+    }
+
+    /**
+     * Does one playout: selection, expansion, random moves until the end of the game and backpropagation.
+     * The model is left in the same state as before.
+     */
+    private void doPlayout(BoardGameModel model, Random random, int[] path, int[] pathPlayers, int[] moves) {
+        //selection and expansion.
+        int pathLength = 0;
+        int node = ROOT;
+        path[pathLength] = ROOT;
+        pathPlayers[pathLength] = -1;//not used.
+        pathLength++;
+        nodeVisits.incrementAndGet(ROOT);
+        boolean expanded = false;
+        while (!model.isGameOver() && !expanded) {
+            int firstChild = nodeFirstChildren.get(node);
+            if (firstChild == UNEXPANDED && nodeFirstChildren.compareAndSet(node, UNEXPANDED, EXPANDING)) {
+                firstChild = expand(node, model, moves);
+                expanded = true;
+            }
+            //if leaf, or another thread is expanding this node, or the pool is full.
+            if (firstChild < 0) break;
+
+            int child = selectChild(node, firstChild, nodeChildCounts[node]);
+            //virtual loss: count the visit now, the reward is added after the playout.
+            nodeVisits.incrementAndGet(child);
+            path[pathLength] = child;
+            pathPlayers[pathLength] = model.getIndexOfCurrentPlayer();
+            pathLength++;
+            model.tryMove(nodeMoves[child]);
+            node = child;
+        }
+
+        //random moves until the end of the game.
+        int randomMoveCount = playRandomMoves(model, random, moves);
+        int indexOfWinner = model.getIndexOfWinner();
+        for (int n = 0; n < randomMoveCount; n++) {
+            model.undoMove();
+        }
+
+        //backpropagation.
+        for (int n = pathLength - 1; n > 0; n--) {
+            int reward = indexOfWinner == -1 ? 1 : (indexOfWinner == pathPlayers[n] ? 2 : 0);
+            if (reward != 0) nodeRewards.addAndGet(path[n], reward);
+            model.undoMove();
+        }
+    }
+
+    /**
+     * Adds the children of the given node to the pool. The calling thread must have set the node to EXPANDING.
+     * Returns the index of the first child, or UNEXPANDED if the pool is full.
+     */
+    private int expand(int node, BoardGameModel model, int[] moves) {
+        int moveCount = model.getLegalMoves(moves);
+        //nodeCount only increases, so that no two threads get the same nodes. It can end up above capacity.
+        int firstChild = nodeCount.get() + moveCount > capacity ? capacity : nodeCount.getAndAdd(moveCount);
+        if (firstChild + moveCount > capacity) {
+            //pool is full, leave this node as a leaf. Other threads will try again, which is cheap.
+            nodeFirstChildren.set(node, UNEXPANDED);
+            return UNEXPANDED;
+        }
+
+        for (int n = 0; n < moveCount; n++) {
+            int child = firstChild + n;
+            nodeMoves[child] = moves[n];
+            nodeChildCounts[child] = 0;
+            nodeVisits.set(child, 0);
+            nodeRewards.set(child, 0);
+            nodeFirstChildren.set(child, UNEXPANDED);
+        }
+        nodeChildCounts[node] = moveCount;
+        //publish children to other threads.
+        nodeFirstChildren.set(node, firstChild);
+        return firstChild;
+    }
+
+    /**
+     * Returns the child with the highest UCT value. Children without visits come first.
+     */
+    private int selectChild(int node, int firstChild, int childCount) {
+        double logParentVisits = Math.log(Math.max(nodeVisits.get(node), 1));
+        int bestChild = firstChild;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        for (int child = firstChild; child < firstChild + childCount; child++) {
+            int visits = nodeVisits.get(child);
+            if (visits == 0) return child;
+
+            double value = nodeRewards.get(child)/(2.0*visits) + explorationConstant*Math.sqrt(logParentVisits/visits);
+            if (value > bestValue) {
+                bestValue = value;
+                bestChild = child;
+            }
+        }
+        return bestChild;
+    }
+
+    /**
+     * Makes random legal moves until the game is over and returns the number of moves made.
+     */
+    private static int playRandomMoves(BoardGameModel model, Random random, int[] moves) {
+        if (model.isGameOver()) return 0;
+
+        int moveCount = 0;
+        if (model instanceof MnkBoardGameModel) {
+            //in an m,n,k-game the legal moves are the empty squares, so only generate them once.
+            int legalMoveCount = model.getLegalMoves(moves);
+            while (!model.isGameOver()) {
+                int index = random.nextInt(legalMoveCount);
+                int move = moves[index];
+                moves[index] = moves[--legalMoveCount];
+                model.tryMove(move);
+                moveCount++;
+            }
+        } else {
+            while (!model.isGameOver()) {
+                int legalMoveCount = model.getLegalMoves(moves);
+                model.tryMove(moves[random.nextInt(legalMoveCount)]);
+                moveCount++;
+            }
+        }
+        return moveCount;
+    }
+
+    private int findMostVisitedChild() {
+        int firstChild = nodeFirstChildren.get(ROOT);
+        if (firstChild < 0) throw new IllegalStateException("Root not expanded.");
+
+        int bestChild = firstChild;
+        for (int child = firstChild + 1; child < firstChild + nodeChildCounts[ROOT]; child++) {
+            if (nodeVisits.get(child) > nodeVisits.get(bestChild)) bestChild = child;
+        }
+        return nodeMoves[bestChild];
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        //restore interrupt status for the caller.
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Returns the best move (row*columnCount + column) that was found by the last call to method search.
+     */
+    public int getBestMove() {
+        if (bestMove == -1) throw new IllegalStateException("bestMove not initialized. First call search().");
+        return bestMove;
+    }
+
+    /**
+     * Returns for each square the share of the playouts of the last search that started with a move to that square.
+     * The returned array has dimensions [rowCount][columnCount] and its values add up to 1.
+     */
+    public float[][] getMoveProbabilities() {
+        if (bestMove == -1) throw new IllegalStateException("bestMove not initialized. First call search().");
+
+        float[][] probabilities = new float[rowCount][columnCount];
+        int firstChild = nodeFirstChildren.get(ROOT);
+        int childCount = nodeChildCounts[ROOT];
+        long totalVisits = 0;
+        for (int child = firstChild; child < firstChild + childCount; child++) {
+            totalVisits += nodeVisits.get(child);
+        }
+        if (totalVisits == 0) return probabilities;
+
+        for (int child = firstChild; child < firstChild + childCount; child++) {
+            int move = nodeMoves[child];
+            probabilities[move/columnCount][move%columnCount] = (float) (nodeVisits.get(child)/(double) totalVisits);
+        }
+        return probabilities;
+    }
+
+    /**
+     * Returns the average reward of the best move of the last search for the player to move, between 0 (loss) and 1 (win).
+     */
+    public double getBestMoveValue() {
+        if (bestMove == -1) throw new IllegalStateException("bestMove not initialized. First call search().");
+
+        int firstChild = nodeFirstChildren.get(ROOT);
+        for (int child = firstChild; child < firstChild + nodeChildCounts[ROOT]; child++) {
+            if (nodeMoves[child] == bestMove) return nodeRewards.get(child)/(2.0*Math.max(nodeVisits.get(child), 1));
+        }
+        throw new IllegalStateException("bestMove not found.");
+    }
+
+    /**
+     * Returns the number of playouts of the last search, by all threads together.
+     */
+    public long getPlayoutCount() {
+        return playoutCount.get();
+    }
+
+    /**
+     * Returns the number of nodes in the tree of the last search.
+     */
+    public int getNodeCount() {
+        return Math.min(nodeCount.get(), capacity);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+}
@@ -0,0 +1,519 @@
+/*
+ * Copyright (c) 2018 A.C. Kockx, All Rights Reserved.
+ */
+package boardgame.controller.search;
+
+import boardgame.model.BoardGameModel;
+import boardgame.model.MnkBoardGameModel;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Solves positions of two-player board games with depth-first proof-number search (df-pn, see A. Nagai, 2002),
+ * i.e. calculates the game-theoretic value of a position (win, draw or loss for the player to move) and a move that achieves it.
+ *
+ * Proof-number search always expands the position that is cheapest to prove or disprove, so it is much faster than
+ * alpha-beta on the unbalanced trees of m,n,k-games, where most lines end quickly with a forced win.
+ * A proof only answers a yes/no question, so the value is found with at most two proofs: first whether the player to move
+ * can win, and if not, whether the player to move can avoid a loss.
+ *
+ * Proof and disproof numbers are stored in a hash table with a fixed number of entries (a power of two) in buckets of BUCKET_SIZE entries.
+ * The table never grows: when a bucket is full, the entry that took the least work to calculate is replaced.
+ * For an MnkBoardGameModel, positions that are symmetric to each other share one entry, only one of the moves that lead to
+ * symmetric positions is searched, and immediate wins and threats are recognized without searching (see AlphaBetaSearch).
+ *
+ * If a checkpoint file is given, then the table is saved to that file at regular intervals, when the search is interrupted
+ * and when a solve is finished. A solve of the same game with the same file continues from the saved table,
+ * so a long proof can be stopped and continued later, e.g. after a restart.
+ * Note: this class is not thread-safe.
+ *
+ * @author A.C. Kockx
+ */
+public final class ProofNumberSearch {
+    //values.
+    public static final int WIN = 1;
+    public static final int DRAW = 0;
+    public static final int LOSS = -1;
+
+    //number of entries that a position can be stored in. Must be a power of two.
+    public static final int BUCKET_SIZE = 4;
+    //bytes per entry: key (8), phi (4), delta (4), work (4).
+    public static final int BYTES_PER_ENTRY = 20;
+
+    private static final int INFINITY = Integer.MAX_VALUE;
+    //largest proof or disproof number of a position that is not proven or disproven yet.
+    private static final int MAX_FINITE = INFINITY - 1;
+    //check for interruption and checkpoint once every this many nodes.
+    private static final int CHECK_INTERVAL_MASK = (1 << 10) - 1;
+    //the 1 + epsilon trick with epsilon = 1/4, see method mid.
+    private static final int EPSILON_DIVISOR = 4;
+    private static final int CHECKPOINT_MAGIC = 0x4446504E;//"DFPN"
+    private static final int CHECKPOINT_VERSION = 1;
+
+    //goals of the attacker (the player to move in the root).
+    private static final int GOAL_WIN = 0;
+    private static final int GOAL_NOT_LOSE = 1;
+    //mixed into the hashes, so that positions for different goals and attackers get different entries.
+    private static final long[] GOAL_KEYS = new long[]{0x9E3779B97F4A7C15L, 0xBF58476D1CE4E5B9L, 0x94D049BB133111EBL, 0xD6E8FEB86659FD93L};
+
+    //hash table. For each entry the key, the numbers phi and delta of the player to move in that position
+    //(phi is the proof number if that player is the attacker, otherwise the disproof number, and delta the other one)
+    //and the number of nodes searched to calculate them. Work 0 means an empty entry.
+    private final long[] keys;
+    private final int[] phis;
+    private final int[] deltas;
+    private final int[] works;
+    private final int bucketMask;
+
+    private final File checkpointFile;
+    private final long checkpointIntervalInNanoseconds;
+    private long lastCheckpointTime = 0;
+    //failure of the last checkpoint, or null if it was saved.
+    private volatile IOException checkpointException = null;
+
+    //state of the current solve.
+    private MnkBoardGameModel mnkModel = null;
+    private String gameDescription = null;
+    private int goal = GOAL_WIN;
+    private int attackerIndex = 0;
+    private int[][] moves = new int[0][];
+    private long[][] childKeys = new long[0][];
+    private int[][] childPhis = new int[0][];
+    private int[][] childDeltas = new int[0][];
+    private final int[] winningSquares = new int[2];
+    //set by method getTerminalResult.
+    private int forcedMove = -1;
+    //numbers of the position that was searched by the last call to method mid.
+    private int resultPhi = 1;
+    private int resultDelta = 1;
+    //result of the last call to method lookup.
+    private int lookupPhi = 1;
+    private int lookupDelta = 1;
+
+    private long nodeCount = 0;
+    private int bestMove = -1;
+
+    /**
+     * Creates a solver without checkpoints.
+     *
+     * @param memoryBudgetInBytes maximum memory that the hash table may use.
+     */
+    public ProofNumberSearch(long memoryBudgetInBytes) {
+        this(memoryBudgetInBytes, null, 0);
+    }
+
+    /**
+     * @param memoryBudgetInBytes maximum memory that the hash table may use.
+     * @param checkpointFile file to save progress to, or null for no checkpoints. If the file exists, it is loaded at the start of a solve.
+     * @param checkpointIntervalInMilliseconds time between checkpoints.
+     */
+    public ProofNumberSearch(long memoryBudgetInBytes, File checkpointFile, long checkpointIntervalInMilliseconds) {
+        if (memoryBudgetInBytes < BUCKET_SIZE*BYTES_PER_ENTRY) throw new IllegalArgumentException("memoryBudgetInBytes < " + BUCKET_SIZE*BYTES_PER_ENTRY);
+        if (checkpointFile != null && checkpointIntervalInMilliseconds <= 0) throw new IllegalArgumentException("checkpointIntervalInMilliseconds <= 0");
+
+        long entryCount = Long.highestOneBit(memoryBudgetInBytes/BYTES_PER_ENTRY);
+        //arrays are limited to 2^31 - 1 elements.
+        if (entryCount > (1 << 30)) entryCount = 1 << 30;
+        keys = new long[(int) entryCount];
+        phis = new int[(int) entryCount];
+        deltas = new int[(int) entryCount];
+        works = new int[(int) entryCount];
+        bucketMask = ((int) entryCount - 1) & ~(BUCKET_SIZE - 1);
+
+        this.checkpointFile = checkpointFile;
+        checkpointIntervalInNanoseconds = checkpointIntervalInMilliseconds*1000000;
+    }
+
+    /**
+     * Returns the game-theoretic value of the current position of the given model for the player to move: WIN, DRAW or LOSS.
+     * After this, a move that achieves this value is available from method getBestMove. In a lost position any move is returned.
+     * The model is left in the same state as before, also if the search is interrupted.
+     *
+     * A periodic checkpoint that cannot be saved does not stop the search, see method getCheckpointException.
+     *
+     * @throws InterruptedException if the current thread is interrupted during the search. The progress is saved to the checkpoint file first.
+     *         If that fails, then the IOException is added to the InterruptedException as a suppressed exception.
+     * @throws IOException if the checkpoint file cannot be read, if it belongs to another game, or if the checkpoint at the end of the solve cannot be written.
+     */
+    public int solve(BoardGameModel model) throws InterruptedException, IOException {
+        if (model == null) throw new IllegalArgumentException("model == null");
+        if (model.getPlayerNames().length != 2) throw new IllegalArgumentException("playerNames.length != 2");
+        if (model.isGameOver()) throw new IllegalArgumentException("Game is already over.");
+
+        int squareCount = model.getRowCount()*model.getColumnCount();
+        if (moves.length < squareCount + 1 || (moves.length > 0 && moves[0].length < squareCount)) {
+            moves = new int[squareCount + 1][squareCount];
+            childKeys = new long[squareCount + 1][squareCount];
+            childPhis = new int[squareCount + 1][squareCount];
+            childDeltas = new int[squareCount + 1][squareCount];
+        }
+        mnkModel = model instanceof MnkBoardGameModel ? (MnkBoardGameModel) model : null;
+        attackerIndex = model.getIndexOfCurrentPlayer();
+        String description = describeGame(model);
+        if (checkpointFile != null && !description.equals(gameDescription) && checkpointFile.exists()) loadCheckpoint(description);
+        gameDescription = description;
+        lastCheckpointTime = System.nanoTime();
+
+        try {
+            int value;
+            if (prove(model, GOAL_WIN)) {
+                value = WIN;
+            } else if (prove(model, GOAL_NOT_LOSE)) {
+                value = DRAW;
+            } else {
+                value = LOSS;
+                model.getLegalMoves(moves[0]);
+                bestMove = moves[0][0];
+            }
+            if (checkpointFile != null) saveCheckpoint();
+            return value;
+
+        } catch (InterruptedException e) {
+            if (checkpointFile != null) {
+                try {
+                    saveCheckpoint();
+                } catch (IOException checkpointFailure) {
+                    //still report the interruption, with the reason why the progress was not saved.
+                    checkpointException = checkpointFailure;
+                    e.addSuppressed(checkpointFailure);
+                }
+            }
+            throw e;
+        } finally {
+            mnkModel = null;
+        }
+    }
+
+    /**
+     * Returns true if the attacker (the player to move) can reach the given goal. If so, sets bestMove to a move that reaches it.
+     */
+    private boolean prove(BoardGameModel model, int goal) throws InterruptedException {
+        this.goal = goal;
+        mid(model, 0, INFINITY, INFINITY);
+        if (resultPhi != 0) return false;
+
+        //find a child that is disproven for the defender. Its entry may have been replaced, so search children again if needed.
+        int moveCount = generateMoves(model, 0);
+        for (int n = 0; n < moveCount; n++) {
+            model.tryMove(moves[0][n]);
+            try {
+                if (!model.isGameOver() && lookup(getKey(model)) && (lookupPhi == INFINITY || lookupDelta == INFINITY)) {
+                    resultDelta = lookupDelta;
+                } else {
+                    mid(model, 1, INFINITY, INFINITY);
+                }
+            } finally {
+                model.undoMove();
+            }
+            if (resultDelta == 0) {
+                bestMove = moves[0][n];
+                return true;
+            }
+        }
+        throw new IllegalStateException("Proven position has no proving move.");
+    }
+
+    /**
+     * Multiple iterative deepening: searches the current position until its phi or delta reaches the given thresholds,
+     * then stores them in the hash table and in resultPhi and resultDelta.
+     */
+    private void mid(BoardGameModel model, int ply, int thresholdPhi, int thresholdDelta) throws InterruptedException {
+        nodeCount++;
+        if ((nodeCount & CHECK_INTERVAL_MASK) == 0) {
+            if (Thread.interrupted()) throw new InterruptedException();
+            if (checkpointFile != null && System.nanoTime() - lastCheckpointTime >= checkpointIntervalInNanoseconds) {
+                try {
+                    saveCheckpoint();
+                } catch (IOException e) {
+                    //try again at the next checkpoint.
+                    checkpointException = e;
+                    lastCheckpointTime = System.nanoTime();
+                }
+            }
+        }
+        long startNodeCount = nodeCount;
+        long key = getKey(model);
+
+        //terminal positions.
+        //the players take turns, so the player to move follows from the ply. This also works if the game is over.
+        int playerIndex = (attackerIndex + ply)%2;
+        int moverResult = getTerminalResult(model, playerIndex);
+        if (moverResult != 0) {
+            resultPhi = moverResult > 0 ? 0 : INFINITY;
+            resultDelta = moverResult > 0 ? INFINITY : 0;
+            store(key, resultPhi, resultDelta, 1);
+            return;
+        }
+
+        //children.
+        int moveCount;
+        if (forcedMove != -1) {
+            //the other moves lose immediately.
+            moves[ply][0] = forcedMove;
+            moveCount = 1;
+        } else {
+            moveCount = generateMoves(model, ply);
+        }
+        int[] plyMoves = moves[ply];
+        long[] plyChildKeys = childKeys[ply];
+        int[] plyChildPhis = childPhis[ply];
+        int[] plyChildDeltas = childDeltas[ply];
+        for (int n = 0; n < moveCount; n++) {
+            model.tryMove(plyMoves[n]);
+            plyChildKeys[n] = getKey(model);
+            //terminal children are not stored in the table, so that they do not replace entries that took more work.
+            int childResult = getTerminalResult(model, 1 - playerIndex);
+            model.undoMove();
+            if (childResult != 0) {
+                plyChildPhis[n] = childResult > 0 ? 0 : INFINITY;
+                plyChildDeltas[n] = childResult > 0 ? INFINITY : 0;
+            } else {
+                lookup(plyChildKeys[n]);
+                plyChildPhis[n] = lookupPhi;
+                plyChildDeltas[n] = lookupDelta;
+            }
+        }
+
+        while (true) {
+            //phi is the smallest delta of the children, delta the sum of the phis of the children.
+            int minDelta = INFINITY;
+            int secondMinDelta = INFINITY;
+            int bestChild = 0;
+            long phiSum = 0;
+            for (int n = 0; n < moveCount; n++) {
+                //use the latest numbers of children that were also searched elsewhere (transpositions). If the entry of a child
+                //was replaced, keep the numbers it had: starting from 1 again could make the search go round in circles.
+                if (plyChildPhis[n] != 0 && plyChildDeltas[n] != 0 && lookup(plyChildKeys[n])) {
+                    plyChildPhis[n] = lookupPhi;
+                    plyChildDeltas[n] = lookupDelta;
+                }
+                int childPhi = plyChildPhis[n];
+                int childDelta = plyChildDeltas[n];
+                if (childDelta < minDelta) {
+                    secondMinDelta = minDelta;
+                    minDelta = childDelta;
+                    bestChild = n;
+                } else if (childDelta < secondMinDelta) {
+                    secondMinDelta = childDelta;
+                }
+                phiSum = childPhi == INFINITY || phiSum == INFINITY ? INFINITY : phiSum + childPhi;
+            }
+            int phi = minDelta;
+            int delta = phiSum == INFINITY ? INFINITY : (int) Math.min(phiSum, MAX_FINITE);
+
+            if (phi >= thresholdPhi || delta >= thresholdDelta) {
+                resultPhi = phi;
+                resultDelta = delta;
+                store(key, phi, delta, nodeCount - startNodeCount + 1);
+                return;
+            }
+
+            //search the most promising child until it is clearly no longer the most promising. Continuing until its delta exceeds
+            //the second smallest delta by a factor (the 1 + epsilon trick, see J. Pawlewicz and L. Lew, 2007) instead of by 1
+            //avoids switching back and forth between two children, each time with a new search of their subtrees.
+            int childThresholdPhi = thresholdDelta == INFINITY ? INFINITY : (int) Math.min((long) thresholdDelta - delta + plyChildPhis[bestChild], MAX_FINITE);
+            int childThresholdDelta = secondMinDelta == INFINITY ? thresholdPhi : (int) Math.min(thresholdPhi, secondMinDelta + 1 + (long) secondMinDelta/EPSILON_DIVISOR);
+            model.tryMove(plyMoves[bestChild]);
+            try {
+                mid(model, ply + 1, childThresholdPhi, childThresholdDelta);
+            } finally {
+                model.undoMove();
+            }
+            plyChildPhis[bestChild] = resultPhi;
+            plyChildDeltas[bestChild] = resultDelta;
+        }
+    }
+
+    /**
+     * Returns 1 if the given player to move in the current position reaches its goal (as attacker or as defender), -1 if it fails,
+     * or 0 if this is not known without searching. For an MnkBoardGameModel, this also recognizes an immediate win for the player
+     * to move and two or more threats of the opponent. If the opponent has exactly one threat, then forcedMove is set
+     * to the move that blocks it, otherwise to -1.
+     */
+    private int getTerminalResult(BoardGameModel model, int playerIndex) {
+        forcedMove = -1;
+        if (model.isGameOver()) return isAttackerSuccess(model.getIndexOfWinner()) == (playerIndex == attackerIndex) ? 1 : -1;
+        if (mnkModel == null) return 0;
+
+        if (mnkModel.getWinningSquares(playerIndex, winningSquares, 1) > 0) {
+            return isAttackerSuccess(playerIndex) == (playerIndex == attackerIndex) ? 1 : -1;
+        }
+        int opponentWinningSquareCount = mnkModel.getWinningSquares(1 - playerIndex, winningSquares, 2);
+        if (opponentWinningSquareCount >= 2) return isAttackerSuccess(1 - playerIndex) == (playerIndex == attackerIndex) ? 1 : -1;
+        if (opponentWinningSquareCount == 1) forcedMove = winningSquares[0];
+        return 0;
+    }
+
+    /**
+     * Returns whether the attacker reaches its goal when the game ends with the given winner (-1 for a draw).
+     */
+    private boolean isAttackerSuccess(int indexOfWinner) {
+        if (indexOfWinner == -1) return goal == GOAL_NOT_LOSE;
+        return indexOfWinner == attackerIndex;
+    }
+
+    private int generateMoves(BoardGameModel model, int ply) {
+        return mnkModel == null ? model.getLegalMoves(moves[ply]) : mnkModel.getSymmetricallyDistinctLegalMoves(moves[ply]);
+    }
+
+    private long getKey(BoardGameModel model) {
+        long hash = mnkModel == null ? model.getZobristHash() : mnkModel.getCanonicalZobristHash();
+        //a finished game is a different node than the same position with a player to move, e.g. a full board.
+        if (model.isGameOver()) hash = ~hash;
+        return hash ^ GOAL_KEYS[goal*2 + attackerIndex];
+    }
+
+    /**
+     * Looks up the given key and sets lookupPhi and lookupDelta. For positions that are not in the table, both are 1.
+     * Returns true if the key was found.
+     */
+    private boolean lookup(long key) {
+        int bucket = (int) key & bucketMask;
+        for (int index = bucket; index < bucket + BUCKET_SIZE; index++) {
+            if (works[index] != 0 && keys[index] == key) {
+                lookupPhi = phis[index];
+                lookupDelta = deltas[index];
+                return true;
+            }
+        }
+        lookupPhi = 1;
+        lookupDelta = 1;
+        return false;
+    }
+
+    /**
+     * Stores the given numbers in the bucket of the given key: in the entry with the same key if there is one,
+     * otherwise in the entry that took the least work. A result is always stored, otherwise the search would not make progress.
+     */
+    private void store(long key, int phi, int delta, long work) {
+        int bucket = (int) key & bucketMask;
+        int index = bucket;
+        for (int i = bucket; i < bucket + BUCKET_SIZE; i++) {
+            if (works[i] != 0 && keys[i] == key) {
+                index = i;
+                break;
+            }
+            if (works[i] < works[index]) index = i;
+        }
+        keys[index] = key;
+        phis[index] = phi;
+        deltas[index] = delta;
+        //work is at least 1, so that the entry is not empty.
+        works[index] = (int) Math.min(Math.max(work, 1), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns a description of the game of the given model. Checkpoints are only loaded for the same game.
+     */
+    private static String describeGame(BoardGameModel model) {
+        String description = model.getClass().getName() + " " + model.getRowCount() + "x" + model.getColumnCount();
+        if (model instanceof MnkBoardGameModel) description += "x" + ((MnkBoardGameModel) model).getWinningNumberOfPiecesInARow();
+        return description;
+    }
+
+    /**
+     * Writes all non-empty entries of the table to the checkpoint file. The file is first written under another name
+     * and then renamed, so that an interrupted write never destroys the previous checkpoint.
+     */
+    private void saveCheckpoint() throws IOException {
+        File temporaryFile = new File(checkpointFile.getPath() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile), 1 << 16))) {
+            output.writeInt(CHECKPOINT_MAGIC);
+            output.writeInt(CHECKPOINT_VERSION);
+            output.writeUTF(gameDescription);
+            output.writeInt(keys.length);
+            for (int index = 0; index < keys.length; index++) {
+                if (works[index] == 0) continue;
+
+                output.writeInt(index);
+                output.writeLong(keys[index]);
+                output.writeInt(phis[index]);
+                output.writeInt(deltas[index]);
+                output.writeInt(works[index]);
+            }
+            //end marker.
+            output.writeInt(-1);
+        }
+
+        try {
+            Files.move(temporaryFile.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporaryFile.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        lastCheckpointTime = System.nanoTime();
+        checkpointException = null;
+    }
+
+    /**
+     * Replaces the table with the entries from the checkpoint file.
+     */
+    private void loadCheckpoint(String expectedGameDescription) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(checkpointFile), 1 << 16))) {
+            if (input.readInt() != CHECKPOINT_MAGIC) throw new IOException(checkpointFile + " is not a checkpoint file.");
+            if (input.readInt() != CHECKPOINT_VERSION) throw new IOException(checkpointFile + " has an unsupported version.");
+            String description = input.readUTF();
+            if (!description.equals(expectedGameDescription)) throw new IOException(checkpointFile + " is a checkpoint of another game: " + description);
+            if (input.readInt() != keys.length) throw new IOException(checkpointFile + " has a table of another size.");
+
+            clear();
+            int index;
+            while ((index = input.readInt()) != -1) {
+                if (index < 0 || index >= keys.length) throw new IOException(checkpointFile + " is corrupt.");
+                keys[index] = input.readLong();
+                phis[index] = input.readInt();
+                deltas[index] = input.readInt();
+                works[index] = input.readInt();
+            }
+        }
+    }
+
+    /**
+     * Removes all entries from the table.
+     */
+    public void clear() {
+        for (int index = 0; index < keys.length; index++) {
+            keys[index] = 0;
+            phis[index] = 0;
+            deltas[index] = 0;
+            works[index] = 0;
+        }
+    }
+
+    /**
+     * Returns the move (row*columnCount + column) that was found by the last call to method solve.
+     */
+    public int getBestMove() {
+        if (bestMove == -1) throw new IllegalStateException("bestMove not initialized. First call solve().");
+        return bestMove;
+    }
+
+    /**
+     * Returns the number of positions searched since this solver was created.
+     */
+    public long getNodeCount() {
+        return nodeCount;
+    }
+
+    public int getEntryCount() {
+        return keys.length;
+    }
+
+    /**
+     * Returns the exception of the last checkpoint if it could not be saved, or null if it was saved or no checkpoint was saved yet.
+     * A failed periodic checkpoint is tried again after the next interval. This method can be called from another thread,
+     * e.g. to warn the user during a long solve.
+     */
+    public IOException getCheckpointException() {
+        return checkpointException;
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2018 A.C. Kockx, All Rights Reserved.
+ */
+package boardgame.controller.search;
+
+import boardgame.model.MnkBoardGameModel;
+
+import java.util.Arrays;
+
+/**
+ * Finds forced wins in m,n,k-games with threat-space search, e.g. on large boards like 15x15 Gomoku, where a winning attack is
+ * usually a long chain of threats that a full-width search does not reach in time.
+ *
+ * Only threat moves and forced replies are searched. A threat is a move of the attacker (the player to move) that creates
+ * a square where the attacker would complete k in a row with the next move (a four in Gomoku). The defender must block that square,
+ * so there is only one reply. The attacker wins when a threat creates two such squares at the same time, since the defender can only
+ * block one of them (victory by continuous fours). If a block creates a threat of the defender, then the attacker must block it
+ * and can only continue if that block is a threat itself. Since all defender replies are forced, a win that is found is a proven win.
+ *
+ * Dependency-based pruning: after the first threat, only threats that are in a line of k squares together with a square that
+ * the attacker already gained earlier in the sequence are searched. Threats that do not depend on the earlier threats could have
+ * been played before them, so the sequences in which they come first are searched instead. Failed positions are remembered
+ * in a small hash table, so that the same threats in a different order are not searched again.
+ * Threats that leave the defender more than one reply (e.g. open threes in Gomoku) are not searched.
+ *
+ * The search runs on the given model, which is left in the same state as before.
+ * Note: this class is not thread-safe.
+ *
+ * @author A.C. Kockx
+ */
+public final class ThreatSpaceSearch {
+    public static final int DEFAULT_MAX_THREAT_COUNT = 16;
+    public static final long DEFAULT_MAX_NODE_COUNT = 1 << 20;
+
+    //number of entries in the table of failed positions. Must be a power of two.
+    private static final int FAILURE_TABLE_SIZE = 1 << 16;
+    //check for interruption once every this many nodes.
+    private static final int INTERRUPT_CHECK_INTERVAL_MASK = (1 << 10) - 1;
+
+    private final int maxThreatCount;
+    private final long maxNodeCount;
+
+    //positions (Zobrist hashes) where the attacker was not able to win with the number of threats left that is stored for them.
+    private final long[] failedKeys = new long[FAILURE_TABLE_SIZE];
+    private final int[] failedThreatCounts = new int[FAILURE_TABLE_SIZE];
+
+    //state of the current search.
+    private MnkBoardGameModel model = null;
+    private int attackerIndex = 0;
+    private int defenderIndex = 1;
+    private long nodeCount = 0;
+    private int[][] candidates = new int[0][];
+    //for each threat in the current sequence, the square gained by the attacker.
+    private int[] gainSquares = new int[0];
+    //to remove duplicate candidates. A square is already a candidate if its stamp equals the current stamp.
+    private int[] candidateStamps = new int[0];
+    private int candidateStamp = 0;
+    private int[] threatSquares = new int[0];
+    private final int[] winningSquares = new int[2];
+
+    //winning sequence of the last search, alternately attacker moves and defender replies.
+    private int[] line = new int[0];
+    private int lineLength = 0;
+
+    /**
+     * Creates a search with the default maximum number of threats and nodes.
+     */
+    public ThreatSpaceSearch() {
+        this(DEFAULT_MAX_THREAT_COUNT, DEFAULT_MAX_NODE_COUNT);
+    }
+
+    /**
+     * @param maxThreatCount maximum number of threats in a winning sequence, i.e. the sequence is at most 2*maxThreatCount - 1 plies long.
+     * @param maxNodeCount maximum number of positions to search for one call to method findWinningMove, to limit the time it takes.
+     */
+    public ThreatSpaceSearch(int maxThreatCount, long maxNodeCount) {
+        if (maxThreatCount <= 0) throw new IllegalArgumentException("maxThreatCount <= 0");
+        if (maxNodeCount <= 0) throw new IllegalArgumentException("maxNodeCount <= 0");
+
+        this.maxThreatCount = maxThreatCount;
+        this.maxNodeCount = maxNodeCount;
+    }
+
+    /**
+     * Returns a move (row*columnCount + column) that starts a forced win for the player to move in the current position
+     * of the given model, or -1 if no forced win was found within the maximum number of threats and nodes.
+     * Only works for two players. The whole winning sequence is available from method getWinningLine.
+     *
+     * @throws InterruptedException if the current thread is interrupted during the search.
+     */
+    public int findWinningMove(MnkBoardGameModel model) throws InterruptedException {
+        if (model == null) throw new IllegalArgumentException("model == null");
+
+        nodeCount = 0;
+        lineLength = 0;
+        if (model.isGameOver() || model.getPlayerNames().length != 2 || model.getWinningNumberOfPiecesInARow() < 2) return -1;
+
+        int squareCount = model.getRowCount()*model.getColumnCount();
+        if (candidateStamps.length != squareCount) {
+            candidates = new int[maxThreatCount][squareCount];
+            gainSquares = new int[maxThreatCount];
+            candidateStamps = new int[squareCount];
+            threatSquares = new int[squareCount];
+            line = new int[2*maxThreatCount];
+        }
+        this.model = model;
+        attackerIndex = model.getIndexOfCurrentPlayer();
+        defenderIndex = 1 - attackerIndex;
+        Arrays.fill(failedThreatCounts, 0);
+
+        try {
+            //immediate win.
+            if (model.getWinningSquares(attackerIndex, winningSquares, 1) > 0) {
+                line[0] = winningSquares[0];
+                lineLength = 1;
+                return line[0];
+            }
+
+            //if the defender threatens to win, then the attacker must block.
+            int defenderWinningSquareCount = model.getWinningSquares(defenderIndex, winningSquares, 2);
+            if (defenderWinningSquareCount >= 2) return -1;
+            return attack(0, defenderWinningSquareCount == 1 ? winningSquares[0] : -1) ? line[0] : -1;
+
+        } finally {
+            this.model = null;
+        }
+    }
+
+    /**
+     * Returns true if the attacker can win with threats from the current position, where the attacker is to move and does not have
+     * a winning square. If so, the sequence from this position is written to line.
+     *
+     * @param forcedSquare square where the defender threatens to win, or -1 if none.
+     */
+    private boolean attack(int threatIndex, int forcedSquare) throws InterruptedException {
+        nodeCount++;
+        if ((nodeCount & INTERRUPT_CHECK_INTERVAL_MASK) == 0 && Thread.interrupted()) throw new InterruptedException();
+        if (threatIndex == maxThreatCount || nodeCount > maxNodeCount) return false;
+
+        int threatsLeft = maxThreatCount - threatIndex;
+        long hash = model.getZobristHash();
+        int failureIndex = (int) hash & (FAILURE_TABLE_SIZE - 1);
+        if (failedKeys[failureIndex] == hash && failedThreatCounts[failureIndex] >= threatsLeft) return false;
+
+        int[] plyCandidates = candidates[threatIndex];
+        int candidateCount;
+        if (forcedSquare != -1) {
+            plyCandidates[0] = forcedSquare;
+            candidateCount = 1;
+        } else {
+            candidateCount = generateCandidates(threatIndex, plyCandidates);
+        }
+
+        for (int n = 0; n < candidateCount; n++) {
+            int move = plyCandidates[n];
+            model.tryMove(move);
+            //the attacker had no winning squares before, so all winning squares are in lines through this move.
+            int winningSquareCount = model.isGameOver() ? 0 : model.getWinningSquares(attackerIndex, move, winningSquares, 2);
+            if (winningSquareCount == 0) {
+                //not a threat.
+                model.undoMove();
+                continue;
+            }
+            line[2*threatIndex] = move;
+            if (winningSquareCount >= 2) {
+                //the defender cannot block both. The defender has no winning square, since the attacker blocked it if there was one.
+                model.undoMove();
+                lineLength = 2*threatIndex + 1;
+                return true;
+            }
+
+            //forced reply.
+            int block = winningSquares[0];
+            line[2*threatIndex + 1] = block;
+            gainSquares[threatIndex] = move;
+            model.tryMove(block);
+            boolean won = false;
+            if (!model.isGameOver()) {
+                //earlier threats of the defender have been blocked, so all winning squares of the defender are in lines through the block.
+                int defenderWinningSquareCount = model.getWinningSquares(defenderIndex, block, winningSquares, 2);
+                if (defenderWinningSquareCount < 2) won = attack(threatIndex + 1, defenderWinningSquareCount == 1 ? winningSquares[0] : -1);
+            }
+            model.undoMove();
+            model.undoMove();
+            if (won) return true;
+        }
+
+        //do not store results of a search that ran out of nodes, since those may not be failures.
+        if (nodeCount <= maxNodeCount) {
+            failedKeys[failureIndex] = hash;
+            failedThreatCounts[failureIndex] = threatsLeft;
+        }
+        return false;
+    }
+
+    /**
+     * Writes the threat squares of the attacker that depend on the squares gained earlier in the sequence to the given array
+     * and returns the number of squares written. Threats through the most recently gained squares come first.
+     * For the first threat all threat squares are written.
+     */
+    private int generateCandidates(int threatIndex, int[] squares) {
+        if (threatIndex == 0) return model.getThreatSquares(attackerIndex, -1, squares, squares.length);
+
+        candidateStamp++;
+        int candidateCount = 0;
+        for (int i = threatIndex - 1; i >= 0; i--) {
+            int threatSquareCount = model.getThreatSquares(attackerIndex, gainSquares[i], threatSquares, threatSquares.length);
+            for (int n = 0; n < threatSquareCount; n++) {
+                int square = threatSquares[n];
+                if (candidateStamps[square] == candidateStamp) continue;
+
+                candidateStamps[square] = candidateStamp;
+                squares[candidateCount++] = square;
+            }
+        }
+        return candidateCount;
+    }
+
+    /**
+     * Returns the winning sequence that was found by the last call to method findWinningMove, alternately moves of the attacker
+     * and forced replies of the defender, ending with the move of the attacker that creates two winning squares
+     * (or that wins immediately). Returns an empty array if no win was found.
+     */
+    public int[] getWinningLine() {
+        return Arrays.copyOf(line, lineLength);
+    }
+
+    /**
+     * Returns the number of positions searched during the last call to method findWinningMove.
+     */
+    public long getNodeCount() {
+        return nodeCount;
+    }
+
+    public int getMaxThreatCount() {
+        return maxThreatCount;
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2018 A.C. Kockx, All Rights Reserved.
+ */
+package boardgame.controller.search;
+
+/**
+ * Fixed-size hash table that stores search results for positions, keyed by Zobrist hash (see BoardGameModel.getZobristHash).
+ *
+ * The number of entries is the largest power of two that fits in the given memory budget, so that the index of a position is
+ * simply the lowest bits of its hash. Each index holds one entry. When two positions have the same index, the entry with the
+ * deepest search is kept (depth-preferred replacement), unless the stored entry is from an earlier search (see method newSearch),
+ * in which case it is always replaced.
+ *
+ * Each entry is stored in two longs: the packed data (score, depth, bound type, age and best move) and the full hash XOR the data.
+ *
+ * The table can be shared by multiple threads without locks, e.g. by the threads of a LazySmpSearch.
+ * Two threads that write the same entry at the same time can leave it with the key of one write and the data of the other
+ * (or, on 32-bit JVMs, even with half of a long from each write). Since the key is stored XOR the data, such a torn entry
+ * almost certainly does not match any hash anymore, so it is simply a miss, instead of a wrong result for a position.
+ * A thread may see an older entry than the one another thread just wrote, which is harmless for a search.
+ *
+ * @author A.C. Kockx
+ */
+public final class TranspositionTable {
+    public static final int BYTES_PER_ENTRY = 2*Long.BYTES;
+
+    //bound types.
+    public static final int NONE = 0;
+    public static final int EXACT = 1;
+    //score is a lower bound, i.e. the search failed high.
+    public static final int LOWER_BOUND = 2;
+    //score is an upper bound, i.e. the search failed low.
+    public static final int UPPER_BOUND = 3;
+
+    public static final int MAX_DEPTH = 0xFF;
+    //moves that do not fit are not stored.
+    public static final int MAX_MOVE = 0xFFFE;
+
+    //layout of the data long: score (32 bits), depth (8 bits), bound (2 bits), age (6 bits), move + 1 (16 bits).
+    private static final int DEPTH_SHIFT = 32;
+    private static final int BOUND_SHIFT = 40;
+    private static final int AGE_SHIFT = 42;
+    private static final int AGE_MASK = 0x3F;
+    private static final int MOVE_SHIFT = 48;
+
+    private final long[] keys;
+    private final long[] data;
+    private final int indexMask;
+    private int age = 0;
+
+    /**
+     * @param memoryBudgetInBytes maximum memory that the table may use.
+     */
+    public TranspositionTable(long memoryBudgetInBytes) {
+        if (memoryBudgetInBytes < BYTES_PER_ENTRY) throw new IllegalArgumentException("memoryBudgetInBytes < " + BYTES_PER_ENTRY);
+
+        long entryCount = Long.highestOneBit(memoryBudgetInBytes/BYTES_PER_ENTRY);
+        //arrays are limited to 2^31 - 1 elements.
+        if (entryCount > (1 << 30)) entryCount = 1 << 30;
+        keys = new long[(int) entryCount];
+        data = new long[(int) entryCount];
+        indexMask = (int) entryCount - 1;
+    }
+
+    public int getEntryCount() {
+        return keys.length;
+    }
+
+    /**
+     * Marks the start of a new search. Entries from earlier searches are still used, but they can be replaced by any new entry.
+     * Must be called before the threads of the search are started.
+     */
+    public void newSearch() {
+        age = (age + 1)&AGE_MASK;
+    }
+
+    /**
+     * Removes all entries. Must not be called while another thread uses this table.
+     */
+    public void clear() {
+        for (int index = 0; index < keys.length; index++) {
+            keys[index] = 0;
+            data[index] = 0;
+        }
+    }
+
+    /**
+     * Looks up the entry for the given hash and returns its packed data, or 0 if there is no entry for the given hash.
+     * The stored values can be unpacked with methods getScore, getDepth, getBound and getMove.
+     */
+    public long probe(long hash) {
+        int index = (int) hash & indexMask;
+        //data and key of different writes (a torn entry) do not pass this check.
+        long entryData = data[index];
+        if (entryData == 0 || (keys[index] ^ entryData) != hash) return 0;
+        return entryData;
+    }
+
+    public static int getScore(long entryData) {
+        return (int) entryData;
+    }
+
+    public static int getDepth(long entryData) {
+        return (int) (entryData >>> DEPTH_SHIFT) & MAX_DEPTH;
+    }
+
+    /**
+     * Returns EXACT, LOWER_BOUND or UPPER_BOUND, or NONE if the given data is 0.
+     */
+    public static int getBound(long entryData) {
+        return (int) (entryData >>> BOUND_SHIFT) & 0x3;
+    }
+
+    /**
+     * Returns -1 if no move was stored.
+     */
+    public static int getMove(long entryData) {
+        return (int) (entryData >>> MOVE_SHIFT) - 1;
+    }
+
+    /**
+     * Stores the result of a search of the given depth for the position with the given hash, if the existing entry at its index
+     * is less valuable (i.e. from an earlier search, for the same position or from a search that was not deeper).
+     *
+     * @param bound EXACT, LOWER_BOUND or UPPER_BOUND.
+     * @param move best move, or -1 if not known.
+     */
+    public void store(long hash, int score, int depth, int bound, int move) {
+        int index = (int) hash & indexMask;
+        long entryData = data[index];
+        boolean samePosition = entryData != 0 && (keys[index] ^ entryData) == hash;
+        if (entryData != 0 && !samePosition && (int) (entryData >>> AGE_SHIFT & AGE_MASK) == age
+                && (int) (entryData >>> DEPTH_SHIFT & MAX_DEPTH) > depth) {
+            return;//keep deeper entry of another position from the current search.
+        }
+        if (move < 0 || move > MAX_MOVE) {
+            //keep the move of an earlier search of the same position.
+            move = samePosition ? getMove(entryData) : -1;
+        }
+
+        long newData = (score & 0xFFFFFFFFL)
+                | (long) Math.min(Math.max(depth, 0), MAX_DEPTH) << DEPTH_SHIFT
+                | (long) bound << BOUND_SHIFT
+                | (long) age << AGE_SHIFT
+                | (long) (move + 1) << MOVE_SHIFT;
+        data[index] = newData;
+        keys[index] = hash ^ newData;
+    }
+}
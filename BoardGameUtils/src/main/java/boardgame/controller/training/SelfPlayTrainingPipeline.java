@@ -0,0 +1,335 @@
+/*
+ * Copyright (c) 2018 A.C. Kockx, All Rights Reserved.
+ */
+package boardgame.controller.training;
+
+import boardgame.controller.neuralnetwork.NetworkTrainer;
+import boardgame.controller.neuralnetwork.PolicyValueNetwork;
+import boardgame.controller.neuralnetwork.ReplayBuffer;
+import boardgame.controller.player.MonteCarloTreeSearchPlayer;
+import boardgame.controller.player.SelfPlayRecordingPlayer;
+import boardgame.controller.search.MonteCarloTreeSearch;
+import boardgame.model.BoardGameModel;
+import util.controller.TurnBasedGameEngine;
+import util.controller.player.Player;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Headless training of a PolicyValueNetwork from self-play, using all processors of one machine.
+ *
+ * Game threads play games against themselves with MonteCarloTreeSearchPlayers (one search thread each) on copies of the given model.
+ * The first few moves of each player are chosen at random with the share of the playouts as probabilities, so that the games vary.
+ * Both players are wrapped in a SelfPlayRecordingPlayer, which uses the notifications at the end of each game (won, lost, draw)
+ * to add the positions of that game to a shared ReplayBuffer, with the share of the playouts of each move as target policy
+ * and the outcome of the game as target value. At the same time, trainer threads train the network on random samples
+ * from the buffer with NetworkTrainer, all directly on the same weights without locks (Hogwild).
+ *
+ * Training starts when the buffer has minSampleCount samples. To avoid training too long on the same samples,
+ * the trainers pause while the number of training steps is more than replayRatio times the number of samples that were added.
+ * The processor time is then used by the game threads, so by default there are more threads than processors and all processors stay busy.
+ *
+ * The weights are saved to the checkpoint file at a fixed interval and when training stops. The file is first written under
+ * another name and then renamed, so that an interrupted write never destroys the previous checkpoint. To resume training,
+ * load the checkpoint with PolicyValueNetwork.load and pass it to a new pipeline. The weights are saved while the trainers continue,
+ * so a checkpoint can contain a few updates that were made during the save.
+ *
+ * @author A.C. Kockx
+ */
+public final class SelfPlayTrainingPipeline {
+    public static final int DEFAULT_GAME_THREAD_COUNT = Runtime.getRuntime().availableProcessors();
+    public static final int DEFAULT_TRAINER_THREAD_COUNT = Math.max(1, Runtime.getRuntime().availableProcessors()/2);
+    public static final int DEFAULT_BUFFER_CAPACITY = 1 << 16;
+    public static final int DEFAULT_MIN_SAMPLE_COUNT = 1000;
+    public static final int DEFAULT_REPLAY_RATIO = 8;
+    public static final long DEFAULT_MOVE_TIME_IN_MILLISECONDS = 20;
+    public static final int DEFAULT_SAMPLED_MOVE_COUNT = 2;
+    public static final int DEFAULT_SEARCH_NODE_CAPACITY = 1 << 16;
+    public static final long DEFAULT_CHECKPOINT_INTERVAL_IN_MILLISECONDS = 60000;
+
+    //time that a trainer waits for more samples.
+    private static final long TRAINER_WAIT_TIME_IN_MILLISECONDS = 10;
+    //trainers add their steps to the shared counter once every this many steps.
+    private static final int STEP_COUNT_INTERVAL = 64;
+
+    private final PolicyValueNetwork network;
+    private final BoardGameModel model;
+    private final File checkpointFile;
+    private final int gameThreadCount;
+    private final int trainerThreadCount;
+    private final float learningRate;
+    private final int minSampleCount;
+    private final int replayRatio;
+    private final long moveTimeInMilliseconds;
+    private final int sampledMoveCount;
+    private final int searchNodeCapacity;
+    private final long checkpointIntervalInMilliseconds;
+    private final ReplayBuffer buffer;
+
+    private Thread[] threads = null;
+    private volatile boolean stopped = false;
+
+    //statistics.
+    private final AtomicLong gameCount = new AtomicLong();
+    private final AtomicLong stepCount = new AtomicLong();
+    private final AtomicLong checkpointCount = new AtomicLong();
+    //failure of the last checkpoint of the checkpoint thread, or null if it was saved.
+    private volatile IOException checkpointException = null;
+    private final DoubleAdder policyLossSum = new DoubleAdder();
+    private final DoubleAdder valueLossSum = new DoubleAdder();
+    private final LongAdder lossCount = new LongAdder();
+
+    /**
+     * Creates a pipeline with the default settings.
+     *
+     * @param model game to play. Only its rules are used, the games are played on copies of it.
+     */
+    public SelfPlayTrainingPipeline(PolicyValueNetwork network, BoardGameModel model, File checkpointFile) {
+        this(network, model, checkpointFile, DEFAULT_GAME_THREAD_COUNT, DEFAULT_TRAINER_THREAD_COUNT, NetworkTrainer.DEFAULT_LEARNING_RATE,
+                DEFAULT_BUFFER_CAPACITY, DEFAULT_MIN_SAMPLE_COUNT, DEFAULT_REPLAY_RATIO, DEFAULT_MOVE_TIME_IN_MILLISECONDS,
+                DEFAULT_SAMPLED_MOVE_COUNT, DEFAULT_SEARCH_NODE_CAPACITY, DEFAULT_CHECKPOINT_INTERVAL_IN_MILLISECONDS);
+    }
+
+    /**
+     * @param model game to play. Only its rules are used, the games are played on copies of it.
+     * @param checkpointFile file to save the weights to, or null to not save them.
+     * @param gameThreadCount number of games that are played at the same time.
+     * @param trainerThreadCount number of threads that train the network at the same time.
+     * @param bufferCapacity maximum number of samples in the buffer, see ReplayBuffer.
+     * @param minSampleCount number of samples in the buffer before training starts.
+     * @param replayRatio maximum number of training steps for each sample that was added to the buffer.
+     * @param moveTimeInMilliseconds time budget of the Monte Carlo tree search for each move.
+     * @param sampledMoveCount number of moves of each player at the start of each game that are chosen at random
+     *                         with the share of the playouts as probabilities, see SelfPlayRecordingPlayer.
+     * @param searchNodeCapacity maximum number of nodes of each Monte Carlo tree search, see MonteCarloTreeSearch.
+     */
+    public SelfPlayTrainingPipeline(PolicyValueNetwork network, BoardGameModel model, File checkpointFile, int gameThreadCount, int trainerThreadCount,
+            float learningRate, int bufferCapacity, int minSampleCount, int replayRatio, long moveTimeInMilliseconds, int sampledMoveCount,
+            int searchNodeCapacity, long checkpointIntervalInMilliseconds) {
+        if (network == null) throw new IllegalArgumentException("network == null");
+        if (model == null) throw new IllegalArgumentException("model == null");
+        if (model.getPlayerNames().length != 2) throw new IllegalArgumentException("model must have two players");
+        if (model.getRowCount() != network.getRowCount() || model.getColumnCount() != network.getColumnCount()) {
+            throw new IllegalArgumentException("model has " + model.getRowCount() + "x" + model.getColumnCount() + " squares instead of "
+                    + network.getRowCount() + "x" + network.getColumnCount());
+        }
+        if (gameThreadCount <= 0) throw new IllegalArgumentException("gameThreadCount <= 0");
+        if (trainerThreadCount <= 0) throw new IllegalArgumentException("trainerThreadCount <= 0");
+        if (!(learningRate > 0)) throw new IllegalArgumentException("learningRate <= 0");
+        if (minSampleCount <= 0 || minSampleCount > bufferCapacity) throw new IllegalArgumentException("minSampleCount out of range");
+        if (replayRatio <= 0) throw new IllegalArgumentException("replayRatio <= 0");
+        if (moveTimeInMilliseconds <= 0) throw new IllegalArgumentException("moveTimeInMilliseconds <= 0");
+        if (sampledMoveCount < 0) throw new IllegalArgumentException("sampledMoveCount < 0");
+        if (checkpointIntervalInMilliseconds <= 0) throw new IllegalArgumentException("checkpointIntervalInMilliseconds <= 0");
+
+        this.network = network;
+        this.model = model.fork();
+        this.checkpointFile = checkpointFile;
+        this.gameThreadCount = gameThreadCount;
+        this.trainerThreadCount = trainerThreadCount;
+        this.learningRate = learningRate;
+        this.minSampleCount = minSampleCount;
+        this.replayRatio = replayRatio;
+        this.moveTimeInMilliseconds = moveTimeInMilliseconds;
+        this.sampledMoveCount = sampledMoveCount;
+        this.searchNodeCapacity = searchNodeCapacity;
+        this.checkpointIntervalInMilliseconds = checkpointIntervalInMilliseconds;
+        buffer = new ReplayBuffer(network.getRowCount(), network.getColumnCount(), bufferCapacity);
+    }
+
+    /**
+     * Starts the game threads, trainer threads and checkpoint thread, which run until method stop is called.
+     * Can only be called once.
+     */
+    public synchronized void start() {
+        if (threads != null) throw new IllegalStateException(getClass().getSimpleName() + " has already been started.");
+
+        threads = new Thread[gameThreadCount + trainerThreadCount + 1];
+        int threadIndex = 0;
+        for (int n = 0; n < gameThreadCount; n++) {
+            final BoardGameModel gameModel = model.fork();
+            final long seed = n + 1;
+            threads[threadIndex++] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    playGames(gameModel, seed);
+                }
+            }, "self-play game " + (n + 1));
+        }
+        for (int n = 0; n < trainerThreadCount; n++) {
+            final NetworkTrainer trainer = new NetworkTrainer(network, buffer, learningRate, n + 1);
+            threads[threadIndex++] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    train(trainer);
+                }
+            }, "self-play trainer " + (n + 1));
+        }
+        threads[threadIndex] = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                saveCheckpoints();
+            }
+        }, "self-play checkpoint");
+
+        for (Thread thread : threads) {
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stops all threads, waits until they have stopped and saves a final checkpoint.
+     *
+     * @throws IOException if the final checkpoint could not be saved.
+     */
+    public synchronized void stop() throws InterruptedException, IOException {
+        if (threads == null) throw new IllegalStateException(getClass().getSimpleName() + " has not been started.");
+
+        stopped = true;
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (checkpointFile != null) saveCheckpoint();
+    }
+
+    private void playGames(BoardGameModel gameModel, long seed) {
+        String[] playerNames = gameModel.getPlayerNames();
+        Player[] players = new Player[playerNames.length];
+        for (int n = 0; n < players.length; n++) {
+            Player player = new MonteCarloTreeSearchPlayer(playerNames[n], searchNodeCapacity, moveTimeInMilliseconds,
+                    MonteCarloTreeSearch.DEFAULT_EXPLORATION_CONSTANT, 1);
+            players[n] = new SelfPlayRecordingPlayer(player, buffer, network, sampledMoveCount, seed*players.length + n);
+        }
+        TurnBasedGameEngine engine = new TurnBasedGameEngine(gameModel, players, 0);
+
+        try {
+            while (!stopped) {
+                engine.newGame();
+                engine.playGame();
+                gameCount.incrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            //stop.
+        }
+    }
+
+    private void train(NetworkTrainer trainer) {
+        try {
+            int localStepCount = 0;
+            while (!stopped) {
+                //wait for enough samples.
+                if (buffer.getSize() < minSampleCount || stepCount.get() > replayRatio*buffer.getAddedCount()) {
+                    stepCount.addAndGet(localStepCount);
+                    localStepCount = 0;
+                    Thread.sleep(TRAINER_WAIT_TIME_IN_MILLISECONDS);
+                    continue;
+                }
+
+                trainer.trainStep();
+                policyLossSum.add(trainer.getLastPolicyLoss());
+                valueLossSum.add(trainer.getLastValueLoss());
+                lossCount.increment();
+                localStepCount++;
+                if (localStepCount == STEP_COUNT_INTERVAL) {
+                    stepCount.addAndGet(localStepCount);
+                    localStepCount = 0;
+                }
+            }
+        } catch (InterruptedException e) {
+            //stop.
+        }
+    }
+
+    private void saveCheckpoints() {
+        if (checkpointFile == null) return;
+
+        try {
+            while (!stopped) {
+                Thread.sleep(checkpointIntervalInMilliseconds);
+                try {
+                    saveCheckpoint();
+                    checkpointException = null;
+                } catch (IOException e) {
+                    //try again at the next interval.
+                    checkpointException = e;
+                }
+            }
+        } catch (InterruptedException e) {
+            //stop.
+        }
+    }
+
+    /**
+     * Writes the weights to the checkpoint file. Only called by the checkpoint thread and, after that has stopped, by method stop.
+     */
+    private void saveCheckpoint() throws IOException {
+        File temporaryFile = new File(checkpointFile.getPath() + ".tmp");
+        network.save(temporaryFile);
+        try {
+            Files.move(temporaryFile.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporaryFile.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        checkpointCount.incrementAndGet();
+    }
+
+    /**
+     * Returns the average policy loss and value loss of the training steps since the last call to this method,
+     * or NaN if there were no training steps.
+     */
+    public double[] getAndResetAverageLosses() {
+        long count = lossCount.sumThenReset();
+        double policyLoss = policyLossSum.sumThenReset();
+        double valueLoss = valueLossSum.sumThenReset();
+        return new double[]{policyLoss/count, valueLoss/count};
+    }
+
+    public PolicyValueNetwork getNetwork() {
+        return network;
+    }
+
+    public ReplayBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Returns the number of self-play games that were finished.
+     */
+    public long getGameCount() {
+        return gameCount.get();
+    }
+
+    /**
+     * Returns the number of training steps of all trainers. Can be a few steps per trainer behind.
+     */
+    public long getTrainingStepCount() {
+        return stepCount.get();
+    }
+
+    /**
+     * Returns the number of checkpoints that were saved.
+     */
+    public long getCheckpointCount() {
+        return checkpointCount.get();
+    }
+
+    /**
+     * Returns the exception of the last checkpoint that was saved at a fixed interval, or null if that checkpoint was saved
+     * (or if there was none yet). A failed checkpoint is tried again at the next interval. A failure of the final checkpoint
+     * is thrown by method stop.
+     */
+    public IOException getCheckpointException() {
+        return checkpointException;
+    }
+}
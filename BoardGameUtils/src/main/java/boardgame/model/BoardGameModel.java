@@ -15,4 +15,47 @@ public interface BoardGameModel extends TurnBasedGameModel {
     int getRowCount();
 
     int getColumnCount();
+
+    /**
+     * Returns the index of the player that owns the piece on the given square, or -1 if the square is empty.
+     */
+    int getIndexOfPlayerAt(int row, int column);
+
+    /**
+     * Returns a 64-bit hash of the current position on the board, e.g. for use as a key in a transposition table.
+     * Equal positions have equal hashes. Different positions have different hashes with very high probability.
+     */
+    long getZobristHash();
+
+    /**
+     * Returns the number of legal moves for the current state of the model.
+     */
+    int getLegalMoveCount();
+
+    /**
+     * Writes all legal moves for the current state of the model to the given array and returns the number of legal moves.
+     * Each move is encoded as a single int: row*columnCount + column.
+     * The given array must have room for at least getLegalMoveCount() moves.
+     *
+     * This is the same as getLegalMoves(), but does not allocate any memory.
+     * Models for very large boards may only return the moves that are worth considering, see e.g. SparseMnkBoardGameModel.
+     */
+    int getLegalMoves(int[] moves);
+
+    /**
+     * Returns the SquareMove for the given encoded move (row*columnCount + column).
+     */
+    SquareMove getMove(int move);
+
+    /**
+     * Changes the state of the model by making the given encoded move (row*columnCount + column) for the current player.
+     * This is the same as tryMove(getMove(move), null).
+     */
+    void tryMove(int move);
+
+    /**
+     * Returns an independent copy of this model with the same state, but without listeners.
+     * This can be used e.g. to let multiple threads search for moves in parallel, each in its own copy of the model.
+     */
+    BoardGameModel fork();
 }
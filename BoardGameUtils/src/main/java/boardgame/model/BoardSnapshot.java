@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2018 A.C. Kockx, All Rights Reserved.
+ */
+package boardgame.model;
+
+/**
+ * Immutable copy of the state of a board game at one point in time, for drawing the board.
+ *
+ * A model publishes a new snapshot after each change, before it notifies its listeners (see e.g. MnkBoardGameModel.getSnapshot).
+ * Since a snapshot never changes, it can be read on any thread without locks, also while the game thread already changes the model.
+ * The snapshot contains everything the model already knows, e.g. the winning line, so that drawers do not have to calculate it again.
+ *
+ * The pieces are stored as one bitboard per player with one bit per square: square = row*columnCount + column
+ * is stored in bit square%64 of word square/64.
+ *
+ * @author A.C. Kockx
+ */
+public final class BoardSnapshot {
+    private final int rowCount;
+    private final int columnCount;
+    private final String[] playerNames;
+    private final int wordCountPerPlayer;
+    private final long[] pieces;
+
+    private final SquareMove previousMove;
+    private final float[][] previousMoveProbabilities;
+    private final int winningLineStart;
+    private final int winningLineEnd;
+
+    private final boolean gameOver;
+    private final int indexOfCurrentPlayer;
+    private final int indexOfWinner;
+    private final int indexOfPlayerThatMadeAnIllegalMove;
+
+    /**
+     * The given arrays are not copied, so the caller must not change them afterwards.
+     *
+     * @param pieces bitboards of all players, see class description.
+     * @param winningLineStart first square of the winning line, or -1 if there is no winner.
+     * @param winningLineEnd last square of the winning line, or -1 if there is no winner.
+     * @param indexOfCurrentPlayer -1 if the game is over.
+     */
+    BoardSnapshot(int rowCount, int columnCount, String[] playerNames, long[] pieces, SquareMove previousMove, float[][] previousMoveProbabilities,
+                  int winningLineStart, int winningLineEnd, boolean gameOver, int indexOfCurrentPlayer, int indexOfWinner, int indexOfPlayerThatMadeAnIllegalMove) {
+        this.rowCount = rowCount;
+        this.columnCount = columnCount;
+        this.playerNames = playerNames;
+        wordCountPerPlayer = getWordCountPerPlayer(rowCount*columnCount);
+        if (pieces.length != playerNames.length*wordCountPerPlayer) throw new IllegalArgumentException("pieces.length != playerCount*wordCountPerPlayer");
+        this.pieces = pieces;
+        this.previousMove = previousMove;
+        this.previousMoveProbabilities = previousMoveProbabilities;
+        this.winningLineStart = winningLineStart;
+        this.winningLineEnd = winningLineEnd;
+        this.gameOver = gameOver;
+        this.indexOfCurrentPlayer = indexOfCurrentPlayer;
+        this.indexOfWinner = indexOfWinner;
+        this.indexOfPlayerThatMadeAnIllegalMove = indexOfPlayerThatMadeAnIllegalMove;
+    }
+
+    /**
+     * Returns the number of longs that are needed to store one bit for each of the given number of squares.
+     */
+    static int getWordCountPerPlayer(int squareCount) {
+        return (squareCount + Long.SIZE - 1)/Long.SIZE;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public int getColumnCount() {
+        return columnCount;
+    }
+
+    /**
+     * Returns the index of the player that owns the piece on the given square, or -1 if the square is empty.
+     */
+    public int getIndexOfPlayerAt(int row, int column) {
+        if (row < 0 || row >= rowCount || column < 0 || column >= columnCount) throw new IllegalArgumentException("(" + row + ", " + column + ") is outside board.");
+
+        int square = row*columnCount + column;
+        int word = square/Long.SIZE;
+        long bit = 1L << (square%Long.SIZE);
+        for (int playerIndex = 0; playerIndex < playerNames.length; playerIndex++) {
+            if ((pieces[playerIndex*wordCountPerPlayer + word] & bit) != 0) return playerIndex;
+        }
+        return -1;
+    }
+
+    /**
+     * Can be null.
+     */
+    public SquareMove getPreviousMove() {
+        return previousMove;
+    }
+
+    /**
+     * Can be null. The returned array is shared with the model and must not be changed.
+     */
+    public float[][] getPreviousMoveProbabilities() {
+        return previousMoveProbabilities;
+    }
+
+    /**
+     * Returns the square at one end of the line of k pieces of the winner, or null if there is no winner.
+     */
+    public SquareMove getWinningLineStart() {
+        return winningLineStart == -1 ? null : new SquareMove(winningLineStart/columnCount, winningLineStart%columnCount);
+    }
+
+    /**
+     * Returns the square at the other end of the line of k pieces of the winner, or null if there is no winner.
+     */
+    public SquareMove getWinningLineEnd() {
+        return winningLineEnd == -1 ? null : new SquareMove(winningLineEnd/columnCount, winningLineEnd%columnCount);
+    }
+
+    public boolean isGameOver() {
+        return gameOver;
+    }
+
+    /**
+     * Returns -1 if the game is over.
+     */
+    public int getIndexOfCurrentPlayer() {
+        return indexOfCurrentPlayer;
+    }
+
+    /**
+     * Returns -1 if there is no winner (yet).
+     */
+    public int getIndexOfWinner() {
+        return indexOfWinner;
+    }
+
+    /**
+     * Returns -1 if no player made an illegal move.
+     */
+    public int getIndexOfPlayerThatMadeAnIllegalMove() {
+        return indexOfPlayerThatMadeAnIllegalMove;
+    }
+
+    public String[] getPlayerNames() {
+        return playerNames;
+    }
+}
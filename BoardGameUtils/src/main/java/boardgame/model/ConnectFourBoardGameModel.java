@@ -0,0 +1,573 @@
+/*
+ * Copyright (c) 2018 A.C. Kockx, All Rights Reserved.
+ */
+package boardgame.model;
+
+import util.model.GameListener;
+import util.model.GameListeners;
+import util.model.Move;
+
+/**
+ * Stores the current state of a Connect Four game.
+ * In Connect Four two players alternately drop a piece of their own color in one of the columns of a vertical board.
+ * The piece falls down to the lowest empty square of that column. The winner is the first player that gets k pieces
+ * of their own color in a row (horizontally, vertically or diagonally). The standard game has 6 rows, 7 columns and k = 4.
+ * For more information see https://en.wikipedia.org/wiki/Connect_Four
+ *
+ * The board is stored as height-indexed bitboards: square (row, column) corresponds to bit number column*(rowCount + 1) + height,
+ * where height = rowCount - 1 - row is the number of squares below that square (row 0 is the top row).
+ * Each column has one extra (always empty) bit above its top square, so that lines of pieces cannot wrap from one column to the next.
+ * Therefore this class supports boards with at most 64 bits, i.e. columnCount*(rowCount + 1) <= 64.
+ *
+ * A move (SquareMove) is legal if its column is not full. The row of the move is ignored, since a piece always falls
+ * to the lowest empty square of a column. For the encoded moves (see BoardGameModel) the square where the piece lands is used.
+ *
+ * @author A.C. Kockx
+ */
+public final class ConnectFourBoardGameModel implements BoardGameModel {
+    public static final int STANDARD_ROW_COUNT = 6;
+    public static final int STANDARD_COLUMN_COUNT = 7;
+    public static final int STANDARD_WINNING_NUMBER_OF_PIECES_IN_A_ROW = 4;
+    //horizontal, vertical, diagonal (\) and diagonal (/) as {rowStep, columnStep}.
+    private static final int[][] DIRECTIONS = {{0, 1}, {1, 0}, {1, 1}, {1, -1}};
+
+    //listeners that are notified of changes.
+    private final GameListeners listeners = new GameListeners();
+    //last published state for drawing, see method getSnapshot.
+    private volatile BoardSnapshot snapshot = null;
+
+    private final int rowCount;
+    private final int columnCount;
+    private final int winningNumberOfPiecesInARow;//k
+    private final int bitsPerColumn;
+    private final String[] playerNames;
+
+    //one SquareMove for each square, so that moves do not need to be allocated during a game.
+    private final SquareMove[] squareMoves;
+    //Zobrist keys for each player and bit.
+    private final long[] zobristKeys;
+
+    //pieces of each player, one bit per square.
+    private final long[] pieces = new long[2];
+    //number of pieces in each column.
+    private final int[] heights;
+    private int pieceCount = 0;
+    private long zobristHash = 0;
+
+    private SquareMove previousMove = null;
+    private float[][] previousMoveProbabilities = null;
+
+    /**
+     * Player that is allowed to make the next move.
+     *
+     * This is a 1-based index, i.e.:
+     * 1 = player 1
+     * 2 = player 2
+     */
+    private int numberOfPlayerToMoveNext = 1;
+    private int indexOfPlayerThatMadeAnIllegalMove = -1;
+    private int indexOfWinner = -1;
+    //first and last square of the line of pieces of the winner, or -1 if there is no winner.
+    private int winningLineStart = -1;
+    private int winningLineEnd = -1;
+    private boolean gameOver = false;
+
+    /**
+     * Stack of moves made since the last reset, used by undoMove.
+     * The arrays are allocated once with room for the maximum number of moves in a game (a full board plus one illegal move).
+     */
+    private final SquareMove[] moveStack;
+    private final float[][][] moveProbabilitiesStack;
+    //column of each move, or -1 for an illegal move.
+    private final int[] moveColumnStack;
+    private int moveStackSize = 0;
+
+    /**
+     * Creates a standard Connect Four board (6 rows, 7 columns, 4 in a row).
+     */
+    public ConnectFourBoardGameModel(String[] playerNames) {
+        this(STANDARD_ROW_COUNT, STANDARD_COLUMN_COUNT, STANDARD_WINNING_NUMBER_OF_PIECES_IN_A_ROW, playerNames);
+    }
+
+    /**
+     * Creates an empty board for a Connect Four game with the given size, that can be played by the given two players.
+     *
+     * @param winningNumberOfPiecesInARow (k)
+     */
+    public ConnectFourBoardGameModel(int rowCount, int columnCount, int winningNumberOfPiecesInARow, String[] playerNames) {
+        if (rowCount <= 0) throw new IllegalArgumentException("rowCount <= 0");
+        if (columnCount <= 0) throw new IllegalArgumentException("columnCount <= 0");
+        if (columnCount*(rowCount + 1) > Long.SIZE) throw new IllegalArgumentException("columnCount*(rowCount + 1) > " + Long.SIZE);
+        if (winningNumberOfPiecesInARow <= 0) throw new IllegalArgumentException("winningNumberOfPiecesInARow <= 0");
+        if (playerNames == null || playerNames.length != 2) throw new IllegalArgumentException("playerNames.length != 2");
+
+        this.rowCount = rowCount;
+        this.columnCount = columnCount;
+        this.winningNumberOfPiecesInARow = winningNumberOfPiecesInARow;
+        this.playerNames = playerNames;
+        bitsPerColumn = rowCount + 1;
+
+        squareMoves = new SquareMove[rowCount*columnCount];
+        for (int square = 0; square < squareMoves.length; square++) {
+            squareMoves[square] = new SquareMove(square/columnCount, square%columnCount);
+        }
+        zobristKeys = new long[2*Long.SIZE];
+        long state = 0x5DEECE66DL;
+        for (int n = 0; n < zobristKeys.length; n++) {
+            //SplitMix64 generator.
+            state += 0x9E3779B97F4A7C15L;
+            long key = state;
+            key = (key ^ (key >>> 30))*0xBF58476D1CE4E5B9L;
+            key = (key ^ (key >>> 27))*0x94D049BB133111EBL;
+            zobristKeys[n] = key ^ (key >>> 31);
+        }
+        heights = new int[columnCount];
+
+        int maxMoveCount = rowCount*columnCount + 1;
+        moveStack = new SquareMove[maxMoveCount];
+        moveProbabilitiesStack = new float[maxMoveCount][][];
+        moveColumnStack = new int[maxMoveCount];
+
+        reset();
+    }
+
+    /**
+     * Creates a copy of the given model without listeners.
+     */
+    private ConnectFourBoardGameModel(ConnectFourBoardGameModel model) {
+        rowCount = model.rowCount;
+        columnCount = model.columnCount;
+        winningNumberOfPiecesInARow = model.winningNumberOfPiecesInARow;
+        playerNames = model.playerNames;
+        bitsPerColumn = model.bitsPerColumn;
+        squareMoves = model.squareMoves;
+        zobristKeys = model.zobristKeys;
+
+        pieces[0] = model.pieces[0];
+        pieces[1] = model.pieces[1];
+        heights = model.heights.clone();
+        pieceCount = model.pieceCount;
+        zobristHash = model.zobristHash;
+
+        moveStack = model.moveStack.clone();
+        moveProbabilitiesStack = model.moveProbabilitiesStack.clone();
+        moveColumnStack = model.moveColumnStack.clone();
+        moveStackSize = model.moveStackSize;
+
+        previousMove = model.previousMove;
+        previousMoveProbabilities = model.previousMoveProbabilities;
+        numberOfPlayerToMoveNext = model.numberOfPlayerToMoveNext;
+        indexOfPlayerThatMadeAnIllegalMove = model.indexOfPlayerThatMadeAnIllegalMove;
+        indexOfWinner = model.indexOfWinner;
+        winningLineStart = model.winningLineStart;
+        winningLineEnd = model.winningLineEnd;
+        gameOver = model.gameOver;
+    }
+
+    /**
+     * Returns a copy of this model with the same state (including the moves that can be undone), but without listeners.
+     */
+    @Override
+    public ConnectFourBoardGameModel fork() {
+        return new ConnectFourBoardGameModel(this);
+    }
+
+    /**
+     * Reset model to initial state of a game.
+     */
+    @Override
+    public void reset() {
+        //empty board.
+        pieces[0] = 0;
+        pieces[1] = 0;
+        for (int column = 0; column < columnCount; column++) {
+            heights[column] = 0;
+        }
+        pieceCount = 0;
+        zobristHash = 0;
+
+        //clear references, so that old moves can be garbage collected.
+        for (int n = 0; n < moveStackSize; n++) {
+            moveStack[n] = null;
+            moveProbabilitiesStack[n] = null;
+        }
+        moveStackSize = 0;
+
+        previousMove = null;
+        previousMoveProbabilities = null;
+
+        numberOfPlayerToMoveNext = 1;
+        indexOfPlayerThatMadeAnIllegalMove = -1;
+        indexOfWinner = -1;
+        winningLineStart = -1;
+        winningLineEnd = -1;
+        gameOver = false;
+
+        publishSnapshot();
+        listeners.fireGameReset();
+    }
+
+    @Override
+    public int getIndexOfCurrentPlayer() {
+        if (gameOver) throw new IllegalStateException("Game is already over.");
+        return numberOfPlayerToMoveNext - 1;
+    }
+
+    @Override
+    public boolean isLegalMove(Move gameMove) {
+        if (gameOver) throw new IllegalStateException("Game is already over.");
+        if (gameMove == null) throw new IllegalArgumentException("gameMove == null");
+        if (!(gameMove instanceof SquareMove)) throw new IllegalStateException("gameMove must be an instance of " + SquareMove.class.getSimpleName());
+        SquareMove move = (SquareMove) gameMove;
+
+        if (move.row < 0 || move.row >= rowCount || move.column < 0 || move.column >= columnCount) return false;//if outside board.
+        return heights[move.column] < rowCount;//if column not full.
+    }
+
+    @Override
+    public Move[] getLegalMoves() {
+        if (gameOver) throw new IllegalStateException("Game is already over.");
+
+        Move[] moves = new Move[getLegalMoveCount()];
+        int legalMoveCount = 0;
+        for (int column = 0; column < columnCount; column++) {
+            if (heights[column] < rowCount) moves[legalMoveCount++] = getLandingMove(column);
+        }
+        return moves;
+    }
+
+    @Override
+    public int getLegalMoveCount() {
+        if (gameOver) throw new IllegalStateException("Game is already over.");
+
+        int legalMoveCount = 0;
+        for (int column = 0; column < columnCount; column++) {
+            if (heights[column] < rowCount) legalMoveCount++;
+        }
+        return legalMoveCount;
+    }
+
+    /**
+     * Writes the legal moves from left to right to the given array. Each move is the square where the piece would land.
+     */
+    @Override
+    public int getLegalMoves(int[] moves) {
+        if (gameOver) throw new IllegalStateException("Game is already over.");
+
+        int legalMoveCount = 0;
+        for (int column = 0; column < columnCount; column++) {
+            int height = heights[column];
+            if (height < rowCount) moves[legalMoveCount++] = (rowCount - 1 - height)*columnCount + column;
+        }
+        return legalMoveCount;
+    }
+
+    @Override
+    public SquareMove getMove(int move) {
+        if (move < 0 || move >= squareMoves.length) throw new IllegalArgumentException("move " + move + " is outside board.");
+        return squareMoves[move];
+    }
+
+    @Override
+    public void tryMove(int move) {
+        tryMove(getMove(move), null);
+    }
+
+    /**
+     * Returns the move for the square where a piece would land in the given (not full) column.
+     */
+    private SquareMove getLandingMove(int column) {
+        return squareMoves[(rowCount - 1 - heights[column])*columnCount + column];
+    }
+
+    /**
+     * Changes the state of the model by dropping a piece of the current player in the column of the given move.
+     */
+    @Override
+    public void tryMove(Move gameMove, float[][] moveProbabilities) {
+        if (gameOver) throw new IllegalStateException("Game is already over.");
+        if (!(gameMove instanceof SquareMove)) throw new IllegalStateException("gameMove must be an instance of " + SquareMove.class.getSimpleName());
+        SquareMove move = (SquareMove) gameMove;
+
+        //store move.
+        previousMoveProbabilities = moveProbabilities;
+        if (!isLegalMove(move)) {//if current player tries to make an illegal move.
+            pushMove(move, moveProbabilities, -1);
+            previousMove = move;
+            //current player loses the game immediately.
+            indexOfPlayerThatMadeAnIllegalMove = getIndexOfCurrentPlayer();
+            numberOfPlayerToMoveNext = -1;
+            gameOver = true;
+            publishSnapshot();
+            listeners.fireGameOver(-1, indexOfPlayerThatMadeAnIllegalMove);
+            return;
+        }
+
+        //if legal move.
+        //store the square where the piece lands, instead of the given move.
+        previousMove = getLandingMove(move.column);
+        pushMove(previousMove, moveProbabilities, move.column);
+        int playerIndex = numberOfPlayerToMoveNext - 1;
+        long bit = 1L << (move.column*bitsPerColumn + heights[move.column]);
+        pieces[playerIndex] |= bit;
+        heights[move.column]++;
+        pieceCount++;
+        zobristHash ^= zobristKeys[playerIndex*Long.SIZE + Long.numberOfTrailingZeros(bit)];
+
+        if (hasKInARow(pieces[playerIndex])) {//if there is a winner.
+            indexOfWinner = playerIndex;
+            findWinningLine(playerIndex, previousMove.row, previousMove.column);
+            numberOfPlayerToMoveNext = -1;
+            gameOver = true;
+            publishSnapshot();
+            listeners.fireMoveMade(previousMove, playerIndex);
+            listeners.fireGameOver(playerIndex, -1);
+            return;
+        }
+
+        //if there is no winner yet.
+        //move on to next player.
+        numberOfPlayerToMoveNext = 3 - numberOfPlayerToMoveNext;
+        if (pieceCount >= rowCount*columnCount) {//if board full.
+            //if there is a draw.
+            numberOfPlayerToMoveNext = -1;
+            gameOver = true;
+            publishSnapshot();
+            listeners.fireMoveMade(previousMove, playerIndex);
+            listeners.fireGameOver(-1, -1);
+            return;
+        }
+
+        //notify listeners.
+        publishSnapshot();
+        listeners.fireMoveMade(previousMove, playerIndex);
+    }
+
+    private void pushMove(SquareMove move, float[][] moveProbabilities, int column) {
+        moveStack[moveStackSize] = move;
+        moveProbabilitiesStack[moveStackSize] = moveProbabilities;
+        moveColumnStack[moveStackSize] = column;
+        moveStackSize++;
+    }
+
+    /**
+     * Returns whether the given bitboard has k bits in a row in any of the four directions.
+     * Thanks to the empty bit above each column, a shift never connects squares of different columns or rows incorrectly.
+     */
+    private boolean hasKInARow(long bits) {
+        //vertical, horizontal, diagonal (/) and diagonal (\).
+        return hasKInARow(bits, 1) || hasKInARow(bits, bitsPerColumn) || hasKInARow(bits, bitsPerColumn + 1) || hasKInARow(bits, bitsPerColumn - 1);
+    }
+
+    private boolean hasKInARow(long bits, int shift) {
+        long runs = bits;
+        for (int i = 1; i < winningNumberOfPiecesInARow && runs != 0; i++) {
+            runs = bits & (runs >>> shift);
+        }
+        return runs != 0;
+    }
+
+    /**
+     * Stores the first and last square of the longest line of pieces of the given player through the given square,
+     * in the first direction that has at least k pieces.
+     */
+    private void findWinningLine(int playerIndex, int row, int column) {
+        for (int[] direction : DIRECTIONS) {
+            int rowStep = direction[0];
+            int columnStep = direction[1];
+            int backwardCount = countPieces(playerIndex, row, column, -rowStep, -columnStep);
+            int forwardCount = countPieces(playerIndex, row, column, rowStep, columnStep);
+            if (backwardCount + 1 + forwardCount >= winningNumberOfPiecesInARow) {
+                winningLineStart = (row - backwardCount*rowStep)*columnCount + column - backwardCount*columnStep;
+                winningLineEnd = (row + forwardCount*rowStep)*columnCount + column + forwardCount*columnStep;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of consecutive pieces of the given player, starting next to the given square and going in the given direction.
+     */
+    private int countPieces(int playerIndex, int row, int column, int rowStep, int columnStep) {
+        int count = 0;
+        for (int currentRow = row + rowStep, currentColumn = column + columnStep;
+             currentRow >= 0 && currentRow < rowCount && currentColumn >= 0 && currentColumn < columnCount
+                     && getIndexOfPlayerAt(currentRow, currentColumn) == playerIndex;
+             currentRow += rowStep, currentColumn += columnStep) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Changes the state of the model by undoing the previous move (legal or illegal).
+     */
+    @Override
+    public void undoMove() {
+        if (moveStackSize <= 0) throw new IllegalStateException("No move to undo.");
+
+        moveStackSize--;
+        int column = moveColumnStack[moveStackSize];
+        SquareMove move = moveStack[moveStackSize];
+        moveStack[moveStackSize] = null;
+        moveProbabilitiesStack[moveStackSize] = null;
+
+        //players always alternate, so the player that made the undone move follows from the number of moves.
+        int playerIndex = moveStackSize%2;
+        if (column != -1) {//remove piece from board.
+            heights[column]--;
+            pieceCount--;
+            long bit = 1L << (column*bitsPerColumn + heights[column]);
+            pieces[playerIndex] &= ~bit;
+            zobristHash ^= zobristKeys[playerIndex*Long.SIZE + Long.numberOfTrailingZeros(bit)];
+        }
+
+        //a move can only be made when the game is not over yet, so before the undone move the game was not over.
+        previousMove = moveStackSize > 0 ? moveStack[moveStackSize - 1] : null;
+        previousMoveProbabilities = moveStackSize > 0 ? moveProbabilitiesStack[moveStackSize - 1] : null;
+        numberOfPlayerToMoveNext = playerIndex + 1;
+        indexOfPlayerThatMadeAnIllegalMove = -1;
+        indexOfWinner = -1;
+        winningLineStart = -1;
+        winningLineEnd = -1;
+        gameOver = false;
+
+        publishSnapshot();
+        if (column != -1) {
+            listeners.fireMoveUndone(move, playerIndex);
+        } else {//if illegal move, then the board did not change.
+            listeners.firePositionChanged();
+        }
+    }
+
+    @Override
+    public long getZobristHash() {
+        return zobristHash;
+    }
+
+    /**
+     * Returns the index of the player that owns the piece on the given square, or -1 if the square is empty.
+     */
+    @Override
+    public int getIndexOfPlayerAt(int row, int column) {
+        if (row < 0 || row >= rowCount || column < 0 || column >= columnCount) throw new IllegalArgumentException("(" + row + ", " + column + ") is outside board.");
+
+        long bit = 1L << (column*bitsPerColumn + rowCount - 1 - row);
+        if ((pieces[0] & bit) != 0) return 0;
+        if ((pieces[1] & bit) != 0) return 1;
+        return -1;
+    }
+
+    /**
+     * Returns the height-indexed bitboard of the pieces of the given player, see the class description for the layout.
+     */
+    public long getPieces(int playerIndex) {
+        return pieces[playerIndex];
+    }
+
+    /**
+     * Returns the number of pieces on the board.
+     */
+    public int getPieceCount() {
+        return pieceCount;
+    }
+
+    /**
+     * Returns the number of moves (legal or illegal) that have been made since the last reset and that can be undone.
+     */
+    public int getMoveCount() {
+        return moveStackSize;
+    }
+
+    @Override
+    public boolean isGameOver() {
+        return gameOver;
+    }
+
+    @Override
+    public int getIndexOfWinner() {
+        return indexOfWinner;
+    }
+
+    @Override
+    public int getIndexOfPlayerThatMadeAnIllegalMove() {
+        return indexOfPlayerThatMadeAnIllegalMove;
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columnCount;
+    }
+
+    public int getWinningNumberOfPiecesInARow() {
+        return winningNumberOfPiecesInARow;
+    }
+
+    /**
+     * Can be null.
+     */
+    public SquareMove getPreviousMove() {
+        return previousMove;
+    }
+
+    @Override
+    public float[][] getPreviousMoveProbabilities() {
+        return previousMoveProbabilities;
+    }
+
+    @Override
+    public String[] getPlayerNames() {
+        return playerNames;
+    }
+
+    /**
+     * Returns an immutable snapshot of the state of this model, which can be used to draw the board on any thread.
+     * See MnkBoardGameModel.getSnapshot.
+     */
+    public BoardSnapshot getSnapshot() {
+        BoardSnapshot snapshot = this.snapshot;
+        if (snapshot == null) {
+            snapshot = createSnapshot();
+            this.snapshot = snapshot;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Called after each change of the state, before listeners are notified.
+     */
+    private void publishSnapshot() {
+        //if no listeners, then the snapshot is created when needed, see method getSnapshot.
+        snapshot = listeners.isEmpty() ? null : createSnapshot();
+    }
+
+    private BoardSnapshot createSnapshot() {
+        //convert from height-indexed bits to one bit per square (row*columnCount + column).
+        long[] squarePieces = new long[2];
+        for (int column = 0; column < columnCount; column++) {
+            for (int height = 0; height < heights[column]; height++) {
+                int square = (rowCount - 1 - height)*columnCount + column;
+                int playerIndex = (pieces[0] & (1L << (column*bitsPerColumn + height))) != 0 ? 0 : 1;
+                squarePieces[playerIndex] |= 1L << square;
+            }
+        }
+
+        return new BoardSnapshot(rowCount, columnCount, playerNames, squarePieces, previousMove, previousMoveProbabilities, winningLineStart, winningLineEnd,
+                gameOver, gameOver ? -1 : numberOfPlayerToMoveNext - 1, indexOfWinner, indexOfPlayerThatMadeAnIllegalMove);
+    }
+
+    @Override
+    public void addGameListener(GameListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void removeGameListener(GameListener listener) {
+        listeners.remove(listener);
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2018 A.C. Kockx, All Rights Reserved.
+ */
+package boardgame.model;
+
+import java.util.Arrays;
+
+/**
+ * Hash map from non-negative int keys to int values, that stores its entries in primitive arrays
+ * (open addressing with linear probing), so that no objects are allocated per entry.
+ *
+ * Note: this class is not thread-safe.
+ *
+ * @author A.C. Kockx
+ */
+final class IntIntHashMap {
+    private static final int EMPTY_KEY = -1;
+
+    private int[] keys;
+    private int[] values;
+    private int mask;
+    private int size = 0;
+
+    /**
+     * @param expectedSize number of entries that can be stored before the map needs to grow.
+     */
+    IntIntHashMap(int expectedSize) {
+        if (expectedSize < 0) throw new IllegalArgumentException("expectedSize < 0");
+
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize*2 - 1)) << 1;
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY_KEY);
+        mask = capacity - 1;
+    }
+
+    /**
+     * Creates a copy of the given map.
+     */
+    IntIntHashMap(IntIntHashMap map) {
+        keys = map.keys.clone();
+        values = map.values.clone();
+        mask = map.mask;
+        size = map.size;
+    }
+
+    private static int hash(int key) {
+        int h = key*0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private int indexOf(int key) {
+        for (int index = hash(key) & mask; ; index = (index + 1) & mask) {
+            int storedKey = keys[index];
+            if (storedKey == key) return index;
+            if (storedKey == EMPTY_KEY) return -1;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean containsKey(int key) {
+        return indexOf(key) != -1;
+    }
+
+    /**
+     * Returns the value for the given key, or defaultValue if the key is not in this map.
+     */
+    int get(int key, int defaultValue) {
+        int index = indexOf(key);
+        return index == -1 ? defaultValue : values[index];
+    }
+
+    void put(int key, int value) {
+        if (key < 0) throw new IllegalArgumentException("key < 0");
+
+        int index = hash(key) & mask;
+        for (; keys[index] != EMPTY_KEY; index = (index + 1) & mask) {
+            if (keys[index] == key) {
+                values[index] = value;
+                return;
+            }
+        }
+
+        keys[index] = key;
+        values[index] = value;
+        size++;
+        if (2*size > keys.length) grow();//keep load factor at most 0.5.
+    }
+
+    /**
+     * Adds the given delta to the value for the given key (0 if the key is not in this map) and returns the new value.
+     */
+    int add(int key, int delta) {
+        int index = indexOf(key);
+        if (index == -1) {
+            put(key, delta);
+            return delta;
+        }
+        return values[index] += delta;
+    }
+
+    /**
+     * Removes the given key from this map, if present.
+     */
+    void remove(int key) {
+        int index = indexOf(key);
+        if (index == -1) return;
+
+        //move entries after the removed entry back, so that there are no gaps in any probe sequence (no tombstones needed).
+        int gap = index;
+        for (int next = (gap + 1) & mask; keys[next] != EMPTY_KEY; next = (next + 1) & mask) {
+            int home = hash(keys[next]) & mask;
+            //entry at next can move to gap, if its home is not cyclically within (gap, next].
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+        }
+        keys[gap] = EMPTY_KEY;
+        size--;
+    }
+
+    void clear() {
+        Arrays.fill(keys, EMPTY_KEY);
+        size = 0;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[oldKeys.length*2];
+        values = new int[oldValues.length*2];
+        Arrays.fill(keys, EMPTY_KEY);
+        mask = keys.length - 1;
+        size = 0;
+        for (int n = 0; n < oldKeys.length; n++) {
+            if (oldKeys[n] != EMPTY_KEY) put(oldKeys[n], oldValues[n]);
+        }
+    }
+}
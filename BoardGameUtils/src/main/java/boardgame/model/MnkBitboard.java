@@ -0,0 +1,430 @@
+/*
+ * Copyright (c) 2018 A.C. Kockx, All Rights Reserved.
+ */
+package boardgame.model;
+
+import java.util.Arrays;
+
+/**
+ * Stores the pieces on an m x n board as bitboards, i.e. one bit per square for each player.
+ * Square (row, column) corresponds to bit number row*columnCount + column.
+ *
+ * Use method create to get the most efficient implementation for a given board size:
+ * boards with up to 64 squares are stored in one long per player, larger boards in one long[] per player.
+ *
+ * Note: this class is not thread-safe.
+ *
+ * @author A.C. Kockx
+ */
+abstract class MnkBitboard {
+    final MnkBoardGeometry geometry;
+    final int rowCount;
+    final int columnCount;
+    final int squareCount;
+    final int playerCount;
+
+    MnkBitboard(MnkBoardGeometry geometry, int playerCount) {
+        this.geometry = geometry;
+        rowCount = geometry.rowCount;
+        columnCount = geometry.columnCount;
+        squareCount = geometry.squareCount;
+        this.playerCount = playerCount;
+    }
+
+    /**
+     * Returns an empty bitboard for the given board geometry.
+     */
+    static MnkBitboard create(MnkBoardGeometry geometry, int playerCount) {
+        if (geometry.squareCount <= Long.SIZE) return new LongMnkBitboard(geometry, playerCount);
+        return new LongArrayMnkBitboard(geometry, playerCount);
+    }
+
+    /**
+     * Removes all pieces from the board.
+     */
+    abstract void clear();
+
+    /**
+     * Copies all pieces from the given bitboard, which must have the same geometry and number of players.
+     */
+    abstract void copyFrom(MnkBitboard board);
+
+    /**
+     * Puts a piece of the given player (0-based index) on the given empty square.
+     */
+    abstract void set(int playerIndex, int square);
+
+    /**
+     * Removes the piece of the given player (0-based index) from the given square.
+     */
+    abstract void remove(int playerIndex, int square);
+
+    abstract boolean isEmpty(int square);
+
+    /**
+     * Writes the empty squares in ascending order to the given array and returns the number of empty squares.
+     */
+    abstract int getEmptySquares(int[] squares);
+
+    /**
+     * Returns the index of the player that owns the piece on the given square, or -1 if the square is empty.
+     */
+    abstract int getPlayerIndex(int square);
+
+    /**
+     * Returns the number of pieces of the given player (0-based index).
+     */
+    abstract int getPieceCount(int playerIndex);
+
+    /**
+     * Returns whether the given player (0-based index) has at least k pieces in a row horizontally, vertically or diagonally.
+     */
+    abstract boolean hasKInARow(int playerIndex, int k);
+
+    /**
+     * Returns whether all squares of the given window (see MnkBoardGeometry) contain a piece of the given player (0-based index).
+     */
+    abstract boolean isWindowFilled(int playerIndex, int window);
+
+    /**
+     * Copies the bits of the given player (0-based index) to the given array, starting at the given offset.
+     * Square s is stored in bit s%64 of word s/64, so this writes (squareCount + 63)/64 words.
+     */
+    abstract void copyPieces(int playerIndex, long[] destination, int offset);
+
+    /**
+     * Returns a window that contains the given square and that is filled by the given player (0-based index), or -1 if there is none.
+     * This only checks the lines through the given square, so it is much faster than hasKInARow.
+     */
+    final int findFilledWindowThrough(int playerIndex, int square) {
+        int[] squareWindows = geometry.squareWindows;
+        int end = geometry.squareWindowOffsets[square + 1];
+        for (int i = geometry.squareWindowOffsets[square]; i < end; i++) {
+            if (isWindowFilled(playerIndex, squareWindows[i])) return squareWindows[i];
+        }
+        return -1;
+    }
+
+    /**
+     * Returns a window that is filled by the given player (0-based index), or -1 if there is none.
+     * This checks all windows on the board.
+     */
+    final int findFilledWindow(int playerIndex) {
+        for (int window = 0; window < geometry.windowCount; window++) {
+            if (isWindowFilled(playerIndex, window)) return window;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns whether the square at rowStep rows and columnStep columns distance from the given square is on the board.
+     */
+    final boolean hasNeighbour(int square, int rowStep, int columnStep) {
+        int row = square/columnCount + rowStep;
+        int column = square%columnCount + columnStep;
+        return row >= 0 && row < rowCount && column >= 0 && column < columnCount;
+    }
+
+    /**
+     * Bitboard for boards with at most 64 squares.
+     */
+    private static final class LongMnkBitboard extends MnkBitboard {
+        private final long[] pieces;//one bitboard per player.
+        private long occupied = 0;
+        private final long allSquares;
+
+        //for each direction: the bit shift to get to the next square in that direction
+        //and a mask of the squares that have a next square on the board in that direction.
+        private final int eastShift;
+        private final int southShift;
+        private final int southEastShift;
+        private final int southWestShift;
+        private final long eastMask;
+        private final long southMask;
+        private final long southEastMask;
+        private final long southWestMask;
+
+        LongMnkBitboard(MnkBoardGeometry geometry, int playerCount) {
+            super(geometry, playerCount);
+
+            pieces = new long[playerCount];
+            allSquares = squareCount == Long.SIZE ? -1L : (1L << squareCount) - 1;
+            eastShift = 1;
+            southShift = columnCount;
+            southEastShift = columnCount + 1;
+            southWestShift = columnCount - 1;
+            eastMask = createMask(0, 1);
+            southMask = createMask(1, 0);
+            southEastMask = createMask(1, 1);
+            southWestMask = createMask(1, -1);
+        }
+
+        private long createMask(int rowStep, int columnStep) {
+            long mask = 0;
+            for (int square = 0; square < squareCount; square++) {
+                if (hasNeighbour(square, rowStep, columnStep)) mask |= 1L << square;
+            }
+            return mask;
+        }
+
+        @Override
+        void clear() {
+            for (int player = 0; player < playerCount; player++) {
+                pieces[player] = 0;
+            }
+            occupied = 0;
+        }
+
+        @Override
+        void copyFrom(MnkBitboard board) {
+            LongMnkBitboard source = (LongMnkBitboard) board;
+            System.arraycopy(source.pieces, 0, pieces, 0, playerCount);
+            occupied = source.occupied;
+        }
+
+        @Override
+        void set(int playerIndex, int square) {
+            long bit = 1L << square;
+            pieces[playerIndex] |= bit;
+            occupied |= bit;
+        }
+
+        @Override
+        void remove(int playerIndex, int square) {
+            long bit = ~(1L << square);
+            pieces[playerIndex] &= bit;
+            occupied &= bit;
+        }
+
+        @Override
+        boolean isEmpty(int square) {
+            return (occupied & (1L << square)) == 0;
+        }
+
+        @Override
+        int getEmptySquares(int[] squares) {
+            int count = 0;
+            for (long empty = ~occupied & allSquares; empty != 0; empty &= empty - 1) {
+                squares[count++] = Long.numberOfTrailingZeros(empty);
+            }
+            return count;
+        }
+
+        @Override
+        int getPlayerIndex(int square) {
+            long bit = 1L << square;
+            if ((occupied & bit) == 0) return -1;
+            for (int player = 0; player < playerCount; player++) {
+                if ((pieces[player] & bit) != 0) return player;
+            }
+            throw new IllegalStateException("Occupied square " + square + " has no owner.");
+        }
+
+        @Override
+        int getPieceCount(int playerIndex) {
+            return Long.bitCount(pieces[playerIndex]);
+        }
+
+        @Override
+        void copyPieces(int playerIndex, long[] destination, int offset) {
+            destination[offset] = pieces[playerIndex];
+        }
+
+        @Override
+        boolean hasKInARow(int playerIndex, int k) {
+            long playerPieces = pieces[playerIndex];
+            return hasKInARow(playerPieces, eastShift, eastMask, k)
+                    || hasKInARow(playerPieces, southShift, southMask, k)
+                    || hasKInARow(playerPieces, southEastShift, southEastMask, k)
+                    || hasKInARow(playerPieces, southWestShift, southWestMask, k);
+        }
+
+        @Override
+        boolean isWindowFilled(int playerIndex, int window) {
+            long mask = geometry.windowMasks[window];
+            return (pieces[playerIndex] & mask) == mask;
+        }
+
+        /**
+         * After iteration i, bit s of runs is set if and only if there are i + 1 pieces in a row starting at square s in the given direction.
+         */
+        private static boolean hasKInARow(long pieces, int shift, long mask, int k) {
+            long runs = pieces;
+            for (int i = 1; i < k && runs != 0; i++) {
+                runs = pieces & mask & (runs >>> shift);
+            }
+            return runs != 0;
+        }
+    }
+
+    /**
+     * Bitboard for boards with more than 64 squares.
+     */
+    private static final class LongArrayMnkBitboard extends MnkBitboard {
+        private final int wordCount;
+        private final long[][] pieces;//one bitboard per player.
+        private final long[] occupied;
+
+        //see LongMnkBitboard.
+        private final int[] shifts;
+        private final long[][] masks;
+
+        //scratch arrays, to avoid allocating memory during hasKInARow.
+        private final long[] runs;
+        private final long[] shiftedRuns;
+
+        LongArrayMnkBitboard(MnkBoardGeometry geometry, int playerCount) {
+            super(geometry, playerCount);
+
+            wordCount = (squareCount + Long.SIZE - 1)/Long.SIZE;
+            pieces = new long[playerCount][wordCount];
+            occupied = new long[wordCount];
+            shifts = new int[]{1, columnCount, columnCount + 1, columnCount - 1};
+            masks = new long[][]{createMask(0, 1), createMask(1, 0), createMask(1, 1), createMask(1, -1)};
+            runs = new long[wordCount];
+            shiftedRuns = new long[wordCount];
+        }
+
+        private long[] createMask(int rowStep, int columnStep) {
+            long[] mask = new long[wordCount];
+            for (int square = 0; square < squareCount; square++) {
+                if (hasNeighbour(square, rowStep, columnStep)) mask[square >>> 6] |= 1L << square;
+            }
+            return mask;
+        }
+
+        @Override
+        void clear() {
+            for (int player = 0; player < playerCount; player++) {
+                Arrays.fill(pieces[player], 0);
+            }
+            Arrays.fill(occupied, 0);
+        }
+
+        @Override
+        void copyFrom(MnkBitboard board) {
+            LongArrayMnkBitboard source = (LongArrayMnkBitboard) board;
+            for (int player = 0; player < playerCount; player++) {
+                System.arraycopy(source.pieces[player], 0, pieces[player], 0, wordCount);
+            }
+            System.arraycopy(source.occupied, 0, occupied, 0, wordCount);
+        }
+
+        @Override
+        void set(int playerIndex, int square) {
+            long bit = 1L << square;
+            pieces[playerIndex][square >>> 6] |= bit;
+            occupied[square >>> 6] |= bit;
+        }
+
+        @Override
+        void remove(int playerIndex, int square) {
+            long bit = ~(1L << square);
+            pieces[playerIndex][square >>> 6] &= bit;
+            occupied[square >>> 6] &= bit;
+        }
+
+        @Override
+        boolean isEmpty(int square) {
+            return (occupied[square >>> 6] & (1L << square)) == 0;
+        }
+
+        @Override
+        int getEmptySquares(int[] squares) {
+            int count = 0;
+            for (int word = 0; word < wordCount; word++) {
+                long empty = ~occupied[word];
+                if (word == wordCount - 1 && squareCount%Long.SIZE != 0) empty &= (1L << squareCount) - 1;//ignore bits after last square.
+                for (; empty != 0; empty &= empty - 1) {
+                    squares[count++] = word*Long.SIZE + Long.numberOfTrailingZeros(empty);
+                }
+            }
+            return count;
+        }
+
+        @Override
+        int getPlayerIndex(int square) {
+            int word = square >>> 6;
+            long bit = 1L << square;
+            if ((occupied[word] & bit) == 0) return -1;
+            for (int player = 0; player < playerCount; player++) {
+                if ((pieces[player][word] & bit) != 0) return player;
+            }
+            throw new IllegalStateException("Occupied square " + square + " has no owner.");
+        }
+
+        @Override
+        int getPieceCount(int playerIndex) {
+            int count = 0;
+            for (long word : pieces[playerIndex]) {
+                count += Long.bitCount(word);
+            }
+            return count;
+        }
+
+        @Override
+        void copyPieces(int playerIndex, long[] destination, int offset) {
+            System.arraycopy(pieces[playerIndex], 0, destination, offset, wordCount);
+        }
+
+        @Override
+        boolean hasKInARow(int playerIndex, int k) {
+            long[] playerPieces = pieces[playerIndex];
+            for (int direction = 0; direction < shifts.length; direction++) {
+                if (hasKInARow(playerPieces, shifts[direction], masks[direction], k)) return true;
+            }
+            return false;
+        }
+
+        @Override
+        boolean isWindowFilled(int playerIndex, int window) {
+            long[] playerPieces = pieces[playerIndex];
+            int k = geometry.winningNumberOfPiecesInARow;
+            int[] windowSquares = geometry.windowSquares;
+            for (int i = window*k; i < (window + 1)*k; i++) {
+                int square = windowSquares[i];
+                if ((playerPieces[square >>> 6] & (1L << square)) == 0) return false;
+            }
+            return true;
+        }
+
+        /**
+         * See LongMnkBitboard.hasKInARow.
+         */
+        private boolean hasKInARow(long[] playerPieces, int shift, long[] mask, int k) {
+            System.arraycopy(playerPieces, 0, runs, 0, wordCount);
+            boolean anyRuns = isNotEmpty(runs);
+            for (int i = 1; i < k && anyRuns; i++) {
+                shiftRight(runs, shift, shiftedRuns);
+                anyRuns = false;
+                for (int word = 0; word < wordCount; word++) {
+                    runs[word] = playerPieces[word] & mask[word] & shiftedRuns[word];
+                    if (runs[word] != 0) anyRuns = true;
+                }
+            }
+            return anyRuns;
+        }
+
+        private static boolean isNotEmpty(long[] bits) {
+            for (long word : bits) {
+                if (word != 0) return true;
+            }
+            return false;
+        }
+
+        /**
+         * Writes source >>> shift to destination, where both arrays are treated as one long bit string (word 0 contains the least significant bits).
+         */
+        private static void shiftRight(long[] source, int shift, long[] destination) {
+            int wordShift = shift >>> 6;
+            int bitShift = shift & 63;
+            int length = source.length;
+            for (int word = 0; word < length; word++) {
+                int sourceWord = word + wordShift;
+                long value = sourceWord < length ? source[sourceWord] >>> bitShift : 0;
+                if (bitShift != 0 && sourceWord + 1 < length) value |= source[sourceWord + 1] << (Long.SIZE - bitShift);
+                destination[word] = value;
+            }
+        }
+    }
+}
@@ -3,10 +3,11 @@
  */
 package boardgame.model;
 
-import util.model.ExposedObservable;
+import util.model.GameListener;
+import util.model.GameListeners;
 import util.model.Move;
 
-import java.util.Observer;
+import java.util.Arrays;
 
 /**
  * Stores the current state of an m,n,k-game.
@@ -17,20 +18,54 @@ import java.util.Observer;
  *
  * Note that this class can in principle also be used for playing an m,n,k-game with more than two players.
  *
+ * The game ends in a draw as soon as no player can get k in a row anymore, i.e. when every line of k squares
+ * contains pieces of at least two different players. On larger boards this usually happens long before the board is full.
+ *
  * @author A.C. Kockx
  */
 public final class MnkBoardGameModel implements BoardGameModel {
-    //wrapped object to handle observers.
-    private final ExposedObservable observable = new ExposedObservable();
+    //listeners that are notified of changes.
+    private final GameListeners listeners = new GameListeners();
+    //last published state for drawing, see method getSnapshot.
+    private volatile BoardSnapshot snapshot = null;
 
     private final int rowCount;//m
     private final int columnCount;//n
     private final int winningNumberOfPiecesInARow;//k
+    //lookup tables shared by all models with the same (m,n,k).
+    private final MnkBoardGeometry geometry;
 
-    private final MnkBoardGamePieceType[][] board;
+    //pieces on the board, one bit per square for each player.
+    private final MnkBitboard board;
     private final MnkBoardGamePieceType[] pieceTypes;
     private final String[] playerNames;
 
+    private int emptySquareCount;
+
+    /**
+     * For each window (line of k squares, see MnkBoardGeometry) and each player, the number of pieces of that player in that window.
+     * The count for playerIndex and window is stored at index playerIndex*windowCount + window.
+     */
+    private final int[] windowPieceCounts;
+    //for each window, the number of different players that have at least one piece in that window.
+    private final int[] windowPlayerCounts;
+    //number of windows that contain pieces of at most one player, i.e. windows that can still be filled by a player.
+    private int openWindowCount;
+    //optional evaluator that is updated whenever the window counts change. Can be null.
+    private MnkPatternEvaluator patternEvaluator = null;
+    //scratch array for getLegalMoves.
+    private final int[] legalMoves;
+    //position that is being set up, see method beginPosition.
+    private final int[] positionPlayerIndices;
+
+    //Zobrist hash of the pieces on the board, updated incrementally for each move.
+    private final long[] zobristKeys;
+    private long zobristHash = 0;
+    //for each symmetry of the board, the Zobrist hash of the position transformed by that symmetry (index 0 is the identity).
+    private final long[] symmetricZobristHashes;
+    //scratch array for getSymmetricallyDistinctLegalMoves.
+    private final int[] invariantSymmetries;
+
     private SquareMove previousMove = null;
     private float[][] previousMoveProbabilities = null;
 
@@ -45,19 +80,38 @@ public final class MnkBoardGameModel implements BoardGameModel {
     private int numberOfPlayerToMoveNext = 1;
     private int indexOfPlayerThatMadeAnIllegalMove = -1;
     private int indexOfWinner = -1;
+    //window (see MnkBoardGeometry) that contains the k in a row of the winner, or -1 if there is no winner.
+    private int winningWindow = -1;
     private boolean gameOver = false;
 
+    /**
+     * Stack of moves made since the last reset, used by undoMove.
+     * The arrays are allocated once with room for the maximum number of moves in a game (a full board plus one illegal move),
+     * so that making and undoing moves does not allocate any memory.
+     */
+    private final SquareMove[] moveStack;
+    private final float[][][] moveProbabilitiesStack;
+    //square of each move, or -1 for an illegal move.
+    private final int[] moveSquareStack;
+    //1-based number of the player that made each move.
+    private final int[] movePlayerNumberStack;
+    private int moveStackSize = 0;
+
     /**
      * Creates an empty board for an m,n,k-game that can be played by the given players.
      *
      * @param rowCount (m)
      * @param columnCount (n)
-     * @param winningNumberOfPiecesInARow (k)
+     * @param winningNumberOfPiecesInARow (k) must fit on the board in at least one direction, otherwise nobody can ever win.
      */
     public MnkBoardGameModel(int rowCount, int columnCount, int winningNumberOfPiecesInARow, String[] playerNames) {
         if (rowCount <= 0) throw new IllegalArgumentException("rowCount <= 0");
         if (columnCount <= 0) throw new IllegalArgumentException("columnCount <= 0");
         if (winningNumberOfPiecesInARow <= 0) throw new IllegalArgumentException("winningNumberOfPiecesInARow <= 0");
+        //the game ends in a draw as soon as no window of k squares is open for a player, so there must be at least one window.
+        if (winningNumberOfPiecesInARow > rowCount && winningNumberOfPiecesInARow > columnCount) {
+            throw new IllegalArgumentException("winningNumberOfPiecesInARow > rowCount and winningNumberOfPiecesInARow > columnCount");
+        }
         if (playerNames == null || playerNames.length <= 0) throw new IllegalArgumentException("playerNames is empty");
 
         this.rowCount = rowCount;
@@ -73,22 +127,136 @@ public final class MnkBoardGameModel implements BoardGameModel {
         }
 
         //create empty board.
-        board = new MnkBoardGamePieceType[rowCount][columnCount];
+        geometry = MnkBoardGeometry.get(rowCount, columnCount, winningNumberOfPiecesInARow);
+        board = MnkBitboard.create(geometry, playerNames.length);
+        zobristKeys = geometry.createZobristKeys(playerNames.length);
+        legalMoves = new int[geometry.squareCount];
+        positionPlayerIndices = new int[geometry.squareCount];
+        windowPieceCounts = new int[playerNames.length*geometry.windowCount];
+        windowPlayerCounts = new int[geometry.windowCount];
+        symmetricZobristHashes = new long[geometry.symmetryCount];
+        invariantSymmetries = new int[geometry.symmetryCount];
+
+        int maxMoveCount = geometry.squareCount + 1;
+        moveStack = new SquareMove[maxMoveCount];
+        moveProbabilitiesStack = new float[maxMoveCount][][];
+        moveSquareStack = new int[maxMoveCount];
+        movePlayerNumberStack = new int[maxMoveCount];
 
         reset();
     }
 
+    /**
+     * Creates a copy of the given model without listeners. The lookup tables, pieceTypes and playerNames are shared with the given model.
+     */
+    private MnkBoardGameModel(MnkBoardGameModel model) {
+        rowCount = model.rowCount;
+        columnCount = model.columnCount;
+        winningNumberOfPiecesInARow = model.winningNumberOfPiecesInARow;
+        playerNames = model.playerNames;
+        pieceTypes = model.pieceTypes;
+        geometry = model.geometry;
+        zobristKeys = model.zobristKeys;
+
+        board = MnkBitboard.create(geometry, playerNames.length);
+        legalMoves = new int[geometry.squareCount];
+        positionPlayerIndices = new int[geometry.squareCount];
+        windowPieceCounts = new int[playerNames.length*geometry.windowCount];
+        windowPlayerCounts = new int[geometry.windowCount];
+        symmetricZobristHashes = new long[geometry.symmetryCount];
+        invariantSymmetries = new int[geometry.symmetryCount];
+
+        int maxMoveCount = geometry.squareCount + 1;
+        moveStack = new SquareMove[maxMoveCount];
+        moveProbabilitiesStack = new float[maxMoveCount][][];
+        moveSquareStack = new int[maxMoveCount];
+        movePlayerNumberStack = new int[maxMoveCount];
+
+        model.copyStateTo(this);
+    }
+
+    /**
+     * Returns a copy of this model with the same state (including the moves that can be undone), but without listeners.
+     * The copy is independent of this model, e.g. to allow another thread to search for moves in parallel.
+     */
+    @Override
+    public MnkBoardGameModel fork() {
+        return new MnkBoardGameModel(this);
+    }
+
+    /**
+     * Copies the state of this model (including the moves that can be undone) to the given model, which must have the same
+     * number of rows, columns, pieces in a row and players. This does not allocate any memory, so it is cheaper than method fork
+     * when the given model can be re-used, e.g. once for every search in a worker thread.
+     * Listeners of the given model are notified, listeners of this model are not copied.
+     */
+    public void copyStateTo(MnkBoardGameModel model) {
+        if (model == null) throw new IllegalArgumentException("model == null");
+        if (model.geometry != geometry || model.playerNames.length != playerNames.length) throw new IllegalArgumentException("model has a different board size or number of players.");
+        if (model == this) return;
+
+        model.board.copyFrom(board);
+        model.emptySquareCount = emptySquareCount;
+        System.arraycopy(windowPieceCounts, 0, model.windowPieceCounts, 0, windowPieceCounts.length);
+        System.arraycopy(windowPlayerCounts, 0, model.windowPlayerCounts, 0, windowPlayerCounts.length);
+        model.openWindowCount = openWindowCount;
+        if (model.patternEvaluator != null) model.patternEvaluator.initialize();
+        model.zobristHash = zobristHash;
+        System.arraycopy(symmetricZobristHashes, 0, model.symmetricZobristHashes, 0, symmetricZobristHashes.length);
+
+        System.arraycopy(moveStack, 0, model.moveStack, 0, moveStackSize);
+        System.arraycopy(moveProbabilitiesStack, 0, model.moveProbabilitiesStack, 0, moveStackSize);
+        System.arraycopy(moveSquareStack, 0, model.moveSquareStack, 0, moveStackSize);
+        System.arraycopy(movePlayerNumberStack, 0, model.movePlayerNumberStack, 0, moveStackSize);
+        //clear references, so that old moves can be garbage collected.
+        for (int n = moveStackSize; n < model.moveStackSize; n++) {
+            model.moveStack[n] = null;
+            model.moveProbabilitiesStack[n] = null;
+        }
+        model.moveStackSize = moveStackSize;
+
+        model.previousMove = previousMove;
+        model.previousMoveProbabilities = previousMoveProbabilities;
+        model.numberOfPlayerToMoveNext = numberOfPlayerToMoveNext;
+        model.indexOfPlayerThatMadeAnIllegalMove = indexOfPlayerThatMadeAnIllegalMove;
+        model.indexOfWinner = indexOfWinner;
+        model.winningWindow = winningWindow;
+        model.gameOver = gameOver;
+
+        model.publishSnapshot();
+        model.listeners.firePositionChanged();
+    }
+
     /**
      * Reset model to initial state of a game.
      */
     @Override
     public void reset() {
+        clear();
+        publishSnapshot();
+        listeners.fireGameReset();
+    }
+
+    /**
+     * Resets the state of this model to an empty board, without notifying listeners.
+     */
+    void clear() {
         //empty board.
-        for (int row = 0; row < rowCount; row++) {
-            for (int column = 0; column < columnCount; column++) {
-                board[row][column] = null;
-            }
+        board.clear();
+        emptySquareCount = geometry.squareCount;
+        Arrays.fill(windowPieceCounts, 0);
+        Arrays.fill(windowPlayerCounts, 0);
+        openWindowCount = geometry.windowCount;
+        if (patternEvaluator != null) patternEvaluator.initialize();
+        zobristHash = 0;
+        Arrays.fill(symmetricZobristHashes, 0);
+
+        //clear references, so that old moves can be garbage collected.
+        for (int n = 0; n < moveStackSize; n++) {
+            moveStack[n] = null;
+            moveProbabilitiesStack[n] = null;
         }
+        moveStackSize = 0;
 
         previousMove = null;
         previousMoveProbabilities = null;
@@ -96,9 +264,79 @@ public final class MnkBoardGameModel implements BoardGameModel {
         numberOfPlayerToMoveNext = 1;
         indexOfPlayerThatMadeAnIllegalMove = -1;
         indexOfWinner = -1;
+        winningWindow = -1;
         gameOver = false;
+    }
 
-        setChangedAndNotifyObservers();
+    /**
+     * Starts setting up a position, e.g. to decode a position (see MnkPositionCodec). Returns an array with one element per square,
+     * to which the caller writes the index of the player that owns the piece on that square, or -1 for an empty square.
+     * Then method finishPosition replaces the position of this model with the position in that array.
+     * The state of this model does not change until finishPosition succeeds.
+     */
+    int[] beginPosition() {
+        Arrays.fill(positionPlayerIndices, -1);
+        return positionPlayerIndices;
+    }
+
+    /**
+     * Replaces the position of this model with the position that was written to the array returned by method beginPosition,
+     * and determines the player to move and the game status. Moves made before this position are not known, so they cannot be undone.
+     *
+     * @throws IllegalArgumentException if the position cannot be reached in a game. In that case the state of this model does not change.
+     */
+    void finishPosition() {
+        int playerCount = playerNames.length;
+        int squareCount = geometry.squareCount;
+
+        //validate before changing anything.
+        int pieceCount = 0;
+        for (int square = 0; square < squareCount; square++) {
+            int playerIndex = positionPlayerIndices[square];
+            if (playerIndex < -1 || playerIndex >= playerCount) throw new IllegalArgumentException("Unknown player index " + playerIndex + " for square " + square);
+            if (playerIndex != -1) pieceCount++;
+        }
+        //players take turns, so players that moved earlier have at most one piece more than players that moved later.
+        int indexOfLastPlayer = (pieceCount + playerCount - 1)%playerCount;
+        for (int playerIndex = 0; playerIndex < playerCount; playerIndex++) {
+            int playerPieceCount = 0;
+            for (int square = 0; square < squareCount; square++) {
+                if (positionPlayerIndices[square] == playerIndex) playerPieceCount++;
+            }
+            int expectedPieceCount = pieceCount/playerCount + (playerIndex < pieceCount%playerCount ? 1 : 0);
+            if (playerPieceCount != expectedPieceCount) throw new IllegalArgumentException("Position cannot be reached: player " + (playerIndex + 1) + " has the wrong number of pieces.");
+        }
+        //only the player that made the last move can have k in a row.
+        int k = winningNumberOfPiecesInARow;
+        int[] windowSquares = geometry.windowSquares;
+        for (int window = 0; window < geometry.windowCount; window++) {
+            int playerIndex = positionPlayerIndices[windowSquares[window*k]];
+            if (playerIndex == -1 || playerIndex == indexOfLastPlayer) continue;
+
+            int i = 1;
+            while (i < k && positionPlayerIndices[windowSquares[window*k + i]] == playerIndex) i++;
+            if (i == k) throw new IllegalArgumentException("Position cannot be reached: player " + (playerIndex + 1) + " has k in a row, but did not make the last move.");
+        }
+
+        clear();
+        for (int square = 0; square < squareCount; square++) {
+            if (positionPlayerIndices[square] != -1) addPiece(positionPlayerIndices[square], square);
+        }
+
+        //determine game status.
+        if (board.hasKInARow(indexOfLastPlayer, winningNumberOfPiecesInARow)) {
+            indexOfWinner = indexOfLastPlayer;
+            winningWindow = board.findFilledWindow(indexOfLastPlayer);
+        }
+        if (indexOfWinner != -1 || emptySquareCount <= 0 || (pieceCount > 0 && openWindowCount <= 0)) {
+            numberOfPlayerToMoveNext = -1;
+            gameOver = true;
+        } else {
+            numberOfPlayerToMoveNext = pieceCount%playerCount + 1;
+        }
+
+        publishSnapshot();
+        listeners.firePositionChanged();
     }
 
     @Override
@@ -115,28 +353,46 @@ public final class MnkBoardGameModel implements BoardGameModel {
         SquareMove move = (SquareMove) gameMove;
 
         if (move.row < 0 || move.row >= rowCount || move.column < 0 || move.column >= columnCount) return false;//if outside board.
-        if (board[move.row][move.column] != null) return false;//if square not empty.
+        if (!board.isEmpty(move.row*columnCount + move.column)) return false;//if square not empty.
         return true;//if empty square.
     }
 
+    /**
+     * Returns the legal moves. The returned SquareMove objects are shared, so that no new moves need to be created.
+     */
     @Override
     public Move[] getLegalMoves() {
         if (gameOver) throw new IllegalStateException("Game is already over.");
 
-        Move[] moves = new Move[rowCount*columnCount];
-
-        int legalMoveCount = 0;
-        for (int row = 0; row < rowCount; row++) {
-            for (int column = 0; column < columnCount; column++) {
-                if (board[row][column] == null) {//if empty square.
-                    moves[legalMoveCount++] = new SquareMove(row, column);
-                }
-            }
+        int legalMoveCount = board.getEmptySquares(legalMoves);
+        Move[] moves = new Move[legalMoveCount];
+        for (int n = 0; n < legalMoveCount; n++) {
+            moves[n] = geometry.squareMoves[legalMoves[n]];
         }
+        return moves;
+    }
 
-        Move[] legalMoves = new Move[legalMoveCount];
-        System.arraycopy(moves, 0, legalMoves, 0, legalMoveCount);
-        return legalMoves;
+    @Override
+    public int getLegalMoveCount() {
+        if (gameOver) throw new IllegalStateException("Game is already over.");
+        return emptySquareCount;
+    }
+
+    @Override
+    public int getLegalMoves(int[] moves) {
+        if (gameOver) throw new IllegalStateException("Game is already over.");
+        return board.getEmptySquares(moves);
+    }
+
+    @Override
+    public SquareMove getMove(int move) {
+        if (move < 0 || move >= geometry.squareCount) throw new IllegalArgumentException("move " + move + " is outside board.");
+        return geometry.squareMoves[move];
+    }
+
+    @Override
+    public void tryMove(int move) {
+        tryMove(getMove(move), null);
     }
 
     /**
@@ -149,136 +405,152 @@ public final class MnkBoardGameModel implements BoardGameModel {
         SquareMove move = (SquareMove) gameMove;
 
         //store move.
+        boolean legalMove = isLegalMove(move);
+        pushMove(move, moveProbabilities, legalMove ? move.row*columnCount + move.column : -1);
         previousMove = move;
         previousMoveProbabilities = moveProbabilities;
-        if (!isLegalMove(move)) {//if current player tries to make an illegal move.
+        if (!legalMove) {//if current player tries to make an illegal move.
             //current player loses the game immediately.
             indexOfPlayerThatMadeAnIllegalMove = getIndexOfCurrentPlayer();
             numberOfPlayerToMoveNext = -1;
             gameOver = true;
-            setChangedAndNotifyObservers();
+            publishSnapshot();
+            listeners.fireGameOver(-1, indexOfPlayerThatMadeAnIllegalMove);
             return;
         }
 
         //if legal move.
+        int playerIndex = numberOfPlayerToMoveNext - 1;
         makeMove(move);
-        int indexOfWinner = determineWinner();
-        if (indexOfWinner != -1) {//if there is a winner.
-            this.indexOfWinner = indexOfWinner;
+        int winningWindow = board.findFilledWindowThrough(playerIndex, move.row*columnCount + move.column);
+        if (winningWindow != -1) {//if there is a winner.
+            this.winningWindow = winningWindow;
+            indexOfWinner = playerIndex;
             numberOfPlayerToMoveNext = -1;
             gameOver = true;
-            setChangedAndNotifyObservers();
+            publishSnapshot();
+            listeners.fireMoveMade(move, playerIndex);
+            listeners.fireGameOver(indexOfWinner, -1);
             return;
         }
 
         //if there is no winner yet.
         //move on to next player.
         numberOfPlayerToMoveNext = numberOfPlayerToMoveNext%playerNames.length + 1;
-        if (getLegalMoves().length <= 0) {//if no moves left for next player.
+        if (emptySquareCount <= 0 || openWindowCount <= 0) {//if no moves left for next player or nobody can win anymore.
             //if there is a draw.
             numberOfPlayerToMoveNext = -1;
             gameOver = true;
-            setChangedAndNotifyObservers();
+            publishSnapshot();
+            listeners.fireMoveMade(move, playerIndex);
+            listeners.fireGameOver(-1, -1);
             return;
         }
 
-        //notify observers.
-        setChangedAndNotifyObservers();
+        //notify listeners.
+        publishSnapshot();
+        listeners.fireMoveMade(move, playerIndex);
     }
 
     private void makeMove(SquareMove move) {
+        addPiece(numberOfPlayerToMoveNext - 1, move.row*columnCount + move.column);
+    }
+
+    /**
+     * Puts a piece of the given player on the given empty square, without changing the player to move or the game status.
+     */
+    void addPiece(int playerIndex, int square) {
         //add new piece to board.
-        int newPieceTypeIndex = numberOfPlayerToMoveNext - 1;
-        //pieces are re-used for multiple squares. This is possible as long as all pieces of the same player are identical.
-        board[move.row][move.column] = pieceTypes[newPieceTypeIndex];
+        board.set(playerIndex, square);
+        emptySquareCount--;
+        updateZobristHashes(playerIndex, square);
+
+        //update windows that contain the new piece.
+        int[] squareWindows = geometry.squareWindows;
+        int countOffset = playerIndex*geometry.windowCount;
+        for (int i = geometry.squareWindowOffsets[square]; i < geometry.squareWindowOffsets[square + 1]; i++) {
+            int window = squareWindows[i];
+            //if first piece of this player in this window and window already contained pieces of another player.
+            if (windowPieceCounts[countOffset + window]++ == 0 && ++windowPlayerCounts[window] == 2) openWindowCount--;
+            if (patternEvaluator != null) patternEvaluator.pieceAdded(playerIndex, window);
+        }
     }
 
-    @Override
-    public void undoMove() {
-        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support undoMove.");
+    private void pushMove(SquareMove move, float[][] moveProbabilities, int square) {
+        moveStack[moveStackSize] = move;
+        moveProbabilitiesStack[moveStackSize] = moveProbabilities;
+        moveSquareStack[moveStackSize] = square;
+        movePlayerNumberStack[moveStackSize] = numberOfPlayerToMoveNext;
+        moveStackSize++;
     }
 
     /**
-     * Returns the index of the winning player, or -1 if there is no winner (yet).
+     * Adds or removes (XOR) a piece of the given player on the given square to or from the Zobrist hashes.
      */
-    private int determineWinner() {
-        //check for k in a row.
-        int requiredK = winningNumberOfPiecesInARow;
-        for (int row = 0; row < rowCount; row++) {
-            for (int column = 0; column < columnCount; column++) {
-                MnkBoardGamePieceType firstPiece = board[row][column];
-                if (firstPiece == null) continue;
-
-                //check for horizontal k in a row.
-                if (column <= columnCount - requiredK) {//if square is far enough from right edge.
-                    boolean kInARow = true;
-                    for (int k = 1; k < requiredK; k++) {
-                        MnkBoardGamePieceType currentPiece = board[row][column + k];
-                        if (currentPiece == null || currentPiece.player != firstPiece.player) {
-                            kInARow = false;
-                            break;
-                        }
-                    }
-
-                    if (kInARow) {
-                        return firstPiece.player - 1;
-                    }
-                }
-
-                //check for vertical k in a row.
-                if (row <= rowCount - requiredK) {//if square is far enough from bottom edge.
-                    boolean kInARow = true;
-                    for (int k = 1; k < requiredK; k++) {
-                        MnkBoardGamePieceType currentPiece = board[row + k][column];
-                        if (currentPiece == null || currentPiece.player != firstPiece.player) {
-                            kInARow = false;
-                            break;
-                        }
-                    }
-
-                    if (kInARow) {
-                        return firstPiece.player - 1;
-                    }
-                }
-
-                //check for NW-SE diagonal k in a row.
-                if (column <= columnCount - requiredK && row <= rowCount - requiredK) {
-                    //if square is far enough from right edge and far enough from bottom edge.
-                    boolean kInARow = true;
-                    for (int k = 1; k < requiredK; k++) {
-                        MnkBoardGamePieceType currentPiece = board[row + k][column + k];
-                        if (currentPiece == null || currentPiece.player != firstPiece.player) {
-                            kInARow = false;
-                            break;
-                        }
-                    }
+    private void updateZobristHashes(int playerIndex, int square) {
+        int squareCount = geometry.squareCount;
+        int[] symmetrySquares = geometry.symmetrySquares;
+        int keyOffset = playerIndex*squareCount;
+        zobristHash ^= zobristKeys[keyOffset + square];
+        for (int symmetry = 0; symmetry < symmetricZobristHashes.length; symmetry++) {
+            symmetricZobristHashes[symmetry] ^= zobristKeys[keyOffset + symmetrySquares[symmetry*squareCount + square]];
+        }
+    }
 
-                    if (kInARow) {
-                        return firstPiece.player - 1;
-                    }
-                }
+    /**
+     * Changes the state of the model by undoing the previous move (legal or illegal).
+     * This restores the board, the previous move, the player to move and the game end status in constant time.
+     */
+    @Override
+    public void undoMove() {
+        if (moveStackSize <= 0) throw new IllegalStateException("No move to undo.");
+
+        moveStackSize--;
+        int square = moveSquareStack[moveStackSize];
+        int playerNumber = movePlayerNumberStack[moveStackSize];
+        SquareMove move = moveStack[moveStackSize];
+        moveStack[moveStackSize] = null;
+        moveProbabilitiesStack[moveStackSize] = null;
+
+        //remove piece from board.
+        if (square != -1) {
+            board.remove(playerNumber - 1, square);
+            emptySquareCount++;
+            updateZobristHashes(playerNumber - 1, square);
+
+            //update windows that contain the removed piece.
+            int[] squareWindows = geometry.squareWindows;
+            int countOffset = (playerNumber - 1)*geometry.windowCount;
+            for (int i = geometry.squareWindowOffsets[square]; i < geometry.squareWindowOffsets[square + 1]; i++) {
+                int window = squareWindows[i];
+                //if last piece of this player in this window and window still contains pieces of one other player.
+                if (--windowPieceCounts[countOffset + window] == 0 && --windowPlayerCounts[window] == 1) openWindowCount++;
+                if (patternEvaluator != null) patternEvaluator.pieceRemoved(playerNumber - 1, window);
+            }
+        }
 
-                //check for NE-SW diagonal k in a row.
-                if (column >= requiredK - 1 && row <= rowCount - requiredK) {
-                    //if square is far enough from left edge and far enough from bottom edge.
-                    boolean kInARow = true;
-                    for (int k = 1; k < requiredK; k++) {
-                        MnkBoardGamePieceType currentPiece = board[row + k][column - k];
-                        if (currentPiece == null || currentPiece.player != firstPiece.player) {
-                            kInARow = false;
-                            break;
-                        }
-                    }
+        //a move can only be made when the game is not over yet, so before the undone move the game was not over.
+        previousMove = moveStackSize > 0 ? moveStack[moveStackSize - 1] : null;
+        previousMoveProbabilities = moveStackSize > 0 ? moveProbabilitiesStack[moveStackSize - 1] : null;
+        numberOfPlayerToMoveNext = playerNumber;
+        indexOfPlayerThatMadeAnIllegalMove = -1;
+        indexOfWinner = -1;
+        winningWindow = -1;
+        gameOver = false;
 
-                    if (kInARow) {
-                        return firstPiece.player - 1;
-                    }
-                }
-            }
+        publishSnapshot();
+        if (square != -1) {
+            listeners.fireMoveUndone(move, playerNumber - 1);
+        } else {//if illegal move, then the board did not change.
+            listeners.firePositionChanged();
         }
+    }
 
-        //if there is no winner (yet).
-        return -1;
+    /**
+     * Returns the number of moves (legal or illegal) that have been made since the last reset and that can be undone.
+     */
+    public int getMoveCount() {
+        return moveStackSize;
     }
 
     @Override
@@ -306,15 +578,280 @@ public final class MnkBoardGameModel implements BoardGameModel {
         return columnCount;
     }
 
+    /**
+     * Returns the Zobrist hash of the pieces on the board. This is updated in constant time by tryMove and undoMove.
+     * The player to move follows from the number of pieces on the board, so it is not part of the hash.
+     */
+    @Override
+    public long getZobristHash() {
+        return zobristHash;
+    }
+
+    /**
+     * Returns the index of the player that owns the piece on the given square (row*columnCount + column), or -1 if the square is empty.
+     */
+    int getPlayerIndex(int square) {
+        return board.getPlayerIndex(square);
+    }
+
+    int getPlayerCount() {
+        return playerNames.length;
+    }
+
+    /**
+     * Returns the number of symmetries of the board (rotations and reflections, including the identity):
+     * 8 for a square board, 4 for a rectangular board.
+     */
+    public int getSymmetryCount() {
+        return geometry.symmetryCount;
+    }
+
+    /**
+     * Returns the symmetry that transforms the current position into its canonical form.
+     * The canonical form is the transformed position with the lowest Zobrist hash, so all positions that are
+     * symmetric to each other have the same canonical form.
+     */
+    public int getCanonicalSymmetry() {
+        int canonicalSymmetry = 0;
+        for (int symmetry = 1; symmetry < symmetricZobristHashes.length; symmetry++) {
+            if (symmetricZobristHashes[symmetry] < symmetricZobristHashes[canonicalSymmetry]) canonicalSymmetry = symmetry;
+        }
+        return canonicalSymmetry;
+    }
+
+    /**
+     * Returns the Zobrist hash of the canonical form of the current position, see getCanonicalSymmetry.
+     * This is the same for all positions that are symmetric to each other, e.g. for use as a key in a transposition table or opening book.
+     */
+    public long getCanonicalZobristHash() {
+        return symmetricZobristHashes[getCanonicalSymmetry()];
+    }
+
+    /**
+     * Returns the canonical form of the current position, see getCanonicalSymmetry. See also getBoard.
+     */
+    public MnkBoardGamePieceType[][] getCanonicalBoard() {
+        int symmetryOffset = getCanonicalSymmetry()*geometry.squareCount;
+        MnkBoardGamePieceType[][] squares = new MnkBoardGamePieceType[rowCount][columnCount];
+        for (int square = 0; square < geometry.squareCount; square++) {
+            int playerIndex = board.getPlayerIndex(square);
+            if (playerIndex == -1) continue;
+
+            int canonicalSquare = geometry.symmetrySquares[symmetryOffset + square];
+            squares[canonicalSquare/columnCount][canonicalSquare%columnCount] = pieceTypes[playerIndex];
+        }
+        return squares;
+    }
+
+    /**
+     * Converts the given encoded move (row*columnCount + column) to the corresponding move in the canonical form of the current position.
+     */
+    public int toCanonicalMove(int move) {
+        return geometry.symmetrySquares[getCanonicalSymmetry()*geometry.squareCount + move];
+    }
+
+    /**
+     * Converts the given encoded move in the canonical form of the current position to the corresponding move in the current position.
+     * This is the inverse of toCanonicalMove, e.g. to play a move that was stored in an opening book for the canonical position.
+     */
+    public int fromCanonicalMove(int canonicalMove) {
+        int inverseSymmetry = geometry.inverseSymmetries[getCanonicalSymmetry()];
+        return geometry.symmetrySquares[inverseSymmetry*geometry.squareCount + canonicalMove];
+    }
+
+    /**
+     * Writes the legal moves that are distinct under the symmetries of the current position to the given array
+     * and returns the number of moves written. Moves are encoded as row*columnCount + column.
+     * Of each set of legal moves that are equivalent under a symmetry of the current position (a symmetry that maps
+     * the current position to itself), only the move with the lowest square index is included. Moves that lead to
+     * symmetric positions in another way are not detected.
+     * The given array must have room for at least getLegalMoveCount() moves.
+     *
+     * For the empty board this reduces the number of moves by up to a factor 8.
+     */
+    public int getSymmetricallyDistinctLegalMoves(int[] moves) {
+        int legalMoveCount = getLegalMoves(moves);
+
+        //find the symmetries that map the current position to itself.
+        int squareCount = geometry.squareCount;
+        int[] symmetrySquares = geometry.symmetrySquares;
+        int invariantSymmetryCount = 0;
+        for (int symmetry = 1; symmetry < symmetricZobristHashes.length; symmetry++) {
+            if (symmetricZobristHashes[symmetry] == zobristHash && isInvariant(symmetry)) {
+                invariantSymmetries[invariantSymmetryCount++] = symmetry;
+            }
+        }
+        if (invariantSymmetryCount == 0) return legalMoveCount;
+
+        //keep only the moves that have the lowest square index of all squares that they are mapped to.
+        int distinctMoveCount = 0;
+        for (int n = 0; n < legalMoveCount; n++) {
+            int move = moves[n];
+            boolean lowest = true;
+            for (int i = 0; i < invariantSymmetryCount; i++) {
+                if (symmetrySquares[invariantSymmetries[i]*squareCount + move] < move) {
+                    lowest = false;
+                    break;
+                }
+            }
+            if (lowest) moves[distinctMoveCount++] = move;
+        }
+        return distinctMoveCount;
+    }
+
+    /**
+     * Returns whether the given symmetry maps the current position to itself.
+     */
+    private boolean isInvariant(int symmetry) {
+        int symmetryOffset = symmetry*geometry.squareCount;
+        for (int square = 0; square < geometry.squareCount; square++) {
+            if (board.getPlayerIndex(square) != board.getPlayerIndex(geometry.symmetrySquares[symmetryOffset + square])) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of lines of k squares on the board that can still be filled by a single player,
+     * i.e. that do not contain pieces of two or more different players. When this becomes 0 the game ends in a draw.
+     * This is maintained by tryMove and undoMove in O(k) time.
+     */
+    public int getOpenWindowCount() {
+        return openWindowCount;
+    }
+
+    /**
+     * Writes the empty squares where the given player would complete k in a row with one more piece to the given array
+     * and returns the number of squares written. Each square is only written once. Stops after maxCount squares.
+     * Squares are encoded as row*columnCount + column, like moves. This scans the window counts, so it takes O(number of windows) time.
+     *
+     * For example, if the opponent of the player to move has two or more such squares, then the player to move cannot prevent a loss
+     * (unless the player to move can win immediately).
+     */
+    public int getWinningSquares(int playerIndex, int[] squares, int maxCount) {
+        return getWinningSquares(playerIndex, -1, squares, maxCount);
+    }
+
+    /**
+     * Same as getWinningSquares(playerIndex, squares, maxCount), but if square is not -1, then only lines of k squares
+     * that contain the given square are included. This only scans the windows that contain the given square,
+     * which is much faster than scanning the whole board, e.g. to find the winning squares that are created by the previous move.
+     */
+    public int getWinningSquares(int playerIndex, int square, int[] squares, int maxCount) {
+        return getEmptySquaresInWindows(playerIndex, winningNumberOfPiecesInARow - 1, square, squares, maxCount);
+    }
+
+    /**
+     * Writes the empty squares where a piece of the given player would create a winning square for that player (see getWinningSquares),
+     * i.e. the moves that threaten to win with the next move, to the given array and returns the number of squares written.
+     * Each square is only written once. Stops after maxCount squares. If k is less than 2, then no squares are written.
+     *
+     * @param square if not -1, only threats in lines of k squares that contain this square are included, like in getWinningSquares.
+     */
+    public int getThreatSquares(int playerIndex, int square, int[] squares, int maxCount) {
+        if (winningNumberOfPiecesInARow < 2) return 0;
+        return getEmptySquaresInWindows(playerIndex, winningNumberOfPiecesInARow - 2, square, squares, maxCount);
+    }
+
+    /**
+     * Writes the empty squares of all windows that contain exactly the given number of pieces, all of the given player,
+     * to the given array and returns the number of squares written. If square is not -1, then only windows that contain that square are scanned.
+     */
+    private int getEmptySquaresInWindows(int playerIndex, int pieceCount, int square, int[] squares, int maxCount) {
+        int k = winningNumberOfPiecesInARow;
+        int[] windowSquares = geometry.windowSquares;
+        int countOffset = playerIndex*geometry.windowCount;
+        //a window without pieces has no players.
+        int requiredPlayerCount = pieceCount == 0 ? 0 : 1;
+        int start = square == -1 ? 0 : geometry.squareWindowOffsets[square];
+        int end = square == -1 ? geometry.windowCount : geometry.squareWindowOffsets[square + 1];
+        int squareCount = 0;
+        for (int i = start; i < end && squareCount < maxCount; i++) {
+            int window = square == -1 ? i : geometry.squareWindows[i];
+            if (windowPieceCounts[countOffset + window] != pieceCount || windowPlayerCounts[window] != requiredPlayerCount) continue;
+
+            //add the empty squares in this window.
+            for (int j = window*k; j < (window + 1)*k && squareCount < maxCount; j++) {
+                int emptySquare = windowSquares[j];
+                if (board.getPlayerIndex(emptySquare) != -1) continue;
+
+                boolean alreadyFound = false;
+                for (int n = 0; n < squareCount; n++) {
+                    if (squares[n] == emptySquare) {
+                        alreadyFound = true;
+                        break;
+                    }
+                }
+                if (!alreadyFound) squares[squareCount++] = emptySquare;
+            }
+        }
+        return squareCount;
+    }
+
+    /**
+     * Sets the evaluator that is updated whenever a piece is added to or removed from this model. Can be null.
+     */
+    void setPatternEvaluator(MnkPatternEvaluator patternEvaluator) {
+        this.patternEvaluator = patternEvaluator;
+    }
+
+    MnkPatternEvaluator getPatternEvaluator() {
+        return patternEvaluator;
+    }
+
+    MnkBoardGeometry getGeometry() {
+        return geometry;
+    }
+
+    /**
+     * Returns the number of pieces of each player in each window, see windowPieceCounts. Do not change the returned array.
+     */
+    int[] getWindowPieceCounts() {
+        return windowPieceCounts;
+    }
+
+    /**
+     * Returns the number of different players in each window, see windowPlayerCounts. Do not change the returned array.
+     */
+    int[] getWindowPlayerCounts() {
+        return windowPlayerCounts;
+    }
+
+    /**
+     * Returns the number of empty squares on the board. This is maintained in constant time by tryMove and undoMove.
+     */
+    public int getEmptySquareCount() {
+        return emptySquareCount;
+    }
+
     public int getWinningNumberOfPiecesInARow() {
         return winningNumberOfPiecesInARow;
     }
 
+    /**
+     * Returns the index of the player that owns the piece on the given square, or -1 if the square is empty.
+     * Unlike method getBoard, this does not allocate any memory.
+     */
+    @Override
+    public int getIndexOfPlayerAt(int row, int column) {
+        if (row < 0 || row >= rowCount || column < 0 || column >= columnCount) throw new IllegalArgumentException("(" + row + ", " + column + ") is outside board.");
+        return board.getPlayerIndex(row*columnCount + column);
+    }
+
     /**
      * Returns an m x n board of squares. Each square can be empty (null) or contain a piece (MnkBoardGamePieceType).
+     * The returned array is a copy of the current state of the board, changing it does not change this model.
+     * This must be called on the thread that changes the model. To draw the board on another thread, use method getSnapshot.
      */
     public MnkBoardGamePieceType[][] getBoard() {
-        return board;
+        MnkBoardGamePieceType[][] squares = new MnkBoardGamePieceType[rowCount][columnCount];
+        for (int row = 0; row < rowCount; row++) {
+            for (int column = 0; column < columnCount; column++) {
+                int playerIndex = board.getPlayerIndex(row*columnCount + column);
+                //pieces are re-used for multiple squares. This is possible as long as all pieces of the same player are identical.
+                if (playerIndex != -1) squares[row][column] = pieceTypes[playerIndex];
+            }
+        }
+        return squares;
     }
 
     /**
@@ -334,19 +871,76 @@ public final class MnkBoardGameModel implements BoardGameModel {
         return playerNames;
     }
 
-    @Override
-    public void addObserver(Observer o) {
-        observable.addObserver(o);
+    /**
+     * Returns an immutable snapshot of the state of this model, which can be used to draw the board on any thread.
+     *
+     * When this model has listeners, a new snapshot is published after each change, before the listeners are notified,
+     * so a listener always gets the snapshot of the change it was notified of. In simulation mode the snapshot of the state
+     * before the simulation is kept. When this model has no listeners, snapshots are not published (to avoid allocating memory
+     * during searches), instead the snapshot is created by this method, so then this method should be called on the thread that changes the model.
+     */
+    public BoardSnapshot getSnapshot() {
+        BoardSnapshot snapshot = this.snapshot;
+        if (snapshot == null) {
+            snapshot = createSnapshot();
+            this.snapshot = snapshot;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Called after each change of the state, before listeners are notified.
+     */
+    private void publishSnapshot() {
+        if (listeners.isSuspended()) return;//keep the snapshot from before simulation mode.
+
+        //if no listeners, then the snapshot is created when needed, see method getSnapshot.
+        snapshot = listeners.isEmpty() ? null : createSnapshot();
+    }
+
+    private BoardSnapshot createSnapshot() {
+        int wordCountPerPlayer = BoardSnapshot.getWordCountPerPlayer(geometry.squareCount);
+        long[] pieces = new long[playerNames.length*wordCountPerPlayer];
+        for (int playerIndex = 0; playerIndex < playerNames.length; playerIndex++) {
+            board.copyPieces(playerIndex, pieces, playerIndex*wordCountPerPlayer);
+        }
+
+        int winningLineStart = -1;
+        int winningLineEnd = -1;
+        if (winningWindow != -1) {
+            int k = geometry.winningNumberOfPiecesInARow;
+            winningLineStart = geometry.windowSquares[winningWindow*k];
+            winningLineEnd = geometry.windowSquares[winningWindow*k + k - 1];
+        }
+
+        return new BoardSnapshot(rowCount, columnCount, playerNames, pieces, previousMove, previousMoveProbabilities, winningLineStart, winningLineEnd,
+                gameOver, gameOver ? -1 : numberOfPlayerToMoveNext - 1, indexOfWinner, indexOfPlayerThatMadeAnIllegalMove);
     }
 
     @Override
-    public void removeObserver(Observer o) {
-        observable.deleteObserver(o);
+    public void addGameListener(GameListener listener) {
+        listeners.add(listener);
     }
 
     @Override
-    public void setChangedAndNotifyObservers() {
-        observable.setChanged();
-        observable.notifyObservers();
+    public void removeGameListener(GameListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * In simulation mode, listeners are not notified of any changes, e.g. while a computer player plays many
+     * moves or games in this model to calculate a move. When simulation mode is switched off again, listeners are notified once
+     * if anything changed in the meantime, so that a batch of moves results in only one update of the listeners.
+     */
+    public void setSimulationMode(boolean simulationMode) {
+        if (!simulationMode && listeners.isSuspended()) {
+            //publish the state after the simulation before listeners are notified of it.
+            snapshot = listeners.isEmpty() ? null : createSnapshot();
+        }
+        listeners.setSuspended(simulationMode);
+    }
+
+    public boolean isSimulationMode() {
+        return listeners.isSuspended();
     }
 }
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2018 A.C. Kockx, All Rights Reserved.
+ */
+package boardgame.model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable lookup tables for an m x n board with k in a row, shared by all models with the same (m,n,k).
+ * Square (row, column) has index row*columnCount + column.
+ *
+ * A window is a line of k consecutive squares (horizontal, vertical or diagonal) that lies completely on the board.
+ * A player wins by filling a window with their own pieces.
+ *
+ * @author A.C. Kockx
+ */
+final class MnkBoardGeometry {
+    private static final Map<String, MnkBoardGeometry> cache = new HashMap<>();
+
+    final int rowCount;
+    final int columnCount;
+    final int winningNumberOfPiecesInARow;
+    final int squareCount;
+
+    /**
+     * One SquareMove for each square, so that moves do not need to be allocated during a game.
+     */
+    final SquareMove[] squareMoves;
+
+    /**
+     * The symmetries of the board: 8 for a square board (rotations and reflections), 4 for a rectangular board.
+     * Symmetry 0 is the identity. Symmetry s maps square q to square symmetrySquares[s*squareCount + q]
+     * and is undone by symmetry inverseSymmetries[s].
+     */
+    final int symmetryCount;
+    final int[] symmetrySquares;
+    final int[] inverseSymmetries;
+
+    final int windowCount;
+    /**
+     * The squares of window w are stored at indices w*k to (w + 1)*k - 1.
+     */
+    final int[] windowSquares;
+    /**
+     * For boards with at most 64 squares: for each window a bitmask of its squares, otherwise null.
+     */
+    final long[] windowMasks;
+    /**
+     * The windows that contain square s are stored in squareWindows at indices squareWindowOffsets[s] to squareWindowOffsets[s + 1] - 1.
+     */
+    final int[] squareWindowOffsets;
+    final int[] squareWindows;
+
+    private MnkBoardGeometry(int rowCount, int columnCount, int winningNumberOfPiecesInARow) {
+        this.rowCount = rowCount;
+        this.columnCount = columnCount;
+        this.winningNumberOfPiecesInARow = winningNumberOfPiecesInARow;
+        squareCount = rowCount*columnCount;
+        int k = winningNumberOfPiecesInARow;
+
+        squareMoves = new SquareMove[squareCount];
+        for (int square = 0; square < squareCount; square++) {
+            squareMoves[square] = new SquareMove(square/columnCount, square%columnCount);
+        }
+
+        //create symmetries. Each symmetry maps (row, column) to (a*row + b*column + c, d*row + e*column + f)
+        //and is stored as {a, b, c, d, e, f}.
+        int maxRow = rowCount - 1;
+        int maxColumn = columnCount - 1;
+        int[][] transformations = {
+                {1, 0, 0, 0, 1, 0},//identity.
+                {-1, 0, maxRow, 0, -1, maxColumn},//rotate 180 degrees.
+                {1, 0, 0, 0, -1, maxColumn},//mirror left-right.
+                {-1, 0, maxRow, 0, 1, 0},//mirror top-bottom.
+                //the following symmetries are only valid for square boards.
+                {0, 1, 0, -1, 0, maxRow},//rotate 90 degrees clockwise.
+                {0, -1, maxColumn, 1, 0, 0},//rotate 90 degrees counter-clockwise.
+                {0, 1, 0, 1, 0, 0},//mirror in main diagonal.
+                {0, -1, maxColumn, -1, 0, maxRow}};//mirror in anti-diagonal.
+        symmetryCount = rowCount == columnCount ? 8 : 4;
+        symmetrySquares = new int[symmetryCount*squareCount];
+        for (int symmetry = 0; symmetry < symmetryCount; symmetry++) {
+            int[] t = transformations[symmetry];
+            for (int row = 0; row < rowCount; row++) {
+                for (int column = 0; column < columnCount; column++) {
+                    int newRow = t[0]*row + t[1]*column + t[2];
+                    int newColumn = t[3]*row + t[4]*column + t[5];
+                    symmetrySquares[symmetry*squareCount + row*columnCount + column] = newRow*columnCount + newColumn;
+                }
+            }
+        }
+        //all symmetries are their own inverse, except for the two rotations by 90 degrees.
+        inverseSymmetries = new int[symmetryCount];
+        for (int symmetry = 0; symmetry < symmetryCount; symmetry++) {
+            inverseSymmetries[symmetry] = symmetry;
+        }
+        if (symmetryCount == 8) {
+            inverseSymmetries[4] = 5;
+            inverseSymmetries[5] = 4;
+        }
+
+        //create windows for the four directions: east, south, south-east and south-west.
+        int[][] directions = {{0, 1}, {1, 0}, {1, 1}, {1, -1}};
+        int[] squares = new int[4*squareCount*k];
+        int windows = 0;
+        for (int[] direction : directions) {
+            for (int row = 0; row < rowCount; row++) {
+                for (int column = 0; column < columnCount; column++) {
+                    int lastRow = row + (k - 1)*direction[0];
+                    int lastColumn = column + (k - 1)*direction[1];
+                    if (lastRow < 0 || lastRow >= rowCount || lastColumn < 0 || lastColumn >= columnCount) continue;//if window not on board.
+
+                    for (int i = 0; i < k; i++) {
+                        squares[windows*k + i] = (row + i*direction[0])*columnCount + column + i*direction[1];
+                    }
+                    windows++;
+                }
+            }
+        }
+        windowCount = windows;
+        windowSquares = new int[windowCount*k];
+        System.arraycopy(squares, 0, windowSquares, 0, windowSquares.length);
+
+        if (squareCount <= Long.SIZE) {
+            windowMasks = new long[windowCount];
+            for (int window = 0; window < windowCount; window++) {
+                for (int i = 0; i < k; i++) {
+                    windowMasks[window] |= 1L << windowSquares[window*k + i];
+                }
+            }
+        } else {
+            windowMasks = null;
+        }
+
+        //index windows by square.
+        squareWindowOffsets = new int[squareCount + 1];
+        for (int square : windowSquares) {
+            squareWindowOffsets[square + 1]++;
+        }
+        for (int square = 0; square < squareCount; square++) {
+            squareWindowOffsets[square + 1] += squareWindowOffsets[square];
+        }
+        squareWindows = new int[windowSquares.length];
+        int[] nextIndex = new int[squareCount];
+        System.arraycopy(squareWindowOffsets, 0, nextIndex, 0, squareCount);
+        for (int window = 0; window < windowCount; window++) {
+            for (int i = 0; i < k; i++) {
+                squareWindows[nextIndex[windowSquares[window*k + i]]++] = window;
+            }
+        }
+    }
+
+    /**
+     * Returns random keys for Zobrist hashing, one for each combination of player and square.
+     * The key for playerIndex (0-based) and square is stored at index playerIndex*squareCount + square.
+     *
+     * The keys are generated deterministically, so the same position always gets the same hash, also in different runs.
+     */
+    long[] createZobristKeys(int playerCount) {
+        long[] keys = new long[playerCount*squareCount];
+        long state = 0x5DEECE66DL;
+        for (int n = 0; n < keys.length; n++) {
+            //SplitMix64 generator.
+            state += 0x9E3779B97F4A7C15L;
+            long key = state;
+            key = (key ^ (key >>> 30))*0xBF58476D1CE4E5B9L;
+            key = (key ^ (key >>> 27))*0x94D049BB133111EBL;
+            keys[n] = key ^ (key >>> 31);
+        }
+        return keys;
+    }
+
+    /**
+     * Returns the shared geometry for the given (m,n,k). The tables are only created the first time this is called for a given (m,n,k).
+     */
+    static MnkBoardGeometry get(int rowCount, int columnCount, int winningNumberOfPiecesInARow) {
+        String key = rowCount + "," + columnCount + "," + winningNumberOfPiecesInARow;
+        synchronized (cache) {
+            MnkBoardGeometry geometry = cache.get(key);
+            if (geometry == null) {
+                geometry = new MnkBoardGeometry(rowCount, columnCount, winningNumberOfPiecesInARow);
+                cache.put(key, geometry);
+            }
+            return geometry;
+        }
+    }
+}
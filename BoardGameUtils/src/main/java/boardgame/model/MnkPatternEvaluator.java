@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2018 A.C. Kockx, All Rights Reserved.
+ */
+package boardgame.model;
+
+/**
+ * Static evaluation of m,n,k-game positions for use by computer players, based on the lines of k squares (windows) on the board.
+ *
+ * A window that only contains pieces of one player is worth scoresByPieceCount[c] points to that player,
+ * where c is the number of pieces of that player in the window. Windows that contain pieces of two or more players
+ * cannot be filled anymore and are worth nothing. For example an open three in Gomoku is part of several windows with 3 pieces,
+ * while a blocked three is part of fewer such windows, so an open three scores higher.
+ *
+ * The score of each player is updated incrementally by the model in O(k) time for each move and undo,
+ * so evaluating a position only takes a few array reads instead of a scan of the board.
+ * The scores are summed as long, since a large board has thousands of windows, and the evaluation is clamped to the int range.
+ *
+ * An evaluator belongs to a single model. A copy of the model (see MnkBoardGameModel.fork) does not have an evaluator.
+ * Note: this class is not thread-safe.
+ *
+ * @author A.C. Kockx
+ */
+public final class MnkPatternEvaluator {
+    private final MnkBoardGameModel model;
+    private final int[] scoresByPieceCount;
+    private final int playerCount;
+    private final int windowCount;
+    private final int[] windowPieceCounts;
+    private final int[] windowPlayerCounts;
+
+    //for each player, the sum of the scores of all windows that only contain pieces of that player.
+    private final long[] scores;
+
+    /**
+     * Creates an evaluator for the given model with default pattern scores, see method createDefaultScores.
+     */
+    public MnkPatternEvaluator(MnkBoardGameModel model) {
+        this(model, createDefaultScores(model.getWinningNumberOfPiecesInARow()));
+    }
+
+    /**
+     * Creates an evaluator for the given model. Replaces any evaluator that was set for the model before.
+     *
+     * @param scoresByPieceCount for each number of pieces c (0 to k) of a player in a window that only contains pieces of that player,
+     *                           the score for that player. scoresByPieceCount[0] must be 0.
+     */
+    public MnkPatternEvaluator(MnkBoardGameModel model, int[] scoresByPieceCount) {
+        if (model == null) throw new IllegalArgumentException("model == null");
+        if (scoresByPieceCount == null || scoresByPieceCount.length != model.getWinningNumberOfPiecesInARow() + 1) {
+            throw new IllegalArgumentException("scoresByPieceCount.length != k + 1");
+        }
+        if (scoresByPieceCount[0] != 0) throw new IllegalArgumentException("scoresByPieceCount[0] != 0");
+
+        this.model = model;
+        this.scoresByPieceCount = scoresByPieceCount.clone();
+        playerCount = model.getPlayerCount();
+        windowCount = model.getGeometry().windowCount;
+        windowPieceCounts = model.getWindowPieceCounts();
+        windowPlayerCounts = model.getWindowPlayerCounts();
+        scores = new long[playerCount];
+
+        initialize();
+        model.setPatternEvaluator(this);
+    }
+
+    /**
+     * Returns default scores: a window with c pieces is worth 8 times as much as a window with c - 1 pieces, up to 1 << 20.
+     * A filled window (k in a row) is worth 1 << 28. Such a position ends the game, so it is normally not evaluated.
+     */
+    public static int[] createDefaultScores(int winningNumberOfPiecesInARow) {
+        int[] scores = new int[winningNumberOfPiecesInARow + 1];
+        for (int count = 1; count < winningNumberOfPiecesInARow; count++) {
+            scores[count] = 1 << Math.min(3*(count - 1), 20);
+        }
+        scores[winningNumberOfPiecesInARow] = 1 << 28;
+        return scores;
+    }
+
+    /**
+     * Recalculates all scores from the window counts of the model. This scans all windows, so it is only done when the
+     * whole position changes, e.g. when the model is reset.
+     */
+    void initialize() {
+        for (int player = 0; player < playerCount; player++) {
+            scores[player] = 0;
+        }
+        for (int window = 0; window < windowCount; window++) {
+            if (windowPlayerCounts[window] != 1) continue;
+
+            int owner = getOwner(window);
+            scores[owner] += scoresByPieceCount[windowPieceCounts[owner*windowCount + window]];
+        }
+    }
+
+    /**
+     * Returns the index of the only player that has pieces in the given window.
+     */
+    private int getOwner(int window) {
+        for (int player = 0; player < playerCount; player++) {
+            if (windowPieceCounts[player*windowCount + window] > 0) return player;
+        }
+        throw new IllegalStateException("Window " + window + " is empty.");
+    }
+
+    /**
+     * Called by the model after a piece of the given player was added to the given window and the window counts were updated.
+     */
+    void pieceAdded(int playerIndex, int window) {
+        int count = windowPieceCounts[playerIndex*windowCount + window];
+        int windowPlayerCount = windowPlayerCounts[window];
+        if (windowPlayerCount == 1) {//if window still only contains pieces of this player.
+            scores[playerIndex] += scoresByPieceCount[count] - scoresByPieceCount[count - 1];
+        } else if (windowPlayerCount == 2 && count == 1) {//if this piece blocks a window that only contained pieces of another player.
+            int owner = getOtherOwner(playerIndex, window);
+            scores[owner] -= scoresByPieceCount[windowPieceCounts[owner*windowCount + window]];
+        }
+    }
+
+    /**
+     * Called by the model after a piece of the given player was removed from the given window and the window counts were updated.
+     */
+    void pieceRemoved(int playerIndex, int window) {
+        int count = windowPieceCounts[playerIndex*windowCount + window];
+        int windowPlayerCount = windowPlayerCounts[window];
+        if (windowPlayerCount == 0 || (windowPlayerCount == 1 && count > 0)) {//if window only contained pieces of this player.
+            scores[playerIndex] += scoresByPieceCount[count] - scoresByPieceCount[count + 1];
+        } else if (windowPlayerCount == 1) {//if removed piece was the only piece that blocked another player in this window.
+            int owner = getOtherOwner(playerIndex, window);
+            scores[owner] += scoresByPieceCount[windowPieceCounts[owner*windowCount + window]];
+        }
+    }
+
+    /**
+     * Returns the index of a player other than the given player that has pieces in the given window.
+     */
+    private int getOtherOwner(int playerIndex, int window) {
+        for (int player = 0; player < playerCount; player++) {
+            if (player != playerIndex && windowPieceCounts[player*windowCount + window] > 0) return player;
+        }
+        throw new IllegalStateException("Window " + window + " has no other player.");
+    }
+
+    /**
+     * Returns the sum of the scores of all windows that only contain pieces of the given player.
+     */
+    public long getScore(int playerIndex) {
+        return scores[playerIndex];
+    }
+
+    /**
+     * Returns the evaluation of the current position from the point of view of the given player:
+     * the score of that player minus the scores of all other players, clamped to -Integer.MAX_VALUE to Integer.MAX_VALUE.
+     * Higher is better for the given player.
+     */
+    public int evaluate(int playerIndex) {
+        long evaluation = 0;
+        for (int player = 0; player < playerCount; player++) {
+            evaluation += player == playerIndex ? scores[player] : -scores[player];
+        }
+        return (int) Math.max(-Integer.MAX_VALUE, Math.min(evaluation, Integer.MAX_VALUE));
+    }
+
+    /**
+     * Stops updating this evaluator. After this, the model can be used without the cost of updating the evaluator.
+     */
+    public void detach() {
+        if (model.getPatternEvaluator() == this) model.setPatternEvaluator(null);
+    }
+}
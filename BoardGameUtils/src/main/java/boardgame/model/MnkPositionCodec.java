@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2018 A.C. Kockx, All Rights Reserved.
+ */
+package boardgame.model;
+
+import java.math.BigInteger;
+
+/**
+ * Converts positions of an m,n,k-game (see MnkBoardGameModel) to and from a compact form,
+ * e.g. to store opening books, tablebases or training sets.
+ *
+ * Each square is encoded as a digit: 0 for an empty square, otherwise the 1-based number of the player that owns the piece.
+ * There are two forms:
+ * - long: all digits in base (playerCount + 1), square 0 being the least significant digit. The result is an unsigned 64-bit number.
+ *   For two players this fits boards with up to 40 squares. See method fitsInLong.
+ * - byte[]: 2 bits per square, 4 squares per byte, square 0 in the least significant bits of the first byte. This supports up to three players.
+ *
+ * Decoding a position replaces the state of a model, including the player to move and the game status.
+ * Moves that were made before the decoded position cannot be undone. If the code is not a valid position, then decoding throws
+ * an exception and the state of the model does not change.
+ * Encoding and decoding do not allocate any memory (except for the method encodeAsBytes(MnkBoardGameModel)).
+ *
+ * @author A.C. Kockx
+ */
+public final class MnkPositionCodec {
+    private final int rowCount;
+    private final int columnCount;
+    private final int playerCount;
+    private final int squareCount;
+    private final int base;
+    private final boolean fitsInLong;
+
+    public MnkPositionCodec(int rowCount, int columnCount, int playerCount) {
+        if (rowCount <= 0) throw new IllegalArgumentException("rowCount <= 0");
+        if (columnCount <= 0) throw new IllegalArgumentException("columnCount <= 0");
+        if (playerCount <= 0) throw new IllegalArgumentException("playerCount <= 0");
+
+        this.rowCount = rowCount;
+        this.columnCount = columnCount;
+        this.playerCount = playerCount;
+        squareCount = rowCount*columnCount;
+        base = playerCount + 1;
+        //all codes are smaller than base^squareCount, which must fit in an unsigned 64-bit number.
+        fitsInLong = BigInteger.valueOf(base).pow(squareCount).compareTo(BigInteger.ONE.shiftLeft(Long.SIZE)) <= 0;
+    }
+
+    /**
+     * Returns whether positions can be encoded in a single long, see method encodeAsLong.
+     */
+    public boolean fitsInLong() {
+        return fitsInLong;
+    }
+
+    /**
+     * Returns the number of bytes that is needed to encode a position as a byte array, see method encode(MnkBoardGameModel, byte[], int).
+     */
+    public int getByteCount() {
+        return (squareCount + 3)/4;
+    }
+
+    private void checkModel(MnkBoardGameModel model) {
+        if (model == null) throw new IllegalArgumentException("model == null");
+        if (model.getRowCount() != rowCount || model.getColumnCount() != columnCount || model.getPlayerCount() != playerCount) {
+            throw new IllegalArgumentException("model does not have " + rowCount + " rows, " + columnCount + " columns and " + playerCount + " players.");
+        }
+    }
+
+    /**
+     * Returns the position of the given model as an unsigned 64-bit number.
+     */
+    public long encodeAsLong(MnkBoardGameModel model) {
+        checkModel(model);
+        if (!fitsInLong) throw new IllegalStateException("Positions with " + squareCount + " squares and " + playerCount + " players do not fit in a long.");
+
+        long code = 0;
+        for (int square = squareCount - 1; square >= 0; square--) {
+            //overflow of the signed long is intended, the result is an unsigned number.
+            code = code*base + model.getPlayerIndex(square) + 1;
+        }
+        return code;
+    }
+
+    /**
+     * Replaces the position of the given model with the given position that was encoded using method encodeAsLong.
+     *
+     * @throws IllegalArgumentException if the given code is not a position that can be reached in a game. In that case the model does not change.
+     */
+    public void decode(long code, MnkBoardGameModel model) {
+        checkModel(model);
+        if (!fitsInLong) throw new IllegalStateException("Positions with " + squareCount + " squares and " + playerCount + " players do not fit in a long.");
+
+        int[] playerIndices = model.beginPosition();
+        //the first digit needs unsigned division, after that the remaining code fits in a signed long.
+        int digit = (int) Long.remainderUnsigned(code, base);
+        code = Long.divideUnsigned(code, base);
+        for (int square = 0; square < squareCount; square++) {
+            if (square > 0) {
+                digit = (int) (code%base);
+                code /= base;
+            }
+            playerIndices[square] = digit - 1;
+        }
+        if (code != 0) throw new IllegalArgumentException("code is too large for a board with " + squareCount + " squares.");
+        model.finishPosition();
+    }
+
+    /**
+     * Returns the position of the given model as a new byte array.
+     */
+    public byte[] encodeAsBytes(MnkBoardGameModel model) {
+        byte[] bytes = new byte[getByteCount()];
+        encode(model, bytes, 0);
+        return bytes;
+    }
+
+    /**
+     * Writes the position of the given model to the given byte array, starting at the given offset. This writes getByteCount() bytes.
+     */
+    public void encode(MnkBoardGameModel model, byte[] bytes, int offset) {
+        checkModel(model);
+        if (playerCount > 3) throw new IllegalStateException("Positions with more than 3 players cannot be encoded with 2 bits per square.");
+
+        for (int n = 0; n < getByteCount(); n++) {
+            int value = 0;
+            for (int square = 4*n; square < Math.min(4*n + 4, squareCount); square++) {
+                value |= (model.getPlayerIndex(square) + 1) << (2*(square - 4*n));
+            }
+            bytes[offset + n] = (byte) value;
+        }
+    }
+
+    /**
+     * Replaces the position of the given model with the position that is stored in the given byte array, starting at the given offset.
+     *
+     * @throws IllegalArgumentException if the given bytes do not contain a position that can be reached in a game. In that case the model does not change.
+     */
+    public void decode(byte[] bytes, int offset, MnkBoardGameModel model) {
+        checkModel(model);
+        if (playerCount > 3) throw new IllegalStateException("Positions with more than 3 players cannot be encoded with 2 bits per square.");
+
+        int[] playerIndices = model.beginPosition();
+        for (int square = 0; square < squareCount; square++) {
+            int digit = (bytes[offset + square/4] >>> (2*(square%4))) & 3;
+            if (digit > playerCount) throw new IllegalArgumentException("Unknown player number " + digit + " for square " + square);
+            playerIndices[square] = digit - 1;
+        }
+        model.finishPosition();
+    }
+}
@@ -0,0 +1,562 @@
+/*
+ * Copyright (c) 2018 A.C. Kockx, All Rights Reserved.
+ */
+package boardgame.model;
+
+import util.model.GameListener;
+import util.model.GameListeners;
+import util.model.Move;
+
+
+/**
+ * Stores the current state of an m,n,k-game on a very large board (e.g. Gomoku on a 100 x 100 board or larger),
+ * where only a small part of the board is ever used.
+ *
+ * In contrast to MnkBoardGameModel, the memory use and the time needed per move of this class do not depend on the size of the board,
+ * but only on the number of pieces on the board. For an (effectively) unbounded board, use a large board size, e.g. 10000 x 10000.
+ *
+ * Any empty square is a legal move, as in MnkBoardGameModel. To keep the number of moves manageable for computer players,
+ * methods getLegalMoves and getLegalMoveCount only return the candidate moves: the center square on an empty board,
+ * otherwise the empty squares within a given distance (the candidate distance) of a piece that is already on the board.
+ * The set of such squares is called the frontier and is maintained incrementally. Search players, which get their moves
+ * from these methods, only consider the frontier, while other moves (e.g. by a human player) are still allowed.
+ *
+ * @author A.C. Kockx
+ */
+public final class SparseMnkBoardGameModel implements BoardGameModel {
+    private static final int INITIAL_CAPACITY = 256;
+    //the four directions of a line: east, south, south-east and south-west, as {rowStep, columnStep}.
+    private static final int[][] DIRECTIONS = {{0, 1}, {1, 0}, {1, 1}, {1, -1}};
+
+    //listeners that are notified of changes.
+    private final GameListeners listeners = new GameListeners();
+
+    private final int rowCount;//m
+    private final int columnCount;//n
+    private final int winningNumberOfPiecesInARow;//k
+    private final int candidateDistance;
+    private final String[] playerNames;
+
+    //for each occupied square, the index of the player that owns the piece on that square.
+    private final IntIntHashMap pieces;
+    //for each square that is within candidateDistance of at least one piece, the number of pieces within candidateDistance.
+    private final IntIntHashMap neighbourCounts;
+    //the frontier: all empty squares within candidateDistance of at least one piece, in no particular order.
+    private int[] candidates = new int[INITIAL_CAPACITY];
+    private int candidateCount = 0;
+    //for each square in the frontier, its index in the array candidates.
+    private final IntIntHashMap candidateIndices;
+
+    private long zobristHash = 0;
+
+    private SquareMove previousMove = null;
+    private float[][] previousMoveProbabilities = null;
+
+    /**
+     * Player that is allowed to make the next move.
+     *
+     * This is a 1-based index, i.e.:
+     * 1 = player 1
+     * 2 = player 2
+     * etc.
+     */
+    private int numberOfPlayerToMoveNext = 1;
+    private int indexOfPlayerThatMadeAnIllegalMove = -1;
+    private int indexOfWinner = -1;
+    private boolean gameOver = false;
+
+    /**
+     * Stack of moves made since the last reset, used by undoMove. Grows when needed.
+     */
+    private SquareMove[] moveStack = new SquareMove[INITIAL_CAPACITY];
+    private float[][][] moveProbabilitiesStack = new float[INITIAL_CAPACITY][][];
+    //square of each move, or -1 for an illegal move.
+    private int[] moveSquareStack = new int[INITIAL_CAPACITY];
+    //1-based number of the player that made each move.
+    private int[] movePlayerNumberStack = new int[INITIAL_CAPACITY];
+    private int moveStackSize = 0;
+
+    /**
+     * Creates an empty board for an m,n,k-game that can be played by the given players.
+     *
+     * @param rowCount (m)
+     * @param columnCount (n)
+     * @param winningNumberOfPiecesInARow (k)
+     * @param candidateDistance maximum distance (horizontally, vertically or diagonally) between a candidate move and the nearest piece on the board.
+     */
+    public SparseMnkBoardGameModel(int rowCount, int columnCount, int winningNumberOfPiecesInARow, int candidateDistance, String[] playerNames) {
+        if (rowCount <= 0) throw new IllegalArgumentException("rowCount <= 0");
+        if (columnCount <= 0) throw new IllegalArgumentException("columnCount <= 0");
+        if ((long) rowCount*columnCount > Integer.MAX_VALUE) throw new IllegalArgumentException("rowCount*columnCount > " + Integer.MAX_VALUE);
+        if (winningNumberOfPiecesInARow <= 0) throw new IllegalArgumentException("winningNumberOfPiecesInARow <= 0");
+        if (candidateDistance <= 0) throw new IllegalArgumentException("candidateDistance <= 0");
+        if (playerNames == null || playerNames.length <= 0) throw new IllegalArgumentException("playerNames is empty");
+
+        this.rowCount = rowCount;
+        this.columnCount = columnCount;
+        this.winningNumberOfPiecesInARow = winningNumberOfPiecesInARow;
+        this.candidateDistance = candidateDistance;
+        this.playerNames = playerNames;
+
+        pieces = new IntIntHashMap(INITIAL_CAPACITY);
+        neighbourCounts = new IntIntHashMap(INITIAL_CAPACITY*(2*candidateDistance + 1));
+        candidateIndices = new IntIntHashMap(INITIAL_CAPACITY);
+
+        reset();
+    }
+
+    /**
+     * Creates a copy of the given model without listeners.
+     */
+    private SparseMnkBoardGameModel(SparseMnkBoardGameModel model) {
+        rowCount = model.rowCount;
+        columnCount = model.columnCount;
+        winningNumberOfPiecesInARow = model.winningNumberOfPiecesInARow;
+        candidateDistance = model.candidateDistance;
+        playerNames = model.playerNames;
+
+        pieces = new IntIntHashMap(model.pieces);
+        neighbourCounts = new IntIntHashMap(model.neighbourCounts);
+        candidates = model.candidates.clone();
+        candidateCount = model.candidateCount;
+        candidateIndices = new IntIntHashMap(model.candidateIndices);
+        zobristHash = model.zobristHash;
+
+        moveStack = model.moveStack.clone();
+        moveProbabilitiesStack = model.moveProbabilitiesStack.clone();
+        moveSquareStack = model.moveSquareStack.clone();
+        movePlayerNumberStack = model.movePlayerNumberStack.clone();
+        moveStackSize = model.moveStackSize;
+
+        previousMove = model.previousMove;
+        previousMoveProbabilities = model.previousMoveProbabilities;
+        numberOfPlayerToMoveNext = model.numberOfPlayerToMoveNext;
+        indexOfPlayerThatMadeAnIllegalMove = model.indexOfPlayerThatMadeAnIllegalMove;
+        indexOfWinner = model.indexOfWinner;
+        gameOver = model.gameOver;
+    }
+
+    /**
+     * Returns a copy of this model with the same state (including the moves that can be undone), but without listeners.
+     * This takes time proportional to the number of pieces on the board.
+     */
+    @Override
+    public SparseMnkBoardGameModel fork() {
+        return new SparseMnkBoardGameModel(this);
+    }
+
+    /**
+     * Reset model to initial state of a game.
+     */
+    @Override
+    public void reset() {
+        //empty board.
+        pieces.clear();
+        neighbourCounts.clear();
+        candidateIndices.clear();
+        candidateCount = 0;
+        zobristHash = 0;
+
+        //clear references, so that old moves can be garbage collected.
+        for (int n = 0; n < moveStackSize; n++) {
+            moveStack[n] = null;
+            moveProbabilitiesStack[n] = null;
+        }
+        moveStackSize = 0;
+
+        previousMove = null;
+        previousMoveProbabilities = null;
+
+        numberOfPlayerToMoveNext = 1;
+        indexOfPlayerThatMadeAnIllegalMove = -1;
+        indexOfWinner = -1;
+        gameOver = false;
+
+        listeners.fireGameReset();
+    }
+
+    @Override
+    public int getIndexOfCurrentPlayer() {
+        if (gameOver) throw new IllegalStateException("Game is already over.");
+        return numberOfPlayerToMoveNext - 1;
+    }
+
+    private int getCenterSquare() {
+        return (rowCount/2)*columnCount + columnCount/2;
+    }
+
+    @Override
+    public boolean isLegalMove(Move gameMove) {
+        if (gameOver) throw new IllegalStateException("Game is already over.");
+        if (gameMove == null) throw new IllegalArgumentException("gameMove == null");
+        if (!(gameMove instanceof SquareMove)) throw new IllegalStateException("gameMove must be an instance of " + SquareMove.class.getSimpleName());
+        SquareMove move = (SquareMove) gameMove;
+
+        if (move.row < 0 || move.row >= rowCount || move.column < 0 || move.column >= columnCount) return false;//if outside board.
+        return !pieces.containsKey(move.row*columnCount + move.column);//if empty square.
+    }
+
+    /**
+     * Returns the candidate moves, see class description.
+     */
+    @Override
+    public Move[] getLegalMoves() {
+        if (gameOver) throw new IllegalStateException("Game is already over.");
+
+        int[] legalMoves = new int[getLegalMoveCount()];
+        int legalMoveCount = getLegalMoves(legalMoves);
+        Move[] moves = new Move[legalMoveCount];
+        for (int n = 0; n < legalMoveCount; n++) {
+            moves[n] = getMove(legalMoves[n]);
+        }
+        return moves;
+    }
+
+    /**
+     * Returns the number of candidate moves, see class description.
+     */
+    @Override
+    public int getLegalMoveCount() {
+        if (gameOver) throw new IllegalStateException("Game is already over.");
+        return pieces.size() == 0 ? 1 : candidateCount;
+    }
+
+    /**
+     * Writes the candidate moves to the given array, see class description: the center square on an empty board,
+     * otherwise the frontier in no particular order. This takes time proportional to the size of the frontier.
+     */
+    @Override
+    public int getLegalMoves(int[] moves) {
+        if (gameOver) throw new IllegalStateException("Game is already over.");
+
+        if (pieces.size() == 0) {
+            moves[0] = getCenterSquare();
+            return 1;
+        }
+        System.arraycopy(candidates, 0, moves, 0, candidateCount);
+        return candidateCount;
+    }
+
+    /**
+     * Returns a new SquareMove. Moves are not shared, since the board can be very large.
+     */
+    @Override
+    public SquareMove getMove(int move) {
+        if (move < 0 || move >= rowCount*columnCount) throw new IllegalArgumentException("move " + move + " is outside board.");
+        return new SquareMove(move/columnCount, move%columnCount);
+    }
+
+    @Override
+    public void tryMove(int move) {
+        tryMove(getMove(move), null);
+    }
+
+    /**
+     * Changes the state of the model by making the given move for the current player.
+     */
+    @Override
+    public void tryMove(Move gameMove, float[][] moveProbabilities) {
+        if (gameOver) throw new IllegalStateException("Game is already over.");
+        if (!(gameMove instanceof SquareMove)) throw new IllegalStateException("gameMove must be an instance of " + SquareMove.class.getSimpleName());
+        SquareMove move = (SquareMove) gameMove;
+
+        //store move.
+        boolean legalMove = isLegalMove(move);
+        int square = legalMove ? move.row*columnCount + move.column : -1;
+        pushMove(move, moveProbabilities, square);
+        previousMove = move;
+        previousMoveProbabilities = moveProbabilities;
+        if (!legalMove) {//if current player tries to make an illegal move.
+            //current player loses the game immediately.
+            indexOfPlayerThatMadeAnIllegalMove = getIndexOfCurrentPlayer();
+            numberOfPlayerToMoveNext = -1;
+            gameOver = true;
+            listeners.fireGameOver(-1, indexOfPlayerThatMadeAnIllegalMove);
+            return;
+        }
+
+        //if legal move.
+        int playerIndex = numberOfPlayerToMoveNext - 1;
+        addPiece(playerIndex, square);
+        if (hasKInARowThrough(playerIndex, move.row, move.column)) {//if there is a winner.
+            indexOfWinner = playerIndex;
+            numberOfPlayerToMoveNext = -1;
+            gameOver = true;
+            listeners.fireMoveMade(move, playerIndex);
+            listeners.fireGameOver(playerIndex, -1);
+            return;
+        }
+
+        //if there is no winner yet.
+        //move on to next player.
+        numberOfPlayerToMoveNext = numberOfPlayerToMoveNext%playerNames.length + 1;
+        //if the board is not full, then some empty square is next to a piece, so the frontier is only empty when the board is full.
+        if (candidateCount <= 0) {//if no moves left for next player.
+            //if there is a draw.
+            numberOfPlayerToMoveNext = -1;
+            gameOver = true;
+            listeners.fireMoveMade(move, playerIndex);
+            listeners.fireGameOver(-1, -1);
+            return;
+        }
+
+        //notify listeners.
+        listeners.fireMoveMade(move, playerIndex);
+    }
+
+    private void pushMove(SquareMove move, float[][] moveProbabilities, int square) {
+        if (moveStackSize == moveStack.length) {
+            int capacity = 2*moveStack.length;
+            SquareMove[] newMoveStack = new SquareMove[capacity];
+            float[][][] newMoveProbabilitiesStack = new float[capacity][][];
+            int[] newMoveSquareStack = new int[capacity];
+            int[] newMovePlayerNumberStack = new int[capacity];
+            System.arraycopy(moveStack, 0, newMoveStack, 0, moveStackSize);
+            System.arraycopy(moveProbabilitiesStack, 0, newMoveProbabilitiesStack, 0, moveStackSize);
+            System.arraycopy(moveSquareStack, 0, newMoveSquareStack, 0, moveStackSize);
+            System.arraycopy(movePlayerNumberStack, 0, newMovePlayerNumberStack, 0, moveStackSize);
+            moveStack = newMoveStack;
+            moveProbabilitiesStack = newMoveProbabilitiesStack;
+            moveSquareStack = newMoveSquareStack;
+            movePlayerNumberStack = newMovePlayerNumberStack;
+        }
+
+        moveStack[moveStackSize] = move;
+        moveProbabilitiesStack[moveStackSize] = moveProbabilities;
+        moveSquareStack[moveStackSize] = square;
+        movePlayerNumberStack[moveStackSize] = numberOfPlayerToMoveNext;
+        moveStackSize++;
+    }
+
+    /**
+     * Puts a piece on the given square and updates the frontier.
+     */
+    private void addPiece(int playerIndex, int square) {
+        pieces.put(square, playerIndex);
+        zobristHash ^= getZobristKey(playerIndex, square);
+        if (candidateIndices.containsKey(square)) removeCandidate(square);
+
+        int row = square/columnCount;
+        int column = square%columnCount;
+        for (int neighbourRow = Math.max(row - candidateDistance, 0); neighbourRow <= Math.min(row + candidateDistance, rowCount - 1); neighbourRow++) {
+            for (int neighbourColumn = Math.max(column - candidateDistance, 0); neighbourColumn <= Math.min(column + candidateDistance, columnCount - 1); neighbourColumn++) {
+                int neighbour = neighbourRow*columnCount + neighbourColumn;
+                if (neighbour == square) continue;
+
+                if (neighbourCounts.add(neighbour, 1) == 1 && !pieces.containsKey(neighbour)) addCandidate(neighbour);
+            }
+        }
+    }
+
+    /**
+     * Removes the piece from the given square and updates the frontier.
+     */
+    private void removePiece(int playerIndex, int square) {
+        pieces.remove(square);
+        zobristHash ^= getZobristKey(playerIndex, square);
+
+        int row = square/columnCount;
+        int column = square%columnCount;
+        for (int neighbourRow = Math.max(row - candidateDistance, 0); neighbourRow <= Math.min(row + candidateDistance, rowCount - 1); neighbourRow++) {
+            for (int neighbourColumn = Math.max(column - candidateDistance, 0); neighbourColumn <= Math.min(column + candidateDistance, columnCount - 1); neighbourColumn++) {
+                int neighbour = neighbourRow*columnCount + neighbourColumn;
+                if (neighbour == square) continue;
+
+                if (neighbourCounts.add(neighbour, -1) == 0) {
+                    neighbourCounts.remove(neighbour);
+                    if (candidateIndices.containsKey(neighbour)) removeCandidate(neighbour);
+                }
+            }
+        }
+        if (neighbourCounts.containsKey(square)) addCandidate(square);
+    }
+
+    private void addCandidate(int square) {
+        if (candidateCount == candidates.length) {
+            int[] newCandidates = new int[2*candidates.length];
+            System.arraycopy(candidates, 0, newCandidates, 0, candidateCount);
+            candidates = newCandidates;
+        }
+        candidateIndices.put(square, candidateCount);
+        candidates[candidateCount++] = square;
+    }
+
+    private void removeCandidate(int square) {
+        //move last candidate to the index of the removed candidate.
+        int index = candidateIndices.get(square, -1);
+        int lastSquare = candidates[--candidateCount];
+        candidates[index] = lastSquare;
+        candidateIndices.put(lastSquare, index);
+        candidateIndices.remove(square);
+    }
+
+    /**
+     * Returns whether the given player has k pieces in a row on a line through the given square.
+     * This only looks up at most 2*(k - 1) squares in each of the four directions.
+     */
+    private boolean hasKInARowThrough(int playerIndex, int row, int column) {
+        for (int[] direction : DIRECTIONS) {
+            int count = 1 + countPieces(playerIndex, row, column, direction[0], direction[1])
+                    + countPieces(playerIndex, row, column, -direction[0], -direction[1]);
+            if (count >= winningNumberOfPiecesInARow) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of consecutive pieces of the given player, starting next to the given square and going in the given direction.
+     */
+    private int countPieces(int playerIndex, int row, int column, int rowStep, int columnStep) {
+        int count = 0;
+        for (int k = 1; k < winningNumberOfPiecesInARow; k++) {
+            int currentRow = row + k*rowStep;
+            int currentColumn = column + k*columnStep;
+            if (currentRow < 0 || currentRow >= rowCount || currentColumn < 0 || currentColumn >= columnCount) break;
+            if (pieces.get(currentRow*columnCount + currentColumn, -1) != playerIndex) break;
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Changes the state of the model by undoing the previous move (legal or illegal).
+     */
+    @Override
+    public void undoMove() {
+        if (moveStackSize <= 0) throw new IllegalStateException("No move to undo.");
+
+        moveStackSize--;
+        int square = moveSquareStack[moveStackSize];
+        int playerNumber = movePlayerNumberStack[moveStackSize];
+        SquareMove move = moveStack[moveStackSize];
+        moveStack[moveStackSize] = null;
+        moveProbabilitiesStack[moveStackSize] = null;
+
+        //remove piece from board.
+        if (square != -1) removePiece(playerNumber - 1, square);
+
+        //a move can only be made when the game is not over yet, so before the undone move the game was not over.
+        previousMove = moveStackSize > 0 ? moveStack[moveStackSize - 1] : null;
+        previousMoveProbabilities = moveStackSize > 0 ? moveProbabilitiesStack[moveStackSize - 1] : null;
+        numberOfPlayerToMoveNext = playerNumber;
+        indexOfPlayerThatMadeAnIllegalMove = -1;
+        indexOfWinner = -1;
+        gameOver = false;
+
+        if (square != -1) {
+            listeners.fireMoveUndone(move, playerNumber - 1);
+        } else {//if illegal move, then the board did not change.
+            listeners.firePositionChanged();
+        }
+    }
+
+    /**
+     * Zobrist keys are calculated instead of stored in a table, because the board can be very large.
+     */
+    private long getZobristKey(int playerIndex, int square) {
+        //SplitMix64 finalizer.
+        long key = ((long) square*playerNames.length + playerIndex + 1)*0x9E3779B97F4A7C15L;
+        key = (key ^ (key >>> 30))*0xBF58476D1CE4E5B9L;
+        key = (key ^ (key >>> 27))*0x94D049BB133111EBL;
+        return key ^ (key >>> 31);
+    }
+
+    @Override
+    public long getZobristHash() {
+        return zobristHash;
+    }
+
+    /**
+     * Returns the index of the player that owns the piece on the given square, or -1 if the square is empty.
+     */
+    @Override
+    public int getIndexOfPlayerAt(int row, int column) {
+        if (row < 0 || row >= rowCount || column < 0 || column >= columnCount) throw new IllegalArgumentException("(" + row + ", " + column + ") is outside board.");
+        return pieces.get(row*columnCount + column, -1);
+    }
+
+    /**
+     * Returns the number of pieces on the board.
+     */
+    public int getPieceCount() {
+        return pieces.size();
+    }
+
+    /**
+     * Returns the number of moves (legal or illegal) that have been made since the last reset and that can be undone.
+     */
+    public int getMoveCount() {
+        return moveStackSize;
+    }
+
+    @Override
+    public boolean isGameOver() {
+        return gameOver;
+    }
+
+    @Override
+    public int getIndexOfWinner() {
+        return indexOfWinner;
+    }
+
+    @Override
+    public int getIndexOfPlayerThatMadeAnIllegalMove() {
+        return indexOfPlayerThatMadeAnIllegalMove;
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columnCount;
+    }
+
+    public int getWinningNumberOfPiecesInARow() {
+        return winningNumberOfPiecesInARow;
+    }
+
+    public int getCandidateDistance() {
+        return candidateDistance;
+    }
+
+    /**
+     * Can be null.
+     */
+    public SquareMove getPreviousMove() {
+        return previousMove;
+    }
+
+    @Override
+    public float[][] getPreviousMoveProbabilities() {
+        return previousMoveProbabilities;
+    }
+
+    @Override
+    public String[] getPlayerNames() {
+        return playerNames;
+    }
+
+    @Override
+    public void addGameListener(GameListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void removeGameListener(GameListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * In simulation mode, listeners are not notified of any changes. See MnkBoardGameModel.setSimulationMode.
+     */
+    public void setSimulationMode(boolean simulationMode) {
+        listeners.setSuspended(simulationMode);
+    }
+
+    public boolean isSimulationMode() {
+        return listeners.isSuspended();
+    }
+}
@@ -3,11 +3,11 @@
  */
 package boardgame.view;
 
+import util.model.Move;
 import util.view.BasicPanelView;
 import util.view.PanelView;
 
 import javax.swing.JPanel;
-import java.util.Observable;
 
 /**
  * An implementation of PanelView that can translate pixel coordinates to the corresponding row and column on the displayed board.
@@ -53,9 +53,33 @@ public final class SquaresPanelView implements PanelView {
     }
 
     @Override
-    public void update(Observable o, Object arg) {
+    public void gameReset() {
         //delegate to wrapped view.
-        view.update(o, arg);
+        view.gameReset();
+    }
+
+    @Override
+    public void moveMade(Move move, int playerIndex) {
+        //delegate to wrapped view.
+        view.moveMade(move, playerIndex);
+    }
+
+    @Override
+    public void moveUndone(Move move, int playerIndex) {
+        //delegate to wrapped view.
+        view.moveUndone(move, playerIndex);
+    }
+
+    @Override
+    public void gameOver(int indexOfWinner, int indexOfPlayerThatMadeAnIllegalMove) {
+        //delegate to wrapped view.
+        view.gameOver(indexOfWinner, indexOfPlayerThatMadeAnIllegalMove);
+    }
+
+    @Override
+    public void positionChanged() {
+        //delegate to wrapped view.
+        view.positionChanged();
     }
 
     @Override
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2018 A.C. Kockx, All Rights Reserved.
+ */
+package connectfour;
+
+import boardgame.BoardGameUtils;
+import boardgame.BoardGameUtils.PlayerType;
+import boardgame.controller.player.ConnectFourSolverPlayer;
+import boardgame.model.ConnectFourBoardGameModel;
+import boardgame.view.SquaresPanelView;
+import util.controller.GameEngine;
+import util.controller.PlaySingleGame;
+import util.controller.TurnBasedGameEngine;
+import util.controller.player.Player;
+import util.gui.GuiUtils;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts a Connect Four game.
+ *
+ * The user can choose the following combinations of types of players:
+ * human vs human
+ * human vs computer
+ * computer vs computer
+ *
+ * A human player makes a move by clicking on any square of a column that is not full.
+ * The brute force computer player uses a Connect Four solver with an opening book, so that each of its moves is proven best.
+ *
+ * After the game is finished, a new game is started with the same types of players.
+ *
+ * @author A.C. Kockx
+ */
+public final class ConnectFour {
+    private static final int PLAYER_COUNT = 2;
+
+    private static final int SQUARE_SIZE_IN_PIXELS = 80;
+    private static final long MINIMUM_TIME_BEFORE_COMPUTER_MOVE_IN_MILLISECONDS = 1000;
+    private static final long TIME_BETWEEN_GAMES_IN_MILLISECONDS = 4000;
+
+    private ConnectFour() {
+    }
+
+    /**
+     * Initializes model, view and controller for a Connect Four game.
+     */
+    public static void main(String[] args) throws Exception {
+        //create model.
+        String[] playerNames = BoardGameUtils.createPlayerNames(PLAYER_COUNT);
+        ConnectFourBoardGameModel model = new ConnectFourBoardGameModel(playerNames);
+
+        //create view.
+        final SquaresPanelView view = new SquaresPanelView(new ConnectFourBoardDrawer(model, SQUARE_SIZE_IN_PIXELS, SQUARE_SIZE_IN_PIXELS));
+        model.addGameListener(view);
+        //init GUI on event-dispatching thread.
+        javax.swing.SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                //show view in a window.
+                GuiUtils.createAndShowFrame(view.getPanel(), ConnectFour.class.getSimpleName(), ConnectFourBoardDrawer.BACKGROUND_COLOR, ConnectFourBoardDrawer.BOARD_COLOR, true, false);
+            }
+        });
+
+        //ask user for game settings.
+        //choose a playerType for each player.
+        PlayerType[] valuesToChooseFrom = new PlayerType[]{PlayerType.HUMAN, PlayerType.COMPUTER_RANDOM_MOVE, PlayerType.COMPUTER_BRUTE_FORCE, PlayerType.COMPUTER_MONTE_CARLO_TREE_SEARCH, PlayerType.COMPUTER_NEURAL_NETWORK};
+        PlayerType defaultValue = PlayerType.HUMAN;
+        PlayerType[] playerTypes = BoardGameUtils.choosePlayerTypes(valuesToChooseFrom, defaultValue, PLAYER_COUNT, view.getPanel());
+        if (playerTypes == null) System.exit(0);//if user input cancelled, exit game.
+
+        //create controller.
+        Player[] players = new Player[PLAYER_COUNT];
+        for (int n = 0; n < players.length; n++) {
+            if (playerTypes[n] == PlayerType.COMPUTER_BRUTE_FORCE) {
+                players[n] = new ConnectFourSolverPlayer(playerNames[n]);
+            } else {
+                players[n] = BoardGameUtils.createPlayers(new PlayerType[]{playerTypes[n]}, new String[]{playerNames[n]}, view)[0];
+            }
+        }
+        GameEngine engine = new TurnBasedGameEngine(model, players, MINIMUM_TIME_BEFORE_COMPUTER_MOVE_IN_MILLISECONDS);
+
+        //start game.
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        executor.scheduleWithFixedDelay(new PlaySingleGame(engine), 0, TIME_BETWEEN_GAMES_IN_MILLISECONDS, TimeUnit.MILLISECONDS);
+    }
+}
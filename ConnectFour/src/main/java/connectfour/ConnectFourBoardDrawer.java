@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2018 A.C. Kockx, All Rights Reserved.
+ */
+package connectfour;
+
+import boardgame.model.BoardSnapshot;
+import boardgame.model.ConnectFourBoardGameModel;
+import boardgame.model.SquareMove;
+import boardgame.view.SquaresDrawer;
+import util.graphics.GraphicsUtils;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * Draws a Connect Four board.
+ *
+ * @author A.C. Kockx
+ */
+public final class ConnectFourBoardDrawer implements SquaresDrawer {
+    static final Color BACKGROUND_COLOR = Color.WHITE;
+    static final Color BOARD_COLOR = new Color(0, 80, 200);
+    private static final Color TEXT_COLOR = Color.BLACK;
+    private static final Color PREVIOUS_MOVE_COLOR = Color.GREEN;
+    private static final Color[] PLAYER_COLORS = new Color[]{Color.RED, Color.YELLOW};
+
+    private final ConnectFourBoardGameModel model;
+    private final int squareSize;
+    private final int borderSize;
+
+    ConnectFourBoardDrawer(ConnectFourBoardGameModel model, int squareSizeInPixels, int borderSizeInPixels) {
+        if (model == null) throw new IllegalArgumentException("model == null");
+        if (squareSizeInPixels <= 0) throw new IllegalArgumentException("squareSizeInPixels <= 0");
+        if (borderSizeInPixels <= 0) throw new IllegalArgumentException("borderSizeInPixels <= 0");
+
+        this.model = model;
+        squareSize = squareSizeInPixels;
+        borderSize = borderSizeInPixels;
+    }
+
+    /**
+     * Draws the current board from the latest snapshot of this.model to the given in-memory image.
+     * The snapshot is immutable, so this can be called on any thread.
+     */
+    @Override
+    public void draw(BufferedImage image) {
+        BoardSnapshot snapshot = model.getSnapshot();
+        int rowCount = snapshot.getRowCount();
+        int columnCount = snapshot.getColumnCount();
+        SquareMove previousMove = snapshot.getPreviousMove();
+        boolean gameOver = snapshot.isGameOver();
+        String[] playerNames = snapshot.getPlayerNames();
+        int indexOfWinner = snapshot.getIndexOfWinner();
+        int indexOfPlayerThatMadeAnIllegalMove = snapshot.getIndexOfPlayerThatMadeAnIllegalMove();
+
+        //draw background.
+        Graphics2D g = GraphicsUtils.createAntiAliasedGraphics(image);
+        g.setColor(BACKGROUND_COLOR);
+        g.fillRect(0, 0, image.getWidth(), image.getHeight());
+
+        //draw board.
+        g.setColor(BOARD_COLOR);
+        g.fillRect(borderSize, borderSize, columnCount*squareSize, rowCount*squareSize);
+
+        //draw pieces and empty holes.
+        int margin = squareSize/10;
+        for (int row = 0; row < rowCount; row++) {
+            for (int column = 0; column < columnCount; column++) {
+                int playerIndex = snapshot.getIndexOfPlayerAt(row, column);
+                g.setColor(playerIndex == -1 ? BACKGROUND_COLOR : PLAYER_COLORS[playerIndex]);
+                g.fillOval(borderSize + column*squareSize + margin, borderSize + row*squareSize + margin, squareSize - 2*margin, squareSize - 2*margin);
+            }
+        }
+
+        //draw previous move.
+        if (previousMove != null) {
+            int row = previousMove.row;
+            int column = previousMove.column;
+
+            g.setColor(PREVIOUS_MOVE_COLOR);
+            g.setStroke(new BasicStroke(squareSize/20));
+            g.drawOval(borderSize + column*squareSize + margin, borderSize + row*squareSize + margin, squareSize - 2*margin, squareSize - 2*margin);
+        }
+
+        //draw winning line through the centers of the winning pieces.
+        SquareMove winningLineStart = snapshot.getWinningLineStart();
+        SquareMove winningLineEnd = snapshot.getWinningLineEnd();
+        if (winningLineStart != null && winningLineEnd != null) {
+            g.setColor(TEXT_COLOR);
+            g.setStroke(new BasicStroke(squareSize/10));
+            g.drawLine(borderSize + winningLineStart.column*squareSize + squareSize/2, borderSize + winningLineStart.row*squareSize + squareSize/2,
+                    borderSize + winningLineEnd.column*squareSize + squareSize/2, borderSize + winningLineEnd.row*squareSize + squareSize/2);
+        }
+
+        //draw text.
+        if (gameOver) {
+            String gameOverText;
+            if (indexOfPlayerThatMadeAnIllegalMove != -1) {
+                gameOverText = playerNames[indexOfPlayerThatMadeAnIllegalMove] + " made an illegal move and ended the game.";
+            } else if (indexOfWinner != -1) {
+                gameOverText = playerNames[indexOfWinner] + " wins!";
+            } else {//if there is a draw.
+                gameOverText = "It's a draw.";
+            }
+
+            //draw text centered within top border.
+            g.setColor(TEXT_COLOR);
+            int fontSize = borderSize/4;
+            g.setFont(new Font(Font.SANS_SERIF, Font.BOLD, fontSize));
+            GraphicsUtils.drawCenteredString(g, gameOverText, borderSize + (columnCount*squareSize)/2, borderSize/2);
+        }
+
+        g.dispose();
+    }
+
+    @Override
+    public int getRowCount() {
+        return model.getRowCount();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return model.getColumnCount();
+    }
+
+    @Override
+    public int getSquareSize() {
+        return squareSize;
+    }
+
+    @Override
+    public int getBorderSize() {
+        return borderSize;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2018 A.C. Kockx, All Rights Reserved.
+ */
+package connectfour;
+
+import boardgame.BoardGameUtils;
+import boardgame.controller.search.ConnectFourOpeningBook;
+import boardgame.controller.search.ConnectFourSolver;
+import boardgame.model.ConnectFourBoardGameModel;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Generates the opening book for standard Connect Four boards that ConnectFourSolverPlayer uses, see ConnectFourOpeningBook.
+ *
+ * For each player this adds the positions up to the given number of pieces where that player is to move, after that player
+ * made the book move in all earlier moves and the other player made any moves. So a player that follows the book
+ * never needs to solve a position with fewer pieces. Each position is solved with a ConnectFourSolver (fastest win),
+ * which takes about an hour for 8 pieces.
+ *
+ * The book is written to the output file after each new position. If the output file already exists, then the positions in it are kept,
+ * so that an interrupted run can be continued. The generated file must be copied to the resources of package boardgame.controller.search
+ * (BoardGameUtils/src/main/resources/boardgame/controller/search/connect-four-opening-book.txt).
+ *
+ * Usage: OpeningBookGenerator [maxPieceCount [outputFile]]
+ *
+ * @author A.C. Kockx
+ */
+public final class OpeningBookGenerator {
+    private static final int DEFAULT_MAX_PIECE_COUNT = 8;
+    private static final int TRANSPOSITION_TABLE_SIZE_LOG2 = 26;
+
+    private final int maxPieceCount;
+    private final File outputFile;
+    private final ConnectFourOpeningBook book;
+    private final ConnectFourSolver solver;
+
+    //Zobrist hashes of the positions that have been visited for each player, so that transpositions are only visited once.
+    private final Set<Long> visitedPositions = new HashSet<>();
+    //columns played from the empty board.
+    private final int[] columns;
+
+    private OpeningBookGenerator(int maxPieceCount, File outputFile) throws IOException {
+        this.maxPieceCount = maxPieceCount;
+        this.outputFile = outputFile;
+        if (outputFile.exists()) {
+            book = ConnectFourOpeningBook.read(new FileInputStream(outputFile));
+            System.out.println("Continuing with " + book.getPositionCount() + " positions from " + outputFile);
+        } else {
+            book = new ConnectFourOpeningBook(ConnectFourBoardGameModel.STANDARD_ROW_COUNT, ConnectFourBoardGameModel.STANDARD_COLUMN_COUNT);
+        }
+        solver = new ConnectFourSolver(ConnectFourBoardGameModel.STANDARD_ROW_COUNT, ConnectFourBoardGameModel.STANDARD_COLUMN_COUNT, TRANSPOSITION_TABLE_SIZE_LOG2);
+        columns = new int[maxPieceCount + 1];
+    }
+
+    public static void main(String[] args) throws Exception {
+        int maxPieceCount = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_MAX_PIECE_COUNT;
+        File outputFile = new File(args.length > 1 ? args[1] : ConnectFourOpeningBook.STANDARD_BOOK_RESOURCE_NAME);
+        if (maxPieceCount < 0) throw new IllegalArgumentException("maxPieceCount < 0");
+
+        long startTime = System.nanoTime();
+        OpeningBookGenerator generator = new OpeningBookGenerator(maxPieceCount, outputFile);
+        ConnectFourBoardGameModel model = new ConnectFourBoardGameModel(BoardGameUtils.createPlayerNames(2));
+        for (int bookPlayerIndex = 0; bookPlayerIndex < 2; bookPlayerIndex++) {
+            generator.visitedPositions.clear();
+            generator.generate(model, bookPlayerIndex);
+        }
+        System.out.println(String.format("Generated %d positions in %.0f s, written to %s", generator.book.getPositionCount(),
+                (System.nanoTime() - startTime)/1e9, outputFile));
+    }
+
+    private void generate(ConnectFourBoardGameModel model, int bookPlayerIndex) throws InterruptedException, IOException {
+        int pieceCount = model.getPieceCount();
+        if (model.isGameOver() || pieceCount > maxPieceCount) return;
+        if (!visitedPositions.add(model.getZobristHash())) return;
+
+        if (model.getIndexOfCurrentPlayer() == bookPlayerIndex) {
+            int bestColumn = book.getBestColumn(model);
+            if (bestColumn == -1) {
+                long startTime = System.nanoTime();
+                bestColumn = solver.getBestMove(model, false)%model.getColumnCount();
+                int score = solver.solve(model, false);
+                int[] position = new int[pieceCount];
+                System.arraycopy(columns, 0, position, 0, pieceCount);
+                book.add(position, bestColumn, score);
+                write();
+                System.out.println(String.format("%d: %s best column %d, score %d, %.1f s", book.getPositionCount(), toString(position),
+                        bestColumn + 1, score, (System.nanoTime() - startTime)/1e9));
+            }
+            play(model, bestColumn, bookPlayerIndex);
+        } else {
+            for (int column = 0; column < model.getColumnCount(); column++) {
+                if (model.getIndexOfPlayerAt(0, column) == -1) play(model, column, bookPlayerIndex);
+            }
+        }
+    }
+
+    private void play(ConnectFourBoardGameModel model, int column, int bookPlayerIndex) throws InterruptedException, IOException {
+        columns[model.getPieceCount()] = column;
+        //the row is ignored, see ConnectFourBoardGameModel.
+        model.tryMove(column);
+        generate(model, bookPlayerIndex);
+        model.undoMove();
+    }
+
+    private void write() throws IOException {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(outputFile), StandardCharsets.UTF_8)) {
+            book.write(writer, "Connect Four opening book, generated by " + OpeningBookGenerator.class.getName() + " with maxPieceCount " + maxPieceCount + ".");
+        }
+    }
+
+    private static String toString(int[] position) {
+        if (position.length == 0) return "-";
+
+        StringBuilder builder = new StringBuilder();
+        for (int column : position) {
+            builder.append(column + 1);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2018 A.C. Kockx, All Rights Reserved.
+ */
+package tictactoe;
+
+import boardgame.BoardGameUtils;
+import boardgame.controller.search.AlphaBetaSearch;
+import boardgame.controller.search.MnkPatternEvaluatorFactory;
+import boardgame.controller.search.TranspositionTable;
+import boardgame.model.MnkBoardGameModel;
+
+/**
+ * Solves the empty board of a few small m,n,k-games with an iterative deepening AlphaBetaSearch and prints the result,
+ * the number of positions searched and the number of positions searched per second.
+ *
+ * Usage: AlphaBetaBenchmark [transpositionTableSizeInMegabytes]
+ *
+ * @author A.C. Kockx
+ */
+public final class AlphaBetaBenchmark {
+    private static final int DEFAULT_TRANSPOSITION_TABLE_SIZE_IN_MEGABYTES = 256;
+    //rowCount, columnCount, winningNumberOfPiecesInARow.
+    private static final int[][] GAMES = new int[][]{{3, 3, 3}, {4, 4, 4}, {5, 5, 4}};
+
+    private AlphaBetaBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_TRANSPOSITION_TABLE_SIZE_IN_MEGABYTES;
+
+        for (int[] game : GAMES) {
+            MnkBoardGameModel model = new MnkBoardGameModel(game[0], game[1], game[2], BoardGameUtils.createPlayerNames(2));
+            AlphaBetaSearch search = new AlphaBetaSearch(new TranspositionTable(megabytes*1024L*1024L), new MnkPatternEvaluatorFactory().createEvaluator(model));
+
+            long startTime = System.nanoTime();
+            int score = search.iterativeDeepeningSearch(model, game[0]*game[1]);
+            long time = System.nanoTime() - startTime;
+
+            String result = AlphaBetaSearch.isWin(score) ? "first player wins" : AlphaBetaSearch.isLoss(score) ? "second player wins" : "draw";
+            System.out.println(String.format("%dx%dx%d: %s, best move (%d, %d), %d nodes in %.3f s, %.0f nodes/s",
+                    game[0], game[1], game[2], result, search.getBestMove()/game[1], search.getBestMove()%game[1], search.getNodeCount(), time/1e9, search.getNodeCount()*1e9/time));
+        }
+    }
+}
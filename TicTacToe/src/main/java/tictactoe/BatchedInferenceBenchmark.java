@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2018 A.C. Kockx, All Rights Reserved.
+ */
+package tictactoe;
+
+import boardgame.BoardGameUtils;
+import boardgame.controller.neuralnetwork.BatchedInferenceService;
+import boardgame.controller.neuralnetwork.PolicyValueInference;
+import boardgame.controller.neuralnetwork.PolicyValueNetwork;
+import boardgame.controller.neuralnetwork.QuantizedPolicyValueNetwork;
+import boardgame.model.MnkBoardGameModel;
+
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Simulates many games that are played at the same time on 15x15 boards, each on its own thread, whose players evaluate
+ * their positions with one shared BatchedInferenceService. For several maximum batch sizes, prints the number of evaluations per second,
+ * the average batch size and the average and maximum time that a caller waited for an evaluation.
+ *
+ * Usage: BatchedInferenceBenchmark [gameCount [maxLatencyInMilliseconds [secondsPerRun]]]
+ *
+ * @author A.C. Kockx
+ */
+public final class BatchedInferenceBenchmark {
+    private static final int DEFAULT_GAME_COUNT = 256;
+    private static final double DEFAULT_MAX_LATENCY_IN_MILLISECONDS = 2;
+    private static final int DEFAULT_SECONDS_PER_RUN = 3;
+    private static final int[] MAX_BATCH_SIZES = new int[]{1, 8, 32, 128};
+    private static final int SIZE = 15;
+    private static final int WINNING_NUMBER_OF_PIECES_IN_A_ROW = 5;
+    private static final int[] HIDDEN_LAYER_SIZES = new int[]{128, 128};
+    //fixed seed, so that every run uses the same network.
+    private static final long SEED = 1;
+
+    private BatchedInferenceBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int gameCount = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_GAME_COUNT;
+        double maxLatencyInMilliseconds = args.length > 1 ? Double.parseDouble(args[1]) : DEFAULT_MAX_LATENCY_IN_MILLISECONDS;
+        int secondsPerRun = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_SECONDS_PER_RUN;
+
+        PolicyValueNetwork network = new PolicyValueNetwork(SIZE, SIZE, HIDDEN_LAYER_SIZES, SEED);
+        PolicyValueInference[] networks = new PolicyValueInference[]{network, new QuantizedPolicyValueNetwork(network)};
+        String[] networkNames = new String[]{"fp32", "int8"};
+        int workerCount = Runtime.getRuntime().availableProcessors();
+        for (int n = 0; n < networks.length; n++) {
+            for (int maxBatchSize : MAX_BATCH_SIZES) {
+                //the first run warms up the JIT compiler.
+                run(networks[n], maxBatchSize, maxLatencyInMilliseconds, workerCount, gameCount, 1, null);
+                run(networks[n], maxBatchSize, maxLatencyInMilliseconds, workerCount, gameCount, secondsPerRun, networkNames[n]);
+            }
+        }
+    }
+
+    private static void run(PolicyValueInference network, int maxBatchSize, double maxLatencyInMilliseconds, int workerCount,
+            int gameCount, int seconds, String networkName) throws InterruptedException {
+        final BatchedInferenceService service = new BatchedInferenceService(network, maxBatchSize, (long) (maxLatencyInMilliseconds*1e6), workerCount);
+        final AtomicLong totalWaitTime = new AtomicLong();
+        final AtomicLong maxWaitTime = new AtomicLong();
+
+        //each game plays random moves and evaluates each position, until it is interrupted.
+        Thread[] games = new Thread[gameCount];
+        for (int n = 0; n < gameCount; n++) {
+            final long seed = SEED + n;
+            games[n] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Random random = new Random(seed);
+                    MnkBoardGameModel model = new MnkBoardGameModel(SIZE, SIZE, WINNING_NUMBER_OF_PIECES_IN_A_ROW, BoardGameUtils.createPlayerNames(2));
+                    int[] moves = new int[SIZE*SIZE];
+                    try {
+                        while (!Thread.currentThread().isInterrupted()) {
+                            if (model.isGameOver()) model.reset();
+                            long startTime = System.nanoTime();
+                            service.submit(model).get();
+                            long time = System.nanoTime() - startTime;
+                            totalWaitTime.addAndGet(time);
+                            long max = maxWaitTime.get();
+                            while (time > max && !maxWaitTime.compareAndSet(max, time)) {
+                                max = maxWaitTime.get();
+                            }
+                            model.tryMove(moves[random.nextInt(model.getLegalMoves(moves))]);
+                        }
+                    } catch (InterruptedException e) {
+                        //stop.
+                    } catch (ExecutionException e) {
+                        throw new IllegalStateException(e.getCause());
+                    }
+                }
+            });
+            games[n].start();
+        }
+
+        long startTime = System.nanoTime();
+        Thread.sleep(seconds*1000L);
+        for (Thread game : games) {
+            game.interrupt();
+        }
+        for (Thread game : games) {
+            game.join();
+        }
+        service.shutDown();
+        long time = System.nanoTime() - startTime;
+
+        if (networkName == null) return;
+        long evaluationCount = service.getEvaluationCount();
+        System.out.println(String.format("%s, max batch size %d, max latency %.1f ms: %.0f evaluations/s, average batch size %.1f, average wait %.2f ms, maximum wait %.2f ms",
+                networkName, maxBatchSize, maxLatencyInMilliseconds, evaluationCount/(time/1e9), evaluationCount/(double) service.getBatchCount(),
+                totalWaitTime.get()/1e6/evaluationCount, maxWaitTime.get()/1e6));
+    }
+}
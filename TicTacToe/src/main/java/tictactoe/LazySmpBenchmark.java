@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2018 A.C. Kockx, All Rights Reserved.
+ */
+package tictactoe;
+
+import boardgame.BoardGameUtils;
+import boardgame.controller.search.LazySmpSearch;
+import boardgame.controller.search.MnkPatternEvaluatorFactory;
+import boardgame.controller.search.TranspositionTable;
+import boardgame.model.MnkBoardGameModel;
+
+/**
+ * Measures the time to depth of a LazySmpSearch: for 1, 2, 4, ... threads (up to the number of processors) this searches the same
+ * m,n,k-game position to a fixed depth and prints the time until the main thread completed that depth, the completed depth,
+ * the score and best move, the speedup compared to 1 thread, the number of positions searched by all threads
+ * and the number of positions searched per second. Each run starts with an empty transposition table.
+ *
+ * A time to depth is only comparable to the time of 1 thread if the same depth was completed with the same score,
+ * so this checks that for each run. The speedup is only meaningful if each thread has its own processor:
+ * with more threads than processors the threads take turns, so the time does not show parallel scaling.
+ * The best move can differ between runs if several moves have the same score.
+ *
+ * Usage: LazySmpBenchmark [depth [maxThreadCount]]
+ *
+ * @author A.C. Kockx
+ */
+public final class LazySmpBenchmark {
+    private static final int ROW_COUNT = 9;
+    private static final int COLUMN_COUNT = 9;
+    private static final int WINNING_NUMBER_OF_PIECES_IN_A_ROW = 5;
+    //position to search: a few moves near the center.
+    private static final int[][] OPENING_MOVES = new int[][]{{4, 4}, {3, 5}, {5, 5}};
+    private static final int DEFAULT_DEPTH = 7;
+    private static final long TRANSPOSITION_TABLE_SIZE_IN_BYTES = 256L*1024*1024;
+
+    private LazySmpBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_DEPTH;
+        int processorCount = Runtime.getRuntime().availableProcessors();
+        int maxThreadCount = args.length > 1 ? Integer.parseInt(args[1]) : processorCount;
+
+        MnkBoardGameModel model = new MnkBoardGameModel(ROW_COUNT, COLUMN_COUNT, WINNING_NUMBER_OF_PIECES_IN_A_ROW, BoardGameUtils.createPlayerNames(2));
+        for (int[] move : OPENING_MOVES) {
+            model.tryMove(move[0]*COLUMN_COUNT + move[1]);
+        }
+
+        System.out.println(String.format("%dx%dx%d, depth %d, up to %d threads, %d processors", ROW_COUNT, COLUMN_COUNT, WINNING_NUMBER_OF_PIECES_IN_A_ROW,
+                depth, maxThreadCount, processorCount));
+        //warm up the JIT compiler.
+        new LazySmpSearch(new TranspositionTable(TRANSPOSITION_TABLE_SIZE_IN_BYTES), new MnkPatternEvaluatorFactory(), 1).search(model, depth - 2, Long.MAX_VALUE);
+
+        double singleThreadTime = 0;
+        int singleThreadDepth = 0;
+        int singleThreadScore = 0;
+        boolean allMatch = true;
+        for (int threadCount = 1; ; threadCount = Math.min(2*threadCount, maxThreadCount)) {
+            LazySmpSearch search = new LazySmpSearch(new TranspositionTable(TRANSPOSITION_TABLE_SIZE_IN_BYTES), new MnkPatternEvaluatorFactory(), threadCount);
+            long startTime = System.nanoTime();
+            int score = search.search(model, depth, Long.MAX_VALUE);
+            double time = (System.nanoTime() - startTime)/1e9;
+            if (threadCount == 1) {
+                singleThreadTime = time;
+                singleThreadDepth = search.getCompletedDepth();
+                singleThreadScore = score;
+            }
+
+            boolean match = search.getCompletedDepth() == singleThreadDepth && score == singleThreadScore;
+            allMatch &= match;
+            String remark = !match ? "  DIFFERENT RESULT, time not comparable" : threadCount > processorCount ? "  more threads than processors" : "";
+            System.out.println(String.format("%2d threads: depth %d, score %d, best move (%d, %d), time to depth %.3f s, speedup %.2f, %d nodes, %.0f nodes/s%s",
+                    threadCount, search.getCompletedDepth(), score, search.getBestMove()/COLUMN_COUNT, search.getBestMove()%COLUMN_COUNT, time,
+                    singleThreadTime/time, search.getNodeCount(), search.getNodeCount()/time, remark));
+            if (threadCount >= maxThreadCount) break;
+        }
+        System.out.println(allMatch ? "All runs completed the same depth with the same score." : "Not all runs completed the same depth with the same score.");
+    }
+}
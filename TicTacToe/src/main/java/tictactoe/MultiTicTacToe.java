@@ -58,10 +58,10 @@ public final class MultiTicTacToe {
         final SquaresPanelView view2 = new SquaresPanelView(new TicTacToeBoardDrawer(model2, SQUARE_SIZE_IN_PIXELS, SQUARE_SIZE_IN_PIXELS));
         final SquaresPanelView view3 = new SquaresPanelView(new TicTacToeBoardDrawer(model3, SQUARE_SIZE_IN_PIXELS, SQUARE_SIZE_IN_PIXELS));
         final SquaresPanelView view4 = new SquaresPanelView(new TicTacToeBoardDrawer(model3, SQUARE_SIZE_IN_PIXELS, SQUARE_SIZE_IN_PIXELS));
-        model1.addObserver(view1);
-        model2.addObserver(view2);
-        model3.addObserver(view3);
-        model3.addObserver(view4);
+        model1.addGameListener(view1);
+        model2.addGameListener(view2);
+        model3.addGameListener(view3);
+        model3.addGameListener(view4);
         //init GUI on event-dispatching thread.
         javax.swing.SwingUtilities.invokeAndWait(new Runnable() {
             public void run() {
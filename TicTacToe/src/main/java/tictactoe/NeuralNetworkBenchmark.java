@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2018 A.C. Kockx, All Rights Reserved.
+ */
+package tictactoe;
+
+import boardgame.BoardGameUtils;
+import boardgame.controller.neuralnetwork.Int8Kernel;
+import boardgame.controller.neuralnetwork.Int8Kernels;
+import boardgame.controller.neuralnetwork.NetworkWorkspace;
+import boardgame.controller.neuralnetwork.PolicyValueInference;
+import boardgame.controller.neuralnetwork.PolicyValueNetwork;
+import boardgame.controller.neuralnetwork.QuantizedPolicyValueNetwork;
+import boardgame.model.MnkBoardGameModel;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compares the inference speed of a PolicyValueNetwork (32-bit floats) and a QuantizedPolicyValueNetwork (8-bit integers)
+ * with the scalar kernel and with the vector kernel (see Int8Kernels), all with the same random weights on random positions
+ * on several board sizes. For each board size, prints the number of inferences per second of each network,
+ * how often the quantized network chooses the same most probable move and the largest difference in move probability and value.
+ * The scalar and vector kernels give the same results, which is checked.
+ *
+ * The vector kernel is only available with Java 16 or later and the JVM option --add-modules jdk.incubator.vector,
+ * otherwise its column is left out.
+ *
+ * Usage: NeuralNetworkBenchmark [inferenceCount]
+ *
+ * @author A.C. Kockx
+ */
+public final class NeuralNetworkBenchmark {
+    private static final int DEFAULT_INFERENCE_COUNT = 20000;
+    private static final int[] SIZES = new int[]{3, 7, 15};
+    private static final int[] HIDDEN_LAYER_SIZES = new int[]{128, 128};
+    private static final int POSITION_COUNT = 100;
+    //fixed seed, so that every run uses the same networks and positions.
+    private static final long SEED = 1;
+
+    private NeuralNetworkBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int inferenceCount = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_INFERENCE_COUNT;
+        Int8Kernel vectorKernel = Int8Kernels.getVectorKernel();
+        System.out.println(vectorKernel == null ? "Vector kernel not available, run with Java 16+ and --add-modules jdk.incubator.vector to include it."
+                : "Vector kernel: " + vectorKernel.getName());
+
+        for (int size : SIZES) {
+            PolicyValueNetwork network = new PolicyValueNetwork(size, size, HIDDEN_LAYER_SIZES, SEED);
+            QuantizedPolicyValueNetwork quantizedNetwork = new QuantizedPolicyValueNetwork(network, Int8Kernels.getScalarKernel());
+            QuantizedPolicyValueNetwork vectorNetwork = vectorKernel == null ? null : new QuantizedPolicyValueNetwork(network, vectorKernel);
+            MnkBoardGameModel[] positions = createRandomPositions(size, new Random(SEED));
+
+            //accuracy.
+            NetworkWorkspace workspace = network.createWorkspace();
+            NetworkWorkspace quantizedWorkspace = quantizedNetwork.createWorkspace();
+            int sameMoveCount = 0;
+            float maxPolicyDifference = 0;
+            float maxValueDifference = 0;
+            for (MnkBoardGameModel position : positions) {
+                float value = network.evaluate(position, workspace);
+                float quantizedValue = quantizedNetwork.evaluate(position, quantizedWorkspace);
+                maxValueDifference = Math.max(maxValueDifference, Math.abs(value - quantizedValue));
+                float[] policy = workspace.getPolicy();
+                float[] quantizedPolicy = quantizedWorkspace.getPolicy();
+                for (int square = 0; square < policy.length; square++) {
+                    maxPolicyDifference = Math.max(maxPolicyDifference, Math.abs(policy[square] - quantizedPolicy[square]));
+                }
+                if (getMostProbableMove(workspace) == getMostProbableMove(quantizedWorkspace)) sameMoveCount++;
+                if (vectorNetwork != null) checkSameOutputs(vectorNetwork, position, quantizedValue, quantizedPolicy);
+            }
+
+            //speed. The first run warms up the JIT compiler.
+            run(network, workspace, positions, inferenceCount);
+            double floatRate = run(network, workspace, positions, inferenceCount);
+            run(quantizedNetwork, quantizedWorkspace, positions, inferenceCount);
+            double quantizedRate = run(quantizedNetwork, quantizedWorkspace, positions, inferenceCount);
+            String vectorResult = "int8 vector n/a";
+            if (vectorNetwork != null) {
+                NetworkWorkspace vectorWorkspace = vectorNetwork.createWorkspace();
+                run(vectorNetwork, vectorWorkspace, positions, inferenceCount);
+                double vectorRate = run(vectorNetwork, vectorWorkspace, positions, inferenceCount);
+                vectorResult = String.format("int8 vector %.0f/s (%.2fx)", vectorRate, vectorRate/floatRate);
+            }
+
+            System.out.println(String.format("%dx%d: fp32 %.0f/s, int8 scalar %.0f/s (%.2fx), %s, same move %d/%d, max policy difference %.4f, max value difference %.4f",
+                    size, size, floatRate, quantizedRate, quantizedRate/floatRate, vectorResult, sameMoveCount, positions.length, maxPolicyDifference, maxValueDifference));
+        }
+    }
+
+    /**
+     * Checks that the given network gives the given outputs for the given position.
+     */
+    private static void checkSameOutputs(QuantizedPolicyValueNetwork network, MnkBoardGameModel position, float value, float[] policy) {
+        NetworkWorkspace workspace = network.createWorkspace();
+        if (network.evaluate(position, workspace) != value || !Arrays.equals(workspace.getPolicy(), policy)) {
+            throw new IllegalStateException("The " + network.getKernel().getName() + " kernel gives different outputs than the scalar kernel.");
+        }
+    }
+
+    /**
+     * Returns the number of inferences per second.
+     */
+    private static double run(PolicyValueInference network, NetworkWorkspace workspace, MnkBoardGameModel[] positions, int inferenceCount) {
+        float checksum = 0;
+        long startTime = System.nanoTime();
+        for (int n = 0; n < inferenceCount; n++) {
+            checksum += network.evaluate(positions[n%positions.length], workspace);
+        }
+        long time = System.nanoTime() - startTime;
+        //use the result, so that the JIT compiler cannot remove the inferences.
+        if (Float.isNaN(checksum)) throw new IllegalStateException("NaN");
+        return inferenceCount/(time/1e9);
+    }
+
+    /**
+     * Returns positions with a random number of moves on random legal squares, where the game is not over.
+     */
+    private static MnkBoardGameModel[] createRandomPositions(int size, Random random) {
+        MnkBoardGameModel[] positions = new MnkBoardGameModel[POSITION_COUNT];
+        int[] moves = new int[size*size];
+        for (int n = 0; n < positions.length; n++) {
+            MnkBoardGameModel model;
+            do {
+                model = new MnkBoardGameModel(size, size, Math.min(size, 5), BoardGameUtils.createPlayerNames(2));
+                int moveCount = random.nextInt(size*size/2);
+                for (int i = 0; i < moveCount && !model.isGameOver(); i++) {
+                    model.tryMove(moves[random.nextInt(model.getLegalMoves(moves))]);
+                }
+            } while (model.isGameOver());
+            positions[n] = model;
+        }
+        return positions;
+    }
+
+    private static int getMostProbableMove(NetworkWorkspace workspace) {
+        float[] policy = workspace.getPolicy();
+        int[] legalMoves = workspace.getLegalMoves();
+        int bestMove = legalMoves[0];
+        for (int n = 1; n < workspace.getLegalMoveCount(); n++) {
+            if (policy[legalMoves[n]] > policy[bestMove]) bestMove = legalMoves[n];
+        }
+        return bestMove;
+    }
+}
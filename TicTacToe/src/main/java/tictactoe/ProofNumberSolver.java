@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2018 A.C. Kockx, All Rights Reserved.
+ */
+package tictactoe;
+
+import boardgame.BoardGameUtils;
+import boardgame.controller.search.ProofNumberSearch;
+import boardgame.model.MnkBoardGameModel;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Solves the empty board of an m,n,k-game with a ProofNumberSearch and prints the result, a best first move,
+ * the number of positions searched and the time it took. If a checkpoint file is given, progress is saved to it every few minutes,
+ * and when the solver is stopped with Ctrl+C. When the same command is run again, the proof continues from the saved progress,
+ * e.g. after a restart. If a checkpoint cannot be saved, then a warning is printed and the proof continues.
+ *
+ * Usage: ProofNumberSolver rowCount columnCount winningNumberOfPiecesInARow [hashTableSizeInMegabytes [checkpointFile]]
+ *
+ * @author A.C. Kockx
+ */
+public final class ProofNumberSolver {
+    private static final int DEFAULT_HASH_TABLE_SIZE_IN_MEGABYTES = 1024;
+    private static final long CHECKPOINT_INTERVAL_IN_MILLISECONDS = 5*60*1000;
+
+    private ProofNumberSolver() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.out.println("Usage: ProofNumberSolver rowCount columnCount winningNumberOfPiecesInARow [hashTableSizeInMegabytes [checkpointFile]]");
+            return;
+        }
+        int rowCount = Integer.parseInt(args[0]);
+        int columnCount = Integer.parseInt(args[1]);
+        int winningNumberOfPiecesInARow = Integer.parseInt(args[2]);
+        int megabytes = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_HASH_TABLE_SIZE_IN_MEGABYTES;
+        File checkpointFile = args.length > 4 ? new File(args[4]) : null;
+
+        MnkBoardGameModel model = new MnkBoardGameModel(rowCount, columnCount, winningNumberOfPiecesInARow, BoardGameUtils.createPlayerNames(2));
+        final ProofNumberSearch search = new ProofNumberSearch(megabytes*1024L*1024L, checkpointFile, CHECKPOINT_INTERVAL_IN_MILLISECONDS);
+
+        //on Ctrl+C interrupt the search and wait until it has saved a checkpoint.
+        final Thread mainThread = Thread.currentThread();
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                mainThread.interrupt();
+                try {
+                    mainThread.join();
+                } catch (InterruptedException e) {
+                    //exit anyway.
+                }
+            }
+        });
+
+        //the search continues if a checkpoint fails, so warn the user.
+        if (checkpointFile != null) {
+            Thread checkpointWarner = new Thread() {
+                @Override
+                public void run() {
+                    IOException reportedException = null;
+                    try {
+                        while (true) {
+                            Thread.sleep(CHECKPOINT_INTERVAL_IN_MILLISECONDS);
+                            IOException exception = search.getCheckpointException();
+                            if (exception != null && exception != reportedException) System.out.println("Could not save checkpoint: " + exception);
+                            reportedException = exception;
+                        }
+                    } catch (InterruptedException e) {
+                        //stop.
+                    }
+                }
+            };
+            checkpointWarner.setDaemon(true);
+            checkpointWarner.start();
+        }
+
+        long startTime = System.nanoTime();
+        int value;
+        try {
+            value = search.solve(model);
+        } catch (InterruptedException e) {
+            String checkpointResult = "";
+            if (checkpointFile != null) {
+                checkpointResult = e.getSuppressed().length == 0 ? " Progress saved to " + checkpointFile : " Could not save progress: " + e.getSuppressed()[0];
+            }
+            System.out.println("Stopped after " + search.getNodeCount() + " nodes." + checkpointResult);
+            return;
+        }
+        long time = System.nanoTime() - startTime;
+
+        String result = value == ProofNumberSearch.WIN ? "first player wins" : value == ProofNumberSearch.LOSS ? "second player wins" : "draw";
+        System.out.println(String.format("%dx%dx%d: %s, best move (%d, %d), %d nodes in %.3f s, %.0f nodes/s",
+                rowCount, columnCount, winningNumberOfPiecesInARow, result, search.getBestMove()/columnCount, search.getBestMove()%columnCount,
+                search.getNodeCount(), time/1e9, search.getNodeCount()*1e9/time));
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2018 A.C. Kockx, All Rights Reserved.
+ */
+package tictactoe;
+
+import boardgame.BoardGameUtils;
+import boardgame.controller.neuralnetwork.PolicyValueNetwork;
+import boardgame.controller.player.NeuralNetworkPlayer;
+import boardgame.controller.training.SelfPlayTrainingPipeline;
+import boardgame.model.MnkBoardGameModel;
+import util.controller.TurnBasedGameEngine;
+import util.controller.player.Player;
+import util.controller.player.RandomLegalMovePlayer;
+
+import java.io.File;
+
+/**
+ * Trains a PolicyValueNetwork for TicTacToe with a SelfPlayTrainingPipeline for the given number of seconds, without a GUI,
+ * and prints the progress at a fixed interval. If the checkpoint file exists, training continues from the network in that file.
+ * Afterwards, a NeuralNetworkPlayer with the trained network plays against a RandomLegalMovePlayer and the results are printed.
+ *
+ * Usage: SelfPlayTraining [seconds [checkpointFile]]
+ *
+ * @author A.C. Kockx
+ */
+public final class SelfPlayTraining {
+    private static final int ROW_COUNT = 3;
+    private static final int COLUMN_COUNT = 3;
+    private static final int WINNING_NUMBER_OF_PIECES_IN_A_ROW = 3;
+    private static final int[] HIDDEN_LAYER_SIZES = new int[]{64, 64};
+    private static final long SEED = 1;
+    private static final int DEFAULT_SECONDS = 60;
+    private static final String DEFAULT_CHECKPOINT_FILE = "tictactoe.network";
+    private static final int PROGRESS_INTERVAL_IN_SECONDS = 10;
+    //number of games with each color against the random player.
+    private static final int EVALUATION_GAME_COUNT = 100;
+
+    private SelfPlayTraining() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SECONDS;
+        File checkpointFile = new File(args.length > 1 ? args[1] : DEFAULT_CHECKPOINT_FILE);
+
+        PolicyValueNetwork network;
+        if (checkpointFile.exists()) {
+            network = PolicyValueNetwork.load(checkpointFile);
+            System.out.println("Continuing from " + checkpointFile);
+        } else {
+            network = new PolicyValueNetwork(ROW_COUNT, COLUMN_COUNT, HIDDEN_LAYER_SIZES, SEED);
+        }
+        MnkBoardGameModel model = new MnkBoardGameModel(ROW_COUNT, COLUMN_COUNT, WINNING_NUMBER_OF_PIECES_IN_A_ROW, BoardGameUtils.createPlayerNames(2));
+
+        SelfPlayTrainingPipeline pipeline = new SelfPlayTrainingPipeline(network, model, checkpointFile);
+        long startTime = System.nanoTime();
+        pipeline.start();
+        for (int elapsed = 0; elapsed < seconds; ) {
+            int interval = Math.min(PROGRESS_INTERVAL_IN_SECONDS, seconds - elapsed);
+            Thread.sleep(interval*1000L);
+            elapsed += interval;
+            double[] losses = pipeline.getAndResetAverageLosses();
+            System.out.println(String.format("%d s: %d games, %d samples, %d training steps, policy loss %.4f, value loss %.4f, %d checkpoints",
+                    elapsed, pipeline.getGameCount(), pipeline.getBuffer().getAddedCount(), pipeline.getTrainingStepCount(), losses[0], losses[1],
+                    pipeline.getCheckpointCount()));
+            if (pipeline.getCheckpointException() != null) System.out.println("Could not save checkpoint: " + pipeline.getCheckpointException());
+        }
+        pipeline.stop();
+        System.out.println(String.format("Trained for %.1f s, saved %s", (System.nanoTime() - startTime)/1e9, checkpointFile));
+
+        //evaluate.
+        int[] results = new int[3];
+        for (int color = 0; color < 2; color++) {
+            Player networkPlayer = new NeuralNetworkPlayer("Network", network);
+            Player randomPlayer = new RandomLegalMovePlayer("Random");
+            Player[] players = color == 0 ? new Player[]{networkPlayer, randomPlayer} : new Player[]{randomPlayer, networkPlayer};
+            TurnBasedGameEngine engine = new TurnBasedGameEngine(model, players, 0);
+            for (int n = 0; n < EVALUATION_GAME_COUNT; n++) {
+                engine.newGame();
+                engine.playGame();
+                int winner = model.getIndexOfWinner();
+                results[winner == -1 ? 1 : winner == color ? 0 : 2]++;
+            }
+        }
+        System.out.println(String.format("Network against random player: %d wins, %d draws, %d losses", results[0], results[1], results[2]));
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2018 A.C. Kockx, All Rights Reserved.
+ */
+package tictactoe;
+
+import boardgame.BoardGameUtils;
+import boardgame.controller.search.ThreatSpaceSearch;
+import boardgame.model.MnkBoardGameModel;
+
+import java.util.Random;
+
+/**
+ * Runs a ThreatSpaceSearch on random 15x15x5 (Gomoku) positions and prints the number of forced wins found,
+ * the length of the longest winning sequence and the average and maximum search time per position.
+ * The positions have a random number of pieces on random squares in the center of the board.
+ *
+ * Usage: ThreatSpaceSearchBenchmark [positionCount]
+ *
+ * @author A.C. Kockx
+ */
+public final class ThreatSpaceSearchBenchmark {
+    private static final int DEFAULT_POSITION_COUNT = 10000;
+    private static final int SIZE = 15;
+    private static final int WINNING_NUMBER_OF_PIECES_IN_A_ROW = 5;
+    //pieces are placed in the center area of this size.
+    private static final int CENTER_SIZE = 9;
+    private static final int MIN_PIECE_COUNT = 10;
+    private static final int MAX_PIECE_COUNT = 50;
+    //fixed seed, so that every run searches the same positions.
+    private static final long SEED = 1;
+
+    private ThreatSpaceSearchBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int positionCount = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_POSITION_COUNT;
+
+        Random random = new Random(SEED);
+        ThreatSpaceSearch search = new ThreatSpaceSearch();
+        MnkBoardGameModel model = new MnkBoardGameModel(SIZE, SIZE, WINNING_NUMBER_OF_PIECES_IN_A_ROW, BoardGameUtils.createPlayerNames(2));
+        int offset = (SIZE - CENTER_SIZE)/2;
+        int searchedCount = 0;
+        int winCount = 0;
+        int maxLineLength = 0;
+        long totalTime = 0;
+        long maxTime = 0;
+        long totalNodeCount = 0;
+        for (int n = 0; n < positionCount; n++) {
+            model.reset();
+            int pieceCount = MIN_PIECE_COUNT + random.nextInt(MAX_PIECE_COUNT - MIN_PIECE_COUNT + 1);
+            for (int i = 0; i < pieceCount && !model.isGameOver(); i++) {
+                int square;
+                do {
+                    square = (offset + random.nextInt(CENTER_SIZE))*SIZE + offset + random.nextInt(CENTER_SIZE);
+                } while (model.getBoard()[square/SIZE][square%SIZE] != null);
+                model.tryMove(square);
+            }
+            if (model.isGameOver()) continue;
+
+            long startTime = System.nanoTime();
+            int move = search.findWinningMove(model);
+            long time = System.nanoTime() - startTime;
+            searchedCount++;
+            totalTime += time;
+            maxTime = Math.max(maxTime, time);
+            totalNodeCount += search.getNodeCount();
+            if (move != -1) {
+                winCount++;
+                maxLineLength = Math.max(maxLineLength, search.getWinningLine().length);
+            }
+        }
+
+        System.out.println(String.format("%dx%dx%d: %d positions, %d forced wins, longest win %d plies, %d nodes, average %.3f ms, maximum %.3f ms per position",
+                SIZE, SIZE, WINNING_NUMBER_OF_PIECES_IN_A_ROW, searchedCount, winCount, maxLineLength, totalNodeCount,
+                totalTime/1e6/searchedCount, maxTime/1e6));
+    }
+}
@@ -54,7 +54,7 @@ public final class TicTacToe {
 
         //create view.
         final SquaresPanelView view = new SquaresPanelView(new TicTacToeBoardDrawer(model, SQUARE_SIZE_IN_PIXELS, SQUARE_SIZE_IN_PIXELS));
-        model.addObserver(view);
+        model.addGameListener(view);
         //init GUI on event-dispatching thread.
         javax.swing.SwingUtilities.invokeAndWait(new Runnable() {
             public void run() {
@@ -66,7 +66,7 @@ public final class TicTacToe {
 
         //ask user for game settings.
         //choose a playerType for each player.
-        PlayerType[] valuesToChooseFrom = new PlayerType[]{PlayerType.HUMAN, PlayerType.COMPUTER_RANDOM_MOVE};
+        PlayerType[] valuesToChooseFrom = new PlayerType[]{PlayerType.HUMAN, PlayerType.COMPUTER_RANDOM_MOVE, PlayerType.COMPUTER_BRUTE_FORCE, PlayerType.COMPUTER_MONTE_CARLO_TREE_SEARCH, PlayerType.COMPUTER_NEURAL_NETWORK};
         PlayerType defaultValue = PlayerType.HUMAN;
         PlayerType[] playerTypes = BoardGameUtils.choosePlayerTypes(valuesToChooseFrom, defaultValue, PLAYER_COUNT, view.getPanel());
         if (playerTypes == null) System.exit(0);//if user input cancelled, exit game.
@@ -3,7 +3,7 @@
  */
 package tictactoe;
 
-import boardgame.model.MnkBoardGamePieceType;
+import boardgame.model.BoardSnapshot;
 import boardgame.model.MnkBoardGameModel;
 import boardgame.model.SquareMove;
 import boardgame.view.SquaresDrawer;
@@ -14,7 +14,6 @@ import java.awt.Color;
 import java.awt.Font;
 import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
-import java.util.Observable;
 
 /**
  * Draws a TicTacToe board.
@@ -22,8 +21,8 @@ import java.util.Observable;
  * @author A.C. Kockx
  */
 public final class TicTacToeBoardDrawer implements SquaresDrawer {
-    private static final int CROSSES_PLAYER = 1;
-    private static final int NOUGHTS_PLAYER = 2;
+    private static final int CROSSES_PLAYER_INDEX = 0;
+    private static final int NOUGHTS_PLAYER_INDEX = 1;
     static final Color BACKGROUND_COLOR = Color.WHITE;
     static final Color LINE_COLOR = Color.BLACK;
     private static final Color PREVIOUS_MOVE_COLOR = Color.GREEN;
@@ -45,20 +44,20 @@ public final class TicTacToeBoardDrawer implements SquaresDrawer {
     }
 
     /**
-     * Draws the current board from this.model to the given in-memory image.
+     * Draws the current board from the latest snapshot of this.model to the given in-memory image.
+     * The snapshot is immutable, so this can be called on any thread.
      */
     @Override
-    public void draw(Observable o, Object arg, BufferedImage image) {
-        int rowCount = model.getRowCount();
-        int columnCount = model.getColumnCount();
-        int requiredK = model.getWinningNumberOfPiecesInARow();
-        MnkBoardGamePieceType[][] board = model.getBoard();
-        SquareMove previousMove = model.getPreviousMove();
-        float[][] previousMoveProbabilities = model.getPreviousMoveProbabilities();
-        boolean gameOver = model.isGameOver();
-        String[] playerNames = model.getPlayerNames();
-        int indexOfWinner = model.getIndexOfWinner();
-        int indexOfPlayerThatMadeAnIllegalMove = model.getIndexOfPlayerThatMadeAnIllegalMove();
+    public void draw(BufferedImage image) {
+        BoardSnapshot snapshot = model.getSnapshot();
+        int rowCount = snapshot.getRowCount();
+        int columnCount = snapshot.getColumnCount();
+        SquareMove previousMove = snapshot.getPreviousMove();
+        float[][] previousMoveProbabilities = snapshot.getPreviousMoveProbabilities();
+        boolean gameOver = snapshot.isGameOver();
+        String[] playerNames = snapshot.getPlayerNames();
+        int indexOfWinner = snapshot.getIndexOfWinner();
+        int indexOfPlayerThatMadeAnIllegalMove = snapshot.getIndexOfPlayerThatMadeAnIllegalMove();
 
         //draw background.
         Graphics2D g = GraphicsUtils.createAntiAliasedGraphics(image);
@@ -93,100 +92,26 @@ public final class TicTacToeBoardDrawer implements SquaresDrawer {
         g.setStroke(new BasicStroke(lineWidth));
         for (int row = 0; row < rowCount; row++) {
             for (int column = 0; column < columnCount; column++) {
-                MnkBoardGamePieceType piece = board[row][column];
-                if (piece != null) {
-                    drawPiece(g, row, column, piece, squareSize, borderSize, lineWidth);
+                int playerIndex = snapshot.getIndexOfPlayerAt(row, column);
+                if (playerIndex != -1) {
+                    drawPiece(g, row, column, playerIndex, squareSize, borderSize, lineWidth);
                 }
             }
         }
 
         //draw winning line if k in a row.
-        g.setStroke(new BasicStroke(3 * lineWidth));
-        OUTER:
-        for (int row = 0; row < rowCount; row++) {
-            for (int column = 0; column < columnCount; column++) {
-                MnkBoardGamePieceType firstPiece = board[row][column];
-                if (firstPiece == null) continue;
-
-                //check for horizontal k in a row.
-                if (column <= columnCount - requiredK) {//if square is far enough from right edge.
-                    boolean kInARow = true;
-                    for (int k = 1; k < requiredK; k++) {
-                        MnkBoardGamePieceType currentPiece = board[row][column + k];
-                        if (currentPiece == null || currentPiece.player != firstPiece.player) {
-                            kInARow = false;
-                            break;
-                        }
-                    }
-
-                    if (kInARow) {
-                        //draw line.
-                        g.setColor(getColor(firstPiece));
-                        g.drawLine(borderSize + column*squareSize, borderSize + (int) ((row + 0.5)*squareSize),
-                                borderSize + (column + requiredK)*squareSize, borderSize + (int) ((row + 0.5)*squareSize));
-                        break OUTER;
-                    }
-                }
-
-                //check for vertical k in a row.
-                if (row <= rowCount - requiredK) {//if square is far enough from bottom edge.
-                    boolean kInARow = true;
-                    for (int k = 1; k < requiredK; k++) {
-                        MnkBoardGamePieceType currentPiece = board[row + k][column];
-                        if (currentPiece == null || currentPiece.player != firstPiece.player) {
-                            kInARow = false;
-                            break;
-                        }
-                    }
-
-                    if (kInARow) {
-                        g.setColor(getColor(firstPiece));
-                        g.drawLine(borderSize + (int) ((column + 0.5)*squareSize), borderSize + row*squareSize,
-                                borderSize + (int) ((column + 0.5)*squareSize), borderSize + (row + requiredK)*squareSize);
-                        break OUTER;
-                    }
-                }
-
-                //check for NW-SE diagonal k in a row.
-                if (column <= columnCount - requiredK && row <= rowCount - requiredK) {
-                    //if square is far enough from right edge and far enough from bottom edge.
-                    boolean kInARow = true;
-                    for (int k = 1; k < requiredK; k++) {
-                        MnkBoardGamePieceType currentPiece = board[row + k][column + k];
-                        if (currentPiece == null || currentPiece.player != firstPiece.player) {
-                            kInARow = false;
-                            break;
-                        }
-                    }
-
-                    if (kInARow) {
-                        g.setColor(getColor(firstPiece));
-                        g.drawLine(borderSize + column*squareSize, borderSize + row*squareSize,
-                                   borderSize + (column + requiredK)*squareSize, borderSize + (row + requiredK)*squareSize);
-                        break OUTER;
-                    }
-                }
-
-                //check for NE-SW diagonal k in a row.
-                if (column >= requiredK - 1 && row <= rowCount - requiredK) {
-                    //if square is far enough from left edge and far enough from bottom edge.
-                    boolean kInARow = true;
-                    for (int k = 1; k < requiredK; k++) {
-                        MnkBoardGamePieceType currentPiece = board[row + k][column - k];
-                        if (currentPiece == null || currentPiece.player != firstPiece.player) {
-                            kInARow = false;
-                            break;
-                        }
-                    }
-
-                    if (kInARow) {
-                        g.setColor(getColor(firstPiece));
-                        g.drawLine(borderSize + (column + 1)*squareSize, borderSize + row*squareSize,
-                                   borderSize + (column - requiredK + 1)*squareSize, borderSize + (row + requiredK)*squareSize);
-                        break OUTER;
-                    }
-                }
-            }
+        SquareMove winningLineStart = snapshot.getWinningLineStart();
+        SquareMove winningLineEnd = snapshot.getWinningLineEnd();
+        if (winningLineStart != null && winningLineEnd != null) {
+            //draw line from the outer edge of the first square to the outer edge of the last square.
+            int rowStep = Integer.signum(winningLineEnd.row - winningLineStart.row);
+            int columnStep = Integer.signum(winningLineEnd.column - winningLineStart.column);
+            g.setStroke(new BasicStroke(3 * lineWidth));
+            g.setColor(getColor(indexOfWinner));
+            g.drawLine(borderSize + (int) ((winningLineStart.column + 0.5 - 0.5*columnStep)*squareSize),
+                    borderSize + (int) ((winningLineStart.row + 0.5 - 0.5*rowStep)*squareSize),
+                    borderSize + (int) ((winningLineEnd.column + 0.5 + 0.5*columnStep)*squareSize),
+                    borderSize + (int) ((winningLineEnd.row + 0.5 + 0.5*rowStep)*squareSize));
         }
 
         //draw text.
@@ -210,35 +135,35 @@ public final class TicTacToeBoardDrawer implements SquaresDrawer {
         g.dispose();
     }
 
-    private static Color getColor(MnkBoardGamePieceType piece) {
-        switch (piece.player) {
-            case NOUGHTS_PLAYER:
+    private static Color getColor(int playerIndex) {
+        switch (playerIndex) {
+            case NOUGHTS_PLAYER_INDEX:
                 return NOUGHT_COLOR;
-            case CROSSES_PLAYER:
+            case CROSSES_PLAYER_INDEX:
                 return CROSS_COLOR;
             default:
-                throw new IllegalStateException("Unknown player " + piece.player);
+                throw new IllegalStateException("Unknown player " + (playerIndex + 1));
         }
     }
 
-    private static void drawPiece(Graphics2D g, int row, int column, MnkBoardGamePieceType piece, int squareSize, int borderSize, int lineWidth) {
-        switch (piece.player) {
-            case NOUGHTS_PLAYER:
+    private static void drawPiece(Graphics2D g, int row, int column, int playerIndex, int squareSize, int borderSize, int lineWidth) {
+        switch (playerIndex) {
+            case NOUGHTS_PLAYER_INDEX:
                 //draw nought.
-                g.setColor(getColor(piece));
+                g.setColor(getColor(playerIndex));
                 g.drawOval(borderSize + column*squareSize + 2*lineWidth, borderSize + row*squareSize + 2*lineWidth,
                         squareSize - 4*lineWidth, squareSize - 4*lineWidth);
                 break;
-            case CROSSES_PLAYER:
+            case CROSSES_PLAYER_INDEX:
                 //draw cross.
-                g.setColor(getColor(piece));
+                g.setColor(getColor(playerIndex));
                 g.drawLine(borderSize + column*squareSize + 2*lineWidth, borderSize + row*squareSize + 2*lineWidth,
                         borderSize + (column + 1)*squareSize - 2*lineWidth, borderSize + (row + 1)*squareSize - 2*lineWidth);
                 g.drawLine(borderSize + (column + 1)*squareSize - 2*lineWidth, borderSize + row*squareSize + 2*lineWidth,
                         borderSize + column*squareSize + 2*lineWidth, borderSize + (row + 1)*squareSize - 2*lineWidth);
                 break;
             default:
-                throw new IllegalStateException("Unknown player " + piece.player);
+                throw new IllegalStateException("Unknown player " + (playerIndex + 1));
         }
     }
 
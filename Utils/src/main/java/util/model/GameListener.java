@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2018 A.C. Kockx, All Rights Reserved.
+ */
+package util.model;
+
+/**
+ * Interface to be implemented by classes that want to be notified of changes in a GameModel, e.g. views, loggers or analyzers.
+ * Each method describes one type of change, so that a listener can react to just that change instead of re-reading the whole model.
+ *
+ * The methods are called on the thread that changed the model (usually the game engine thread), after the change has been made.
+ * Implementations should return quickly and must not change the model.
+ *
+ * @author A.C. Kockx
+ */
+public interface GameListener {
+    /**
+     * This is called when the model was reset for a new game.
+     */
+    void gameReset();
+
+    /**
+     * This is called when the given player made the given legal move.
+     * For board games the move is a SquareMove that contains the row and column of the square where the piece was placed.
+     * If the move ended the game, then this is followed by a call to gameOver.
+     */
+    void moveMade(Move move, int playerIndex);
+
+    /**
+     * This is called when the given legal move of the given player was undone.
+     */
+    void moveUndone(Move move, int playerIndex);
+
+    /**
+     * This is called when the game has ended.
+     *
+     * @param indexOfWinner index of the winning player, or -1 if there is no winner.
+     * @param indexOfPlayerThatMadeAnIllegalMove index of the player that made an illegal move that ended the game, or -1 if none.
+     *                                           If both indices are -1, then the game ended in a draw.
+     */
+    void gameOver(int indexOfWinner, int indexOfPlayerThatMadeAnIllegalMove);
+
+    /**
+     * This is called when the state of the model changed in a way that is not described by the other methods,
+     * e.g. when a whole position was copied into the model or when an illegal move was undone. Listeners should re-read the model.
+     */
+    void positionChanged();
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2018 A.C. Kockx, All Rights Reserved.
+ */
+package util.model;
+
+/**
+ * List of GameListeners, to be used by models to notify their listeners of changes.
+ *
+ * The listeners are stored in an array that is replaced when a listener is added or removed (copy-on-write).
+ * Adding and removing listeners is rare, so firing events is lock-free: it only reads a volatile array and does not allocate memory.
+ * Listeners can be added and removed from any thread. Events must be fired from a single thread, i.e. the thread that changes the model.
+ *
+ * @author A.C. Kockx
+ */
+public final class GameListeners {
+    private static final GameListener[] NO_LISTENERS = new GameListener[0];
+
+    private volatile GameListener[] listeners = NO_LISTENERS;
+
+    //if true, events are not fired, see method setSuspended.
+    private boolean suspended = false;
+    private boolean eventsMissed = false;
+
+    public synchronized void add(GameListener listener) {
+        if (listener == null) throw new IllegalArgumentException("listener == null");
+
+        GameListener[] newListeners = new GameListener[listeners.length + 1];
+        System.arraycopy(listeners, 0, newListeners, 0, listeners.length);
+        newListeners[listeners.length] = listener;
+        listeners = newListeners;
+    }
+
+    /**
+     * Removes the given listener, if present.
+     */
+    public synchronized void remove(GameListener listener) {
+        for (int n = 0; n < listeners.length; n++) {
+            if (listeners[n] != listener) continue;
+
+            GameListener[] newListeners = new GameListener[listeners.length - 1];
+            System.arraycopy(listeners, 0, newListeners, 0, n);
+            System.arraycopy(listeners, n + 1, newListeners, n, newListeners.length - n);
+            listeners = newListeners;
+            return;
+        }
+    }
+
+    public boolean isEmpty() {
+        return listeners.length == 0;
+    }
+
+    /**
+     * While suspended, no events are fired, e.g. while a computer player plays many moves or games in a model to calculate a move.
+     * When no longer suspended, positionChanged is fired once if any events were missed in the meantime,
+     * so that a batch of changes results in only one update of the listeners.
+     */
+    public void setSuspended(boolean suspended) {
+        this.suspended = suspended;
+        if (!suspended && eventsMissed) {
+            eventsMissed = false;
+            firePositionChanged();
+        }
+    }
+
+    public boolean isSuspended() {
+        return suspended;
+    }
+
+    /**
+     * Returns the listeners to notify, or null if no listeners should be notified.
+     */
+    private GameListener[] getListenersToNotify() {
+        GameListener[] listeners = this.listeners;
+        if (listeners.length == 0) return null;
+        if (suspended) {
+            eventsMissed = true;
+            return null;
+        }
+        return listeners;
+    }
+
+    public void fireGameReset() {
+        GameListener[] listeners = getListenersToNotify();
+        if (listeners == null) return;
+
+        for (GameListener listener : listeners) {
+            listener.gameReset();
+        }
+    }
+
+    public void fireMoveMade(Move move, int playerIndex) {
+        GameListener[] listeners = getListenersToNotify();
+        if (listeners == null) return;
+
+        for (GameListener listener : listeners) {
+            listener.moveMade(move, playerIndex);
+        }
+    }
+
+    public void fireMoveUndone(Move move, int playerIndex) {
+        GameListener[] listeners = getListenersToNotify();
+        if (listeners == null) return;
+
+        for (GameListener listener : listeners) {
+            listener.moveUndone(move, playerIndex);
+        }
+    }
+
+    public void fireGameOver(int indexOfWinner, int indexOfPlayerThatMadeAnIllegalMove) {
+        GameListener[] listeners = getListenersToNotify();
+        if (listeners == null) return;
+
+        for (GameListener listener : listeners) {
+            listener.gameOver(indexOfWinner, indexOfPlayerThatMadeAnIllegalMove);
+        }
+    }
+
+    public void firePositionChanged() {
+        GameListener[] listeners = getListenersToNotify();
+        if (listeners == null) return;
+
+        for (GameListener listener : listeners) {
+            listener.positionChanged();
+        }
+    }
+}
@@ -10,10 +10,18 @@ package util.model;
  * A model in this context is a state machine. It has a state that can be changed only by the model itself.
  * The model should protect its state to keep it consistent at all times.
  * The model should only store its own state and nothing else.
+ * Whenever the state changes, the model notifies its listeners, see GameListener.
  *
  * @author A.C. Kockx
  */
-public interface GameModel extends Observable {
+public interface GameModel {
+    /**
+     * Adds a listener that is notified of all changes of the model, e.g. a view.
+     */
+    void addGameListener(GameListener listener);
+
+    void removeGameListener(GameListener listener);
+
     /**
      * Prepares the model for a new game.
      */
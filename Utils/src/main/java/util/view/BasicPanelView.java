@@ -3,13 +3,19 @@
  */
 package util.view;
 
+import util.model.Move;
+
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 import java.awt.image.BufferedImage;
-import java.util.Observable;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Basic implementation of PanelView.
- * Draws an image to a panel using a given Drawer, whenever update is called by an observed object.
+ * Draws an image to a panel using a given Drawer, whenever the model that this view listens to changes.
+ *
+ * The drawer always draws the latest state of the model, so events that arrive before drawing starts are handled by a single draw
+ * on the event dispatch thread. For example, the last move of a game fires both moveMade and gameOver, but the board is drawn once.
  *
  * @author A.C. Kockx
  */
@@ -19,6 +25,8 @@ public final class BasicPanelView implements PanelView {
     private final int height;
     private final Drawer drawer;//to draw and update image.
     private final ImagePanel imagePanel;//to store and show image.
+    //true if an update has been scheduled that has not started drawing yet.
+    private final AtomicBoolean updatePending = new AtomicBoolean(false);
 
     /**
      * @param width of view in pixels.
@@ -36,16 +44,55 @@ public final class BasicPanelView implements PanelView {
         imagePanel = new ImagePanel(width, height);
     }
 
+    @Override
+    public void gameReset() {
+        update();
+    }
+
+    @Override
+    public void moveMade(Move move, int playerIndex) {
+        update();
+    }
+
+    @Override
+    public void moveUndone(Move move, int playerIndex) {
+        update();
+    }
+
+    @Override
+    public void gameOver(int indexOfWinner, int indexOfPlayerThatMadeAnIllegalMove) {
+        update();
+    }
+
+    @Override
+    public void positionChanged() {
+        update();
+    }
+
     /**
-     * Updates this view.
+     * Schedules an update of this view, unless an update has already been scheduled that has not started yet.
      */
-    @Override
-    public void update(Observable o, Object arg) {
-        //drawing may take some time. To avoid multiple calls to this method drawing to the same image in parallel,
+    private void update() {
+        if (!updatePending.compareAndSet(false, true)) return;
+
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                //events that arrive from now on need another update, since they may not be included in this one.
+                updatePending.set(false);
+                draw();
+            }
+        });
+    }
+
+    /**
+     * Draws the current state and shows it. Only called on the event dispatch thread.
+     */
+    private void draw() {
         //create a new image to draw to each time. After drawing is finished, set the finished image in imagePanel (this happens atomically)
         //and do not store the image here.
         BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-        drawer.draw(o, arg, image);
+        drawer.draw(image);
         //imagePanel.setImage() creates a clone of image, so any further changes to image made here will not influence painting in imagePanel.
         imagePanel.setImage(image);
         imagePanel.repaint();
@@ -4,7 +4,6 @@
 package util.view;
 
 import java.awt.image.BufferedImage;
-import java.util.Observable;
 
 /**
  * Interface to be implemented by classes that can draw something in a PanelView.
@@ -15,5 +14,5 @@ public interface Drawer {
     /**
      * Draws content to the given image.
      */
-    void draw(Observable o, Object arg, BufferedImage image);
+    void draw(BufferedImage image);
 }
@@ -3,16 +3,18 @@
  */
 package util.view;
 
+import util.model.GameListener;
+
 import javax.swing.JPanel;
-import java.util.Observer;
 
 /**
  * Interface to be implemented by classes that can be used as a view in a Model-View-Controller pattern.
  * View that draws an image to a panel.
+ * The view is notified of changes of the model as a GameListener.
  * To show the panel on screen, call the getPanel() method and put the panel in a JFrame or another Swing component.
  *
  * @author A.C. Kockx
  */
-public interface PanelView extends Observer {
+public interface PanelView extends GameListener {
     JPanel getPanel();
 }